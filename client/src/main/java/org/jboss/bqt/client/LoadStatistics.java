@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jboss.bqt.framework.util.LatencyHistogram;
+
+/**
+ * LoadStatistics collects the latency of each query execution during a
+ * {@link TestProperties.RESULT_MODES#LOAD load} test.  Each virtual client
+ * records into its own instance, which are {@link #merge(LoadStatistics) merged}
+ * when the test is done, so the instances are not thread safe.
+ */
+public class LoadStatistics {
+
+	private Map<String, Latencies> latencies = new LinkedHashMap<String, Latencies>();
+
+	private long executions = 0;
+	private long errors = 0;
+
+	/**
+	 * Record one execution of a query.
+	 * @param queryID identifies the query, the same id should be used by all clients
+	 * @param nanos the time it took to run the query
+	 * @param errorMessage when not null, the query failed with this message
+	 */
+	public void addExecution(String queryID, long nanos, String errorMessage) {
+		Latencies l = findOrCreate(queryID);
+		l.histogram.record(nanos);
+		executions++;
+
+		if (errorMessage != null) {
+			errors++;
+			l.errors++;
+			if (l.firstError == null) {
+				l.firstError = errorMessage;
+			}
+		}
+	}
+
+	public void merge(LoadStatistics other) {
+		for (Map.Entry<String, Latencies> entry : other.latencies.entrySet()) {
+			Latencies from = entry.getValue();
+			Latencies to = findOrCreate(entry.getKey());
+			to.histogram.add(from.histogram);
+			to.errors += from.errors;
+			if (to.firstError == null) {
+				to.firstError = from.firstError;
+			}
+		}
+		executions += other.executions;
+		errors += other.errors;
+	}
+
+	public long getExecutions() {
+		return executions;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	public Collection<String> getQueryIDs() {
+		return latencies.keySet();
+	}
+
+	public long getExecutions(String queryID) {
+		Latencies l = latencies.get(queryID);
+		return (l == null ? 0 : l.histogram.getCount());
+	}
+
+	public long getErrors(String queryID) {
+		Latencies l = latencies.get(queryID);
+		return (l == null ? 0 : l.errors);
+	}
+
+	/**
+	 * @param queryID
+	 * @return the message of the first failed execution of the query, or null if it never failed
+	 */
+	public String getFirstError(String queryID) {
+		Latencies l = latencies.get(queryID);
+		return (l == null ? null : l.firstError);
+	}
+
+	/**
+	 * Return the latency, in nanoseconds, that <code>percentile</code> percent of
+	 * the executions of the query didn't exceed.
+	 * @param queryID
+	 * @param percentile between 0 and 100, 100 being the maximum
+	 * @return long nanoseconds, 0 when the query wasn't executed
+	 * @see LatencyHistogram#getValueAtPercentile(double)
+	 */
+	public long getPercentile(String queryID, double percentile) {
+		Latencies l = latencies.get(queryID);
+		return (l == null ? 0 : l.histogram.getValueAtPercentile(percentile));
+	}
+
+	/**
+	 * @param queryID
+	 * @return the latencies of all the executions of the query, or null if it wasn't executed
+	 */
+	public LatencyHistogram getLatencies(String queryID) {
+		Latencies l = latencies.get(queryID);
+		return (l == null ? null : l.histogram);
+	}
+
+	private Latencies findOrCreate(String queryID) {
+		Latencies l = latencies.get(queryID);
+		if (l == null) {
+			l = new Latencies();
+			latencies.put(queryID, l);
+		}
+		return l;
+	}
+
+	private static class Latencies {
+		LatencyHistogram histogram = new LatencyHistogram();
+		long errors = 0;
+		String firstError = null;
+	}
+}
@@ -23,6 +23,8 @@ package org.jboss.bqt.client;
 
 import java.io.Serializable;
 
+import org.jboss.bqt.framework.StatementOptions;
+
 /**
  * The QuerySQL represents a single sql statement to be executed in a given
  * {@link QueryTest TestResult}. The {@link #rowCnt} and {@link #updateCnt}, when set,
@@ -42,6 +44,9 @@ public class QuerySQL {
 	// payload is set on the statement before execution
 	private Serializable payload;
 	
+	// the statement options of this query, null when the scenario's are used
+	private StatementOptions statementOptions;
+	
 	public boolean isSelect() {
 		if (sql.toLowerCase().startsWith("select")) return true;
 		
@@ -93,6 +98,17 @@ public class QuerySQL {
 		return this.payload;
 	}
 	
+	public void setStatementOptions(StatementOptions options) {
+		this.statementOptions = options;
+	}
+	
+	/**
+	 * @return the statement options of this query, merged with the scenario's when it is run, may be null
+	 */
+	public StatementOptions getStatementOptions() {
+		return this.statementOptions;
+	}
+	
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
@@ -38,6 +38,7 @@ public class QueryTest extends ActualTest {
 	private String querySetID;
 	private String queryID;
 	private String queryScenarioID;
+	private boolean serial = false;
 
 	public QueryTest(String queryScenarioID, String querySetID, String queryID, 
 			QuerySQL[] queries) {
@@ -63,6 +64,25 @@ public class QueryTest extends ActualTest {
 		return this.queryScenarioID;
 	}
 	
+	/**
+	 * Indicates the test must be run by itself, in the order it was defined, when the 
+	 * query set is being run concurrently.  This is true when the test was marked as 
+	 * order dependent or when any of its queries isn't a select (i.e., DML or a procedure).
+	 * @return boolean
+	 */
+	public boolean isSerial() {
+		if (serial) return true;
+		
+		for (QuerySQL q : queries) {
+			if (!q.isSelect()) return true;
+		}
+		return false;
+	}
+	
+	public void setSerial(boolean serial) {
+		this.serial = serial;
+	}
+	
 	
 	
 	/**
@@ -0,0 +1,211 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jboss.bqt.core.util.PropertiesUtils;
+
+/**
+ * Shard decides which scenarios, or query sets, are run by this client when a regression is split
+ * across {@link TestProperties#PROP_SHARD_COUNT} clients.  The split only depends on the names, and the
+ * {@link TestProperties#PROP_SHARD_RUNTIMES runtimes} when they are used, so every shard computes the same
+ * split and each name is run by exactly one shard.
+ */
+public class Shard {
+
+	private final int index;
+	private final int count;
+	private final String by;
+	private final Properties runtimes;
+	// the shards of the query sets of all the scenarios in the runtimes, balanced across the scenarios
+	private Map<String, Integer> querySetShards;
+
+	public Shard(Properties props) {
+		this.index = PropertiesUtils.getIntProperty(props, TestProperties.PROP_SHARD_INDEX, 0);
+		this.count = PropertiesUtils.getIntProperty(props, TestProperties.PROP_SHARD_COUNT, 1);
+		if (count < 1 || index < 0 || index >= count) {
+			throw new FrameworkRuntimeException("Invalid shard " + index + " of " + count + ", " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					+ TestProperties.PROP_SHARD_INDEX + " must be from 0 to " + TestProperties.PROP_SHARD_COUNT + " - 1"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		this.by = props.getProperty(TestProperties.PROP_SHARD_BY, TestProperties.SHARD_BY.SCENARIO).trim().toLowerCase(Locale.ENGLISH);
+		if (!by.equals(TestProperties.SHARD_BY.SCENARIO) && !by.equals(TestProperties.SHARD_BY.QUERYSET)) {
+			throw new FrameworkRuntimeException("Invalid " + TestProperties.PROP_SHARD_BY + ": " + by); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		String file = props.getProperty(TestProperties.PROP_SHARD_RUNTIMES);
+		if (file == null || file.trim().length() == 0) {
+			this.runtimes = null;
+		} else {
+			try {
+				this.runtimes = PropertiesUtils.load(file.trim());
+			} catch (IOException e) {
+				throw new FrameworkRuntimeException(e, "Unable to read the " + TestProperties.PROP_SHARD_RUNTIMES + " file: " + file); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public boolean isSharded() {
+		return count > 1;
+	}
+
+	public boolean isByScenario() {
+		return isSharded() && by.equals(TestProperties.SHARD_BY.SCENARIO);
+	}
+
+	public boolean isByQuerySet() {
+		return isSharded() && by.equals(TestProperties.SHARD_BY.QUERYSET);
+	}
+
+	/**
+	 * @return the directory of the output directory where this shard writes its output
+	 */
+	public String getDirectoryName() {
+		return "shard_" + index + "_of_" + count; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * The query sets are selected one scenario at a time, so they are balanced by the runtimes of the query
+	 * sets of all the scenarios.  A query set that has no runtime is split by the hash of its name.
+	 * @param names the scenarios or query sets, in the order they are run
+	 * @param prefix added to each name to find its runtime, such as the scenario of a query set
+	 * @return the names that are run by this shard, in the same order
+	 */
+	public List<String> select(Collection<String> names, String prefix) {
+		List<String> selected = new ArrayList<String>();
+		if (!isSharded()) {
+			selected.addAll(names);
+			return selected;
+		}
+		Map<String, Integer> shards = null;
+		if (runtimes != null) {
+			shards = (isByQuerySet() ? getQuerySetShards() : balance(names, prefix));
+		}
+		for (String name : names) {
+			Integer shard = (shards != null ? shards.get(prefix + name) : null);
+			if ((shard != null ? shard.intValue() : hash(prefix + name, count)) == index) {
+				selected.add(name);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * String.hashCode is the same in every JVM.
+	 */
+	static int hash(String key, int count) {
+		return (key.hashCode() & Integer.MAX_VALUE) % count;
+	}
+
+	/**
+	 * The runtimes have the query sets of each scenario after the runtime of that scenario, which is
+	 * the prefix of their names.
+	 * @return the shard of each query set in the runtimes, by its name with the scenario prefix
+	 */
+	private synchronized Map<String, Integer> getQuerySetShards() {
+		if (querySetShards == null) {
+			List<String> querySets = new ArrayList<String>();
+			for (String key : runtimes.stringPropertyNames()) {
+				for (int dot = key.indexOf('.'); dot > 0; dot = key.indexOf('.', dot + 1)) {
+					if (runtimes.containsKey(key.substring(0, dot))) {
+						querySets.add(key);
+						break;
+					}
+				}
+			}
+			querySetShards = balance(querySets, ""); //$NON-NLS-1$
+		}
+		return querySetShards;
+	}
+
+	/**
+	 * Give the longest running names first to the shard that has the least to run.  The names
+	 * without a runtime are given the mean runtime.
+	 * @return the shard of each name, with the prefix
+	 */
+	private Map<String, Integer> balance(Collection<String> names, String prefix) {
+		final Map<String, Double> weights = new HashMap<String, Double>();
+		double total = 0;
+		int known = 0;
+		for (String name : names) {
+			String value = runtimes.getProperty(prefix + name);
+			if (value == null) {
+				continue;
+			}
+			try {
+				// at least a second, so the quick ones are spread too
+				double seconds = Math.max(1, Double.parseDouble(value.trim()));
+				weights.put(name, Double.valueOf(seconds));
+				total += seconds;
+				known++;
+			} catch (NumberFormatException e) {
+				// without a runtime
+			}
+		}
+		Double mean = Double.valueOf(known > 0 ? total / known : 1);
+		List<String> sorted = new ArrayList<String>(names);
+		for (String name : sorted) {
+			if (!weights.containsKey(name)) {
+				weights.put(name, mean);
+			}
+		}
+		Collections.sort(sorted, new Comparator<String>() {
+			public int compare(String o1, String o2) {
+				int c = weights.get(o2).compareTo(weights.get(o1));
+				return (c != 0 ? c : o1.compareTo(o2));
+			}
+		});
+
+		Map<String, Integer> shards = new HashMap<String, Integer>();
+		double[] loads = new double[count];
+		for (String name : sorted) {
+			int shard = 0;
+			for (int i = 1; i < count; i++) {
+				if (loads[i] < loads[shard]) {
+					shard = i;
+				}
+			}
+			shards.put(prefix + name, Integer.valueOf(shard));
+			loads[shard] += weights.get(name).doubleValue();
+		}
+		return shards;
+	}
+
+}
@@ -0,0 +1,391 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.jboss.bqt.core.util.FileUtils;
+
+/**
+ * SummaryMerger merges the output of the {@link Shard shards} of a regression into one output
+ * directory, as if the regression had been run by one client.  The overall summary files are merged,
+ * the scenario summaries of the query sets that were split across the shards are combined into one,
+ * and the rest of the output is copied.  It also writes the {@link #RUNTIMES_FILE runtimes} of the
+ * scenarios and query sets, which can be used as the {@link TestProperties#PROP_SHARD_RUNTIMES} to
+ * balance the next run.
+ * <p>
+ * Usage: <code>SummaryMerger &lt;merged directory&gt; &lt;shard directory&gt;...</code>
+ * </p>
+ */
+public class SummaryMerger {
+
+	/**
+	 * The seconds of each scenario, and each <code>scenario.queryset</code>, of the merged run.
+	 */
+	public static final String RUNTIMES_FILE = "Summary_runtimes.properties"; //$NON-NLS-1$
+
+	private static final String SUMMARY_PREFIX = "Summary_"; //$NON-NLS-1$
+	private static final String SUMMARY_EXTENSION = ".txt"; //$NON-NLS-1$
+	private static final String SEPARATOR = "=================="; //$NON-NLS-1$
+	private static final String TEST_SETS = "Number of test sets: "; //$NON-NLS-1$
+	private static final String RECONNECTS = "Reconnects after connection errors: "; //$NON-NLS-1$
+	private static final String FAILED_QUERIES = "Failed Queries"; //$NON-NLS-1$
+	private static final String TIMED_OUT_QUERIES = "Timed Out Queries"; //$NON-NLS-1$
+	private static final String QUERY_LINE = "\t - "; //$NON-NLS-1$
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: SummaryMerger <merged directory> <shard directory>..."); //$NON-NLS-1$
+			System.exit(1);
+		}
+
+		File merged = new File(args[0]);
+		List<File> shards = new ArrayList<File>();
+		for (int i = 1; i < args.length; i++) {
+			shards.add(new File(args[i]));
+		}
+		try {
+			new SummaryMerger().merge(merged, shards);
+			ClientPlugin.LOGGER.info("Merged " + shards.size() + " shards to " + merged.getAbsolutePath()); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (Exception e) {
+			ClientPlugin.LOGGER.error("Unable to merge the shards to " + merged.getAbsolutePath() + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Merge the output of the shards, in the order of <code>shardDirs</code>.  When the shards wrote the
+	 * same file, other than a summary, the file of the first shard is kept.
+	 * @param mergedDir
+	 * @param shardDirs
+	 * @throws IOException
+	 */
+	public void merge(File mergedDir, List<File> shardDirs) throws IOException {
+		for (File shardDir : shardDirs) {
+			if (!shardDir.isDirectory()) {
+				throw new IOException("The shard directory doesn't exist: " + shardDir.getAbsolutePath()); //$NON-NLS-1$
+			}
+		}
+		mergedDir.mkdirs();
+
+		mergeTotals(mergedDir, shardDirs);
+		mergeErrors(mergedDir, shardDirs, TestResultsSummary.OVERALL_SUMMARY_ERROR_FILE);
+		mergeErrors(mergedDir, shardDirs, TestResultsSummary.CONNECTION_EXCEPTION_SUMMARY_ERROR_FILE);
+
+		// the scenario summaries by their file name, the rest is copied
+		Map<String, List<File>> summaries = new TreeMap<String, List<File>>();
+		List<String> overall = Arrays.asList(TestResultsSummary.OVERALL_SUMMARY_FILE, TestResultsSummary.OVERALL_SUMMARY_ERROR_FILE,
+				TestResultsSummary.CONNECTION_EXCEPTION_SUMMARY_ERROR_FILE, RUNTIMES_FILE);
+		for (File shardDir : shardDirs) {
+			File[] files = shardDir.listFiles();
+			Arrays.sort(files);
+			for (File f : files) {
+				String name = f.getName();
+				if (overall.contains(name)) {
+					continue;
+				}
+				if (f.isFile() && name.startsWith(SUMMARY_PREFIX) && name.endsWith(SUMMARY_EXTENSION)) {
+					List<File> list = summaries.get(name);
+					if (list == null) {
+						list = new ArrayList<File>();
+						summaries.put(name, list);
+					}
+					list.add(f);
+				} else {
+					copy(f, new File(mergedDir, name));
+				}
+			}
+		}
+
+		Properties runtimes = new Properties();
+		for (Map.Entry<String, List<File>> entry : summaries.entrySet()) {
+			mergeScenarioSummary(entry.getValue(), new File(mergedDir, entry.getKey()), runtimes);
+		}
+
+		OutputStream out = new FileOutputStream(new File(mergedDir, RUNTIMES_FILE));
+		try {
+			runtimes.store(out, "Seconds of the scenarios and query sets, for " + TestProperties.PROP_SHARD_RUNTIMES); //$NON-NLS-1$
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * The pass, fail, total and skipped counts of a scenario are added up, because a scenario
+	 * is in every shard when the query sets are sharded.
+	 */
+	private void mergeTotals(File mergedDir, List<File> shardDirs) throws IOException {
+		Map<String, long[]> totals = new LinkedHashMap<String, long[]>();
+		boolean found = false;
+		for (File shardDir : shardDirs) {
+			File f = new File(shardDir, TestResultsSummary.OVERALL_SUMMARY_FILE);
+			if (!f.isFile()) {
+				continue;
+			}
+			found = true;
+			for (String line : readLines(f)) {
+				String[] parts = line.split("\t"); //$NON-NLS-1$
+				if (parts.length != 5) {
+					continue;
+				}
+				long[] counts = new long[4];
+				try {
+					for (int i = 0; i < counts.length; i++) {
+						counts[i] = Long.parseLong(parts[i + 1].trim());
+					}
+				} catch (NumberFormatException e) {
+					// the headings
+					continue;
+				}
+				String scenario = parts[0].trim();
+				long[] sum = totals.get(scenario);
+				if (sum == null) {
+					totals.put(scenario, counts);
+				} else {
+					for (int i = 0; i < sum.length; i++) {
+						sum[i] += counts[i];
+					}
+				}
+			}
+		}
+		if (!found) {
+			return;
+		}
+
+		Writer out = new BufferedWriter(new FileWriter(new File(mergedDir, TestResultsSummary.OVERALL_SUMMARY_FILE)));
+		try {
+			TestResultsSummary.printOverallSummaryHeadings(out);
+			for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+				long[] counts = entry.getValue();
+				out.write(TestResultsSummary.pad(entry.getKey(), 42, ' ') + " \t" //$NON-NLS-1$
+						+ counts[0] + "\t" + counts[1] + "\t" + counts[2] + "\t" + counts[3] + "\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * The errors of the shards are listed one after the other, under one heading.
+	 */
+	private void mergeErrors(File mergedDir, List<File> shardDirs, String fileName) throws IOException {
+		StringBuilder errors = null;
+		for (File shardDir : shardDirs) {
+			File f = new File(shardDir, fileName);
+			if (!f.isFile()) {
+				continue;
+			}
+			if (errors == null) {
+				errors = new StringBuilder();
+			}
+			List<String> lines = readLines(f);
+			int start = 0;
+			while (start < lines.size() && !lines.get(start).startsWith("Scenario")) { //$NON-NLS-1$
+				start++;
+			}
+			// the headings end with a blank line
+			start += 2;
+			for (int i = start; i < lines.size(); i++) {
+				errors.append(lines.get(i)).append('\n');
+			}
+		}
+		if (errors == null) {
+			return;
+		}
+
+		Writer out = new BufferedWriter(new FileWriter(new File(mergedDir, fileName)));
+		try {
+			if (fileName.equals(TestResultsSummary.CONNECTION_EXCEPTION_SUMMARY_ERROR_FILE)) {
+				TestResultsSummary.printOverallConnectionExceptionSummaryErrosHeadings(out);
+			} else {
+				TestResultsSummary.printOverallSummaryErrorHeadings(out);
+			}
+			out.write(errors.toString());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Combine the summaries of a scenario written by the shards that ran its query sets, as
+	 * {@link TestResultsSummary#printTotals(int)} writes them, and add the seconds of the scenario
+	 * and its query sets to the <code>runtimes</code>.
+	 */
+	private void mergeScenarioSummary(List<File> files, File target, Properties runtimes) throws IOException {
+		String title = null;
+		String querySetName = null;
+		int querySets = 0;
+		int reconnects = 0;
+		long pass = 0;
+		long fail = 0;
+		long queries = 0;
+		long seconds = 0;
+		List<String> rows = new ArrayList<String>();
+		List<String> failed = new ArrayList<String>();
+		List<String> timedOut = new ArrayList<String>();
+		try {
+			for (File f : files) {
+				List<String> section = null;
+				for (String line : readLines(f)) {
+					if (line.startsWith("Scenario ")) { //$NON-NLS-1$
+						if (title == null) {
+							title = line;
+						}
+					} else if (line.startsWith("Query Set Name: ")) { //$NON-NLS-1$
+						if (querySetName == null) {
+							querySetName = line;
+						}
+					} else if (line.startsWith(TEST_SETS)) {
+						querySets += Integer.parseInt(line.substring(TEST_SETS.length()).trim());
+					} else if (line.startsWith(RECONNECTS)) {
+						reconnects += Integer.parseInt(line.substring(RECONNECTS.length()).trim());
+					} else if (line.equals(FAILED_QUERIES)) {
+						section = failed;
+					} else if (line.equals(TIMED_OUT_QUERIES)) {
+						section = timedOut;
+					} else if (line.startsWith(QUERY_LINE)) {
+						if (section != null) {
+							section.add(line.substring(QUERY_LINE.length()));
+						}
+					} else if (line.startsWith("\t")) { //$NON-NLS-1$
+						String[] parts = line.split("\t"); //$NON-NLS-1$
+						if (parts.length < 6 || parts[1].trim().equals("Name")) { //$NON-NLS-1$
+							continue;
+						}
+						if (parts[1].trim().equals("Totals")) { //$NON-NLS-1$
+							seconds += Long.parseLong(parts[5].trim());
+							continue;
+						}
+						pass += Long.parseLong(parts[2].trim());
+						fail += Long.parseLong(parts[3].trim());
+						queries += Long.parseLong(parts[4].trim());
+						rows.add(line);
+					}
+				}
+			}
+		} catch (NumberFormatException e) {
+			title = null;
+		}
+		if (title == null || querySetName == null) {
+			ClientPlugin.LOGGER.warn("Unable to merge the summary " + target.getName() + ", the one of the first shard is kept"); //$NON-NLS-1$ //$NON-NLS-2$
+			copy(files.get(0), target);
+			return;
+		}
+
+		String scenario = title.substring("Scenario ".length()); //$NON-NLS-1$
+		int end = scenario.lastIndexOf(" Summary ["); //$NON-NLS-1$
+		if (end > 0) {
+			scenario = scenario.substring(0, end);
+			for (String row : rows) {
+				String[] parts = row.split("\t"); //$NON-NLS-1$
+				runtimes.setProperty(scenario + "." + parts[1].trim(), parts[5].trim()); //$NON-NLS-1$
+			}
+			runtimes.setProperty(scenario, String.valueOf(seconds));
+		}
+
+		Collections.sort(rows);
+		Collections.sort(failed);
+		Collections.sort(timedOut);
+
+		PrintStream out = new PrintStream(new FileOutputStream(target));
+		try {
+			out.println(title);
+			out.println(querySetName);
+			out.println(SEPARATOR);
+			out.println(TEST_SETS + querySets);
+			out.println(SEPARATOR);
+			out.println("\t" + TestResultsSummary.pad("Name", 42, ' ') //$NON-NLS-1$ //$NON-NLS-2$
+					+ "\tPass\tFail\tTotal\tTime(sec)\t Avg(mils)"); //$NON-NLS-1$
+			for (String row : rows) {
+				out.println(row);
+			}
+			out.println(SEPARATOR);
+			out.println("\t" + TestResultsSummary.pad("Totals", 42, ' ') //$NON-NLS-1$ //$NON-NLS-2$
+					+ "\t" + pass + "\t" + fail + "\t" + queries + "\t" + seconds); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			out.println(RECONNECTS + reconnects);
+			printQueries(out, FAILED_QUERIES, failed);
+			printQueries(out, TIMED_OUT_QUERIES, timedOut);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void printQueries(PrintStream out, String heading, List<String> queries) {
+		if (queries.isEmpty()) {
+			return;
+		}
+		out.println("\n\n" + SEPARATOR); //$NON-NLS-1$
+		out.println(heading);
+		for (String query : queries) {
+			out.println(QUERY_LINE + query);
+		}
+		out.println(SEPARATOR);
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		if (from.isDirectory()) {
+			to.mkdirs();
+			File[] files = from.listFiles();
+			Arrays.sort(files);
+			for (File f : files) {
+				copy(f, new File(to, f.getName()));
+			}
+		} else if (to.exists()) {
+			ClientPlugin.LOGGER.warn("More than one shard wrote " + to.getPath() + ", the one of the first shard is kept"); //$NON-NLS-1$ //$NON-NLS-2$
+		} else {
+			FileUtils.copy(from.getPath(), to.getPath(), false);
+		}
+	}
+
+	private static List<String> readLines(File f) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(f));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+}
@@ -24,9 +24,21 @@ package org.jboss.bqt.client;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.bqt.client.api.ExpectedResultsReader;
 import org.jboss.bqt.client.api.QueryReader;
@@ -36,10 +48,16 @@ import org.jboss.bqt.core.exception.FrameworkRuntimeException;
 import org.jboss.bqt.core.util.ArgCheck;
 import org.jboss.bqt.core.util.FileUtils;
 import org.jboss.bqt.core.util.PropertiesUtils;
+import org.jboss.bqt.framework.AbstractQuery;
 import org.jboss.bqt.framework.ConfigPropertyLoader;
+import org.jboss.bqt.framework.ConfigPropertyNames;
 import org.jboss.bqt.framework.TestCaseLifeCycle;
 import org.jboss.bqt.framework.TransactionAPI;
 import org.jboss.bqt.framework.TransactionFactory;
+import org.jboss.bqt.framework.connection.ConnectionStrategy;
+import org.jboss.bqt.framework.connection.ConnectionStrategyFactory;
+import org.jboss.bqt.framework.connection.DataSourceConnection;
+import org.jboss.bqt.framework.connection.DriverConnection;
 
 /**
  * TestClient is the starter class for running bulk sql testing against a JDBC database
@@ -65,8 +83,6 @@ public class TestClient {
 	public static final SimpleDateFormat TSFORMAT = new SimpleDateFormat(
 			"HH:mm:ss.SSS"); //$NON-NLS-1$
 	
-	public static ConfigPropertyLoader CONFIG = null;
-	
 	private QueryScenario scenario;
 
 	public TestClient() {
@@ -114,55 +130,164 @@ public class TestClient {
 	}
 
 	public void runTest() {
-		CONFIG = ConfigPropertyLoader.getInstance();
+		ConfigPropertyLoader config = ConfigPropertyLoader.getInstance();
 		
 		PRE1_SUPPORTED = PropertiesUtils.getBooleanProperty(System.getProperties(), 
 				TestProperties.PRE1_0_SCENARIO_SUPPORT.SUPPORT_PRE1_0_SCENARIO, false);
 		try {
-			ExclusionManager em = new ExclusionManager(CONFIG);
+			ExclusionManager em = new ExclusionManager(config);
 
-			List<File> scenarios = getScenarios();
-			for (File f:scenarios) {
+			List<File> scenarios = new ArrayList<File>();
+			for (File f:getScenarios(config)) {
 				// if the scenario is excluded or not included by the properties, skip it
-				if (!em.isScenarioActive(f)) {
-					continue;
+				if (em.isScenarioActive(f)) {
+					scenarios.add(f);
 				}
+			}
+			
+			Shard shard = new Shard(config.getProperties());
+			if (shard.isByScenario()) {
+				scenarios = getShardScenarios(shard, scenarios);
+			}
+			
+			int workers = PropertiesUtils.getIntProperty(config.getProperties(), TestProperties.PROP_SCENARIO_WORKERS, 1);
+			if (workers > 1 && scenarios.size() > 1) {
+				int maxPerDataSource = PropertiesUtils.getIntProperty(config.getProperties(), TestProperties.PROP_SCENARIO_MAX_PER_DATASOURCE, 0);
+				runScenarios(scenarios, workers, maxPerDataSource);
+				return;
+			}
 
+			for (File f:scenarios) {
 				try{
 					runScenario(f);
 				} catch (FrameworkRuntimeException ex){
-					String code = ex.getCode();
-					if(FrameworkException.ErrorCodes.SERVER_CONNECTION_EXCEPTION.equals(code)
-							|| FrameworkException.ErrorCodes.BQT_INTERRUPTED.equals(code)){
-						throw ex;   // server is not available - running next scenario does not make sense
-									// or BQT has been interrupted
-					} else {
-						// server is available, but something went wrong (no DB, ping did not succeed, ...); next scenario may pass
-						ex.printStackTrace();
-					}
+					handleScenarioException(ex);
 				}
-				
-				// reset for reloading cause there are points that call setProperty(..)
-				// on the ConfigurationProperties
-
-				ConfigPropertyLoader.reset();
-				
-				CONFIG = ConfigPropertyLoader.getInstance();
-				
 			}
 
-
 		} catch (Throwable t) {
 			throw new RuntimeException(t);
 		} finally {
+			ConnectionStrategyFactory.shutdownPools();
 			ConfigPropertyLoader.reset();
 		}
 
 	}
 	
-	private List<File> getScenarios() throws Exception {
+	/**
+	 * Run the scenarios concurrently, using <code>workers</code> number of threads.  Each
+	 * scenario is run using its own {@link ConfigPropertyLoader}, so that the properties
+	 * of one scenario don't bleed over into another.
+	 * @param scenarios 
+	 * @param workers 
+	 * @param maxPerDataSource when greater than 0, the maximum number of scenarios to run
+	 * 			at the same time against the same data source
+	 * @throws Throwable 
+	 */
+	void runScenarios(List<File> scenarios, int workers, final int maxPerDataSource) throws Throwable {
+		ClientPlugin.LOGGER.info("Running " + scenarios.size() + " scenarios using " + workers + " workers");
+
+		final Map<String, Semaphore> dataSourcePermits = new HashMap<String, Semaphore>();
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "bqt-scenario-" + count.incrementAndGet()); //$NON-NLS-1$
+			}
+		});
+		
+		List<Future<Object>> results = new ArrayList<Future<Object>>(scenarios.size());
+		for (final File f:scenarios) {
+			results.add(executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					ConfigPropertyLoader config = ConfigPropertyLoader.createInstance();
+					try {
+						String scenario_name = init(f, config);
 
-		String scenario_file = CONFIG.getProperty(TestProperties.PROP_SCENARIO_FILE);
+						Semaphore permit = null;
+						if (maxPerDataSource > 0) {
+							String key = getDataSourceKey(config.getProperties());
+							synchronized (dataSourcePermits) {
+								permit = dataSourcePermits.get(key);
+								if (permit == null) {
+									permit = new Semaphore(maxPerDataSource);
+									dataSourcePermits.put(key, permit);
+								}
+							}
+							permit.acquire();
+						}
+						try {
+							runScenario(scenario_name, config, true);
+						} finally {
+							if (permit != null) {
+								permit.release();
+							}
+						}
+					} catch (Exception e) {
+						throw e;
+					} catch (Error e) {
+						throw e;
+					} catch (Throwable t) {
+						throw new FrameworkRuntimeException(t);
+					} finally {
+						config.clearOverrides();
+					}
+					return null;
+				}
+			}));
+		}
+		executor.shutdown();
+		
+		try {
+			for (Future<Object> result:results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof FrameworkRuntimeException) {
+						handleScenarioException((FrameworkRuntimeException) e.getCause());
+					} else {
+						throw e.getCause();
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private void handleScenarioException(FrameworkRuntimeException ex) {
+		String code = ex.getCode();
+		if(FrameworkException.ErrorCodes.SERVER_CONNECTION_EXCEPTION.equals(code)
+				|| FrameworkException.ErrorCodes.BQT_INTERRUPTED.equals(code)){
+			throw ex;   // server is not available - running next scenario does not make sense
+						// or BQT has been interrupted
+		} 
+		// server is available, but something went wrong (no DB, ping did not succeed, ...); next scenario may pass
+		ex.printStackTrace();
+	}
+	
+	/**
+	 * Identifies the data source the scenario will connect to, so that the number of 
+	 * concurrent scenarios per data source can be limited.
+	 */
+	private static String getDataSourceKey(Properties props) {
+		String type = props.getProperty(ConfigPropertyNames.CONNECTION_TYPE,
+				ConfigPropertyNames.CONNECTION_TYPES.DRIVER_CONNECTION);
+		String[] keys = new String[] {DriverConnection.DS_URL, DataSourceConnection.DS_URL, 
+				DataSourceConnection.DS_JNDINAME, DataSourceConnection.DS_SERVERNAME};
+		for (String key:keys) {
+			String value = props.getProperty(key);
+			if (value != null && value.trim().length() > 0) {
+				return type + ":" + value; //$NON-NLS-1$
+			}
+		}
+		return type;
+	}
+	
+	private List<File> getScenarios(ConfigPropertyLoader config) throws Exception {
+
+		String scenario_file = config.getProperty(TestProperties.PROP_SCENARIO_FILE);
 		if (scenario_file == null) {
 			final String msg = ClientPlugin.Util.getString(
 					"TestClient.emptyScenarioFile", scenario_file); //$NON-NLS-1$            
@@ -188,18 +313,31 @@ public class TestClient {
 
 	public void runScenario(File scenarioFile) throws Throwable {
 		
-		String scenario_name = init(scenarioFile);
+		ConfigPropertyLoader config = ConfigPropertyLoader.createInstance();
+		
+		String scenario_name = init(scenarioFile, config);
 
+		runScenario(scenario_name, config, false);
+	}
+	
+	/**
+	 * @param concurrent true when the scenario is run at the same time as other scenarios, it's
+	 * 			then kept local to its thread and not returned by {@link #getScenario()}
+	 */
+	protected void runScenario(String scenario_name, ConfigPropertyLoader config, boolean concurrent) throws Throwable {
 		
-		this.scenario = QueryScenario.createInstance(scenario_name, CONFIG.getProperties());
+		QueryScenario scenario = QueryScenario.createInstance(scenario_name, config.getProperties());
+		if (!concurrent) {
+			this.scenario = scenario;
+		}
 		
 		if (scenario.isSQL()) {
-			this.createSQL(scenario);
+			this.createSQL(scenario, config);
 			return;
 		}
 		ClientPlugin.LOGGER.info("Starting scenario: " + scenario.getQueryScenarioIdentifier());
 		
-		TransactionAPI tc = getTransactionContainer(CONFIG.getProperties());
+		TransactionAPI tc = getTransactionContainer(config.getProperties());
 
 		TestCaseLifeCycle testCase = scenario.getTestCase();
 		
@@ -210,19 +348,72 @@ public class TestClient {
 		} finally {
 			testCase.cleanup();
 			
+			// release the scenario's connection, so that a pooled connection can be
+			// reused by the next scenario
+			if (tc instanceof AbstractQuery) {
+				ConnectionStrategy cs = ((AbstractQuery) tc).getConnectionStrategy();
+				if (cs != null) {
+					cs.shutdown();
+				}
+			}
+			
 			ClientPlugin.LOGGER.info("Completed scenario: " + scenario.getQueryScenarioIdentifier());
 		}
 	}
 	
+	/**
+	 * @return the last scenario that was run by itself, the scenarios run by
+	 * 			{@link TestProperties#PROP_SCENARIO_WORKERS concurrent workers} aren't kept
+	 */
 	protected QueryScenario getScenario() {
 		return this.scenario;
 	}
 	
+	/**
+	 * @return the scenarios that are run by this shard, in the same order
+	 */
+	private static List<File> getShardScenarios(Shard shard, List<File> scenarios) {
+		Map<String, File> files = new LinkedHashMap<String, File>();
+		for (File f:scenarios) {
+			files.put(FileUtils.getBaseFileNameWithoutExtension(f.getName()), f);
+		}
+		List<File> selected = new ArrayList<File>();
+		for (String name:shard.select(files.keySet(), "")) { //$NON-NLS-1$
+			selected.add(files.get(name));
+		}
+		ClientPlugin.LOGGER.info("Shard " + shard.getIndex() + " of " + shard.getCount() + " runs " + selected.size() //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ " of " + scenarios.size() + " scenarios"); //$NON-NLS-1$ //$NON-NLS-2$
+		return selected;
+	}
+	
+	/**
+	 * Each shard writes its output under its own directory of the output directory, so the
+	 * shards can be run on the same machine and their output merged by the {@link SummaryMerger}.
+	 */
+	private static void setShardOutputDir(Shard shard, ConfigPropertyLoader config) {
+		String outputDir = config.getProperty(TestProperties.PROP_OUTPUT_DIR);
+		if (outputDir == null) {
+			return;
+		}
+		String shardDir = new File(outputDir, shard.getDirectoryName()).getPath();
+		Properties props = config.getProperties();
+		for (String key:props.stringPropertyNames()) {
+			String value = props.getProperty(key);
+			if (!key.startsWith("bqt.") || key.equals(TestProperties.PROP_SHARD_RUNTIMES) || !value.startsWith(outputDir)) { //$NON-NLS-1$
+				continue;
+			}
+			String rest = value.substring(outputDir.length());
+			if (rest.length() == 0 || rest.charAt(0) == '/' || rest.charAt(0) == File.separatorChar) {
+				config.setProperty(key, shardDir + rest);
+			}
+		}
+	}
+	
 	protected TransactionAPI getTransactionContainer(Properties props) {
-		return TransactionFactory.create(CONFIG.getProperties());
+		return TransactionFactory.create(props);
 	}
 	
-	private String init(File scenarioFile) throws Exception {
+	private String init(File scenarioFile, ConfigPropertyLoader config) throws Exception {
 		
 		Properties sc_props = PropertiesUtils.load(scenarioFile.getAbsolutePath());
 		
@@ -253,33 +444,30 @@ public class TestClient {
 			}
 		}
 				
-		CONFIG.setProperties(sc_props);
+		config.setProperties(sc_props);
+		
+		Shard shard = new Shard(config.getProperties());
+		if (shard.isSharded()) {
+			setShardOutputDir(shard, config);
+		}
 		
 		return scenario_name;
 	}
 		
-	private void createSQL(QueryScenario scenario) throws Throwable {
+	private void createSQL(QueryScenario scenario, ConfigPropertyLoader config) throws Throwable {
 		ClientPlugin.LOGGER.info("Start creating sql for scenario: " + scenario.getQueryScenarioIdentifier());
 
-		try {
-			// NOTE: no transaction container is needed for running this type
-			//		of test case, so the testcase is executed directly
-			TestCaseLifeCycle createsqltrans = scenario.getTestCase();
-			
-			Properties props = new Properties();
-			props.setProperty(TransactionFactory.TRANSACTION_TYPE, TransactionFactory.TRANSACTION_TYPES.USEDEFAULT_TRANSACTION);
-			TransactionAPI tc = getTransactionContainer(props);
+		// NOTE: no transaction container is needed for running this type
+		//		of test case, so the testcase is executed directly
+		TestCaseLifeCycle createsqltrans = scenario.getTestCase();
 		
-			createsqltrans.setup(tc);
-			createsqltrans.runTestCase();
-			createsqltrans.cleanup();
-		
-		} finally {
-
-
-			// userTxn.getConnectionStrategy().shutdown();
-			ConfigPropertyLoader.reset();
-		}
+		Properties props = config.getProperties();
+		props.setProperty(TransactionFactory.TRANSACTION_TYPE, TransactionFactory.TRANSACTION_TYPES.USEDEFAULT_TRANSACTION);
+		TransactionAPI tc = getTransactionContainer(props);
+	
+		createsqltrans.setup(tc);
+		createsqltrans.runTestCase();
+		createsqltrans.cleanup();
 		
 		ClientPlugin.LOGGER.info("Completed creating sql: " + scenario.getQueryScenarioIdentifier() );
 	
@@ -80,6 +80,81 @@ public interface TestProperties {
 	 */
 	public static final String PROP_SCENARIO_EXCLUDE = "bqt.scenario.exclude";
 
+	/**
+	 * Number of scenarios that will be run concurrently (default is 1, which runs
+	 * the scenarios one after the other).  Each scenario is run with its own configuration.
+	 */
+	public static final String PROP_SCENARIO_WORKERS = "bqt.scenario.workers";
+
+	/**
+	 * Maximum number of scenarios that can be run concurrently against the same data source
+	 * (default is 0, no limit).  Only used when {@link #PROP_SCENARIO_WORKERS} is greater than 1.
+	 */
+	public static final String PROP_SCENARIO_MAX_PER_DATASOURCE = "bqt.scenario.max.per.datasource";
+
+	/**
+	 * Number of queries in a query set that will be run concurrently (default is 1).  Each worker
+	 * uses its own connection.  Queries that are marked <code>serial</code>, or that aren't a select,
+	 * are run by themselves in the order they are defined.
+	 */
+	public static final String PROP_QUERYSET_WORKERS = "bqt.queryset.workers";
+
+	/**
+	 * The shard run by this client, from 0 to {@link #PROP_SHARD_COUNT} - 1 (default is 0).  Each shard
+	 * runs its part of the scenarios, or of the query sets, so a regression can be split across several clients.
+	 */
+	public static final String PROP_SHARD_INDEX = "bqt.shard.index";
+
+	/**
+	 * The number of shards (default is 1, all the scenarios are run).  When greater than 1, each shard writes
+	 * its output under its own directory of the {@link #PROP_OUTPUT_DIR}, so the shards can be run on the same
+	 * machine, and {@link SummaryMerger} merges the output of the shards.
+	 */
+	public static final String PROP_SHARD_COUNT = "bqt.shard.count";
+
+	/**
+	 * What is split across the shards, one of {@link SHARD_BY} (default is {@link SHARD_BY#SCENARIO}).
+	 */
+	public static final String PROP_SHARD_BY = "bqt.shard.by";
+
+	public interface SHARD_BY {
+		/**
+		 * SCENARIO - each shard runs all the query sets of its scenarios
+		 */
+		static final String SCENARIO = "scenario";
+		/**
+		 * QUERYSET - each shard runs all the scenarios, but only its query sets of each one
+		 */
+		static final String QUERYSET = "queryset";
+	}
+
+	/**
+	 * A properties file with the seconds that each scenario, and each <code>scenario.queryset</code>, took in
+	 * a previous run, such as the one written by the {@link SummaryMerger}.  When set, the shards are balanced
+	 * by these runtimes, otherwise the scenarios or query sets are split by a stable hash of their names.  The
+	 * query sets are balanced across all the scenarios, a query set without a runtime is split by its hash.
+	 */
+	public static final String PROP_SHARD_RUNTIMES = "bqt.shard.runtimes";
+
+	/**
+	 * Number of virtual clients, each with its own connection, that replay the query sets 
+	 * when the result mode is {@link RESULT_MODES#LOAD} (default is 1).
+	 */
+	public static final String PROP_LOAD_CLIENTS = "bqt.load.clients";
+
+	/**
+	 * Number of seconds the {@link RESULT_MODES#LOAD} test runs for (default is 0, run for
+	 * {@link #PROP_LOAD_ITERATIONS} iterations).
+	 */
+	public static final String PROP_LOAD_DURATION = "bqt.load.duration";
+
+	/**
+	 * Number of times each client replays the query sets when the result mode is {@link RESULT_MODES#LOAD}.
+	 * The default is 1, unless {@link #PROP_LOAD_DURATION} is set, in which case the clients run until the time is up.
+	 * With a duration, 0 or less also runs until the time is up, without one it runs 1 iteration.
+	 */
+	public static final String PROP_LOAD_ITERATIONS = "bqt.load.iterations";
+
 	/**
 	 * PROP_TESTRUN_DIR will indicate the root location for everything 
 	 * written out for a give scenario.
@@ -98,6 +173,13 @@ public interface TestProperties {
 	 */
 	public static final String PROP_QUERY_FILES_DIR_LOC = "bqt.queryfiles.loc";
 
+	/**
+	 * {@link #PROP_QUERYSET_CACHE_DIR} indicates where the compiled query files are kept, so
+	 * they are only parsed again when their content changes (default is the <code>queryset_cache</code> 
+	 * directory under the {@link #PROP_OUTPUT_DIR}).
+	 */
+	public static final String PROP_QUERYSET_CACHE_DIR = "bqt.queryset.cache.dir";
+
 	/**
 	 * The {@link #QUERY_SET_NAME} property indicates the name of directory that
 	 * contains the set of queries and expected results that will be used. This
@@ -121,6 +203,125 @@ public interface TestProperties {
 	 */
 	public static final String ALLOWED_DIVERGENCE = "bqt.compare.big.decimal.allowed.divergence";
 	
+	/**
+	 * Number of rows of an unordered result that are sorted in memory, larger results are
+	 * sorted in runs of this many rows that are written to temporary files under the
+	 * {@link #PROP_TESTRUN_DIR} (default is 200000, 0 always sorts in memory).
+	 */
+	public static final String PROP_COMPARE_SORT_MAX_ROWS = "bqt.compare.sort.max.rows";
+	
+	/**
+	 * How the rows of unordered results are matched, one of {@link COMPARE_UNORDERED} (default is
+	 * {@link COMPARE_UNORDERED#SORT}).  Results with more than {@link #PROP_COMPARE_SORT_MAX_ROWS} rows are
+	 * always sorted.
+	 */
+	public static final String PROP_COMPARE_UNORDERED = "bqt.compare.unordered";
+	
+	public interface COMPARE_UNORDERED {
+		/**
+		 * SORT - sort the actual and expected rows on their first 3 columns and compare them row by row
+		 */
+		static final String SORT = "sort";
+		/**
+		 * HASH - count the actual and expected rows by a hash of all their columns, and only compare
+		 * the rows whose counts are different.  Rows that are equal on the first 3 columns can't be
+		 * reported as mismatched because they were sorted in a different order.  Not used when
+		 * {@link TestProperties#ALLOWED_DIVERGENCE} is set.
+		 */
+		static final String HASH = "hash";
+	}
+	
+	/**
+	 * The estimated size in MB of the expected results that are cached for all the scenarios
+	 * (default is 64, 0 doesn't cache them).
+	 */
+	public static final String PROP_EXPECTED_RESULTS_CACHE_SIZE = "bqt.expectedresults.cache.size";
+	
+	/**
+	 * The number of query tests after the running one whose expected results are read on a background
+	 * thread (default is 4, 0 doesn't read ahead).  Only used when comparing the query tests one at a time, the
+	 * rows that are read ahead are kept in the expected results cache, so they are limited by {@link #PROP_EXPECTED_RESULTS_CACHE_SIZE}.
+	 */
+	public static final String PROP_PREFETCH_DEPTH = "bqt.prefetch.depth";
+
+	/**
+	 * The number of threads that write the error files and the generated expected results
+	 * (default is 2, 0 writes them on the thread that runs the query tests).
+	 */
+	public static final String PROP_OUTPUT_THREADS = "bqt.output.threads";
+
+	/**
+	 * The number of files that can wait to be written by the {@link #PROP_OUTPUT_THREADS output threads}
+	 * before the query tests wait for them (default is 32).
+	 */
+	public static final String PROP_OUTPUT_QUEUE_SIZE = "bqt.output.queue.size";
+
+	/**
+	 * The most rows of a result that are kept in memory once they are read, to be compared and written by the
+	 * {@link #PROP_OUTPUT_THREADS output threads} (default is 10000, 0 keeps all of them).  The rest of the rows
+	 * are written to a file under the {@link #PROP_TESTRUN_DIR}, so the results are only read once.
+	 */
+	public static final String PROP_OUTPUT_CAPTURE_ROWS = "bqt.output.capture.rows";
+
+	/**
+	 * The type of the result sets: <code>forward</code>, <code>scroll</code> or <code>scroll_sensitive</code>.
+	 * The default is forward, the rows of the results are only read once.
+	 * A query can set its own with the <code>resultSetType</code> attribute.
+	 */
+	public static final String PROP_RESULTSET_TYPE = "bqt.resultset.type";
+
+	/**
+	 * The fetch size of the statements, <code>auto</code> (the default) tunes it from the width
+	 * of the columns of each result.  A query can set its own with the <code>fetchSize</code> attribute.
+	 */
+	public static final String PROP_FETCH_SIZE = "bqt.fetch.size";
+
+	/**
+	 * The most rows of a result (default is no limit).  A query can set its own with the <code>maxRows</code> attribute.
+	 */
+	public static final String PROP_MAX_ROWS = "bqt.max.rows";
+
+	/**
+	 * The query timeout in seconds (default is no timeout).  A query can set its own with the <code>timeout</code> attribute.
+	 */
+	public static final String PROP_QUERY_TIMEOUT = "bqt.query.timeout";
+
+	/**
+	 * The most seconds the tests of a query set can run (default is no limit).  The running test is
+	 * cancelled when the time is up, and the rest of the query set's tests time out without being run.
+	 * A test is also cancelled when it runs longer than the {@link #PROP_QUERY_TIMEOUT query timeout}
+	 * of each execution of its queries.  The tests that were cancelled are listed apart in the summary.
+	 */
+	public static final String PROP_QUERYSET_TIMEOUT = "bqt.queryset.timeout";
+
+	/**
+	 * The most statements sent in one batch (default is 0, each statement is sent on its own).  When the results
+	 * aren't compared, consecutive tests that are each a single insert, update or delete without parameters, whose
+	 * update count is checked, are sent in batches when the tests of the query set are run one at a time.  Each
+	 * test's update count is checked against its own statement.  A run of such queries within a test is also sent
+	 * in batches.  The statements of a batch have the same statement options.
+	 */
+	public static final String PROP_BATCH_SIZE = "bqt.batch.size";
+
+	/**
+	 * Write the result of each completed test to the results journal under the testrun directory (default is true),
+	 * so a run that dies part way through can be resumed with {@link #PROP_RESUME}.
+	 */
+	public static final String PROP_JOURNAL = "bqt.journal";
+
+	/**
+	 * The most results written to the journal before it is synced to the disk (default is 100), and the most
+	 * mils between a write and the next sync (default is 1000).  These are the most results run again after a crash.
+	 */
+	public static final String PROP_JOURNAL_SYNC_RESULTS = "bqt.journal.sync.results";
+	public static final String PROP_JOURNAL_SYNC_INTERVAL = "bqt.journal.sync.interval";
+
+	/**
+	 * Resume a run that didn't complete (default is false).  The results in the journal of each scenario are
+	 * added to the summary without running their tests again, and the scenarios that completed are skipped.
+	 */
+	public static final String PROP_RESUME = "bqt.resume";
+
 	/**
 	 * Estimated time for one query.
 	 */
@@ -161,6 +362,13 @@ public interface TestProperties {
 		 */
 		static final String SQL = "SQL";
 		
+		/**
+		 * LOAD - will run the query sets using {@link TestProperties#PROP_LOAD_CLIENTS} virtual clients,
+		 * each with its own connection, and report the throughput, error rate and latency
+		 * percentiles of each query.  The results are not compared.
+		 */
+		static final String LOAD = "LOAD";
+		
 
 	}
 	
@@ -193,6 +401,12 @@ public interface TestProperties {
 	 */
 	public static final String PROP_GENERATE_DIR = "bqt.generate.dir"; //$NON-NLS-1$
 
+	/**
+	 * The {@link #PROP_GENERATE_COMPACT} property, when true, writes the newly generated
+	 * results files without indenting or line breaks (default is false).
+	 */
+	public static final String PROP_GENERATE_COMPACT = "bqt.generate.compact"; //$NON-NLS-1$
+
 	/**
 	 * The {@link #PROP_SQL_DIR} property indicates where newly generated
 	 * test query files will be written to. The newly created sql files should be
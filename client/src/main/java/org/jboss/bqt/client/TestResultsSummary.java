@@ -23,14 +23,17 @@
 package org.jboss.bqt.client;
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -45,13 +48,21 @@ import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.results.ExpectedResultsCache;
 import org.jboss.bqt.framework.TestResult;
+import org.jboss.bqt.framework.util.LatencyHistogram;
 
 public class TestResultsSummary {
 
-	private static final String OVERALL_SUMMARY_FILE = "Summary_totals.txt";
-	private static final String OVERALL_SUMMARY_ERROR_FILE = "Summary_errors.txt";
-	private static final String CONNECTION_EXCEPTION_SUMMARY_ERROR_FILE = "Summary_connection_exception_errors.txt";
+	static final String OVERALL_SUMMARY_FILE = "Summary_totals.txt";
+	static final String OVERALL_SUMMARY_ERROR_FILE = "Summary_errors.txt";
+	static final String CONNECTION_EXCEPTION_SUMMARY_ERROR_FILE = "Summary_connection_exception_errors.txt";
+	
+	/**
+	 * The overall summary files are shared by all the scenarios, which can be running
+	 * concurrently, so the appending to those files is done while holding this lock.
+	 */
+	private static final Object OVERALL_SUMMARY_LOCK = new Object();
 	private static final SimpleDateFormat FILE_NAME_DATE_FORMATER = new SimpleDateFormat(
 			"yyyyMMdd_HHmmss"); //$NON-NLS-1$
 
@@ -63,7 +74,11 @@ public class TestResultsSummary {
 	private int total_fail = 0;
 	private int total_querysets = 0;
 	private long total_seconds = 0;
+	private long expected_results_hits = 0;
+	private long expected_results_misses = 0;
+	private int reconnects = 0;
 	private List<String> failed_queries = new ArrayList<String>();
+	private List<String> timed_out_queries = new ArrayList<String>();
 	private List<String> query_sets = new ArrayList<String>(10);
 	private QueryScenario scenario = null;
 
@@ -76,6 +91,7 @@ public class TestResultsSummary {
 
 	public void cleanup() {
 		failed_queries.clear();
+		timed_out_queries.clear();
 		query_sets.clear();
 		TestResults.clear();
 		scenario=null;
@@ -101,6 +117,26 @@ public class TestResultsSummary {
 
 	}
 
+	/**
+	 * Count a lookup of expected results in the {@link ExpectedResultsCache}.
+	 * @param cached true when the results were found in the cache
+	 */
+	public synchronized void addExpectedResultsLookup(boolean cached) {
+		if (cached) {
+			expected_results_hits++;
+		} else {
+			expected_results_misses++;
+		}
+	}
+
+	/**
+	 * Count the times the connections of the scenario were reconnected after a connection error.
+	 * @param count
+	 */
+	public synchronized void addReconnects(int count) {
+		reconnects += count;
+	}
+
 	public Collection<TestResult> getTests(String querySetID) {
 		return this.TestResults.get(querySetID);
 	}
@@ -204,7 +240,7 @@ public class TestResultsSummary {
 		return out;
 	}
 
-	private static void printOverallSummaryHeadings(Writer overallsummary) {
+	static void printOverallSummaryHeadings(Writer overallsummary) {
 
 		try {
 			overallsummary.write("================== \n"); //$NON-NLS-1$
@@ -246,7 +282,7 @@ public class TestResultsSummary {
 		return out;
 	}
 
-	private static void printOverallSummaryErrorHeadings(Writer overallsummary) {
+	static void printOverallSummaryErrorHeadings(Writer overallsummary) {
 
 		try {
 			overallsummary.write("================== \n"); //$NON-NLS-1$
@@ -285,6 +321,18 @@ public class TestResultsSummary {
 				.println("Of Pass, Number Expected Failures: " + passFailGenMap.get(MAP_EXP_FAIL)); //$NON-NLS-1$ //$NON-NLS-2$
 		outputStream
 				.println("Number Failed    : " + passFailGenMap.get(MAP_FAIL)); //$NON-NLS-1$ //$NON-NLS-2$
+		outputStream
+				.println("Of Failed, Number Timed Out: " + passFailGenMap.get(MAP_TIMEOUT)); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// the latencies of all the executions in the query set
+		LatencyHistogram querySetLatencies = new LatencyHistogram();
+		for (TestResult stat : results) {
+			querySetLatencies.add(stat.getLatencies());
+		}
+		outputStream.println("Executions       : " + querySetLatencies.getCount()); //$NON-NLS-1$
+		outputStream.println("Latency (mils)   : min/mean/p50/p95/p99/max " + formatLatencies(querySetLatencies, " / ")); //$NON-NLS-1$
+		outputStream.println("=================="); //$NON-NLS-1$
+		outputStream.println("QueryID,Status,Begin,End,Time(mils),Executions," + LATENCY_HEADINGS.replace('\t', ',') + ",Failure"); //$NON-NLS-1$
 
 		Iterator<TestResult> resultItr = results.iterator();
 		while (resultItr.hasNext()) {
@@ -298,6 +346,7 @@ public class TestResultsSummary {
 	private static final String MAP_PASS = "pass";
 	private static final String MAP_FAIL = "fail";
 	private static final String MAP_EXP_FAIL = "expfail";
+	private static final String MAP_TIMEOUT = "timeout";
 	
 
 	private static Map<String, String> getPassFailGen(Collection<TestResult> results) {
@@ -307,6 +356,7 @@ public class TestResultsSummary {
 		int fail = 0;
 //		int gen = 0;
 		int expected_fail = 0;
+		int timeout = 0;
 
 		for (Iterator<TestResult> resultsItr = results.iterator(); resultsItr.hasNext();) {
 			TestResult stat = resultsItr.next();
@@ -315,6 +365,10 @@ public class TestResultsSummary {
 			case TestResult.RESULT_STATE.TEST_EXCEPTION:
 				++fail;
 				break;
+			case TestResult.RESULT_STATE.TEST_TIMEOUT:
+				++fail;
+				++timeout;
+				break;
 			case TestResult.RESULT_STATE.TEST_SUCCESS:
 				++pass;
 				break;
@@ -328,6 +382,7 @@ public class TestResultsSummary {
 		passFailGenMap.put(MAP_PASS, Integer.toString(pass)); //$NON-NLS-1$
 		passFailGenMap.put(MAP_FAIL, Integer.toString(fail)); //$NON-NLS-1$
 		passFailGenMap.put(MAP_EXP_FAIL, Integer.toString(expected_fail)); //$NON-NLS-1$
+		passFailGenMap.put(MAP_TIMEOUT, Integer.toString(timeout)); //$NON-NLS-1$
 		//       passFailGenMap.put("gen", Integer.toString(gen)); //$NON-NLS-1$
 		return passFailGenMap;
 	}
@@ -368,6 +423,12 @@ public class TestResultsSummary {
 
 				this.failed_queries.add(stat.getQuerySetID() + "." + stat.getQueryID() + "~" + msg);
 				break;
+			case TestResult.RESULT_STATE.TEST_TIMEOUT:
+				++fail;
+				// listed apart from the other failures
+				this.timed_out_queries.add(stat.getQuerySetID() + "." + stat.getQueryID() + "~" 
+						+ StringUtils.remove(StringUtils.remove(stat.getFailureMessage(), '\r'), '\n'));
+				break;
 			case TestResult.RESULT_STATE.TEST_SUCCESS:
 				++pass;
 				++succeed;
@@ -521,6 +582,109 @@ public class TestResultsSummary {
 		}
 	}
 
+	/**
+	 * Print the results of a {@link TestProperties.RESULT_MODES#LOAD load} test: the throughput and
+	 * error rate for the scenario, and the response time percentiles for each query.  The
+	 * scenario totals are also added to the overall summary.
+	 * @param stats the merged statistics of all the clients
+	 * @param testStartTS
+	 * @param endTS
+	 * @param numberOfClients
+	 * @throws Exception
+	 */
+	public void printLoadResults(LoadStatistics stats, long testStartTS, long endTS, int numberOfClients) throws Exception {
+		String scenario_name = scenario.getQueryScenarioIdentifier();
+		String querysetname = scenario.getQuerySetName();
+		String outputDir = scenario.getTestRunDir();
+
+		PrintStream outputStream = getSummaryStream(outputDir, generateFileName(querysetname, scenario.getResultsMode(),
+				System.currentTimeMillis()));
+		PrintStream overwriteStream = null;
+		try {
+			overwriteStream = getSummaryStream(outputDir, querysetname + "_" + scenario.getResultsMode(), true); //$NON-NLS-1$
+			printLoadTests(outputStream, stats, new Date(testStartTS), new Date(endTS), numberOfClients);
+			printLoadTests(overwriteStream, stats, new Date(testStartTS), new Date(endTS), numberOfClients);
+		} finally {
+			outputStream.close();
+			if (overwriteStream != null) {
+				overwriteStream.close();
+			}
+		}
+
+		long fail = stats.getErrors();
+		long total = stats.getExecutions();
+		if (expected_results_hits + expected_results_misses > 0) {
+			ExpectedResultsCache cache = ExpectedResultsCache.getInstance(scenario.getProperties());
+			outputStream.println("Expected results cache: " + expected_results_hits + " hits, " //$NON-NLS-1$ //$NON-NLS-2$
+					+ expected_results_misses + " misses (all scenarios: " + cache.getEntryCount() + " entries, " //$NON-NLS-1$ //$NON-NLS-2$
+					+ (cache.getSize() / 1024) + " KB, " + cache.getEvictions() + " evictions)"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		String totals = pad(scenario_name, 42, ' ') + " \t"
+				+ (total - fail) + "\t" + fail + "\t" + total + "\t" + 0
+				+ "\n";
+
+		StringBuffer errors = null;
+		for (String queryID : stats.getQueryIDs()) {
+			if (stats.getFirstError(queryID) != null) {
+				if (errors == null) {
+					errors = new StringBuffer();
+					errors.append("\n" + scenario_name + "\n");
+				}
+				errors.append("\t\t" + queryID + " (" + stats.getErrors(queryID) + " errors): " + stats.getFirstError(queryID) + "\n");
+			}
+		}
+
+		printOverallTotals(scenario.getOutputDir(), totals, errors);
+	}
+
+	private void printLoadTests(PrintStream outputStream, LoadStatistics stats,
+			Date testStartTS, Date endTS, int numberOfClients) {
+		long elapsed = endTS.getTime() - testStartTS.getTime();
+
+		outputStream.println("Load TestResult Results [" + this.scenario.getResultsMode() + "]"); //$NON-NLS-1$
+		outputStream.println("=================="); //$NON-NLS-1$
+		outputStream.println("Start        Time: " + testStartTS); //$NON-NLS-1$
+		outputStream.println("End          Time: " + endTS); //$NON-NLS-1$
+		outputStream.println("Elapsed      Time: " + (elapsed / 1000) + " seconds"); //$NON-NLS-1$ //$NON-NLS-2$
+		outputStream.println("Number of Clients: " + numberOfClients); //$NON-NLS-1$
+		outputStream.println("Number of Queries: " + stats.getExecutions()); //$NON-NLS-1$
+		outputStream.println("Number Failed    : " + stats.getErrors()); //$NON-NLS-1$
+		outputStream.println("Error Rate       : " + formatDecimal(stats.getExecutions() == 0 ? 0 : stats.getErrors() * 100.0 / stats.getExecutions()) + " %"); //$NON-NLS-1$
+		outputStream.println("Queries/sec      : " + formatDecimal(elapsed == 0 ? 0 : stats.getExecutions() * 1000.0 / elapsed)); //$NON-NLS-1$
+		outputStream.println("=================="); //$NON-NLS-1$
+		outputStream.println(pad("QueryID", 42, ' ') + "\tCount\tErrors\t" + LATENCY_HEADINGS); //$NON-NLS-1$
+
+		for (String queryID : stats.getQueryIDs()) {
+			outputStream.println(pad(queryID, 42, ' ')
+					+ "\t" + stats.getExecutions(queryID)
+					+ "\t" + stats.getErrors(queryID)
+					+ "\t" + formatLatencies(stats.getLatencies(queryID), "\t"));
+		}
+	}
+
+	private static final String LATENCY_HEADINGS = "Min(mils)\tMean(mils)\tp50(mils)\tp95(mils)\tp99(mils)\tMax(mils)"; //$NON-NLS-1$
+
+	/**
+	 * @return the min, mean, p50, p95, p99 and max latency, in milliseconds
+	 */
+	private static String formatLatencies(LatencyHistogram latencies, String separator) {
+		return toMillis(latencies.getMin())
+				+ separator + formatDecimal(latencies.getMean() / 1000000.0)
+				+ separator + toMillis(latencies.getValueAtPercentile(50))
+				+ separator + toMillis(latencies.getValueAtPercentile(95))
+				+ separator + toMillis(latencies.getValueAtPercentile(99))
+				+ separator + toMillis(latencies.getMax());
+	}
+
+	private static String toMillis(long nanos) {
+		return formatDecimal(nanos / 1000000.0);
+	}
+
+	private static String formatDecimal(double value) {
+		return String.format("%.3f", value); //$NON-NLS-1$
+	}
+
 	/**
 	 * This method prints an exception to the {@code Summary_connection_exception_errors} file.
 	 * 
@@ -529,31 +693,37 @@ public class TestResultsSummary {
 	 */
 	public void printServerConnectionException(Exception ex) throws IOException{
 		String scenarioName = scenario.getQueryScenarioIdentifier();
-		Writer outputWriter = null;
-		try {
-			outputWriter = getConnectionExceptionSummaryStream(scenario.getOutputDir()); //$NON-NLS-1$
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw e;
-		}
 		
-		try{
-			outputWriter.write(pad(scenarioName, 42, ' '));
-			outputWriter.write("\t");
-			ex.printStackTrace(new PrintWriter(outputWriter));
-			outputWriter.write(System.getProperty("line.separator"));
-			outputWriter.write("-------------------------------------");
-			outputWriter.write(System.getProperty("line.separator"));
+		StringWriter entry = new StringWriter();
+		entry.write(pad(scenarioName, 42, ' '));
+		entry.write("\t");
+		ex.printStackTrace(new PrintWriter(entry));
+		entry.write(System.getProperty("line.separator"));
+		entry.write("-------------------------------------");
+		entry.write(System.getProperty("line.separator"));
+		
+		synchronized (OVERALL_SUMMARY_LOCK) {
+			Writer outputWriter = null;
+			try {
+				outputWriter = getConnectionExceptionSummaryStream(scenario.getOutputDir()); //$NON-NLS-1$
+			} catch (IOException e) {
+				e.printStackTrace();
+				throw e;
+			}
 			
-			outputWriter.flush();
-		} catch (IOException ioex){
-			ioex.printStackTrace();
 			try{
-				outputWriter.close();
-			} catch (IOException e){
-				// ignore
+				outputWriter.write(entry.toString());
+				outputWriter.flush();
+			} catch (IOException ioex){
+				ioex.printStackTrace();
+				throw ioex;
+			} finally {
+				try{
+					outputWriter.close();
+				} catch (IOException e){
+					// ignore
+				}
 			}
-			throw ioex;
 		}
 	}
 	
@@ -592,7 +762,7 @@ public class TestResultsSummary {
 	 * 
 	 * @param overallsummary
 	 */
-	private static void printOverallConnectionExceptionSummaryErrosHeadings(Writer overallsummary) {
+	static void printOverallConnectionExceptionSummaryErrosHeadings(Writer overallsummary) {
 
 		try {
 			overallsummary.write("================== \n"); //$NON-NLS-1$
@@ -626,14 +796,9 @@ public class TestResultsSummary {
 		String summarydir = scenario.getOutputDir();
 
 		PrintStream outputStream = null;
-		Writer overallsummary = null;
-		Writer overallsummaryerrors = null;
 		try {
 			outputStream = getSummaryStream(summarydir,
 					"Summary_" + querysetname + "_" + scenario_name, true); //$NON-NLS-1$
-
-			overallsummary = getOverallSummaryStream(summarydir);
-			overallsummaryerrors = getOverallSummaryErrorsStream(summarydir);
 		} catch (IOException e) {
 			e.printStackTrace();
 			//              logError("Unable to get output stream for file: " + outputFileName); //$NON-NLS-1$
@@ -666,22 +831,12 @@ public class TestResultsSummary {
 		outputStream.println("\t" + pad("Totals", 42, ' ')
 				+ "\t" + total_pass + "\t"
 				+ total_fail + "\t" + total_queries + "\t" +  (total_seconds / 1000) );
+		outputStream.println("Reconnects after connection errors: " + reconnects); //$NON-NLS-1$
 
-		try {
-			overallsummary.write(pad(scenario_name, 42, ' ') + " \t"
-					+ total_pass + "\t" + total_fail + "\t" + total_queries + "\t" + (expectedQueryCount - total_queries)  
-					+ "\n");
-			overallsummary.flush();
-
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
-		} finally { // always close the file
-			try {
-				overallsummary.close();
-			} catch (IOException ioe2) {
-				// just ignore it
-			}
-		} //
+		String totals = pad(scenario_name, 42, ' ') + " \t"
+				+ total_pass + "\t" + total_fail + "\t" + total_queries + "\t" + (expectedQueryCount - total_queries)  
+				+ "\n";
+		StringBuffer errors = null;
 
 		// outputStream
 		//			.println("Number of Queries: " + total_queries); //$NON-NLS-1$ //$NON-NLS-2$
@@ -697,18 +852,78 @@ public class TestResultsSummary {
 			outputStream.println("\n\n=================="); //$NON-NLS-1$
 			outputStream.println("Failed Queries"); //$NON-NLS-1$	
 
-			overallsummaryerrors.write("\n" + scenario_name + "\n");
+			errors = new StringBuffer();
+			errors.append("\n" + scenario_name + "\n");
 
 			for (Iterator<String> it = this.failed_queries.iterator(); it
 					.hasNext();) {
 				String error = it.next();
 				outputStream.println("\t - " + error); //$NON-NLS-1$ //$NON-NLS-2$
 				// write all errors to the summary file
-				overallsummaryerrors.write("\t\t" + error + "\n");
+				errors.append("\t\t" + error + "\n");
+
+			}
+
+			outputStream.println("=================="); //$NON-NLS-1$
+
+		}
 
+		if (!this.timed_out_queries.isEmpty()) {
+			Collections.sort(this.timed_out_queries);
+
+			outputStream.println("\n\n=================="); //$NON-NLS-1$
+			outputStream.println("Timed Out Queries"); //$NON-NLS-1$	
+
+			if (errors == null) {
+				errors = new StringBuffer();
+				errors.append("\n" + scenario_name + "\n");
+			}
+
+			for (Iterator<String> it = this.timed_out_queries.iterator(); it.hasNext();) {
+				String timedOut = it.next();
+				outputStream.println("\t - " + timedOut); //$NON-NLS-1$
+				errors.append("\t\t" + TestResult.RESULT_STATE_STRING.TIMEOUT + ": " + timedOut + "\n");
 			}
 
+			outputStream.println("=================="); //$NON-NLS-1$
+		}
+
+		outputStream.close();
+		
+		if (this.scenario.isResume()) {
+			removeOverallTotals(summarydir, scenario_name);
+		}
+		printOverallTotals(summarydir, totals, errors);
+
+	}
+	
+	/**
+	 * Appends the scenario totals (and errors, if any) to the overall summary files.  Each scenario's
+	 * entry is written as a whole, so the entries from concurrently running scenarios don't 
+	 * get intermixed.
+	 */
+	private static void printOverallTotals(String summarydir, String totals, StringBuffer errors) throws IOException {
+		synchronized (OVERALL_SUMMARY_LOCK) {
+			Writer overallsummary = getOverallSummaryStream(summarydir);
+			try {
+				overallsummary.write(totals);
+				overallsummary.flush();
+
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			} finally { // always close the file
+				try {
+					overallsummary.close();
+				} catch (IOException ioe2) {
+					// just ignore it
+				}
+			} //
+			
+			Writer overallsummaryerrors = getOverallSummaryErrorsStream(summarydir);
 			try {
+				if (errors != null) {
+					overallsummaryerrors.write(errors.toString());
+				}
 				overallsummaryerrors.flush();
 
 			} catch (IOException ioe) {
@@ -720,16 +935,72 @@ public class TestResultsSummary {
 					// just ignore it
 				}
 			} //
+		}
+	}
 
-			outputStream.println("=================="); //$NON-NLS-1$
+	/**
+	 * A resumed scenario replaces the totals and errors that the run which didn't complete
+	 * may have written to the overall summary files.
+	 */
+	private static void removeOverallTotals(String summarydir, String scenario_name) throws IOException {
+		synchronized (OVERALL_SUMMARY_LOCK) {
+			File summaryFile = new File(summarydir, OVERALL_SUMMARY_FILE);
+			if (summaryFile.exists()) {
+				StringBuilder kept = new StringBuilder();
+				for (String line : readLines(summaryFile)) {
+					String[] parts = line.split("\t"); //$NON-NLS-1$
+					if (parts.length != 5 || !parts[0].trim().equals(scenario_name)) {
+						kept.append(line).append('\n');
+					}
+				}
+				writeFile(summaryFile, kept.toString());
+			}
 
+			File errorsFile = new File(summarydir, OVERALL_SUMMARY_ERROR_FILE);
+			if (errorsFile.exists()) {
+				List<String> lines = readLines(errorsFile);
+				StringBuilder kept = new StringBuilder();
+				for (int i = 0; i < lines.size(); i++) {
+					String line = lines.get(i);
+					if (line.equals(scenario_name) && i > 0 && lines.get(i - 1).length() == 0) {
+						// the errors of the scenario, and the blank line before them
+						kept.setLength(kept.length() - 1);
+						while (i + 1 < lines.size() && lines.get(i + 1).startsWith("\t\t")) { //$NON-NLS-1$
+							i++;
+						}
+						continue;
+					}
+					kept.append(line).append('\n');
+				}
+				writeFile(errorsFile, kept.toString());
+			}
 		}
+	}
 
-		outputStream.close();
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
 
+	private static void writeFile(File file, String content) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
 	}
 
-	private static String pad(String src, int padTo, char padChar) {
+	static String pad(String src, int padTo, char padChar) {
 		int numPad = padTo - src.length();
 		if (numPad > 0) {
 			StringBuffer sb = new StringBuffer();
@@ -746,7 +1017,7 @@ public class TestResultsSummary {
 
 	private static String generateFileName(String configName, String resultmode, long timestamp) {
 		return configName + "_" + resultmode
-				+ "_" + FILE_NAME_DATE_FORMATER.format(new Date(timestamp));
+				+ "_" + getFormattedTimestamp(FILE_NAME_DATE_FORMATER, timestamp);
 		//+ "_Run-" + runNumber; //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
@@ -948,6 +1219,10 @@ public class TestResultsSummary {
 		outputStream.print(","); //$NON-NLS-1$
 		outputStream.print(String.valueOf(stat.getExecutionTime()));
 		outputStream.print(","); //$NON-NLS-1$
+		outputStream.print(String.valueOf(stat.getLatencies().getCount()));
+		outputStream.print(","); //$NON-NLS-1$
+		outputStream.print(formatLatencies(stat.getLatencies(), ",")); //$NON-NLS-1$
+		outputStream.print(","); //$NON-NLS-1$
 
 		outputStream
 				.println((stat.getStatus() != TestResult.RESULT_STATE.TEST_SUCCESS ? stat
@@ -956,7 +1231,10 @@ public class TestResultsSummary {
 
 	private static String getFormattedTimestamp(SimpleDateFormat format,
 			long millis) {
-		return format.format(new Date(millis));
+		// the formatters are shared by the scenarios, and SimpleDateFormat isn't thread safe
+		synchronized (format) {
+			return format.format(new Date(millis));
+		}
 	}
 
 //	private static class ResponseTimes {
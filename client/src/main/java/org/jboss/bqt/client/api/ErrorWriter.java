@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Properties;
 
 import org.jboss.bqt.client.TestProperties;
+import org.jboss.bqt.client.results.CapturedResult;
 import org.jboss.bqt.core.exception.FrameworkException;
 import org.jboss.bqt.core.exception.QueryTestFailedException;
 import org.jboss.bqt.framework.TestCase;
@@ -74,6 +75,7 @@ public abstract class ErrorWriter {
 	 * @param expectedResults , pass in null when generating error on no expected results are available, as 
 	 * 			would be when resultmode = GENERATE 
 	 * @param transaction is the current transaction being processed
+	 * @param actualResults the rows of the <code>ResultSet</code> that were compared, may be null
 	 * @param failures that will be written in the error file
 	 * @return String name for the error file
 	 * @throws QueryTestFailedException could be seen if problems occur accessing resultSet
@@ -81,7 +83,8 @@ public abstract class ErrorWriter {
 	 */
 	
 	public abstract String generateErrorFile(final TestCase testCase, ExpectedResults expectedResults,
-			final TransactionAPI transaction, List<Throwable> failures) throws QueryTestFailedException, FrameworkException;
+			final TransactionAPI transaction, CapturedResult actualResults, List<Throwable> failures)
+			throws QueryTestFailedException, FrameworkException;
 
 	
 	/**
@@ -25,6 +25,7 @@ package org.jboss.bqt.client.api;
 import java.util.Properties;
 
 import org.jboss.bqt.client.TestProperties;
+import org.jboss.bqt.client.results.CapturedResult;
 import org.jboss.bqt.client.util.BQTUtil;
 import org.jboss.bqt.core.exception.FrameworkRuntimeException;
 import org.jboss.bqt.core.exception.QueryTestFailedException;
@@ -107,13 +108,24 @@ public abstract class ExpectedResultsReader {
 	 * the expected results and return the errors.
 	 * @param testCase 
 	 * @param transaction 
+	 * @param actualResults the rows of the <code>ResultSet</code>, captured once for all the readers, may be null
 	 * @param expectedResults 
 	 * @param isOrdered 
 	 * @throws QueryTestFailedException is thrown if actual don't match expected
 	 */
 	
 	public abstract void compareResults(final TestCase testCase,
-			final TransactionAPI transaction, ExpectedResults expectedResults, final boolean isOrdered) throws QueryTestFailedException;
+			final TransactionAPI transaction, CapturedResult actualResults, ExpectedResults expectedResults,
+			final boolean isOrdered) throws QueryTestFailedException;
+
+	/**
+	 * Called on a background thread, before the query is run, so the reader can load the
+	 * expected results ahead of {@link #getExpectedResults(ActualTest)}.  The default does nothing.
+	 * Any exception is ignored, because it will be thrown again when the expected results are needed.
+	 * @param queryTest
+	 */
+	public void prefetch(ActualTest queryTest) {
+	}
 
 	
 
@@ -25,6 +25,7 @@ package org.jboss.bqt.client.api;
 import java.util.Properties;
 
 import org.jboss.bqt.client.TestProperties;
+import org.jboss.bqt.client.results.CapturedResult;
 import org.jboss.bqt.client.util.BQTUtil;
 import org.jboss.bqt.core.exception.FrameworkException;
 import org.jboss.bqt.framework.TestCase;
@@ -86,12 +87,13 @@ public abstract class ExpectedResultsWriter {
 	 * 
 	 * @param testcase
 	 * @param transaction 
+	 * @param actualResults the rows of the <code>ResultSet</code>, captured once for all the writers, may be null
 	 * @return ExpectedResults
 	 * @throws FrameworkException is thrown to stop processing
 	 */
 	
 	public abstract ExpectedResults generateExpectedResultFile(final TestCase testcase,
-			final TransactionAPI transaction) throws FrameworkException;	
+			final TransactionAPI transaction, CapturedResult actualResults) throws FrameworkException;	
 	
 	
 
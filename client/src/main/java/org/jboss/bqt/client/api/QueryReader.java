@@ -23,6 +23,7 @@
 package org.jboss.bqt.client.api;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 
@@ -87,5 +88,30 @@ public abstract class QueryReader  {
 	public abstract List<QueryTest> getQueries(String querySetID)
 			throws QueryTestFailedException;
 
+	/**
+	 * Return an <code>Iterator</code> over the {@link QueryTest}s of the query set, in the
+	 * same order as {@link #getQueries(String)}.  A reader can override this to
+	 * provide the tests while they are read, instead of loading them all first.  
+	 * When the iterator is <code>Closeable</code>, it should be closed when it isn't iterated to the end.
+	 * @param querySetID 
+	 * @return Iterator
+	 * @throws QueryTestFailedException
+	 */
+	public Iterator<QueryTest> getQueryIterator(String querySetID)
+			throws QueryTestFailedException {
+		return getQueries(querySetID).iterator();
+	}
+
+	/**
+	 * Return the number of {@link QueryTest}s in the query set. 
+	 * @param querySetID 
+	 * @return int number of queries
+	 * @throws QueryTestFailedException
+	 */
+	public int getQueryCount(String querySetID)
+			throws QueryTestFailedException {
+		return getQueries(querySetID).size();
+	}
+
 
 }
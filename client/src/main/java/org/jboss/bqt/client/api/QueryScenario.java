@@ -22,28 +22,42 @@
 package org.jboss.bqt.client.api;
 
 import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.jboss.bqt.client.ClientPlugin;
 import org.jboss.bqt.client.FileType;
+import org.jboss.bqt.client.QuerySQL;
 import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.Shard;
 import org.jboss.bqt.client.TestProperties;
 import org.jboss.bqt.client.TestProperties.RESULT_MODES;
 import org.jboss.bqt.client.TestResultsSummary;
+import org.jboss.bqt.client.results.CapturedResult;
 import org.jboss.bqt.client.resultmode.Compare;
 import org.jboss.bqt.client.resultmode.CreateSQLQuery;
 import org.jboss.bqt.client.resultmode.GenerateExpectedResults;
+import org.jboss.bqt.client.resultmode.Load;
 import org.jboss.bqt.client.resultmode.None;
 import org.jboss.bqt.client.testcase.ProcessResults;
+import org.jboss.bqt.client.testcase.ResultsJournal;
+import org.jboss.bqt.client.util.AsyncOutputWriter;
 import org.jboss.bqt.client.util.BQTUtil;
 import org.jboss.bqt.core.exception.FrameworkException;
 import org.jboss.bqt.core.exception.FrameworkRuntimeException;
 import org.jboss.bqt.core.exception.QueryTestFailedException;
 import org.jboss.bqt.core.util.ArgCheck;
+import org.jboss.bqt.core.util.PropertiesUtils;
 import org.jboss.bqt.core.util.ReflectionHelper;
+import org.jboss.bqt.framework.AbstractQuery;
+import org.jboss.bqt.framework.StatementOptions;
 import org.jboss.bqt.framework.TestCase;
 import org.jboss.bqt.framework.TestCaseLifeCycle;
 import org.jboss.bqt.framework.TransactionAPI;
@@ -62,6 +76,10 @@ import org.jboss.bqt.framework.TransactionAPI;
  */
 public abstract class QueryScenario {
 
+	private static final int DEFAULT_OUTPUT_THREADS = 2;
+	private static final int DEFAULT_OUTPUT_QUEUE_SIZE = 32;
+	private static final int DEFAULT_OUTPUT_CAPTURE_ROWS = 10000;
+
 	protected FileType fileType = null;
 	
 	private QueryReader reader = null;
@@ -69,7 +87,10 @@ public abstract class QueryScenario {
 	protected ExpectedResultsReader resultsReader = null;
 	
 	private List<ExpectedResultsWriter> resultsWriters = null;
+	private Map<String, List<ExpectedResultsReader>> resultsReaders = new HashMap<String, List<ExpectedResultsReader>>();
 	private ErrorWriter errorWriter = null;
+	private AsyncOutputWriter outputWriter = null;
+	private StatementOptions statementOptions = null;
 	private TestResultsSummary summary = null;
 
 	private Properties props = null;
@@ -77,6 +98,8 @@ public abstract class QueryScenario {
 	private String querySetName;
 	private String rootOutputDir = null;
 	private String testrunDir = null;
+	private Collection<String> querySetIDs = null;
+	private boolean resume = false;
 		
 	public static final QueryScenario createInstance(String scenarioName, Properties properties) {
 		
@@ -90,6 +113,8 @@ public abstract class QueryScenario {
 			scenario = new GenerateExpectedResults(scenarioName, properties);
 		} else if (resultModeStr.equals(TestProperties.RESULT_MODES.NONE)) {
 			scenario = new None(scenarioName, properties);
+		} else if (resultModeStr.equals(TestProperties.RESULT_MODES.LOAD)) {
+			scenario = new Load(scenarioName, properties);
 		} else {
 			// default is SQL
 			scenario = new CreateSQLQuery(scenarioName, properties);
@@ -130,6 +155,10 @@ public abstract class QueryScenario {
 			BQTUtil.throwInvalidProperty(TestProperties.PROP_TESTRUN_DIR);
 		}
 		
+		// only resumed when the scenario has a journal to replay
+		this.resume = PropertiesUtils.getBooleanProperty(props, TestProperties.PROP_RESUME, false)
+				&& ResultsJournal.getFile(this.testrunDir).exists();
+
 		fileType = BQTUtil.createFileType(queryProperties);
 		ArgCheck.isNotNull(fileType);
 		
@@ -154,6 +183,14 @@ public abstract class QueryScenario {
 		return  new ProcessResults(this);
 	}
 
+	/**
+	 * @return true when the scenario resumes a run that didn't complete, so the output
+	 * of that run is kept
+	 */
+	public boolean isResume() {
+		return this.resume;
+	}
+
 	public String getOutputDir() {
 		return this.rootOutputDir;
 	}
@@ -182,6 +219,10 @@ public abstract class QueryScenario {
 		return false;
 	}
 	
+	public boolean isLoad() {
+		return false;
+	}
+	
 
 	public boolean isExpectedResultsNeeded() {
 		return (isCompare());
@@ -234,16 +275,59 @@ public abstract class QueryScenario {
 		}
 	}
 
+	/**
+	 * Return an <code>Iterator</code> over the queries of the query set.
+	 * 
+	 * @param querySetID
+	 *            identifies a set of queries
+	 * @return Iterator<QueryTest>
+	 * @see QueryReader#getQueryIterator(String)
+	 */
+	public Iterator<QueryTest> getQueryIterator(String querySetID) {
+		try {
+			return getQueryReader().getQueryIterator(querySetID);
+		} catch (QueryTestFailedException e) {
+			throw new FrameworkRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Return the number of queries in the query set.
+	 * 
+	 * @param querySetID
+	 *            identifies a set of queries
+	 * @return int
+	 * @see QueryReader#getQueryCount(String)
+	 */
+	public int getQueryCount(String querySetID) {
+		try {
+			return getQueryReader().getQueryCount(querySetID);
+		} catch (QueryTestFailedException e) {
+			throw new FrameworkRuntimeException(e);
+		}
+	}
+
 	/**
 	 * Return a <code>Collection</code> of <code>querySetID</code>s that the
 	 * {@link QueryReader} will be providing. The <code>querySetID</code> can be
 	 * used to obtain it associated set of queries by call
-	 * {@link #getQueries(String)}
+	 * {@link #getQueries(String)}.  When the query sets are sharded, only the
+	 * query sets of this {@link Shard} are provided.
 	 * 
 	 * @return Collection of querySetIDs
 	 */
 	public Collection<String> getQuerySetIDs() {
-		return getQueryReader().getQuerySetIDs();
+		if (this.querySetIDs == null) {
+			Shard shard = new Shard(props);
+			if (shard.isByQuerySet()) {
+				this.querySetIDs = shard.select(getQueryReader().getQuerySetIDs(), this.scenarioName + "."); //$NON-NLS-1$
+				ClientPlugin.LOGGER.info("Shard " + shard.getIndex() + " of " + shard.getCount() + " runs " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+						+ this.querySetIDs.size() + " query sets of scenario " + this.scenarioName); //$NON-NLS-1$
+			} else {
+				this.querySetIDs = getQueryReader().getQuerySetIDs();
+			}
+		}
+		return this.querySetIDs;
 	}
 
 	/**
@@ -264,8 +348,30 @@ public abstract class QueryScenario {
 	 */
 	public abstract void handleTestResult(TestCase testcase, TransactionAPI transaction) throws QueryTestFailedException, FrameworkException;
 
+	/**
+	 * Return the {@link ExpectedResultsReader}s of the query set of the test case, they are
+	 * created once for each query set.
+	 * @param testCase
+	 * @return List of ExpectedResultsReader
+	 */
 	public List<ExpectedResultsReader> getExpectedResultsReaders(TestCase testCase) {
-		return fileType.getExpectedResultsReaders(this, getProperties(), ( (QueryTest)testCase.getActualTest()).getQuerySetID());
+		return getExpectedResultsReaders(((QueryTest) testCase.getActualTest()).getQuerySetID());
+	}
+
+	/**
+	 * Return the readers of the expected results of a query set, which are created
+	 * the first time and shared by all its tests.
+	 * 
+	 * @param querySetID
+	 * @return List of ExpectedResultsReader
+	 */
+	public synchronized List<ExpectedResultsReader> getExpectedResultsReaders(String querySetID) {
+		List<ExpectedResultsReader> readers = resultsReaders.get(querySetID);
+		if (readers == null) {
+			readers = fileType.getExpectedResultsReaders(this, getProperties(), querySetID);
+			resultsReaders.put(querySetID, readers);
+		}
+		return readers;
 	}
 
 	
@@ -303,6 +409,96 @@ public abstract class QueryScenario {
 		}
 		return this.errorWriter;
 	}
+
+	/**
+	 * Return the {@link AsyncOutputWriter} that writes the error files and the
+	 * generated expected results of this scenario.
+	 * 
+	 * @return AsyncOutputWriter
+	 */
+	public synchronized AsyncOutputWriter getOutputWriter() {
+		if (this.outputWriter == null) {
+			this.outputWriter = new AsyncOutputWriter("bqt-output-" + getQueryScenarioIdentifier(), //$NON-NLS-1$
+					PropertiesUtils.getIntProperty(props, TestProperties.PROP_OUTPUT_THREADS, DEFAULT_OUTPUT_THREADS),
+					PropertiesUtils.getIntProperty(props, TestProperties.PROP_OUTPUT_QUEUE_SIZE, DEFAULT_OUTPUT_QUEUE_SIZE));
+		}
+		return this.outputWriter;
+	}
+
+	/**
+	 * @return the most rows of a {@link CapturedResult} that are kept in memory, the rest are
+	 * written to a file under the {@link #getTestRunDir() testrun directory}
+	 */
+	public int getOutputCaptureRows() {
+		return PropertiesUtils.getIntProperty(props, TestProperties.PROP_OUTPUT_CAPTURE_ROWS, DEFAULT_OUTPUT_CAPTURE_ROWS);
+	}
+
+	/**
+	 * Read the rows of the results of the test, once, so they can be compared, generated and
+	 * written to the error file without reading the <code>ResultSet</code> again.
+	 * @param testCase
+	 * @param transaction
+	 * @return the captured results, or null when the query didn't return any.  They must be
+	 * {@link CapturedResult#release() released} by the caller.
+	 * @throws QueryTestFailedException if the results can't be read
+	 */
+	public CapturedResult captureResult(TestCase testCase, TransactionAPI transaction) throws QueryTestFailedException {
+		ResultSet resultSet = (transaction == null ? null : ((AbstractQuery) transaction).getResultSet());
+		if (resultSet == null) {
+			return null;
+		}
+		try {
+			return CapturedResult.capture(resultSet, getOutputCaptureRows(), new File(getTestRunDir(), "capture")); //$NON-NLS-1$
+		} catch (SQLException e) {
+			throw new QueryTestFailedException(e,
+					"Can't get results: " + e.getMessage()); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * @param sql
+	 * @return the statement options of the query, merged with the {@link #getStatementOptions() options of the scenario}
+	 */
+	public StatementOptions getStatementOptions(QuerySQL sql) {
+		StatementOptions options = sql.getStatementOptions();
+		return (options == null ? getStatementOptions() : options.merge(getStatementOptions()));
+	}
+
+	/**
+	 * The statement options of the scenario.  The results are read with a forward-only cursor, unless
+	 * the {@link TestProperties#PROP_RESULTSET_TYPE result set type} is set, because their rows are
+	 * {@link #captureResult(TestCase, TransactionAPI) captured} once.
+	 * @return StatementOptions
+	 */
+	public synchronized StatementOptions getStatementOptions() {
+		if (this.statementOptions == null) {
+			StatementOptions options = new StatementOptions();
+			Integer type = StatementOptions.parseResultSetType(props.getProperty(TestProperties.PROP_RESULTSET_TYPE));
+			if (type == null) {
+				type = Integer.valueOf(ResultSet.TYPE_FORWARD_ONLY);
+			}
+			options.setResultSetType(type);
+			String fetchSize = props.getProperty(TestProperties.PROP_FETCH_SIZE);
+			options.setFetchSize(fetchSize == null ? Integer.valueOf(StatementOptions.AUTO_FETCH_SIZE)
+					: StatementOptions.parseFetchSize(fetchSize));
+			options.setMaxRows(StatementOptions.parseInt(TestProperties.PROP_MAX_ROWS,
+					props.getProperty(TestProperties.PROP_MAX_ROWS)));
+			options.setQueryTimeout(StatementOptions.parseInt(TestProperties.PROP_QUERY_TIMEOUT,
+					props.getProperty(TestProperties.PROP_QUERY_TIMEOUT)));
+			this.statementOptions = options;
+		}
+		return this.statementOptions;
+	}
+
+	/**
+	 * Wait for the outputs of the {@link #getOutputWriter() output writer} to be written, and stop its threads.
+	 */
+	public synchronized void closeOutputWriter() {
+		if (this.outputWriter != null) {
+			this.outputWriter.shutdown();
+			this.outputWriter = null;
+		}
+	}
 	
 	/**
 	 * Return the {@link QueryWriter} that is to be used to writer 
@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.binary;
+
+import java.io.File;
+import java.util.List;
+import java.util.Properties;
+
+import org.jboss.bqt.client.ClientPlugin;
+import org.jboss.bqt.client.api.ExpectedResults;
+import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.results.CapturedResult;
+import org.jboss.bqt.client.xml.XMLErrorWriter;
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.exception.QueryTestFailedException;
+import org.jboss.bqt.core.util.FileUtils;
+import org.jboss.bqt.framework.TestCase;
+import org.jboss.bqt.framework.TransactionAPI;
+
+/**
+ * BinaryErrorWriter writes the same error files as the {@link XMLErrorWriter}, so they can be read.
+ * The binary expected results of a failed query are converted to XML in the error directory, and
+ * that copy is used for the expected results of the error file.
+ */
+public class BinaryErrorWriter extends XMLErrorWriter {
+
+	private BinaryResultsConverter converter = new BinaryResultsConverter(false);
+
+	public BinaryErrorWriter(QueryScenario scenario, Properties props) {
+		super(scenario, props);
+	}
+
+	@Override
+	public String generateErrorFile(TestCase testCase, ExpectedResults expectedResults, TransactionAPI transaction,
+			CapturedResult actualResults, List<Throwable> failures) throws QueryTestFailedException, FrameworkException {
+
+		File binaryFile = (expectedResults == null ? null : expectedResults.getExpectedResultsFile());
+		if (binaryFile == null || !binaryFile.exists()) {
+			return super.generateErrorFile(testCase, expectedResults, transaction, actualResults, failures);
+		}
+
+		File xmlFile = new File(getErrorDirectory(),
+				FileUtils.getFilenameWithoutExtension(binaryFile.getName()) + "_expected.xml"); //$NON-NLS-1$
+		try {
+			converter.toXMLFile(binaryFile, xmlFile);
+		} catch (Exception e) {
+			ClientPlugin.LOGGER.warn("Unable to convert expected results " + binaryFile.getAbsolutePath() //$NON-NLS-1$
+					+ " for the error file: " + e.getMessage()); //$NON-NLS-1$
+			return super.generateErrorFile(testCase, expectedResults, transaction, actualResults, failures);
+		}
+
+		expectedResults.setExpectedResultsFile(xmlFile);
+		try {
+			return super.generateErrorFile(testCase, expectedResults, transaction, actualResults, failures);
+		} finally {
+			expectedResults.setExpectedResultsFile(binaryFile);
+		}
+	}
+
+}
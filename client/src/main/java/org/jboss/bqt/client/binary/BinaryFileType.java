@@ -0,0 +1,63 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.binary;
+
+import org.jboss.bqt.client.results.binary.BinaryExpectedResultsReader;
+import org.jboss.bqt.client.results.binary.BinaryExpectedResultsWriter;
+import org.jboss.bqt.client.xml.XMLFileType;
+
+/**
+ * BinaryFileType keeps the expected results in the {@link BinaryFormat binary format},
+ * the query files and the error files are the same as for the {@link XMLFileType}.
+ * <p>
+ * It's used by setting {@link org.jboss.bqt.client.FileType#FILE_TYPE_CLASSNAME} to this class,
+ * an existing expected results directory is converted by {@link BinaryResultsConverter}.
+ * </p>
+ */
+public class BinaryFileType extends XMLFileType {
+
+	/**
+	 * The extension of the binary expected results files.
+	 */
+	public static final String RESULTS_EXTENSION = ".bin"; //$NON-NLS-1$
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see org.jboss.bqt.client.FileType#getErrorWriterClassName()
+	 */
+	@Override
+	public String getErrorWriterClassName() {
+		return BinaryErrorWriter.class.getName();
+	}
+
+	@Override
+	protected String getExpectedResultsReaderClassName() {
+		return BinaryExpectedResultsReader.class.getName();
+	}
+
+	@Override
+	protected String getExpectedResultsWriterClassName() {
+		return BinaryExpectedResultsWriter.class.getName();
+	}
+
+}
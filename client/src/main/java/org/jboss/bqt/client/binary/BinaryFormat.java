@@ -0,0 +1,275 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.binary;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+import org.jboss.bqt.core.util.ObjectConverterUtil;
+
+/**
+ * BinaryFormat has the layout of a binary expected results file, and encodes its values.
+ * <p>
+ * A file starts with a fixed prefix: the magic number, the version, the kind of results
+ * (rows or an exception), the row count, the CRC32 checksum of the rows and the length of the
+ * header.  The header has the query, the name of the results and the execution time, followed
+ * by the column names and types, or by the expected exception.
+ * </p>
+ * <p>
+ * The rows follow the header in blocks of up to {@link #BLOCK_ROWS} rows.  A block starts with its
+ * length, so it can be mapped without reading the ones before it, then has the values column
+ * by column.  Each column starts with the code of its values, which is {@link #MIXED} when the values
+ * don't all have the same type, a bitmap of the rows that aren't null, and the values that aren't null.
+ * </p>
+ * Dates, times and timestamps are kept as text, like in the XML files, so they don't depend on
+ * the time zone the file was written in.
+ */
+final class BinaryFormat {
+
+	static final int MAGIC = 0x42515452; // BQTR
+	static final short VERSION = 1;
+
+	static final byte KIND_RESULTS = 1;
+	static final byte KIND_EXCEPTION = 2;
+
+	// the offsets of the fixed prefix
+	static final int ROW_COUNT_POSITION = 7;
+	static final int CHECKSUM_POSITION = 15;
+	static final int HEADER_LENGTH_POSITION = 23;
+	static final int PREFIX_LENGTH = 27;
+
+	static final int BLOCK_ROWS = 4096;
+
+	// how the message of an expected exception is compared
+	static final byte MESSAGE_EQUALS = 0;
+	static final byte MESSAGE_STARTSWITH = 1;
+	static final byte MESSAGE_CONTAINS = 2;
+	static final byte MESSAGE_REGEX = 3;
+
+	static final byte NULL = 0;
+	static final byte STRING = 1;
+	static final byte INTEGER = 2;
+	static final byte LONG = 3;
+	static final byte DOUBLE = 4;
+	static final byte FLOAT = 5;
+	static final byte SHORT = 6;
+	static final byte BYTE = 7;
+	static final byte BOOLEAN = 8;
+	static final byte CHAR = 9;
+	static final byte BIGINTEGER = 10;
+	static final byte BIGDECIMAL = 11;
+	static final byte DATE = 12;
+	static final byte TIME = 13;
+	static final byte TIMESTAMP = 14;
+	static final byte MIXED = -1;
+
+	static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+	private BinaryFormat() {
+	}
+
+	/**
+	 * Convert a value of a <code>ResultSet</code> to one that can be written.  Large objects
+	 * and types that don't have a code are converted to text, the same as in the XML files.
+	 */
+	static Object toValue(Object value) throws SQLException {
+		if (value == null || codeOf(value) != STRING || value instanceof String) {
+			return value;
+		}
+		try {
+			if (value instanceof Clob) {
+				return ObjectConverterUtil.convertToString(((Clob) value).getAsciiStream());
+			} else if (value instanceof Blob) {
+				byte[] ba = ObjectConverterUtil.convertToByteArray(((Blob) value).getBinaryStream());
+				return String.valueOf(ba.length);
+			} else if (value instanceof SQLXML) {
+				return ObjectConverterUtil.convertToString(((SQLXML) value).getBinaryStream());
+			}
+		} catch (SQLException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new SQLException(e);
+		}
+		return value.toString();
+	}
+
+	/**
+	 * @return the code of the value, {@link #STRING} for any type that doesn't have its own code
+	 */
+	static byte codeOf(Object value) {
+		if (value == null) {
+			return NULL;
+		} else if (value instanceof String) {
+			return STRING;
+		} else if (value instanceof Integer) {
+			return INTEGER;
+		} else if (value instanceof Long) {
+			return LONG;
+		} else if (value instanceof Double) {
+			return DOUBLE;
+		} else if (value instanceof Float) {
+			return FLOAT;
+		} else if (value instanceof Short) {
+			return SHORT;
+		} else if (value instanceof Byte) {
+			return BYTE;
+		} else if (value instanceof Boolean) {
+			return BOOLEAN;
+		} else if (value instanceof Character) {
+			return CHAR;
+		} else if (value instanceof BigInteger) {
+			return BIGINTEGER;
+		} else if (value instanceof BigDecimal) {
+			return BIGDECIMAL;
+		} else if (value instanceof java.sql.Date) {
+			return DATE;
+		} else if (value instanceof Time) {
+			return TIME;
+		} else if (value instanceof Timestamp) {
+			return TIMESTAMP;
+		}
+		return STRING;
+	}
+
+	static void writeValue(DataOutput out, byte code, Object value) throws IOException {
+		switch (code) {
+		case INTEGER:
+			out.writeInt(((Integer) value).intValue());
+			break;
+		case LONG:
+			out.writeLong(((Long) value).longValue());
+			break;
+		case DOUBLE:
+			out.writeDouble(((Double) value).doubleValue());
+			break;
+		case FLOAT:
+			out.writeFloat(((Float) value).floatValue());
+			break;
+		case SHORT:
+			out.writeShort(((Short) value).shortValue());
+			break;
+		case BYTE:
+			out.writeByte(((Byte) value).byteValue());
+			break;
+		case BOOLEAN:
+			out.writeBoolean(((Boolean) value).booleanValue());
+			break;
+		case CHAR:
+			out.writeChar(((Character) value).charValue());
+			break;
+		case BIGINTEGER:
+			writeBytes(out, ((BigInteger) value).toByteArray());
+			break;
+		case BIGDECIMAL:
+			BigDecimal decimal = (BigDecimal) value;
+			out.writeInt(decimal.scale());
+			writeBytes(out, decimal.unscaledValue().toByteArray());
+			break;
+		default:
+			// strings, dates, times and timestamps
+			writeString(out, value.toString());
+		}
+	}
+
+	static Object readValue(ByteBuffer in, byte code) throws IOException {
+		switch (code) {
+		case STRING:
+			return readString(in);
+		case INTEGER:
+			return Integer.valueOf(in.getInt());
+		case LONG:
+			return Long.valueOf(in.getLong());
+		case DOUBLE:
+			return Double.valueOf(in.getDouble());
+		case FLOAT:
+			return Float.valueOf(in.getFloat());
+		case SHORT:
+			return Short.valueOf(in.getShort());
+		case BYTE:
+			return Byte.valueOf(in.get());
+		case BOOLEAN:
+			return Boolean.valueOf(in.get() != 0);
+		case CHAR:
+			return Character.valueOf(in.getChar());
+		case BIGINTEGER:
+			return new BigInteger(readBytes(in));
+		case BIGDECIMAL:
+			int scale = in.getInt();
+			return new BigDecimal(new BigInteger(readBytes(in)), scale);
+		case DATE:
+			return java.sql.Date.valueOf(readString(in));
+		case TIME:
+			return Time.valueOf(readString(in));
+		case TIMESTAMP:
+			return Timestamp.valueOf(readString(in));
+		}
+		throw new IOException("Invalid value code " + code); //$NON-NLS-1$
+	}
+
+	/**
+	 * Strings are written as their length in UTF-8 bytes and the bytes, the length of null is -1.
+	 */
+	static void writeString(DataOutput out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		writeBytes(out, value.getBytes(UTF8));
+	}
+
+	static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (in.hasArray()) {
+			String value = new String(in.array(), in.arrayOffset() + in.position(), length, UTF8);
+			in.position(in.position() + length);
+			return value;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return bytes;
+	}
+
+}
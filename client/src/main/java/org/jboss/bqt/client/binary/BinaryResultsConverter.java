@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.bqt.client.ClientPlugin;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.xml.XMLResultsStreamReader;
+import org.jboss.bqt.client.xml.XMLResultsStreamWriter;
+import org.jboss.bqt.core.util.FileUtils;
+import org.jdom2.JDOMException;
+
+/**
+ * BinaryResultsConverter converts an expected results directory from the XML files to the
+ * {@link BinaryFormat binary format}, or back.  The query set directories are converted file by file,
+ * and the files that aren't expected results, such as query plans, are copied as they are.
+ * <p>
+ * Usage: <code>BinaryResultsConverter toBinary|toXML &lt;source directory&gt; &lt;target directory&gt; [compact]</code>,
+ * where <code>compact</code> writes the XML files without indentation.
+ * </p>
+ */
+public class BinaryResultsConverter {
+
+	private static final String XML_EXTENSION = ".xml"; //$NON-NLS-1$
+
+	private boolean compact;
+
+	/**
+	 * @param compact when the XML files are written without indentation
+	 */
+	public BinaryResultsConverter(boolean compact) {
+		this.compact = compact;
+	}
+
+	/**
+	 * Convert the XML expected results under <code>xmlDir</code> to binary files under <code>binaryDir</code>.
+	 * @param xmlDir
+	 * @param binaryDir
+	 * @return the number of converted files
+	 * @throws IOException
+	 * @throws SQLException
+	 * @throws JDOMException if an XML file isn't valid
+	 */
+	public int toBinary(File xmlDir, File binaryDir) throws IOException, SQLException, JDOMException {
+		return convertDirectory(xmlDir, binaryDir, true);
+	}
+
+	/**
+	 * Convert the binary expected results under <code>binaryDir</code> to XML files under <code>xmlDir</code>.
+	 * @param binaryDir
+	 * @param xmlDir
+	 * @return the number of converted files
+	 * @throws IOException
+	 * @throws SQLException
+	 * @throws JDOMException if the XML can't be written
+	 */
+	public int toXML(File binaryDir, File xmlDir) throws IOException, SQLException, JDOMException {
+		return convertDirectory(binaryDir, xmlDir, false);
+	}
+
+	/**
+	 * Convert one XML expected results file.
+	 * @param xmlFile
+	 * @param binaryFile
+	 * @throws IOException
+	 * @throws SQLException
+	 * @throws JDOMException if the XML file isn't valid
+	 */
+	public void toBinaryFile(File xmlFile, File binaryFile) throws IOException, SQLException, JDOMException {
+		String resultsName = FileUtils.getFilenameWithoutExtension(xmlFile.getName());
+		XMLResultsStreamReader reader = new XMLResultsStreamReader(xmlFile);
+		try {
+			ExpectedResultsHolder expected = reader.readHeader(createTest(xmlFile, resultsName));
+			BinaryResultsWriter writer = new BinaryResultsWriter();
+			if (expected.isExceptionExpected()) {
+				writer.writeException(binaryFile, resultsName, expected);
+			} else {
+				writer.writeResults(binaryFile, expected.getQuery(), resultsName, expected.getExecutionTime(),
+						columns(expected.getIdentifiers()), columns(expected.getTypes()), reader);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Convert one binary expected results file, the rows are checked against the checksum.
+	 * @param binaryFile
+	 * @param xmlFile
+	 * @throws IOException if the binary file isn't valid
+	 * @throws SQLException
+	 * @throws JDOMException if the XML can't be written
+	 */
+	public void toXMLFile(File binaryFile, File xmlFile) throws IOException, SQLException, JDOMException {
+		BinaryResultsReader reader = new BinaryResultsReader(binaryFile);
+		try {
+			String resultsName = reader.getResultsName();
+			if (resultsName == null) {
+				resultsName = FileUtils.getFilenameWithoutExtension(binaryFile.getName());
+			}
+			ExpectedResultsHolder expected = reader.readHeader(createTest(binaryFile, resultsName));
+			XMLResultsStreamWriter writer = new XMLResultsStreamWriter(compact);
+			if (expected.isExceptionExpected()) {
+				writer.writeException(xmlFile, resultsName, expected);
+			} else {
+				writer.writeResults(xmlFile, expected.getQuery(), resultsName, expected.getExecutionTime(),
+						columns(expected.getIdentifiers()), columns(expected.getTypes()), reader);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private int convertDirectory(File sourceDir, File targetDir, boolean toBinary)
+			throws IOException, SQLException, JDOMException {
+		File[] files = sourceDir.listFiles();
+		if (files == null) {
+			throw new IOException("Expected results directory " + sourceDir.getAbsolutePath() + " does not exist"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		targetDir.mkdirs();
+
+		String sourceExtension = (toBinary ? XML_EXTENSION : BinaryFileType.RESULTS_EXTENSION);
+		String targetExtension = (toBinary ? BinaryFileType.RESULTS_EXTENSION : XML_EXTENSION);
+
+		int count = 0;
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				count += convertDirectory(file, new File(targetDir, name), toBinary);
+			} else if (name.endsWith(sourceExtension)) {
+				File target = new File(targetDir, name.substring(0, name.length() - sourceExtension.length()) + targetExtension);
+				if (toBinary) {
+					toBinaryFile(file, target);
+				} else {
+					toXMLFile(file, target);
+				}
+				count++;
+			} else {
+				FileUtils.copy(file.getAbsolutePath(), new File(targetDir, name).getAbsolutePath(), true);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The holders need a test, the query set is the directory of the file.
+	 */
+	private static QueryTest createTest(File resultsFile, String resultsName) {
+		return new QueryTest(null, resultsFile.getParentFile().getName(), resultsName, null);
+	}
+
+	private static List<String> columns(List<String> columns) {
+		return (columns == null ? new ArrayList<String>(0) : columns);
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 3 || !(args[0].equalsIgnoreCase("toBinary") || args[0].equalsIgnoreCase("toXML"))) { //$NON-NLS-1$ //$NON-NLS-2$
+			System.err.println("Usage: BinaryResultsConverter toBinary|toXML <source directory> <target directory> [compact]"); //$NON-NLS-1$
+			System.exit(1);
+		}
+
+		boolean compact = (args.length > 3 && args[3].equalsIgnoreCase("compact")); //$NON-NLS-1$
+		BinaryResultsConverter converter = new BinaryResultsConverter(compact);
+		File source = new File(args[1]);
+		File target = new File(args[2]);
+		try {
+			int count;
+			if (args[0].equalsIgnoreCase("toBinary")) { //$NON-NLS-1$
+				count = converter.toBinary(source, target);
+			} else {
+				count = converter.toXML(source, target);
+			}
+			ClientPlugin.LOGGER.info("Converted " + count + " expected results files from " //$NON-NLS-1$ //$NON-NLS-2$
+					+ source.getAbsolutePath() + " to " + target.getAbsolutePath()); //$NON-NLS-1$
+		} catch (Exception e) {
+			ClientPlugin.LOGGER.error("Unable to convert " + source.getAbsolutePath() + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,322 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jboss.bqt.client.xml.TagNames;
+
+/**
+ * BinaryResultsReader reads an expected results file written by {@link BinaryResultsWriter}.
+ * <p>
+ * The file is memory mapped.  The header is read when the reader is created, and each block of
+ * rows is only mapped when {@link #nextRow()} gets to it, then the values are decoded one row at a
+ * time directly from the mapped block, so reading the header of a large file costs the same as
+ * reading a small one.  The checksum is verified when the last row was read.
+ * </p>
+ * The reader must be {@link #close() closed} when it is no longer used.
+ */
+public class BinaryResultsReader implements ExpectedRowReader {
+
+	private File resultsFile;
+	private RandomAccessFile file;
+	private FileChannel channel;
+
+	private byte kind;
+	private long expectedRowCount;
+	private long expectedChecksum;
+
+	private String query;
+	private String resultsName;
+	private long executionTime;
+	private List<String> identifiers = new ArrayList<String>();
+	private List<String> types = new ArrayList<String>();
+	private String exceptionClassName;
+	private String exceptionMsg;
+	private byte exceptionMatch;
+
+	// the position of the next block
+	private long position;
+	private CRC32 checksum = new CRC32();
+	private byte[] scratch = new byte[8192];
+
+	// the current block
+	private MappedByteBuffer block;
+	private int blockRows;
+	private int blockRow;
+	private byte[] codes;
+	private int[] bitmaps;
+	private ByteBuffer[] values;
+
+	private long rowCount = 0;
+
+	public BinaryResultsReader(File resultsFile) throws IOException {
+		this.resultsFile = resultsFile;
+		this.file = new RandomAccessFile(resultsFile, "r"); //$NON-NLS-1$
+		try {
+			this.channel = file.getChannel();
+			readHeader();
+		} catch (IOException e) {
+			close();
+			throw e;
+		} catch (RuntimeException e) {
+			close();
+			throw invalidFile(e.getMessage());
+		}
+	}
+
+	public File getResultsFile() {
+		return this.resultsFile;
+	}
+
+	/**
+	 * @return the name of the results, <code>querySetID_queryID</code>
+	 */
+	public String getResultsName() {
+		return this.resultsName;
+	}
+
+	/**
+	 * @return the number of rows in the file, which is known without reading them
+	 */
+	public long getExpectedRowCount() {
+		return this.expectedRowCount;
+	}
+
+	/**
+	 * @return the number of rows returned by {@link #nextRow()}
+	 */
+	public long getRowCount() {
+		return this.rowCount;
+	}
+
+	/**
+	 * @param test
+	 * @return the expected results, without any rows
+	 */
+	public ExpectedResultsHolder readHeader(QueryTest test) {
+		ExpectedResultsHolder expectedResults;
+		if (kind == BinaryFormat.KIND_EXCEPTION) {
+			expectedResults = new ExpectedResultsHolder(TagNames.Elements.EXCEPTION, test);
+			expectedResults.setExceptionClassName(exceptionClassName);
+			expectedResults.setExceptionMsg(exceptionMsg);
+			expectedResults.setExceptionStartsWith(exceptionMatch == BinaryFormat.MESSAGE_STARTSWITH);
+			expectedResults.setExceptionContains(exceptionMatch == BinaryFormat.MESSAGE_CONTAINS);
+			expectedResults.setExceptionRegex(exceptionMatch == BinaryFormat.MESSAGE_REGEX);
+		} else {
+			expectedResults = new ExpectedResultsHolder(TagNames.Elements.QUERY_RESULTS, test);
+			if (identifiers.size() > 0) {
+				if (executionTime >= 0) expectedResults.setExecutionTime(executionTime);
+				expectedResults.setIdentifiers(new ArrayList<String>(identifiers));
+				expectedResults.setTypes(new ArrayList<String>(types));
+			}
+		}
+		expectedResults.setQuery(query);
+		return expectedResults;
+	}
+
+	/**
+	 * Read the next row of the expected results.
+	 * @return List of the column values, or null when there are no more rows
+	 * @throws IOException if the file isn't valid
+	 */
+	public List<Object> nextRow() throws IOException {
+		if (rowCount >= expectedRowCount) {
+			return null;
+		}
+		if (block == null || blockRow >= blockRows) {
+			nextBlock();
+		}
+
+		List<Object> row = new ArrayList<Object>(codes.length);
+		int bit = 1 << (blockRow & 7);
+		int offset = blockRow >> 3;
+		try {
+			for (int col = 0; col < codes.length; col++) {
+				if ((block.get(bitmaps[col] + offset) & bit) == 0) {
+					row.add(null);
+					continue;
+				}
+				byte code = codes[col];
+				if (code == BinaryFormat.MIXED) {
+					code = values[col].get();
+				}
+				row.add(BinaryFormat.readValue(values[col], code));
+			}
+		} catch (RuntimeException e) {
+			throw invalidFile(e.getMessage());
+		}
+		blockRow++;
+		rowCount++;
+
+		if (rowCount == expectedRowCount) {
+			verifyChecksum();
+		}
+		return row;
+	}
+
+	/**
+	 * Verify the checksum of the rows that weren't read yet, without decoding them.
+	 * @throws IOException if the file isn't valid
+	 */
+	public void verify() throws IOException {
+		long rows = rowCount;
+		if (block != null) {
+			rows += blockRows - blockRow;
+		}
+		while (rows < expectedRowCount) {
+			rows += mapBlock().getInt(0);
+		}
+		block = null;
+		rowCount = expectedRowCount;
+		verifyChecksum();
+	}
+
+	public void close() {
+		block = null;
+		values = null;
+		if (this.file != null) {
+			try {
+				this.file.close();
+			} catch (IOException e) {
+			}
+			this.file = null;
+			this.channel = null;
+		}
+	}
+
+	private void readHeader() throws IOException {
+		ByteBuffer prefix = ByteBuffer.allocate(BinaryFormat.PREFIX_LENGTH);
+		if (channel.size() < BinaryFormat.PREFIX_LENGTH || channel.read(prefix, 0) < BinaryFormat.PREFIX_LENGTH) {
+			throw invalidFile("the file is too short"); //$NON-NLS-1$
+		}
+		prefix.flip();
+		if (prefix.getInt() != BinaryFormat.MAGIC) {
+			throw invalidFile("it isn't a binary results file"); //$NON-NLS-1$
+		}
+		short version = prefix.getShort();
+		if (version != BinaryFormat.VERSION) {
+			throw invalidFile("version " + version + " isn't supported"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		kind = prefix.get();
+		expectedRowCount = prefix.getLong();
+		expectedChecksum = prefix.getLong();
+		int headerLength = prefix.getInt();
+
+		ByteBuffer header = map(BinaryFormat.PREFIX_LENGTH, headerLength);
+		query = BinaryFormat.readString(header);
+		resultsName = BinaryFormat.readString(header);
+		executionTime = header.getLong();
+		if (kind == BinaryFormat.KIND_EXCEPTION) {
+			exceptionClassName = BinaryFormat.readString(header);
+			exceptionMsg = BinaryFormat.readString(header);
+			exceptionMatch = header.get();
+		} else {
+			int colCount = header.getInt();
+			for (int col = 0; col < colCount; col++) {
+				identifiers.add(BinaryFormat.readString(header));
+				types.add(BinaryFormat.readString(header));
+			}
+		}
+		position = BinaryFormat.PREFIX_LENGTH + headerLength;
+	}
+
+	/**
+	 * Map the next block, and position a buffer on the values of each column.
+	 */
+	private void nextBlock() throws IOException {
+		block = mapBlock();
+		blockRows = block.getInt();
+		blockRow = 0;
+
+		int colCount = identifiers.size();
+		codes = new byte[colCount];
+		bitmaps = new int[colCount];
+		values = new ByteBuffer[colCount];
+		for (int col = 0; col < colCount; col++) {
+			int length = block.getInt();
+			int start = block.position();
+			codes[col] = block.get();
+			bitmaps[col] = block.position();
+
+			ByteBuffer columnValues = block.duplicate();
+			columnValues.position(bitmaps[col] + ((blockRows + 7) >> 3));
+			columnValues.limit(start + length);
+			values[col] = columnValues;
+
+			block.position(start + length);
+		}
+	}
+
+	/**
+	 * Map the block at the current position, and add it to the checksum.
+	 */
+	private MappedByteBuffer mapBlock() throws IOException {
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+		if (channel.read(lengthBuffer, position) < 4) {
+			throw invalidFile("it has less than " + expectedRowCount + " rows"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		lengthBuffer.flip();
+		int length = lengthBuffer.getInt();
+
+		MappedByteBuffer mapped = map(position + 4, length);
+		position += 4 + length;
+
+		ByteBuffer bytes = mapped.duplicate();
+		while (bytes.hasRemaining()) {
+			int count = Math.min(scratch.length, bytes.remaining());
+			bytes.get(scratch, 0, count);
+			checksum.update(scratch, 0, count);
+		}
+		return mapped;
+	}
+
+	private MappedByteBuffer map(long start, int length) throws IOException {
+		if (length < 0 || start + length > channel.size()) {
+			throw invalidFile("it was truncated"); //$NON-NLS-1$
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+	}
+
+	private void verifyChecksum() throws IOException {
+		if (checksum.getValue() != expectedChecksum) {
+			throw invalidFile("the checksum of the rows doesn't match"); //$NON-NLS-1$
+		}
+	}
+
+	private IOException invalidFile(String reason) {
+		return new IOException("Invalid binary results file " + resultsFile.getAbsolutePath() //$NON-NLS-1$
+				+ ", " + reason); //$NON-NLS-1$
+	}
+
+}
@@ -0,0 +1,347 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang.StringUtils;
+import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jboss.bqt.core.util.ExceptionUtil;
+import org.jdom2.JDOMException;
+
+/**
+ * BinaryResultsWriter writes an expected results file in the {@link BinaryFormat binary format}.
+ * The rows are written a block at a time, straight from the <code>ResultSet</code>, so only one
+ * block of rows is held in memory.  The row count and the checksum are only known when all the
+ * rows were written, so they are filled in when the file is complete.
+ */
+public class BinaryResultsWriter {
+
+	private DataOutputStream out;
+	private CRC32 checksum;
+
+	// the values of the current block, by column
+	private Object[][] block;
+	private int blockRows;
+	private long rowCount;
+
+	private ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+	private ByteArrayOutputStream columnBytes = new ByteArrayOutputStream();
+
+	/**
+	 * Write the results of a query.
+	 * @param resultsFile
+	 * @param query
+	 * @param resultsName the name of the results, <code>querySetID_queryID</code>
+	 * @param executionTime
+	 * @param results is read to the end
+	 * @return the number of rows written
+	 * @throws IOException
+	 * @throws SQLException if the results can't be read
+	 */
+	public long writeResults(File resultsFile, String query, String resultsName, long executionTime, ResultSet results)
+			throws IOException, SQLException {
+		if (results.isClosed()) {
+			throw new SQLException(
+					"ResultSet is closed at this point, unable to product results"); //$NON-NLS-1$
+		}
+
+		ResultSetMetaData rmdata = results.getMetaData();
+		int colCount = rmdata.getColumnCount();
+		List<String> identifiers = new ArrayList<String>(colCount);
+		List<String> types = new ArrayList<String>(colCount);
+		for (int col = 1; col <= colCount; col++) {
+			String type = null;
+			try {
+				type = rmdata.getColumnTypeName(col);
+			} catch (SQLException e) {
+				//
+			}
+			types.add(type);
+			identifiers.add(rmdata.getColumnName(col));
+		}
+
+		open(resultsFile, BinaryFormat.KIND_RESULTS);
+		try {
+			writeHeader(query, resultsName, executionTime, identifiers, types);
+			while (results.next()) {
+				for (int col = 0; col < colCount; col++) {
+					block[col][blockRows] = BinaryFormat.toValue(results.getObject(col + 1));
+				}
+				addRow();
+			}
+			finish(resultsFile);
+		} finally {
+			close();
+		}
+		return rowCount;
+	}
+
+	/**
+	 * Write the rows of expected results that were read from another file.
+	 * @param resultsFile
+	 * @param query
+	 * @param resultsName the name of the results, <code>querySetID_queryID</code>
+	 * @param executionTime
+	 * @param identifiers the names of the columns
+	 * @param types the types of the columns, an entry may be null
+	 * @param rows is read to the end
+	 * @return the number of rows written
+	 * @throws IOException
+	 * @throws SQLException if a value can't be converted
+	 * @throws JDOMException if the rows can't be read
+	 */
+	public long writeResults(File resultsFile, String query, String resultsName, long executionTime,
+			List<String> identifiers, List<String> types, ExpectedRowReader rows)
+			throws IOException, SQLException, JDOMException {
+		open(resultsFile, BinaryFormat.KIND_RESULTS);
+		try {
+			writeHeader(query, resultsName, executionTime, identifiers, types);
+			for (List<Object> row = rows.nextRow(); row != null; row = rows.nextRow()) {
+				if (row.size() != block.length) {
+					throw new IOException("Row " + (rowCount + 1) + " has " + row.size() //$NON-NLS-1$ //$NON-NLS-2$
+							+ " values, but there are " + block.length + " columns"); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				for (int col = 0; col < block.length; col++) {
+					block[col][blockRows] = BinaryFormat.toValue(row.get(col));
+				}
+				addRow();
+			}
+			finish(resultsFile);
+		} finally {
+			close();
+		}
+		return rowCount;
+	}
+
+	/**
+	 * Write the exception thrown by a query.
+	 * @param resultsFile
+	 * @param query
+	 * @param resultsName the name of the results, <code>querySetID_queryID</code>
+	 * @param ex may be null, then the file has no columns
+	 * @throws IOException
+	 */
+	public void writeException(File resultsFile, String query, String resultsName, Throwable ex)
+			throws IOException {
+		if (ex == null) {
+			open(resultsFile, BinaryFormat.KIND_RESULTS);
+			try {
+				writeHeader(query, resultsName, -1, new ArrayList<String>(0), new ArrayList<String>(0));
+				finish(resultsFile);
+			} finally {
+				close();
+			}
+			return;
+		}
+		writeException(resultsFile, query, resultsName, ex.getClass().getName(),
+				StringUtils.remove(ExceptionUtil.getExceptionMessage(ex), '\r'), BinaryFormat.MESSAGE_EQUALS);
+	}
+
+	/**
+	 * Write an expected exception that was read from another file.
+	 * @param resultsFile
+	 * @param resultsName the name of the results, <code>querySetID_queryID</code>
+	 * @param expected the expected exception
+	 * @throws IOException
+	 */
+	public void writeException(File resultsFile, String resultsName, ExpectedResultsHolder expected)
+			throws IOException {
+		byte match = BinaryFormat.MESSAGE_EQUALS;
+		if (expected.isExceptionStartsWith()) {
+			match = BinaryFormat.MESSAGE_STARTSWITH;
+		} else if (expected.isExceptionContains()) {
+			match = BinaryFormat.MESSAGE_CONTAINS;
+		} else if (expected.isExceptionRegex()) {
+			match = BinaryFormat.MESSAGE_REGEX;
+		}
+		writeException(resultsFile, expected.getQuery(), resultsName, expected.getExceptionClassName(),
+				expected.getExceptionMsg(), match);
+	}
+
+	private void writeException(File resultsFile, String query, String resultsName, String className,
+			String message, byte match) throws IOException {
+		open(resultsFile, BinaryFormat.KIND_EXCEPTION);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream header = new DataOutputStream(bytes);
+			BinaryFormat.writeString(header, query);
+			BinaryFormat.writeString(header, resultsName);
+			header.writeLong(-1);
+			BinaryFormat.writeString(header, className);
+			BinaryFormat.writeString(header, message);
+			header.writeByte(match);
+			header.flush();
+
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+			finish(resultsFile);
+		} finally {
+			close();
+		}
+	}
+
+	private void open(File resultsFile, byte kind) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(resultsFile), 1 << 16));
+		checksum = new CRC32();
+		rowCount = 0;
+		blockRows = 0;
+
+		out.writeInt(BinaryFormat.MAGIC);
+		out.writeShort(BinaryFormat.VERSION);
+		out.writeByte(kind);
+		// the row count and the checksum are filled in by finish
+		out.writeLong(0);
+		out.writeLong(0);
+	}
+
+	private void close() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+			}
+			out = null;
+		}
+		block = null;
+	}
+
+	private void writeHeader(String query, String resultsName, long executionTime,
+			List<String> identifiers, List<String> types) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		BinaryFormat.writeString(header, query);
+		BinaryFormat.writeString(header, resultsName);
+		header.writeLong(executionTime);
+		header.writeInt(identifiers.size());
+		for (int col = 0; col < identifiers.size(); col++) {
+			BinaryFormat.writeString(header, identifiers.get(col));
+			BinaryFormat.writeString(header, types.get(col));
+		}
+		header.flush();
+
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+
+		block = new Object[identifiers.size()][BinaryFormat.BLOCK_ROWS];
+	}
+
+	private void addRow() throws IOException {
+		blockRows++;
+		rowCount++;
+		if (blockRows == BinaryFormat.BLOCK_ROWS) {
+			writeBlock();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		blockBytes.reset();
+		DataOutputStream data = new DataOutputStream(blockBytes);
+		data.writeInt(blockRows);
+		for (int col = 0; col < block.length; col++) {
+			columnBytes.reset();
+			writeColumn(new DataOutputStream(columnBytes), block[col]);
+			data.writeInt(columnBytes.size());
+			columnBytes.writeTo(data);
+		}
+		data.flush();
+
+		byte[] bytes = blockBytes.toByteArray();
+		checksum.update(bytes, 0, bytes.length);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+
+		for (int col = 0; col < block.length; col++) {
+			// don't hold on to the values
+			Arrays.fill(block[col], 0, blockRows, null);
+		}
+		blockRows = 0;
+	}
+
+	private void writeColumn(DataOutputStream column, Object[] values) throws IOException {
+		byte code = BinaryFormat.NULL;
+		byte[] present = new byte[(blockRows + 7) >> 3];
+		for (int row = 0; row < blockRows; row++) {
+			if (values[row] == null) {
+				continue;
+			}
+			present[row >> 3] |= (1 << (row & 7));
+			byte valueCode = BinaryFormat.codeOf(values[row]);
+			if (code == BinaryFormat.NULL) {
+				code = valueCode;
+			} else if (code != valueCode) {
+				code = BinaryFormat.MIXED;
+			}
+		}
+
+		column.writeByte(code);
+		column.write(present);
+		for (int row = 0; row < blockRows; row++) {
+			Object value = values[row];
+			if (value == null) {
+				continue;
+			}
+			byte valueCode = code;
+			if (code == BinaryFormat.MIXED) {
+				valueCode = BinaryFormat.codeOf(value);
+				column.writeByte(valueCode);
+			}
+			BinaryFormat.writeValue(column, valueCode, value);
+		}
+		column.flush();
+	}
+
+	/**
+	 * Write the last block, then fill in the row count and the checksum.
+	 */
+	private void finish(File resultsFile) throws IOException {
+		if (blockRows > 0) {
+			writeBlock();
+		}
+		out.close();
+		out = null;
+
+		RandomAccessFile file = new RandomAccessFile(resultsFile, "rw"); //$NON-NLS-1$
+		try {
+			file.seek(BinaryFormat.ROW_COUNT_POSITION);
+			file.writeLong(rowCount);
+			file.writeLong(checksum.getValue());
+		} finally {
+			file.close();
+		}
+	}
+
+}
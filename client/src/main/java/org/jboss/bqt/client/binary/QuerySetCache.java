@@ -0,0 +1,309 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.binary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.jboss.bqt.client.ClientPlugin;
+import org.jboss.bqt.client.QuerySQL;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.xml.XMLQueryStreamReader;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jboss.bqt.core.util.FileUtils;
+import org.jboss.bqt.framework.StatementOptions;
+import org.jdom2.JDOMException;
+
+/**
+ * QuerySetCache keeps the query files compiled to a binary form, so a query set that was
+ * read once doesn't have to be parsed, checked for duplicate queries and have its parameters
+ * converted again, by the next run or by another scenario that uses the same query files.
+ * <p>
+ * A compiled file is named after the query set and the SHA-1 hash of the content of the query file,
+ * so a query file that changes is compiled again.  It starts with the magic number, the version,
+ * the number of queries and the query set ID, followed by the queries with their typed parameters,
+ * which are encoded the same way as the values of the {@link BinaryFormat binary expected results}.
+ * </p>
+ * <p>
+ * Usage: <code>QuerySetCache &lt;query sets directory&gt; &lt;cache directory&gt; [queries directory name]</code> 
+ * compiles the query files of all the query sets, which are found in the directories named
+ * <code>test_queries</code> by default.
+ * </p>
+ */
+public class QuerySetCache {
+
+	static final int MAGIC = 0x42515153; // BQQS
+	static final short VERSION = 2;
+
+	// the offset of the number of queries
+	static final int COUNT_POSITION = 6;
+
+	static final String EXTENSION = ".qsc"; //$NON-NLS-1$
+
+	private static final String XML_EXTENSION = ".xml"; //$NON-NLS-1$
+	private static final String QUERIES_DIR_NAME = "test_queries"; //$NON-NLS-1$
+
+	private File cacheDir;
+
+	public QuerySetCache(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	public File getCacheDir() {
+		return this.cacheDir;
+	}
+
+	/**
+	 * Open the compiled queries of the query file, which are compiled first when the
+	 * cache doesn't have them.
+	 * @param queryScenarioID the scenario the query tests are created for
+	 * @param queryFile
+	 * @param querySetID
+	 * @return the reader of the compiled queries, which must be closed
+	 * @throws IOException
+	 * @throws JDOMException if the query file isn't valid
+	 * @throws FrameworkRuntimeException if the query file has duplicate queries
+	 */
+	public QuerySetReader open(String queryScenarioID, File queryFile, String querySetID) throws IOException, JDOMException {
+		File compiledFile = compile(queryFile, querySetID);
+		try {
+			return new QuerySetReader(compiledFile, queryScenarioID, querySetID);
+		} catch (IOException e) {
+			// a damaged file is replaced, the same as a missing one
+			ClientPlugin.LOGGER.warn("Compiling query set " + querySetID + " again, " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+			compiledFile.delete();
+			return new QuerySetReader(compile(queryFile, querySetID), queryScenarioID, querySetID);
+		}
+	}
+
+	/**
+	 * Compile the query file, unless the cache already has it.
+	 * @param queryFile
+	 * @param querySetID
+	 * @return the compiled file
+	 * @throws IOException
+	 * @throws JDOMException if the query file isn't valid
+	 * @throws FrameworkRuntimeException if the query file has duplicate queries
+	 */
+	public File compile(File queryFile, String querySetID) throws IOException, JDOMException {
+		File compiledFile = new File(cacheDir, querySetID + "_" + hash(queryFile) + EXTENSION); //$NON-NLS-1$
+		if (compiledFile.exists()) {
+			return compiledFile;
+		}
+
+		cacheDir.mkdirs();
+		// other scenarios can compile the same query set at the same time, so the compiled
+		// file is written under a temporary name and then renamed
+		File tempFile = File.createTempFile(compiledFile.getName(), ".tmp", cacheDir); //$NON-NLS-1$
+		try {
+			write(queryFile, querySetID, tempFile);
+			if (!tempFile.renameTo(compiledFile) && !compiledFile.exists()) {
+				throw new IOException("Unable to rename " + tempFile.getName() + " to " + compiledFile.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		} finally {
+			tempFile.delete();
+		}
+		ClientPlugin.LOGGER.debug("Compiled query set " + querySetID + " to " + compiledFile.getAbsolutePath()); //$NON-NLS-1$ //$NON-NLS-2$
+		return compiledFile;
+	}
+
+	/**
+	 * Compile the query files of the query sets under <code>querySetsDir</code>, which are the
+	 * files in the directories named <code>queriesDirName</code>.
+	 * @param querySetsDir
+	 * @param queriesDirName
+	 * @return the number of query files
+	 * @throws IOException
+	 * @throws JDOMException if a query file isn't valid
+	 */
+	public int compileAll(File querySetsDir, String queriesDirName) throws IOException, JDOMException {
+		File[] files = querySetsDir.listFiles();
+		if (files == null) {
+			throw new IOException("Unable to list directory " + querySetsDir.getAbsolutePath()); //$NON-NLS-1$
+		}
+
+		int count = 0;
+		for (File file : files) {
+			if (file.isDirectory()) {
+				count += compileAll(file, queriesDirName);
+			} else if (querySetsDir.getName().equals(queriesDirName) && file.getName().endsWith(XML_EXTENSION)) {
+				compile(file, FileUtils.getFilenameWithoutExtension(file.getName()));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static void write(File queryFile, String querySetID, File compiledFile) throws IOException, JDOMException {
+		// the scenario isn't part of the compiled queries
+		XMLQueryStreamReader reader = new XMLQueryStreamReader(null, queryFile, querySetID);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compiledFile)));
+		int count = 0;
+		try {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeInt(0);
+			BinaryFormat.writeString(out, querySetID);
+
+			// perform logic to test for duplicate queries with the same name
+			Set<String> s = new HashSet<String>();
+			while (reader.hasNext()) {
+				QueryTest test = reader.next();
+				if (!s.add(test.getQueryID())) {
+					throw new FrameworkRuntimeException("Duplicate queries with the same name of: " + test.getQueryID()); //$NON-NLS-1$
+				}
+				writeQueryTest(out, test);
+				count++;
+			}
+		} finally {
+			reader.close();
+			out.close();
+		}
+
+		RandomAccessFile file = new RandomAccessFile(compiledFile, "rw"); //$NON-NLS-1$
+		try {
+			file.seek(COUNT_POSITION);
+			file.writeInt(count);
+		} finally {
+			file.close();
+		}
+	}
+
+	private static void writeQueryTest(DataOutputStream out, QueryTest test) throws IOException {
+		BinaryFormat.writeString(out, test.getQuerySetID());
+		BinaryFormat.writeString(out, test.getQueryID());
+		out.writeBoolean(test.isSerial());
+
+		QuerySQL[] queries = test.getQueries();
+		out.writeInt(queries.length);
+		for (QuerySQL sql : queries) {
+			BinaryFormat.writeString(out, sql.getSql());
+			out.writeInt(sql.getUpdateCnt());
+			out.writeInt(sql.getRowCnt());
+			out.writeInt(sql.getRunTimes());
+
+			Object[] parms = sql.getParms();
+			if (parms == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(parms.length);
+				for (Object parm : parms) {
+					byte code = BinaryFormat.codeOf(parm);
+					out.writeByte(code);
+					if (code != BinaryFormat.NULL) {
+						BinaryFormat.writeValue(out, code, parm);
+					}
+				}
+			}
+
+			// the payload of a query file is the properties of its payload elements
+			if (sql.getPayLoad() instanceof Properties) {
+				Properties payload = (Properties) sql.getPayLoad();
+				out.writeInt(payload.size());
+				for (Map.Entry<Object, Object> entry : payload.entrySet()) {
+					BinaryFormat.writeString(out, (String) entry.getKey());
+					BinaryFormat.writeString(out, (String) entry.getValue());
+				}
+			} else {
+				out.writeInt(-1);
+			}
+
+			StatementOptions options = sql.getStatementOptions();
+			out.writeBoolean(options != null);
+			if (options != null) {
+				writeOption(out, options.getResultSetType());
+				writeOption(out, options.getFetchSize());
+				writeOption(out, options.getMaxRows());
+				writeOption(out, options.getQueryTimeout());
+			}
+		}
+	}
+
+	private static void writeOption(DataOutputStream out, Integer value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeInt(value.intValue());
+		}
+	}
+
+	/**
+	 * @return the SHA-1 hash of the content of the file, in hexadecimal
+	 */
+	static String hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			throw new FrameworkRuntimeException(e);
+		}
+
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: QuerySetCache <query sets directory> <cache directory> [queries directory name]"); //$NON-NLS-1$
+			System.exit(1);
+		}
+
+		File source = new File(args[0]);
+		QuerySetCache cache = new QuerySetCache(new File(args[1]));
+		String queriesDirName = (args.length > 2 ? args[2] : QUERIES_DIR_NAME);
+		try {
+			int count = cache.compileAll(source, queriesDirName);
+			ClientPlugin.LOGGER.info("Compiled " + count + " query files from " //$NON-NLS-1$ //$NON-NLS-2$
+					+ source.getAbsolutePath() + " to " + cache.getCacheDir().getAbsolutePath()); //$NON-NLS-1$
+		} catch (Exception e) {
+			ClientPlugin.LOGGER.error("Unable to compile " + source.getAbsolutePath() + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.binary;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+import org.jboss.bqt.client.QuerySQL;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jboss.bqt.framework.StatementOptions;
+
+/**
+ * QuerySetReader returns the query tests of a query set {@link QuerySetCache compiled} file,
+ * in the order of the query file.  The file is mapped and the tests are created while
+ * they are iterated.
+ * <p>
+ * The reader is closed when the last query has been returned, or must be {@link #close() closed}
+ * when it is no longer used.
+ * </p>
+ */
+public class QuerySetReader implements Iterator<QueryTest>, Closeable {
+
+	private File compiledFile;
+	private String queryScenarioID;
+	private RandomAccessFile file;
+	private ByteBuffer buffer;
+
+	private int queryCount;
+	private int position = 0;
+
+	/**
+	 * @param compiledFile
+	 * @param queryScenarioID the scenario the query tests are created for
+	 * @param querySetID the expected query set
+	 * @throws IOException if the file isn't a compiled query set of this version
+	 */
+	public QuerySetReader(File compiledFile, String queryScenarioID, String querySetID) throws IOException {
+		this.compiledFile = compiledFile;
+		this.queryScenarioID = queryScenarioID;
+		this.file = new RandomAccessFile(compiledFile, "r"); //$NON-NLS-1$
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Compiled query set is too large: " + compiledFile.getName()); //$NON-NLS-1$
+			}
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.remaining() < QuerySetCache.COUNT_POSITION + 4 || buffer.getInt() != QuerySetCache.MAGIC 
+					|| buffer.getShort() != QuerySetCache.VERSION) {
+				throw new IOException("Not a compiled query set of version " + QuerySetCache.VERSION + ": " + compiledFile.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			this.queryCount = buffer.getInt();
+			String compiledSetID = BinaryFormat.readString(buffer);
+			if (!querySetID.equals(compiledSetID)) {
+				throw new IOException("Compiled query set " + compiledSetID + " isn't " + querySetID); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		} catch (BufferUnderflowException e) {
+			close();
+			throw new IOException("Compiled query set is truncated: " + compiledFile.getName()); //$NON-NLS-1$
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	public File getCompiledFile() {
+		return this.compiledFile;
+	}
+
+	/**
+	 * @return the number of queries in the query set
+	 */
+	public int getQueryCount() {
+		return this.queryCount;
+	}
+
+	public boolean hasNext() {
+		if (position < queryCount && buffer != null) {
+			return true;
+		}
+		close();
+		return false;
+	}
+
+	public QueryTest next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		try {
+			QueryTest test = readQueryTest();
+			position++;
+			return test;
+		} catch (Exception e) {
+			close();
+			throw new FrameworkRuntimeException(e, "Error reading compiled query set: " + compiledFile.getName()); //$NON-NLS-1$
+		}
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private QueryTest readQueryTest() throws IOException {
+		String querySetID = BinaryFormat.readString(buffer);
+		String queryID = BinaryFormat.readString(buffer);
+		boolean serial = buffer.get() != 0;
+
+		QuerySQL[] queries = new QuerySQL[buffer.getInt()];
+		for (int i = 0; i < queries.length; i++) {
+			String sql = BinaryFormat.readString(buffer);
+			int updateCnt = buffer.getInt();
+			int rowCnt = buffer.getInt();
+			int runTimes = buffer.getInt();
+
+			Object[] parms = null;
+			int parmCount = buffer.getInt();
+			if (parmCount >= 0) {
+				parms = new Object[parmCount];
+				for (int p = 0; p < parmCount; p++) {
+					byte code = buffer.get();
+					if (code != BinaryFormat.NULL) {
+						parms[p] = BinaryFormat.readValue(buffer, code);
+					}
+				}
+			}
+
+			QuerySQL query = new QuerySQL(sql, parms);
+			query.setUpdateCnt(updateCnt);
+			query.setRowCnt(rowCnt);
+			query.setRunTimes(runTimes);
+
+			int payloadCount = buffer.getInt();
+			if (payloadCount >= 0) {
+				Properties payload = new Properties();
+				for (int p = 0; p < payloadCount; p++) {
+					String name = BinaryFormat.readString(buffer);
+					payload.setProperty(name, BinaryFormat.readString(buffer));
+				}
+				query.setPayLoad(payload);
+			}
+
+			if (buffer.get() != 0) {
+				StatementOptions options = new StatementOptions();
+				options.setResultSetType(readOption());
+				options.setFetchSize(readOption());
+				options.setMaxRows(readOption());
+				options.setQueryTimeout(readOption());
+				query.setStatementOptions(options);
+			}
+			queries[i] = query;
+		}
+
+		QueryTest test = new QueryTest(queryScenarioID, querySetID, queryID, queries);
+		test.setSerial(serial);
+		return test;
+	}
+
+	private Integer readOption() {
+		return (buffer.get() != 0 ? Integer.valueOf(buffer.getInt()) : null);
+	}
+
+	public void close() {
+		this.buffer = null;
+		if (this.file != null) {
+			try {
+				this.file.close();
+			} catch (IOException e) {
+			}
+			this.file = null;
+		}
+	}
+
+}
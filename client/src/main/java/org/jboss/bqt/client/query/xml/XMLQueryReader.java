@@ -27,27 +27,36 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 
 import org.jboss.bqt.client.ClientPlugin;
 import org.jboss.bqt.client.QueryTest;
 import org.jboss.bqt.client.TestProperties;
 import org.jboss.bqt.client.api.QueryReader;
 import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.binary.QuerySetCache;
+import org.jboss.bqt.client.binary.QuerySetReader;
 import org.jboss.bqt.client.util.BQTUtil;
-import org.jboss.bqt.client.xml.XMLQueryVisitationStrategy;
 import org.jboss.bqt.core.exception.FrameworkRuntimeException;
 import org.jboss.bqt.core.util.FileUtils;
 
 public class XMLQueryReader extends QueryReader {
 
+	private static final String QUERYSET_CACHE_DIR_NAME = "queryset_cache"; //$NON-NLS-1$
+
 	private String query_dir_loc = null;
 
 	private Map<String, File> querySetIDToFileMap = new HashMap<String, File>();
 
+	// the query files are compiled once per scenario, and the compiled files are shared
+	// by the next runs and the other scenarios
+	private QuerySetCache cache;
+	private Map<String, File> querySetIDToCompiledMap = new HashMap<String, File>();
+
 	public XMLQueryReader(QueryScenario scenario, Properties props) {
 		super(scenario, props);
 		
@@ -56,6 +65,12 @@ public class XMLQueryReader extends QueryReader {
 				BQTUtil.throwInvalidProperty(TestProperties.PROP_QUERY_FILES_DIR_LOC);
 		}
 
+		String cache_dir_loc = props.getProperty(TestProperties.PROP_QUERYSET_CACHE_DIR);
+		if (cache_dir_loc == null) {
+			cache_dir_loc = new File(props.getProperty(TestProperties.PROP_OUTPUT_DIR, "."), QUERYSET_CACHE_DIR_NAME).getPath(); //$NON-NLS-1$
+		}
+		cache = new QuerySetCache(new File(cache_dir_loc));
+
 		loadQuerySetIDtoFileMap();
 	}
 	
@@ -74,17 +89,47 @@ public class XMLQueryReader extends QueryReader {
 
 	@Override
 	public List<QueryTest> getQueries(String querySetID) {
-		File queryFile = querySetIDToFileMap.get(querySetID);
-
+		List<QueryTest> tests = new LinkedList<QueryTest>();
+		QuerySetReader reader = openQuerySet(querySetID);
 		try {
-			return loadQueries(querySetID, queryFile);
-		} catch (IOException e) {
-			throw new FrameworkRuntimeException((new StringBuilder())
-					.append("Failed to load queries from file: ")
-					.append(queryFile).append(" error:").append(e.getMessage())
-					.toString());
+			while (reader.hasNext()) {
+				tests.add(reader.next());
+			}
+		} finally {
+			reader.close();
 		}
+		return tests;
+	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The queries are read from the compiled query file while they are iterated.
+	 * </p>
+	 *
+	 * @see org.jboss.bqt.client.api.QueryReader#getQueryIterator(java.lang.String)
+	 */
+	@Override
+	public Iterator<QueryTest> getQueryIterator(String querySetID) {
+		return openQuerySet(querySetID);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The count is kept in the compiled query file.
+	 * </p>
+	 *
+	 * @see org.jboss.bqt.client.api.QueryReader#getQueryCount(java.lang.String)
+	 */
+	@Override
+	public int getQueryCount(String querySetID) {
+		QuerySetReader reader = openQuerySet(querySetID);
+		try {
+			return reader.getQueryCount();
+		} finally {
+			reader.close();
+		}
 	}
 
 	@Override
@@ -104,42 +149,48 @@ public class XMLQueryReader extends QueryReader {
 
 	}
 
-	private List<QueryTest> loadQueries(String querySetID, File queryFile)
-			throws IOException {
-
-		if (!queryFile.exists() || !queryFile.canRead()) {
-			String msg = "Query file doesn't exist or cannot be read: "
-					+ queryFile.getName() + ", ignoring and continuing";
-			ClientPlugin.LOGGER.error(msg);
-			throw new IOException(msg); //$NON-NLS-1$ //$NON-NLS-2$
+	/*
+	 * The duplicate queries are found when the query file is compiled 
+	 */
+	private synchronized QuerySetReader openQuerySet(String querySetID) {
+		String scenarioID = this.getQueryScenario().getQueryScenarioIdentifier();
+
+		File compiledFile = querySetIDToCompiledMap.get(querySetID);
+		if (compiledFile != null && compiledFile.exists()) {
+			try {
+				return new QuerySetReader(compiledFile, scenarioID, querySetID);
+			} catch (IOException e) {
+				// compiled again below
+			}
 		}
-		// Get query set name
-		//			String querySet = getQuerySetName(queryFileName) ; //$NON-NLS-1$
 
-		XMLQueryVisitationStrategy jstrat = new XMLQueryVisitationStrategy();
-		List<QueryTest> tests = null;
+		File queryFile = querySetIDToFileMap.get(querySetID);
 		try {
-			tests = jstrat.parseXMLQueryFile(this.getQueryScenario().getQueryScenarioIdentifier(),
-					queryFile, querySetID);
-		} catch (Exception e) {
-			String msg = "Error reading query file: " + queryFile.getName(); //$NON-NLS-1$ //$NON-NLS-2$
-			ClientPlugin.LOGGER.error(e, msg);
-			throw new IOException(msg, e); //$NON-NLS-1$ //$NON-NLS-2$
-		}			
-		// perform logic to test for duplicate queries with the same name
-		 Set<String> s = new HashSet<String>();
-
-		 for (QueryTest t : tests)  {
-			 if (s.contains(t.getQueryID())) {
-						throw new FrameworkRuntimeException((new StringBuilder())
-								.append("Duplicate queries with the same name of: ")
-								.append(t.getQueryID())
-								.toString());
-			 }
-			 s.add(t.getQueryID());
-		 }
-		 return tests;
-
+			if (!queryFile.exists() || !queryFile.canRead()) {
+				String msg = "Query file doesn't exist or cannot be read: "
+						+ queryFile.getName() + ", ignoring and continuing";
+				ClientPlugin.LOGGER.error(msg);
+				throw new IOException(msg); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+
+			QuerySetReader reader = null;
+			try {
+				reader = cache.open(scenarioID, queryFile, querySetID);
+			} catch (FrameworkRuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				String msg = "Error reading query file: " + queryFile.getName(); //$NON-NLS-1$ //$NON-NLS-2$
+				ClientPlugin.LOGGER.error(e, msg);
+				throw new IOException(msg, e); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			querySetIDToCompiledMap.put(querySetID, reader.getCompiledFile());
+			return reader;
+		} catch (IOException e) {
+			throw new FrameworkRuntimeException((new StringBuilder())
+					.append("Failed to load queries from file: ")
+					.append(queryFile).append(" error:").append(e.getMessage())
+					.toString());
+		}
 	}
 
 	/* 
@@ -30,6 +30,7 @@ import org.jboss.bqt.client.api.ExpectedResults;
 import org.jboss.bqt.client.api.ExpectedResultsReader;
 import org.jboss.bqt.client.api.QueryScenario;
 import org.jboss.bqt.client.api.QueryWriter;
+import org.jboss.bqt.client.results.CapturedResult;
 import org.jboss.bqt.core.exception.FrameworkException;
 import org.jboss.bqt.core.exception.MultiTestFailedException;
 import org.jboss.bqt.core.exception.QueryTestFailedException;
@@ -88,12 +89,39 @@ public class Compare extends QueryScenario {
 
 		TestResult tr = testCase.getTestResult();
 
+		// the rows are read once, and shared by the readers and the error writer
+		CapturedResult actual = null;
+		try {
+			actual = captureResult(testCase, transaction);
+		} catch (QueryTestFailedException qtf) {
+			tr.setFailureMessage(qtf.getMessage());
+			tr.setStatus(TestResult.RESULT_STATE.TEST_EXCEPTION);
+			List<Throwable> exs = new ArrayList<Throwable>(1);
+			exs.add(qtf);
+			getErrorWriter().generateErrorFile(tr, exs);
+			return;
+		}
+
+		try {
+			compareResults(testCase, transaction, actual, readers);
+		} finally {
+			if (actual != null) {
+				actual.release();
+			}
+		}
+	}
+
+	private void compareResults(TestCase testCase, TransactionAPI transaction, CapturedResult actual,
+			List<ExpectedResultsReader> readers) throws FrameworkException, QueryTestFailedException {
+
+		TestResult tr = testCase.getTestResult();
+
 		for (ExpectedResultsReader reader : readers) {
 			ExpectedResults es = reader.getExpectedResults(testCase.getActualTest());
 
 			List<Throwable> exs = new ArrayList<Throwable>();
 			try {
-				reader.compareResults(testCase, transaction, es, isOrdered(tr.getQuery()));
+				reader.compareResults(testCase, transaction, actual, es, isOrdered(tr.getQuery()));
 			} catch (MultiTestFailedException mtf) {
 				tr.setFailureMessage(mtf.getMessage());
 				for(QueryTestFailedException ex : mtf.getFailures()) {
@@ -112,7 +140,7 @@ public class Compare extends QueryScenario {
 				if (es.getExpectedResultsFile() == null) {
 					getErrorWriter().generateErrorFile(tr, exs);
 				} else {
-					getErrorWriter().generateErrorFile(testCase, es, transaction, exs);
+					getErrorWriter().generateErrorFile(testCase, es, transaction, actual, exs);
 				}
 
 				// in case of exception with more failures, generate additional file with all messages
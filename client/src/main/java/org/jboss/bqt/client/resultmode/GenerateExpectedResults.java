@@ -29,7 +29,9 @@ import org.jboss.bqt.client.TestProperties;
 import org.jboss.bqt.client.api.ExpectedResultsWriter;
 import org.jboss.bqt.client.api.QueryScenario;
 import org.jboss.bqt.client.api.QueryWriter;
+import org.jboss.bqt.client.results.CapturedResult;
 import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.exception.QueryTestFailedException;
 import org.jboss.bqt.core.util.ArgCheck;
 import org.jboss.bqt.framework.TestCase;
 import org.jboss.bqt.framework.TransactionAPI;
@@ -75,17 +77,33 @@ public class GenerateExpectedResults extends QueryScenario {
 		
 		
 		List<ExpectedResultsWriter> resultsWriters = this.getExpectedResultsWriters();
-		
-		 for (ExpectedResultsWriter writer : resultsWriters) {
-			 try {
-				 writer.generateExpectedResultFile(testCase, transaction);
-			} catch (FrameworkException fe) {
-				ArrayList<Throwable> failures = new ArrayList<Throwable>(1);
-				failures.add(fe);
-				getErrorWriter().generateErrorFile(testCase.getTestResult(), failures);
-			}
 
-		 }
+		// the rows are read once, and written by all the writers
+		CapturedResult actual = null;
+		try {
+			actual = captureResult(testCase, transaction);
+		} catch (QueryTestFailedException qtfe) {
+			ArrayList<Throwable> failures = new ArrayList<Throwable>(1);
+			failures.add(qtfe);
+			getErrorWriter().generateErrorFile(testCase.getTestResult(), failures);
+			return;
+		}
+
+		try {
+			for (ExpectedResultsWriter writer : resultsWriters) {
+				try {
+					writer.generateExpectedResultFile(testCase, transaction, actual);
+				} catch (FrameworkException fe) {
+					ArrayList<Throwable> failures = new ArrayList<Throwable>(1);
+					failures.add(fe);
+					getErrorWriter().generateErrorFile(testCase.getTestResult(), failures);
+				}
+			}
+		} finally {
+			if (actual != null) {
+				actual.release();
+			}
+		}
 	
 		// If there was an exeception in the test results, create the error file
 //		if (testCase.getTestResult().getStatus() == TestResult.RESULT_STATE.TEST_EXCEPTION) {
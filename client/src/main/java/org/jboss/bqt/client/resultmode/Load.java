@@ -0,0 +1,82 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.resultmode;
+
+import java.util.Properties;
+
+import org.jboss.bqt.client.TestProperties;
+import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.api.QueryWriter;
+import org.jboss.bqt.client.testcase.ProcessLoad;
+import org.jboss.bqt.framework.TestCase;
+import org.jboss.bqt.framework.TestCaseLifeCycle;
+import org.jboss.bqt.framework.TransactionAPI;
+
+/**
+ * The Load Result Mode controls the process for replaying the query sets with a number of
+ * concurrent clients, and reporting the throughput and response times.
+ * The results of the queries are read, but not processed.
+ *
+ */
+public class Load extends QueryScenario {
+
+	/**
+	 * @param scenarioName
+	 * @param queryProperties
+	 */
+	public Load(String scenarioName, Properties queryProperties) {
+		super(scenarioName, queryProperties);
+
+	}
+
+	/**
+	 * Call to obtain the {@link TestCaseLifeCycle testcase} that will run
+	 * this scenario
+	 * @return ProcessLoad
+	 */
+	@Override
+	public TestCaseLifeCycle getTestCase() {
+		return new ProcessLoad(this);
+	}
+
+	@Override
+	public boolean isLoad() {
+		return true;
+	}
+
+	@Override
+	public String getResultsMode()
+	{
+		return TestProperties.RESULT_MODES.LOAD;
+	}
+
+	@Override
+	public synchronized QueryWriter getQueryWriter() {
+		return null;
+	}
+
+	@Override
+	public void handleTestResult(TestCase testCase, TransactionAPI transaction) {
+		// failures are counted in the load statistics, no error files are written
+	}
+
+}
@@ -0,0 +1,302 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.results;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.bqt.core.util.ObjectConverterUtil;
+
+/**
+ * CapturedResult holds the columns and rows of a <code>ResultSet</code>, which are read once, on the
+ * thread that ran the query.  The same capture is compared to the expected results, written to the
+ * generated expected results and to the error file, so the <code>ResultSet</code> is never read
+ * twice and can use a forward-only cursor.  The rows can be {@link #openRows() read} any number
+ * of times, also on other threads after the <code>ResultSet</code> has been closed.
+ * <p>
+ * At most <code>memoryRows</code> rows are kept in memory, the rest are written to a temporary
+ * file, the same way as the runs of the {@link org.jboss.bqt.client.util.ExternalRowSorter}.
+ * The file is deleted when the capture is {@link #release() released} by all that
+ * {@link #retain() retained} it.  Large objects, and the values of types that don't have an element
+ * of their own in the results files, are captured as their text so they don't depend on the connection.
+ * </p>
+ */
+public final class CapturedResult {
+
+	// reset the object stream, so it doesn't keep a reference to every row written
+	private static final int RESET_INTERVAL = 1000;
+
+	private final List<String> identifiers;
+	private final List<String> types;
+	private final ResultColumns rows;
+	private final File spillFile;
+	private final long spilledRows;
+	private int references = 1;
+
+	private CapturedResult(List<String> identifiers, List<String> types, ResultColumns rows,
+			File spillFile, long spilledRows) {
+		this.identifiers = Collections.unmodifiableList(identifiers);
+		this.types = Collections.unmodifiableList(types);
+		this.rows = rows;
+		this.spillFile = spillFile;
+		this.spilledRows = spilledRows;
+	}
+
+	/**
+	 * Capture all the rows of the results, starting at the current row.  The capture is retained
+	 * once, by the caller.
+	 * @param results
+	 * @param memoryRows the most rows that are kept in memory, 0 keeps all of them
+	 * @param spillDir where the rows that aren't kept in memory are written, created if it doesn't exist
+	 * @return the captured results
+	 * @throws SQLException if the results can't be read, or the rows can't be written
+	 */
+	public static CapturedResult capture(ResultSet results, int memoryRows, File spillDir) throws SQLException {
+		ResultSetMetaData rmdata = results.getMetaData();
+		int colCount = rmdata.getColumnCount();
+		List<String> identifiers = new ArrayList<String>(colCount);
+		List<String> types = new ArrayList<String>(colCount);
+		for (int col = 1; col <= colCount; col++) {
+			String type = null;
+			try {
+				type = rmdata.getColumnTypeName(col);
+			} catch (SQLException e) {
+				//
+			}
+			types.add(type);
+			identifiers.add(rmdata.getColumnName(col));
+		}
+
+		int maxRows = (memoryRows > 0 ? memoryRows : Integer.MAX_VALUE);
+		ResultColumns rows = new ResultColumns(colCount);
+		while (rows.size() < maxRows) {
+			if (!results.next()) {
+				return new CapturedResult(identifiers, types, rows, null, 0);
+			}
+			rows.add(readRow(results, colCount));
+		}
+
+		// the rows that don't fit in memory
+		File spillFile = null;
+		ObjectOutputStream out = null;
+		long spilledRows = 0;
+		boolean success = false;
+		try {
+			spillDir.mkdirs();
+			spillFile = File.createTempFile("bqt_capture_", ".rows", spillDir); //$NON-NLS-1$ //$NON-NLS-2$
+			out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+			while (results.next()) {
+				out.writeObject(readRow(results, colCount));
+				if (++spilledRows % RESET_INTERVAL == 0) {
+					out.reset();
+				}
+			}
+			out.close();
+			out = null;
+			success = true;
+		} catch (IOException e) {
+			throw new SQLException("Unable to write the results to " //$NON-NLS-1$
+					+ (spillFile == null ? spillDir : spillFile).getPath() + ": " + e.getMessage(), e); //$NON-NLS-1$
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+			if (!success && spillFile != null) {
+				spillFile.delete();
+			}
+		}
+		return new CapturedResult(identifiers, types, rows, spillFile, spilledRows);
+	}
+
+	public List<String> getIdentifiers() {
+		return identifiers;
+	}
+
+	public List<String> getTypes() {
+		return types;
+	}
+
+	/**
+	 * @return the number of rows that were captured
+	 */
+	public long getRowCount() {
+		return rows.size() + spilledRows;
+	}
+
+	/**
+	 * @return true when some of the rows were written to a file, because they didn't fit in memory
+	 */
+	public boolean isSpilled() {
+		return spillFile != null;
+	}
+
+	/**
+	 * Retain the capture, so its rows can be read until it is {@link #release() released} again.
+	 * Used to hand the capture to another thread.
+	 */
+	public synchronized void retain() {
+		if (references == 0) {
+			throw new IllegalStateException("The captured results were released"); //$NON-NLS-1$
+		}
+		references++;
+	}
+
+	/**
+	 * Release the capture, the file of the rows that didn't fit in memory is deleted
+	 * when it is no longer retained.
+	 */
+	public synchronized void release() {
+		if (references > 0 && --references == 0) {
+			rows.clear();
+			if (spillFile != null) {
+				spillFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * @return a reader of the captured rows, it must be closed
+	 */
+	public ExpectedRowReader openRows() {
+		return new ExpectedRowReader() {
+			private int row = 0;
+			private long spilled = 0;
+			private ObjectInputStream in;
+
+			@SuppressWarnings("unchecked")
+			public List<Object> nextRow() throws IOException {
+				if (row < rows.size()) {
+					return rows.get(row++);
+				}
+				if (spilled >= spilledRows) {
+					return null;
+				}
+				if (in == null) {
+					in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+				}
+				spilled++;
+				try {
+					return (List<Object>) in.readObject();
+				} catch (ClassNotFoundException e) {
+					throw new IOException(e.getMessage());
+				}
+			}
+
+			public void close() {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+					}
+					in = null;
+				}
+			}
+		};
+	}
+
+	private static List<Object> readRow(ResultSet results, int colCount) throws SQLException {
+		List<Object> row = new ArrayList<Object>(colCount);
+		for (int col = 1; col <= colCount; col++) {
+			row.add(toValue(results.getObject(col)));
+		}
+		return row;
+	}
+
+	/**
+	 * Convert a value of a <code>ResultSet</code> to one that doesn't depend on the connection.
+	 */
+	static Object toValue(Object value) throws SQLException {
+		if (value == null || value instanceof String || value instanceof Integer || value instanceof Long
+				|| value instanceof Double || value instanceof Float || value instanceof Short
+				|| value instanceof Byte || value instanceof Boolean || value instanceof Character
+				|| value instanceof BigInteger || value instanceof BigDecimal || value instanceof java.util.Date) {
+			return value;
+		}
+		try {
+			if (value instanceof Clob) {
+				return new ObjectValue(ObjectConverterUtil.convertToString(((Clob) value).getAsciiStream()));
+			} else if (value instanceof Blob) {
+				byte[] ba = ObjectConverterUtil.convertToByteArray(((Blob) value).getBinaryStream());
+				return new ObjectValue(String.valueOf(ba.length));
+			} else if (value instanceof SQLXML) {
+				return new ObjectValue(ObjectConverterUtil.convertToString(((SQLXML) value).getBinaryStream()));
+			}
+		} catch (SQLException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new SQLException(e);
+		}
+		return new ObjectValue(value.toString());
+	}
+
+	/**
+	 * The text of a value that is written as an <code>object</code>, the same as the value
+	 * it was captured from.  It is compared to the expected results as text.
+	 */
+	public static final class ObjectValue implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String text;
+
+		ObjectValue(String text) {
+			this.text = text;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ObjectValue && text.equals(((ObjectValue) obj).text);
+		}
+
+		@Override
+		public int hashCode() {
+			return text.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return text;
+		}
+	}
+
+}
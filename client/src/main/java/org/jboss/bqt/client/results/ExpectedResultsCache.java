@@ -0,0 +1,369 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.results;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.jboss.bqt.client.ClientPlugin;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.TestProperties;
+import org.jboss.bqt.core.util.PropertiesUtils;
+import org.jdom2.JDOMException;
+
+/**
+ * ExpectedResultsCache keeps the expected results that were read, for all the scenarios
+ * of the process, so scenarios that use the same expected results directory only read
+ * each file once.
+ * <p>
+ * The entries are keyed by the path of the file, and are only used while the file has the
+ * same modification time and length.  The header of the results is cached when it's read,
+ * and the rows are added when they were all read by a comparison, if their estimated size
+ * isn't more than a quarter of the cache.  The least recently used entries are evicted
+ * when the estimated size of all the entries is more than {@link TestProperties#PROP_EXPECTED_RESULTS_CACHE_SIZE}.
+ * </p>
+ * The sizes are estimates of the memory used by the values, not exact.
+ */
+public class ExpectedResultsCache {
+
+	private static final long DEFAULT_CACHE_SIZE_MB = 64;
+
+	// the estimated size of an entry without its rows
+	private static final long HEADER_SIZE = 512;
+
+	private static ExpectedResultsCache instance;
+
+	private long maxSize;
+	private long size = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	private Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	/**
+	 * @param props the {@link TestProperties#PROP_EXPECTED_RESULTS_CACHE_SIZE} of the first call sets the size
+	 * @return the cache that is shared by all the scenarios
+	 */
+	public static synchronized ExpectedResultsCache getInstance(Properties props) {
+		if (instance == null) {
+			long mb = PropertiesUtils.getLongProperty(props, TestProperties.PROP_EXPECTED_RESULTS_CACHE_SIZE, DEFAULT_CACHE_SIZE_MB);
+			instance = new ExpectedResultsCache(Math.max(0, mb) * 1024 * 1024);
+			ClientPlugin.LOGGER.debug("Expected results cache size: " + mb + " MB");
+		}
+		return instance;
+	}
+
+	/**
+	 * @param maxSize the estimated size in bytes of all the entries, 0 doesn't cache anything
+	 */
+	public ExpectedResultsCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param resultsFile
+	 * @param test the test the copy is for
+	 * @return a copy of the cached header of the file, or null when it isn't cached
+	 */
+	public synchronized ExpectedResultsHolder getHeader(File resultsFile, QueryTest test) {
+		Entry entry = getEntry(resultsFile);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.header.copyHeader(test);
+	}
+
+	/**
+	 * Cache the header of a file.
+	 * @param resultsFile
+	 * @param header is copied
+	 */
+	public synchronized void putHeader(File resultsFile, ExpectedResultsHolder header) {
+		if (maxSize <= 0 || HEADER_SIZE > maxSize) {
+			return;
+		}
+		Entry old = entries.remove(resultsFile.getAbsolutePath());
+		if (old != null) {
+			size -= old.size;
+		}
+		Entry entry = new Entry(resultsFile, header.copyHeader(new QueryTest(null, header.getQuerySetID(), header.getQueryID(), null)));
+		entries.put(resultsFile.getAbsolutePath(), entry);
+		size += entry.size;
+		evict();
+	}
+
+	/**
+	 * Read the rows of a file from the cache, or from the <code>source</code> when they aren't cached.
+	 * The rows read from the source are added to the cache when all of them were read, and
+	 * there aren't too many.
+	 * @param resultsFile
+	 * @param source is opened to read the rows when they aren't cached
+	 * @return the rows
+	 * @throws IOException
+	 * @throws JDOMException
+	 */
+	public ExpectedRowReader openRows(File resultsFile, RowReaderFactory source) throws IOException, JDOMException {
+		synchronized (this) {
+			Entry entry = getEntry(resultsFile);
+			if (entry != null && entry.rows != null) {
+				return new CachedRows(entry.rows);
+			}
+		}
+		ExpectedRowReader reader = source.open();
+		if (maxSize <= 0) {
+			return reader;
+		}
+		return new CachingRows(resultsFile, reader, maxSize / 4);
+	}
+
+	/**
+	 * Read the rows of a file into the cache ahead of their comparison.  The rows are only read
+	 * when the header of the file is cached and its rows aren't, and the reading stops as soon as
+	 * there are too many to cache.
+	 * @param resultsFile
+	 * @param source is opened to read the rows
+	 * @throws IOException
+	 * @throws JDOMException
+	 */
+	public void preloadRows(File resultsFile, RowReaderFactory source) throws IOException, JDOMException {
+		synchronized (this) {
+			Entry entry = getEntry(resultsFile);
+			if (entry == null || entry.rows != null) {
+				return;
+			}
+		}
+		CachingRows rows = new CachingRows(resultsFile, source.open(), maxSize / 4);
+		try {
+			while (rows.isCaching() && rows.nextRow() != null) {
+			}
+		} finally {
+			rows.close();
+		}
+	}
+
+	/**
+	 * @param resultsFile
+	 * @return true when the header of the file is cached, without counting it as a hit or a miss
+	 */
+	public synchronized boolean containsHeader(File resultsFile) {
+		return getEntry(resultsFile) != null;
+	}
+
+	/**
+	 * @return false when the size of the cache is 0, so nothing is cached
+	 */
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the estimated size in bytes of the entries
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return the entry of the file, or null if it isn't cached or the file has changed
+	 */
+	private Entry getEntry(File resultsFile) {
+		String key = resultsFile.getAbsolutePath();
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.lastModified != resultsFile.lastModified() || entry.length != resultsFile.length()) {
+			entries.remove(key);
+			size -= entry.size;
+			return null;
+		}
+		return entry;
+	}
+
+	private synchronized void putRows(File resultsFile, List<List<Object>> rows, long rowsSize) {
+		Entry entry = getEntry(resultsFile);
+		if (entry == null || entry.rows != null) {
+			return;
+		}
+		entry.rows = rows;
+		entry.size += rowsSize;
+		size += rowsSize;
+		evict();
+	}
+
+	/**
+	 * Evict the least recently used entries, until the entries fit.
+	 */
+	private void evict() {
+		Iterator<Entry> it = entries.values().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Entry entry = it.next();
+			it.remove();
+			size -= entry.size;
+			evictions++;
+		}
+	}
+
+	/**
+	 * @param value
+	 * @return the estimated size in bytes of a value
+	 */
+	static long estimateSize(Object value) {
+		if (value == null) {
+			return 4;
+		} else if (value instanceof String) {
+			return 40 + 2 * ((String) value).length();
+		} else if (value instanceof BigDecimal || value instanceof BigInteger) {
+			return 64;
+		}
+		return 16;
+	}
+
+	/**
+	 * Opens the reader of the rows of a file, when they aren't cached.
+	 */
+	public interface RowReaderFactory {
+		ExpectedRowReader open() throws IOException, JDOMException;
+	}
+
+	private static class Entry {
+		long lastModified;
+		long length;
+		ExpectedResultsHolder header;
+		List<List<Object>> rows;
+		long size = HEADER_SIZE;
+
+		Entry(File resultsFile, ExpectedResultsHolder header) {
+			this.lastModified = resultsFile.lastModified();
+			this.length = resultsFile.length();
+			this.header = header;
+		}
+	}
+
+	/**
+	 * The rows of an entry, they are shared so they must not be changed.
+	 */
+	private static class CachedRows implements ExpectedRowReader {
+		private List<List<Object>> rows;
+		private int next = 0;
+
+		CachedRows(List<List<Object>> rows) {
+			this.rows = rows;
+		}
+
+		public List<Object> nextRow() {
+			if (rows == null || next >= rows.size()) {
+				return null;
+			}
+			return rows.get(next++);
+		}
+
+		public void close() {
+			rows = null;
+		}
+	}
+
+	/**
+	 * Collects the rows that are read from a file, and adds them to the cache
+	 * when all of them were read.
+	 */
+	private class CachingRows implements ExpectedRowReader {
+		private File resultsFile;
+		private ExpectedRowReader reader;
+		private long maxRowsSize;
+		private ResultColumns rows = new ResultColumns();
+		private long rowsSize = 0;
+
+		CachingRows(File resultsFile, ExpectedRowReader reader, long maxRowsSize) {
+			this.resultsFile = resultsFile;
+			this.reader = reader;
+			this.maxRowsSize = maxRowsSize;
+		}
+
+		public List<Object> nextRow() throws IOException, JDOMException {
+			List<Object> row = reader.nextRow();
+			if (rows == null) {
+				return row;
+			}
+			if (row == null) {
+				putRows(resultsFile, rows, rowsSize);
+				rows = null;
+				return null;
+			}
+			rowsSize += 16;
+			for (int col = 0; col < row.size(); col++) {
+				rowsSize += estimateSize(row.get(col));
+			}
+			if (rowsSize > maxRowsSize) {
+				// too many to cache
+				rows = null;
+			} else {
+				rows.add(row);
+			}
+			return row;
+		}
+
+		/**
+		 * @return false when all the rows were read, or there were too many to cache
+		 */
+		boolean isCaching() {
+			return rows != null;
+		}
+
+		public void close() {
+			rows = null;
+			reader.close();
+		}
+	}
+
+}
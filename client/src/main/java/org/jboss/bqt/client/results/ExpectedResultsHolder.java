@@ -68,6 +68,28 @@ public class ExpectedResultsHolder extends ExpectedResults {
 	}
 	
 	
+	/**
+	 * Copy everything but the rows, so expected results that are shared can be
+	 * used by a test without changing them.
+	 * @param test
+	 * @return a copy for the test, without the rows
+	 */
+	public ExpectedResultsHolder copyHeader(QueryTest test) {
+		ExpectedResultsHolder copy = new ExpectedResultsHolder(resultType, test);
+		copy.setExceptionExpected(isExceptionExpected());
+		copy.setExpectedResultsFile(getExpectedResultsFile());
+		copy.query = query;
+		copy.types = (types == null ? null : new ArrayList<String>(types));
+		copy.identifiers = (identifiers == null ? null : new ArrayList<String>(identifiers));
+		copy.exceptionClassName = exceptionClassName;
+		copy.exceptionMsg = exceptionMsg;
+		copy.exceptionContains = exceptionContains;
+		copy.exceptionStartsWith = exceptionStartsWith;
+		copy.exceptionRegex = exceptionRegex;
+		copy.executionTime = executionTime;
+		return copy;
+	}
+
 	public long getExecutionTime() {
 		return executionTime;
 	}
@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.results;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.jdom2.JDOMException;
+
+/**
+ * ExpectedRowReader reads the rows of an expected results file one at a time, so the
+ * rows can be compared without holding them all in memory.
+ */
+public interface ExpectedRowReader {
+
+	/**
+	 * Read the next row of the expected results.
+	 * @return List of the column values, or null when there are no more rows
+	 * @throws IOException
+	 * @throws JDOMException if a row can't be parsed
+	 */
+	List<Object> nextRow() throws IOException, JDOMException;
+
+	void close();
+
+}
@@ -0,0 +1,404 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.results;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ResultColumns holds the rows of a result column by column, so that they take less memory
+ * than a list of rows of boxed values.
+ * <p>
+ * Integer, Long and Double columns are kept in primitive arrays, String columns are
+ * dictionary encoded, and any other type is kept as is.  A column is typed by its first value
+ * that isn't null, and is changed to hold objects when a value of another type is added.
+ * The values are boxed again when they are read, so a row equals the list it was added from.
+ * </p>
+ * The rows are read through views that are created by {@link #get(int)}, so two calls for
+ * the same row don't return the same instance.
+ */
+public class ResultColumns extends AbstractList<List<Object>> {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Column[] columns;
+	private int rowCount = 0;
+	private int capacity = 0;
+
+	/**
+	 * The number of columns is set by the first row that is added.
+	 */
+	public ResultColumns() {
+	}
+
+	public ResultColumns(int columnCount) {
+		initColumns(columnCount);
+	}
+
+	public int getColumnCount() {
+		return (columns == null ? 0 : columns.length);
+	}
+
+	@Override
+	public int size() {
+		return rowCount;
+	}
+
+	@Override
+	public List<Object> get(int row) {
+		if (row < 0 || row >= rowCount) {
+			throw new IndexOutOfBoundsException("Row " + row + " is not valid, size is " + rowCount); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return new Row(row);
+	}
+
+	public Object getValue(int row, int col) {
+		return columns[col].get(row);
+	}
+
+	/**
+	 * Add a row, the values are copied.
+	 * @param row must have as many values as there are columns
+	 * @return true
+	 */
+	@Override
+	public boolean add(List<Object> row) {
+		if (columns == null) {
+			initColumns(row.size());
+		}
+		if (row.size() != columns.length) {
+			throw new IllegalArgumentException("Attempt to add row with " //$NON-NLS-1$
+					+ row.size() + " values when there are " + columns.length + " columns."); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		ensureCapacity(rowCount + 1);
+		for (int col = 0; col < columns.length; col++) {
+			setValue(rowCount, col, row.get(col));
+		}
+		rowCount++;
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Add a column, that is null in all the rows.
+	 */
+	public void addColumn() {
+		int count = getColumnCount();
+		Column[] added = new Column[count + 1];
+		if (columns != null) {
+			System.arraycopy(columns, 0, added, 0, count);
+		}
+		added[count] = new NullColumn();
+		columns = added;
+	}
+
+	@Override
+	public void clear() {
+		for (int col = 0; col < getColumnCount(); col++) {
+			columns[col] = new NullColumn();
+		}
+		rowCount = 0;
+		capacity = 0;
+		modCount++;
+	}
+
+	private void initColumns(int columnCount) {
+		columns = new Column[columnCount];
+		for (int col = 0; col < columnCount; col++) {
+			columns[col] = new NullColumn();
+		}
+	}
+
+	private void ensureCapacity(int size) {
+		if (size <= capacity) {
+			return;
+		}
+		capacity = Math.max(INITIAL_CAPACITY, Math.max(size, capacity + (capacity >> 1)));
+		for (int col = 0; col < columns.length; col++) {
+			columns[col].resize(capacity);
+		}
+	}
+
+	private void setValue(int row, int col, Object value) {
+		Column column = columns[col];
+		if (column.set(row, value)) {
+			return;
+		}
+		// the value doesn't fit the column
+		if (column instanceof NullColumn) {
+			column = createColumn(value);
+		} else {
+			column = new ObjectColumn(column, rowCount);
+		}
+		column.resize(capacity);
+		columns[col] = column;
+		column.set(row, value);
+	}
+
+	private static Column createColumn(Object value) {
+		if (value instanceof Integer) {
+			return new IntColumn();
+		} else if (value instanceof Long) {
+			return new LongColumn();
+		} else if (value instanceof Double) {
+			return new DoubleColumn();
+		} else if (value instanceof String) {
+			return new StringColumn();
+		}
+		return new ObjectColumn();
+	}
+
+	/**
+	 * A view of one row.
+	 */
+	private class Row extends AbstractList<Object> {
+		private int row;
+
+		Row(int row) {
+			this.row = row;
+		}
+
+		@Override
+		public Object get(int col) {
+			return columns[col].get(row);
+		}
+
+		@Override
+		public Object set(int col, Object value) {
+			Object old = columns[col].get(row);
+			setValue(row, col, value);
+			return old;
+		}
+
+		@Override
+		public int size() {
+			return columns.length;
+		}
+	}
+
+	private static abstract class Column {
+		abstract Object get(int row);
+
+		/**
+		 * @return false if the value can't be held by this column
+		 */
+		abstract boolean set(int row, Object value);
+
+		abstract void resize(int capacity);
+	}
+
+	/**
+	 * A column that has only nulls.
+	 */
+	private static class NullColumn extends Column {
+		@Override
+		Object get(int row) {
+			return null;
+		}
+
+		@Override
+		boolean set(int row, Object value) {
+			return value == null;
+		}
+
+		@Override
+		void resize(int capacity) {
+		}
+	}
+
+	/**
+	 * A column of primitive values, the bits of the rows whose value isn't null are set.
+	 */
+	private static abstract class PrimitiveColumn extends Column {
+		BitSet present = new BitSet();
+
+		@Override
+		Object get(int row) {
+			return (present.get(row) ? getPrimitive(row) : null);
+		}
+
+		@Override
+		boolean set(int row, Object value) {
+			if (value == null) {
+				present.clear(row);
+				return true;
+			}
+			if (!setPrimitive(row, value)) {
+				return false;
+			}
+			present.set(row);
+			return true;
+		}
+
+		abstract Object getPrimitive(int row);
+
+		abstract boolean setPrimitive(int row, Object value);
+	}
+
+	private static class IntColumn extends PrimitiveColumn {
+		int[] values = new int[0];
+
+		@Override
+		Object getPrimitive(int row) {
+			return Integer.valueOf(values[row]);
+		}
+
+		@Override
+		boolean setPrimitive(int row, Object value) {
+			if (!(value instanceof Integer)) return false;
+			values[row] = ((Integer) value).intValue();
+			return true;
+		}
+
+		@Override
+		void resize(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	private static class LongColumn extends PrimitiveColumn {
+		long[] values = new long[0];
+
+		@Override
+		Object getPrimitive(int row) {
+			return Long.valueOf(values[row]);
+		}
+
+		@Override
+		boolean setPrimitive(int row, Object value) {
+			if (!(value instanceof Long)) return false;
+			values[row] = ((Long) value).longValue();
+			return true;
+		}
+
+		@Override
+		void resize(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	private static class DoubleColumn extends PrimitiveColumn {
+		double[] values = new double[0];
+
+		@Override
+		Object getPrimitive(int row) {
+			return Double.valueOf(values[row]);
+		}
+
+		@Override
+		boolean setPrimitive(int row, Object value) {
+			if (!(value instanceof Double)) return false;
+			values[row] = ((Double) value).doubleValue();
+			return true;
+		}
+
+		@Override
+		void resize(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	/**
+	 * A dictionary encoded String column.  When most of the values are different,
+	 * the dictionary takes more memory than it saves, so the column isn't used for
+	 * more than {@link #MAX_DICTIONARY_SIZE} different values.
+	 */
+	private static class StringColumn extends Column {
+		private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+		// code 0 is null
+		int[] codes = new int[0];
+		List<String> dictionary = new ArrayList<String>();
+		Map<String, Integer> index = new HashMap<String, Integer>();
+
+		StringColumn() {
+			dictionary.add(null);
+		}
+
+		@Override
+		Object get(int row) {
+			return dictionary.get(codes[row]);
+		}
+
+		@Override
+		boolean set(int row, Object value) {
+			if (value == null) {
+				codes[row] = 0;
+				return true;
+			}
+			if (!(value instanceof String)) return false;
+
+			Integer code = index.get(value);
+			if (code == null) {
+				if (dictionary.size() > MAX_DICTIONARY_SIZE) return false;
+				code = Integer.valueOf(dictionary.size());
+				dictionary.add((String) value);
+				index.put((String) value, code);
+			}
+			codes[row] = code.intValue();
+			return true;
+		}
+
+		@Override
+		void resize(int capacity) {
+			codes = Arrays.copyOf(codes, capacity);
+		}
+	}
+
+	private static class ObjectColumn extends Column {
+		Object[] values = new Object[0];
+
+		ObjectColumn() {
+		}
+
+		/**
+		 * Copy the values of another column.
+		 */
+		ObjectColumn(Column column, int rowCount) {
+			values = new Object[rowCount];
+			for (int row = 0; row < rowCount; row++) {
+				values[row] = column.get(row);
+			}
+		}
+
+		@Override
+		Object get(int row) {
+			return values[row];
+		}
+
+		@Override
+		boolean set(int row, Object value) {
+			values[row] = value;
+			return true;
+		}
+
+		@Override
+		void resize(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+}
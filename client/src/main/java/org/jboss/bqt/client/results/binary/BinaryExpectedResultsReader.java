@@ -0,0 +1,203 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.results.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.jboss.bqt.client.ClientPlugin;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.api.ExpectedResults;
+import org.jboss.bqt.client.api.ExpectedResultsReader;
+import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.binary.BinaryFileType;
+import org.jboss.bqt.client.binary.BinaryResultsReader;
+import org.jboss.bqt.client.results.CapturedResult;
+import org.jboss.bqt.client.results.ExpectedResultsCache;
+import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jboss.bqt.client.results.xml.XMLCompareResults;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jboss.bqt.core.exception.QueryTestFailedException;
+import org.jboss.bqt.framework.ActualTest;
+import org.jboss.bqt.framework.TestCase;
+import org.jboss.bqt.framework.TestResult;
+import org.jboss.bqt.framework.TransactionAPI;
+import org.jdom2.JDOMException;
+import org.teiid.core.util.ArgCheck;
+
+/**
+ * BinaryExpectedResultsReader reads the expected results written by {@link BinaryExpectedResultsWriter},
+ * and compares them the same way as the XML expected results.
+ */
+public class BinaryExpectedResultsReader extends ExpectedResultsReader {
+
+	private XMLCompareResults compare;
+	private ExpectedResultsCache cache;
+
+	public BinaryExpectedResultsReader(QueryScenario scenario, String querySetID, Properties props) {
+		super(scenario, querySetID, props);
+
+		File dir = new File(this.getExpectResultsLocation() + File.separator + querySetID);
+		if (!dir.exists()) {
+			if (this.getQueryScenario().isExpectedResultsNeeded()) {
+				throw new FrameworkRuntimeException("Query expected results directory "
+						+ dir.getAbsolutePath() + " does not exist");
+			}
+		} else if (dir.list() == null) {
+			throw new FrameworkRuntimeException("Query expected results directory "
+					+ dir.getAbsolutePath() + " does not contain any files");
+		}
+
+		compare = XMLCompareResults.create(props);
+		cache = ExpectedResultsCache.getInstance(props);
+
+		ClientPlugin.LOGGER.debug("Expected results loc: " + dir.getAbsolutePath());
+	}
+
+	@Override
+	public ExpectedResults getExpectedResults(ActualTest queryTest) {
+		QueryTest test = (QueryTest) queryTest;
+		File er = findExpectedResultsFile(test);
+
+		// only the header is read, the rows are mapped when they are compared
+		ExpectedResultsHolder rh = cache.getHeader(er, test);
+		this.getQueryScenario().getTestResultsSummary().addExpectedResultsLookup(rh != null);
+		if (rh == null) {
+			rh = loadExpectedResultsHeader(test, er);
+			cache.putHeader(er, rh);
+		}
+		return rh;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The header and, when they fit, the rows are read into the {@link ExpectedResultsCache}.
+	 * </p>
+	 */
+	@Override
+	public void prefetch(ActualTest queryTest) {
+		if (!cache.isEnabled()) {
+			return;
+		}
+		final QueryTest test = (QueryTest) queryTest;
+		final File resultsFile = findExpectedResultsFile(test);
+		if (!resultsFile.exists() || cache.containsHeader(resultsFile)) {
+			return;
+		}
+
+		final ExpectedResultsHolder rh = loadExpectedResultsHeader(test, resultsFile);
+		cache.putHeader(resultsFile, rh);
+		if (rh.isResult()) {
+			try {
+				cache.preloadRows(resultsFile, new ExpectedResultsCache.RowReaderFactory() {
+					public ExpectedRowReader open() {
+						return openExpectedResults(resultsFile);
+					}
+				});
+			} catch (IOException e) {
+				throw new FrameworkRuntimeException(
+						"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+			} catch (JDOMException e) {
+				throw new FrameworkRuntimeException(
+						"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+			}
+		}
+	}
+
+	@Override
+	public void compareResults(final TestCase testcase,
+			final TransactionAPI transaction, final CapturedResult actualResults, final ExpectedResults expectedResults,
+			final boolean isOrdered) throws QueryTestFailedException {
+
+		ExpectedResultsHolder holder = (ExpectedResultsHolder) expectedResults;
+
+		if (!holder.isResult() || testcase.getTestResult().getStatus() == TestResult.RESULT_STATE.TEST_EXCEPTION) {
+			// no expected rows are needed to compare exceptions
+			compare.compareResults(testcase, holder, actualResults, isOrdered);
+
+		} else {
+			ExpectedRowReader rows = openExpectedRows(holder);
+			try {
+				if (isOrdered) {
+					compare.compareOrderedResults(testcase, holder, rows, actualResults);
+				} else {
+					compare.compareUnorderedResults(testcase, holder, rows, actualResults);
+				}
+			} finally {
+				rows.close();
+			}
+		}
+	}
+
+	private ExpectedResultsHolder loadExpectedResultsHeader(QueryTest test, File resultsFile) {
+		ArgCheck.isNotNull(resultsFile);
+		BinaryResultsReader reader = openExpectedResults(resultsFile);
+		try {
+			ExpectedResultsHolder expectedResult = reader.readHeader(test);
+			expectedResult.setExpectedResultsFile(resultsFile);
+			return expectedResult;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private ExpectedRowReader openExpectedRows(final ExpectedResultsHolder expectedResults) {
+		try {
+			return cache.openRows(expectedResults.getExpectedResultsFile(), new ExpectedResultsCache.RowReaderFactory() {
+				public ExpectedRowReader open() {
+					return openExpectedResults(expectedResults.getExpectedResultsFile());
+				}
+			});
+		} catch (IOException e) {
+			throw new FrameworkRuntimeException(
+					"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+		} catch (JDOMException e) {
+			throw new FrameworkRuntimeException(
+					"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+		}
+	}
+
+	private BinaryResultsReader openExpectedResults(File resultsFile) {
+		try {
+			return new BinaryResultsReader(resultsFile);
+		} catch (IOException e) {
+			throw new FrameworkRuntimeException(
+					"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+		}
+	}
+
+	private File findExpectedResultsFile(QueryTest test) {
+		String resultFileName = this.getQueryScenario().getFileType().getExpectedResultsFileName(this.getQueryScenario(), test,
+				BinaryFileType.RESULTS_EXTENSION);
+		File file = new File(this.getExpectResultsLocation() + File.separator + this.getQuerySetID(),
+				resultFileName);
+		if (!file.exists() && this.getQueryScenario().isExpectedResultsNeeded()) {
+			throw new FrameworkRuntimeException("Query results file "
+					+ file.getAbsolutePath() + " cannot be found");
+		}
+
+		return file;
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.results.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.jboss.bqt.client.ClientPlugin;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.api.ExpectedResults;
+import org.jboss.bqt.client.api.ExpectedResultsWriter;
+import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.binary.BinaryFileType;
+import org.jboss.bqt.client.binary.BinaryResultsWriter;
+import org.jboss.bqt.client.results.CapturedResult;
+import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jboss.bqt.client.util.AsyncOutputWriter;
+import org.jboss.bqt.client.xml.TagNames;
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.util.ExceptionUtil;
+import org.jboss.bqt.core.util.FileUtils;
+import org.jboss.bqt.framework.TestCase;
+import org.jboss.bqt.framework.TransactionAPI;
+
+/**
+ * BinaryExpectedResultsWriter generates the expected results in the binary format
+ * of the {@link BinaryFileType}.
+ */
+public class BinaryExpectedResultsWriter extends ExpectedResultsWriter {
+
+	public BinaryExpectedResultsWriter(QueryScenario scenario, Properties props) {
+		super(scenario, props);
+
+		File d = new File(getGenerateDir());
+		// a resumed scenario keeps the files of the tests that were already run
+		if (d.exists() && !scenario.isResume()) {
+			FileUtils.removeDirectoryAndChildren(d);
+		}
+		if (!d.exists()) {
+			d.mkdirs();
+		}
+
+		ClientPlugin.LOGGER.info("BinaryExpectedResultsWriter: creating expected results " + d.getAbsolutePath());
+	}
+
+	@Override
+	public ExpectedResults generateExpectedResultFile(TestCase testcase,
+			TransactionAPI transaction, CapturedResult actualResults) throws FrameworkException {
+
+		String querySetID = testcase.getTestResult().getQuerySetID();
+		String queryID = testcase.getTestResult().getQueryID();
+		String query = testcase.getTestResult().getQuery();
+		Throwable ex = testcase.getTestResult().getException();
+
+		String filename = this.getQueryScenario().getFileType().getExpectedResultsFileName(this.getQueryScenario(),
+				(QueryTest) testcase.getActualTest(), BinaryFileType.RESULTS_EXTENSION);
+
+		File resultsFile = createNewResultsFile(querySetID, getGenerateDir(), filename);
+
+		ExpectedResultsHolder rh = null;
+		String resultsName = querySetID + "_" + queryID;
+
+		if (actualResults != null) {
+			rh = new ExpectedResultsHolder(TagNames.Elements.QUERY, (QueryTest) testcase.getActualTest());
+
+			long time = (testcase.getTestResult().getEndTS() - testcase.getTestResult().getBeginTS());
+
+			submitResults(resultsFile, query, resultsName, time, actualResults, null);
+		} else {
+			rh = new ExpectedResultsHolder(TagNames.Elements.EXCEPTION, (QueryTest) testcase.getActualTest());
+			submitResults(resultsFile, query, resultsName, -1, null, ex);
+		}
+
+		rh.setExpectedResultsFile(resultsFile);
+
+		return rh;
+	}
+
+	private void submitResults(final File resultsFile, final String query, final String resultsName,
+			final long time, final CapturedResult captured, final Throwable ex) throws FrameworkException {
+		if (captured != null) {
+			// the rows are read by the output writer
+			captured.retain();
+		}
+		getQueryScenario().getOutputWriter().submit(resultsFile.getName(), new AsyncOutputWriter.Output() {
+			public void write() throws FrameworkException {
+				try {
+					writeResults(resultsFile, query, resultsName, time, captured, ex);
+				} finally {
+					if (captured != null) {
+						captured.release();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Write the captured results, or the exception when there are no results.
+	 */
+	private void writeResults(File resultsFile, String query, String resultsName, long time,
+			CapturedResult captured, Throwable ex) throws FrameworkException {
+		try {
+			BinaryResultsWriter writer = new BinaryResultsWriter();
+
+			if (captured != null) {
+				ExpectedRowReader rows = captured.openRows();
+				try {
+					writer.writeResults(resultsFile, query, resultsName, time,
+							captured.getIdentifiers(), captured.getTypes(), rows);
+				} finally {
+					rows.close();
+				}
+			} else {
+				writer.writeException(resultsFile, query, resultsName, ex);
+			}
+
+		} catch (SQLException e) {
+			throw new FrameworkException(
+					"Failed to convert results: " + e.getMessage()); //$NON-NLS-1$
+		} catch (IOException e) {
+			throw new FrameworkException(
+					"Failed to output new results to " + resultsFile.getPath() + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (Throwable e) {
+			throw new FrameworkException(
+					"Failed to convert results: " + ExceptionUtil.getStackTrace(e)); //$NON-NLS-1$
+		}
+	}
+
+	private File createNewResultsFile(String querySetID, String genDir, String filename) {
+
+		String targetDirname = genDir + File.separator + querySetID; //$NON-NLS-1$
+
+		File dir = new File(targetDirname);
+		if (!dir.exists()) {
+			dir.mkdirs();
+			ClientPlugin.LOGGER.info("BinaryExpectedResultsWriter: creating query set directory " + dir.getAbsolutePath());
+		}
+
+		return new File(targetDirname, filename);
+	}
+
+}
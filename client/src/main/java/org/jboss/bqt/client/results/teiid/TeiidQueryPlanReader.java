@@ -23,6 +23,7 @@
 package org.jboss.bqt.client.results.teiid;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Properties;
@@ -32,6 +33,7 @@ import org.jboss.bqt.client.QueryTest;
 import org.jboss.bqt.client.api.ExpectedResults;
 import org.jboss.bqt.client.api.ExpectedResultsReader;
 import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.results.CapturedResult;
 import org.jboss.bqt.core.exception.FrameworkRuntimeException;
 import org.jboss.bqt.core.exception.QueryTestFailedException;
 import org.jboss.bqt.framework.AbstractQuery;
@@ -83,6 +85,34 @@ public class TeiidQueryPlanReader extends ExpectedResultsReader {
 		return es;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The query plan file is read, so the comparison reads it from the file system cache.
+	 * </p>
+	 */
+	@Override
+	public void prefetch(ActualTest queryTest) {
+		String resultFileName = this.getQueryScenario().getFileType().getExpectedResultsFileName(this.getQueryScenario(), (QueryTest) queryTest, ".pln");
+		File file = new File(this.getExpectResultsLocation() + File.separator + this.getQuerySetID(),
+				resultFileName);
+		if (!file.exists()) {
+			return;
+		}
+		try {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				byte[] buffer = new byte[8192];
+				while (in.read(buffer) != -1) {
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new FrameworkRuntimeException(e);
+		}
+	}
+
 	/**
 	 * Compare the results of a query with those that were expected.
 	 * @param testcase 
@@ -95,7 +125,8 @@ public class TeiidQueryPlanReader extends ExpectedResultsReader {
 	 */
 	@Override
 	public void compareResults(final TestCase testcase,
-			final TransactionAPI transaction, final ExpectedResults expectedResults, final boolean isOrdered) throws QueryTestFailedException {
+			final TransactionAPI transaction, final CapturedResult actualResults, final ExpectedResults expectedResults,
+			final boolean isOrdered) throws QueryTestFailedException {
 
 		// no processing of exceptions, will already have been handled
 		if (testcase.getTestResult().isFailure()) {
@@ -30,6 +30,7 @@ import org.jboss.bqt.client.QueryTest;
 import org.jboss.bqt.client.api.ExpectedResults;
 import org.jboss.bqt.client.api.ExpectedResultsWriter;
 import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.results.CapturedResult;
 import org.jboss.bqt.client.results.ExpectedResultsHolder;
 import org.jboss.bqt.client.xml.TagNames;
 import org.jboss.bqt.core.exception.FrameworkException;
@@ -66,7 +67,7 @@ public class TeiidQueryPlanWriter extends ExpectedResultsWriter{
 
 	@Override
 	public ExpectedResults generateExpectedResultFile(TestCase testcase,
-				TransactionAPI transaction) throws FrameworkException {
+				TransactionAPI transaction, CapturedResult actualResults) throws FrameworkException {
 		
 		// no processing of exceptions, will already have been handled
 		if (testcase.getTestResult().isFailure()) {
@@ -23,18 +23,21 @@
 package org.jboss.bqt.client.results.xml;
 
 import java.awt.PageAttributes.OriginType;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.sql.Blob;
 import java.sql.Clob;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
-import java.sql.SQLException;
 import java.sql.SQLXML;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -44,25 +47,35 @@ import org.jboss.bqt.client.ClientPlugin;
 import org.jboss.bqt.client.QueryTest;
 import org.jboss.bqt.client.TestProperties;
 import org.jboss.bqt.client.api.ExpectedResults;
+import org.jboss.bqt.client.results.CapturedResult;
 import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jboss.bqt.client.results.ResultColumns;
+import org.jboss.bqt.client.util.ExternalRowSorter;
 import org.jboss.bqt.client.util.ListNestedSortComparator;
 import org.jboss.bqt.client.xml.TagNames;
+import org.jboss.bqt.client.xml.XMLResultsStreamReader;
 import org.jboss.bqt.core.exception.FrameworkRuntimeException;
 import org.jboss.bqt.core.exception.MultiTestFailedException;
 import org.jboss.bqt.core.exception.QueryTestFailedException;
 import org.jboss.bqt.core.util.ExceptionUtil;
 import org.jboss.bqt.core.util.ObjectConverterUtil;
-import org.jboss.bqt.framework.ConfigPropertyLoader;
 import org.jboss.bqt.framework.TestCase;
 import org.jboss.bqt.framework.TestResult;
+import org.jdom2.JDOMException;
 
 public class XMLCompareResults {
 	private static String newline = System.getProperty("line.separator"); //$NON-NLS-1$
 	
-	private static double exceed_percent = -0.99999;
-	private static long exec_minumin_time = -1;
-	private static BigDecimal allowedDivergence = null;
-	private static boolean allowedDivergenceIsZero = false;
+	private double exceed_percent = -0.99999;
+	private long exec_minumin_time = -1;
+	private BigDecimal allowedDivergence = BigDecimal.ZERO;
+	private boolean allowedDivergenceIsZero = true;
+	private int sort_max_rows = DEFAULT_SORT_MAX_ROWS;
+	private boolean unordered_hash = false;
+	private File sort_dir;
+
+	private static final int DEFAULT_SORT_MAX_ROWS = 200000;
 
 	private XMLCompareResults(Properties props) {
 		
@@ -81,6 +94,33 @@ public class XMLCompareResults {
 		}		
 		// if exceed percent was set and exec time was not, set exec time to minimum of 1 mil
 		if (exceed_percent > 0 && exec_minumin_time < 0) exec_minumin_time = 1;
+		
+		// the same divergence is used for all the queries in the scenario
+		String allowedDivergenceStr = props.getProperty(TestProperties.ALLOWED_DIVERGENCE);
+		if(allowedDivergenceStr != null && !allowedDivergenceStr.isEmpty()){
+			try{
+				allowedDivergence = new BigDecimal(allowedDivergenceStr);
+				allowedDivergenceIsZero = allowedDivergence.compareTo(BigDecimal.ZERO) == 0;
+			} catch (NumberFormatException ex){
+				allowedDivergence = BigDecimal.ZERO;
+				allowedDivergenceIsZero = true;
+			}
+		}
+
+		String sortMax = props.getProperty(TestProperties.PROP_COMPARE_SORT_MAX_ROWS);
+		if (sortMax != null && sortMax.trim().length() > 0) {
+			sort_max_rows = Integer.parseInt(sortMax.trim());
+		}
+		String unordered = props.getProperty(TestProperties.PROP_COMPARE_UNORDERED, TestProperties.COMPARE_UNORDERED.SORT);
+		if (unordered.trim().equalsIgnoreCase(TestProperties.COMPARE_UNORDERED.HASH)) {
+			unordered_hash = true;
+		} else if (!unordered.trim().equalsIgnoreCase(TestProperties.COMPARE_UNORDERED.SORT)) {
+			throw new FrameworkRuntimeException("Invalid " + TestProperties.PROP_COMPARE_UNORDERED + " of " + unordered
+					+ ", must be " + TestProperties.COMPARE_UNORDERED.SORT + " or " + TestProperties.COMPARE_UNORDERED.HASH);
+		}
+
+		String testrunDir = props.getProperty(TestProperties.PROP_TESTRUN_DIR);
+		sort_dir = new File(testrunDir != null ? testrunDir : System.getProperty("java.io.tmpdir"), "sort"); //$NON-NLS-1$ //$NON-NLS-2$
 	
 	}
 
@@ -94,14 +134,14 @@ public class XMLCompareResults {
 	 * Compare the results of a query with those that were expected.
 	 * @param testcase 
 	 * @param expResults 
-	 * @param resultSet 
+	 * @param actual the captured rows of the results, may be null
 	 * @param isOrdered 
 	 * 
 	 * @throws QueryTestFailedException
 	 *             If comparison fails.
 	 */
 	public void compareResults(final TestCase testcase, ExpectedResults expResults,
-			final ResultSet resultSet, final boolean isOrdered) throws QueryTestFailedException {
+			final CapturedResult actual, final boolean isOrdered) throws QueryTestFailedException {
 		
 		final String eMsg = "CompareResults Error: "; //$NON-NLS-1$
 		
@@ -165,20 +205,9 @@ public class XMLCompareResults {
 //			 ClientPlugin.LOGGER.info("*** 2 Actual Results (ResultSet): " +
 //			 actualResults);
 			
-			convertResults(resultSet, testcase.getTestResult().getUpdateCount(), actualResults);
+			convertResults(actual, actualResults);
 
-			if (expResults.isExceptionExpected()) {
-				throw new QueryTestFailedException(eMsg + expectedResults.getExceptionClassName()
-						+ " expected but not thrown, returned " + actualResults.getRows().size() + " rows.");
-			}
-
-			if (expectedResults.getRows().size() > 0) {
-				compareResults(testcase, actualResults, expectedResults, eMsg, isOrdered);
-			} else if (actualResults.getRows() != null
-					&& actualResults.getRows().size() > 0) {
-				throw new QueryTestFailedException(
-						eMsg + "Expected results indicated no results, but actual shows " + actualResults.getRows().size() + " rows."); //$NON-NLS-1$	      		    		      		    
-			}
+			compareRows(testcase, actualResults, expectedResults, eMsg, isOrdered);
 
 			// DEBUG:
 			// debugOut.println("*** Actual Results (holder): " +
@@ -191,6 +220,353 @@ public class XMLCompareResults {
 		}
 	}
 
+	/**
+	 * Compare the rows of the actual results, that were read in memory, with those that were expected.
+	 */
+	private void compareRows(final TestCase testcase, final ExpectedResultsHolder actualResults,
+			final ExpectedResultsHolder expectedResults, final String eMsg, final boolean isOrdered)
+			throws QueryTestFailedException {
+
+		if (expectedResults.isExceptionExpected()) {
+			throw new QueryTestFailedException(eMsg + expectedResults.getExceptionClassName()
+					+ " expected but not thrown, returned " + actualResults.getRows().size() + " rows.");
+		}
+
+		if (expectedResults.getRows().size() > 0) {
+			compareResults(testcase, actualResults, expectedResults, eMsg, isOrdered);
+		} else if (actualResults.getRows() != null
+				&& actualResults.getRows().size() > 0) {
+			throw new QueryTestFailedException(
+					eMsg + "Expected results indicated no results, but actual shows " + actualResults.getRows().size() + " rows."); //$NON-NLS-1$	      		    		      		    
+		}
+	}
+
+	/**
+	 * Compare the results of an ordered query with those that were expected, by reading the
+	 * <code>actual</code> and the <code>expectedRows</code> in lock step.  Only the current
+	 * row of the expected results is held in memory, so the memory used doesn't depend on their size.
+	 * <p>
+	 * The failures are reported the same way as by {@link #compareResults(TestCase, ExpectedResults, CapturedResult, boolean)}
+	 * with <code>isOrdered</code> set to true.
+	 * </p>
+	 * @param testcase 
+	 * @param expResults the expected results read by {@link XMLResultsStreamReader#readHeader(QueryTest)}
+	 * @param expectedRows positioned on the first expected row
+	 * @param actual the captured rows of the results, may be null
+	 * 
+	 * @throws QueryTestFailedException
+	 *             If comparison fails.
+	 */
+	public void compareOrderedResults(final TestCase testcase, ExpectedResults expResults,
+			final ExpectedRowReader expectedRows, final CapturedResult actual) throws QueryTestFailedException {
+
+		if (testcase.getTestResult().getStatus() == TestResult.RESULT_STATE.TEST_EXCEPTION
+				|| expResults.isExceptionExpected()) {
+			// there are no rows to stream
+			compareResults(testcase, expResults, actual, true);
+			return;
+		}
+
+		final String eMsg = "CompareResults Error: "; //$NON-NLS-1$
+		ExpectedResultsHolder expectedResults = (ExpectedResultsHolder) expResults;
+
+		CapturedRows actualRows = new CapturedRows(actual);
+		try {
+			compareRows(testcase, actualRows, actualRows.getIdentifiers(), actualRows.getTypes(),
+					new ExpectedRows(expectedRows), expectedResults, eMsg);
+		} finally {
+			actualRows.close();
+		}
+	}
+
+	/**
+	 * Compare the results of an unordered query with those that were expected.  When
+	 * either results has more than {@link TestProperties#PROP_COMPARE_SORT_MAX_ROWS} rows, both are sorted
+	 * by an {@link ExternalRowSorter}, that writes the rows it can't keep in memory to files under the
+	 * {@link TestProperties#PROP_TESTRUN_DIR}, and the sorted rows are compared in lock step.  Otherwise
+	 * the rows are compared in memory, the same as by {@link #compareResults(TestCase, ExpectedResults, CapturedResult, boolean)}.
+	 * @param testcase 
+	 * @param expResults the expected results read by {@link XMLResultsStreamReader#readHeader(QueryTest)}
+	 * @param expectedRows positioned on the first expected row
+	 * @param actual the captured rows of the results, may be null
+	 * 
+	 * @throws QueryTestFailedException
+	 *             If comparison fails.
+	 */
+	public void compareUnorderedResults(final TestCase testcase, ExpectedResults expResults,
+			final ExpectedRowReader expectedRows, final CapturedResult actual) throws QueryTestFailedException {
+
+		if (testcase.getTestResult().getStatus() == TestResult.RESULT_STATE.TEST_EXCEPTION
+				|| expResults.isExceptionExpected()) {
+			// there are no rows to sort
+			compareResults(testcase, expResults, actual, false);
+			return;
+		}
+
+		CapturedRows actualRows = new CapturedRows(actual);
+		try {
+			compareUnorderedResults(testcase, (ExpectedResultsHolder) expResults, actualRows,
+					new ExpectedRows(expectedRows));
+		} finally {
+			actualRows.close();
+		}
+	}
+
+	private void compareUnorderedResults(final TestCase testcase, ExpectedResultsHolder expectedResults,
+			CapturedRows actual, RowSource expected) throws QueryTestFailedException {
+
+		final String eMsg = "CompareResults Error: "; //$NON-NLS-1$
+
+		final List<String> actualIdentifiers = actual.getIdentifiers();
+		final List<String> actualTypes = actual.getTypes();
+		final int colCount = actualIdentifiers.size();
+
+		int limit = (sort_max_rows > 0 ? sort_max_rows : Integer.MAX_VALUE);
+		List<List<Object>> actualRows = actual.read(limit);
+		List<List<Object>> expectedRowList = expected.read(limit);
+
+		if (actualRows.size() < limit && expectedRowList.size() < limit) {
+			// both results fit in memory
+			ExpectedResultsHolder actualResults = new ExpectedResultsHolder(TagNames.Elements.QUERY_RESULTS, (QueryTest) testcase.getActualTest());
+			actualResults.setExecutionTime(testcase.getTestResult().getExecutionTime());
+			actualResults.setRows(actualRows);
+			actualResults.setIdentifiers(actualIdentifiers);
+			actualResults.setTypes(actualTypes);
+
+			expectedResults.setRows(expectedRowList);
+			try {
+				compareRows(testcase, actualResults, expectedResults, eMsg, false);
+			} finally {
+				expectedResults.setRows(null);
+			}
+			return;
+		}
+
+		ClientPlugin.LOGGER.debug("Sorting results of " + expectedResults.getQuerySetID() + ":" + expectedResults.getQueryID()
+				+ " on disk, more than " + sort_max_rows + " rows");
+
+		Comparator<List<Object>> comparator = createSortComparator(colCount, colCount, true);
+		ExternalRowSorter actualSorter = new ExternalRowSorter(comparator, sort_max_rows, sort_dir);
+		ExternalRowSorter expectedSorter = new ExternalRowSorter(comparator, sort_max_rows, sort_dir);
+		try {
+			addRows(actualSorter, actualRows, actual);
+			addRows(expectedSorter, expectedRowList, expected);
+
+			compareRows(testcase, new SortedRows(actualSorter.sort()), actualIdentifiers, actualTypes,
+					new SortedRows(expectedSorter.sort()), expectedResults, eMsg);
+
+		} catch (IOException e) {
+			throw new FrameworkRuntimeException(
+					"Unable to sort results: " + e.getMessage()); //$NON-NLS-1$
+		} finally {
+			actualSorter.close();
+			expectedSorter.close();
+		}
+	}
+
+	/**
+	 * Add the rows already read, then the rest of the source, to the sorter.
+	 */
+	private static void addRows(ExternalRowSorter sorter, List<List<Object>> rows, RowSource source)
+			throws QueryTestFailedException, IOException {
+		for (int i = 0; i < rows.size(); i++) {
+			sorter.add(toSortableRow(rows.get(i)));
+		}
+		rows.clear();
+		for (List<Object> row = source.next(); row != null; row = source.next()) {
+			sorter.add(toSortableRow(row));
+		}
+	}
+
+	/**
+	 * Convert the values, so the row can be written by the {@link ExternalRowSorter}.
+	 */
+	private static List<Object> toSortableRow(List<Object> row) throws QueryTestFailedException {
+		List<Object> sortable = new ArrayList<Object>(row.size());
+		for (int col = 0; col < row.size(); col++) {
+			Object value = getLobValue(row.get(col));
+			if (value != null && !(value instanceof Serializable)) {
+				value = value.toString();
+			}
+			sortable.add(value);
+		}
+		return sortable;
+	}
+
+	/**
+	 * Compare the rows of both sources in lock step.
+	 */
+	private void compareRows(final TestCase testcase, RowSource actual,
+			List<String> actualIdentifiers, List<String> actualTypes, RowSource expected,
+			final ExpectedResultsHolder expectedResults, final String eMsg) throws QueryTestFailedException {
+
+		final int colCount = actualIdentifiers.size();
+
+		MultiTestFailedException multiException = new MultiTestFailedException();
+		int row = 0;
+
+		List<Object> expectedRecord = expected.next();
+		List<Object> actualRecord = actual.next();
+
+		if (expectedRecord == null) {
+			if (actualRecord != null) {
+				long actualRowCount = 1;
+				while (actual.next() != null) {
+					actualRowCount++;
+				}
+				throw new QueryTestFailedException(
+						eMsg + "Expected results indicated no results, but actual shows " + actualRowCount + " rows."); //$NON-NLS-1$
+			}
+			return;
+		}
+
+		// Compare column names and types
+		compareIdentifiers(actualIdentifiers, expectedResults.getIdentifiers(),
+				actualTypes, expectedResults.getTypes());
+
+		while (expectedRecord != null && actualRecord != null) {
+			for (int col = 0; col < colCount; col++) {
+				try {
+					compareResultColumn(actualRecord.get(col), expectedRecord.get(col), row, col,
+							row, row, eMsg);
+				} catch (QueryTestFailedException e) {
+					multiException.addFailure(e);
+				}
+			}
+			row++;
+
+			expectedRecord = expected.next();
+			actualRecord = actual.next();
+		}
+
+		// count the rest of the longer results
+		long actualRowCount = row;
+		for (; actualRecord != null; actualRecord = actual.next()) {
+			actualRowCount++;
+		}
+		long expectedRowCount = row;
+		for (; expectedRecord != null; expectedRecord = expected.next()) {
+			expectedRowCount++;
+		}
+
+		// a different number of rows is reported instead of the mismatched values
+		if (actualRowCount < expectedRowCount) {
+			throw new QueryTestFailedException(eMsg
+					+ "Expected " + expectedRowCount + //$NON-NLS-1$
+					" records but received only " + actualRowCount); //$NON-NLS-1$
+		} else if (actualRowCount > expectedRowCount) {
+			throw new QueryTestFailedException(eMsg
+					+ "Expected " + expectedRowCount + //$NON-NLS-1$
+					" records but received " + actualRowCount); //$NON-NLS-1$
+		}
+
+		if (multiException.getTotalFailures() == 1) {
+			throw multiException.getFailures().get(0);
+		} else if (multiException.getTotalFailures() > 1) {
+			throw multiException;
+		}
+
+		compareExecutionTime(testcase, testcase.getTestResult().getExecutionTime(), expectedResults, eMsg);
+	}
+
+	/**
+	 * The rows compared in lock step, <code>next</code> returns null when there are no more rows.
+	 */
+	private static abstract class RowSource {
+		abstract List<Object> next() throws QueryTestFailedException;
+
+		List<List<Object>> read(int max) throws QueryTestFailedException {
+			List<List<Object>> rows = new ResultColumns();
+			List<Object> row;
+			while (rows.size() < max && (row = next()) != null) {
+				rows.add(row);
+			}
+			return rows;
+		}
+	}
+
+	/**
+	 * The rows of the captured results, there are none when nothing was captured.
+	 */
+	private static class CapturedRows extends RowSource {
+		private CapturedResult actual;
+		private ExpectedRowReader reader;
+
+		CapturedRows(CapturedResult actual) {
+			this.actual = actual;
+			this.reader = (actual == null ? null : actual.openRows());
+		}
+
+		List<String> getIdentifiers() {
+			return (actual == null ? Collections.<String> emptyList() : actual.getIdentifiers());
+		}
+
+		List<String> getTypes() {
+			return (actual == null ? Collections.<String> emptyList() : actual.getTypes());
+		}
+
+		@Override
+		List<Object> next() throws QueryTestFailedException {
+			if (reader == null) {
+				return null;
+			}
+			try {
+				return reader.nextRow();
+			} catch (IOException e) {
+				throw new QueryTestFailedException(e,
+						"Can't get results: " + e.getMessage()); //$NON-NLS-1$
+			} catch (JDOMException e) {
+				throw new QueryTestFailedException(e,
+						"Can't get results: " + e.getMessage()); //$NON-NLS-1$
+			}
+		}
+
+		void close() {
+			if (reader != null) {
+				reader.close();
+			}
+		}
+	}
+
+	private static class ExpectedRows extends RowSource {
+		private ExpectedRowReader reader;
+
+		ExpectedRows(ExpectedRowReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		List<Object> next() {
+			try {
+				return reader.nextRow();
+			} catch (IOException e) {
+				throw new FrameworkRuntimeException(
+						"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+			} catch (JDOMException e) {
+				throw new FrameworkRuntimeException(
+						"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+			}
+		}
+	}
+
+	private static class SortedRows extends RowSource {
+		private ExternalRowSorter.SortedRows rows;
+
+		SortedRows(ExternalRowSorter.SortedRows rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		List<Object> next() {
+			try {
+				return rows.next();
+			} catch (IOException e) {
+				throw new FrameworkRuntimeException(
+						"Unable to sort results: " + e.getMessage()); //$NON-NLS-1$
+			}
+		}
+	}
+
 	/**
 	 * The use of REMOVE_PREFIX is a hack to strip down the message so that it matches
 	 * what is currently in use.
@@ -211,74 +587,29 @@ public class XMLCompareResults {
 
 
 	/**
-	 * Helper to convert results into records and record first batch response
-	 * time.
+	 * Helper to read the captured rows into the records of the results holder.
 	 * 
-	 * @param results
-	 * @param batchSize
+	 * @param actual
+	 *            may be null, when there are no results
 	 * @param resultsHolder
 	 *            Modified - results added by this method.
-	 * @return List of sorted results.
 	 * @throws QueryTestFailedException
-	 *             replaced SQLException.
+	 *             if the captured rows can't be read.
 	 */
-	private static final long convertResults(final ResultSet results,
-			final long batchSize, ExpectedResultsHolder resultsHolder)
-			throws QueryTestFailedException {
-
-		long firstBatchResponseTime = 0;
-		final List<List<Object>> records = new ArrayList<List<Object>>();
-		final List<String> columnTypeNames = new ArrayList<String>();
-		final List<String> columnTypes = new ArrayList<String>();
-
-		final ResultSetMetaData rsMetadata;
-		final int colCount;
-
-		if (results != null) {
-			// Get column info
-			try {
-				rsMetadata = results.getMetaData();
-				colCount = rsMetadata.getColumnCount();
-				// Read types of all columns
-				for (int col = 1; col <= colCount; col++) {
-					columnTypeNames.add(rsMetadata.getColumnName(col));
-					columnTypes.add(rsMetadata.getColumnTypeName(col));
-				}
-			} catch (SQLException qre) {
-				throw new QueryTestFailedException(qre,
-						"Can't get results metadata: " + qre.getMessage()); //$NON-NLS-1$
-			}
-	
-			// Get rows
-			try {
-				// Read all the rows
-				for (int row = 0; results.next(); row++) {
-					final List<Object> currentRecord = new ArrayList<Object>(colCount);
-					// Read values for this row
-					for (int col = 1; col <= colCount; col++) {
-						currentRecord.add(results.getObject(col));
-					}
-					records.add(currentRecord);
-					// If this row is the (fetch size - 1)th row, record first batch
-					// response time
-					if (row == batchSize) {
-						firstBatchResponseTime = System.currentTimeMillis();
-					}
-				}
-			} catch (SQLException qre) {
-				throw new QueryTestFailedException(qre,
-						"Can't get results: " + qre.getMessage()); //$NON-NLS-1$
-			}
+	private static final void convertResults(final CapturedResult actual,
+			ExpectedResultsHolder resultsHolder) throws QueryTestFailedException {
+
+		CapturedRows rows = new CapturedRows(actual);
+		try {
+			List<List<Object>> records = rows.read(Integer.MAX_VALUE);
+
+			// Set info on resultsHolder
+			resultsHolder.setRows(records);
+			resultsHolder.setIdentifiers(new ArrayList<String>(rows.getIdentifiers()));
+			resultsHolder.setTypes(new ArrayList<String>(rows.getTypes()));
+		} finally {
+			rows.close();
 		}
-
-
-
-		// Set info on resultsHolder
-		resultsHolder.setRows(records);
-		resultsHolder.setIdentifiers(columnTypeNames);
-		resultsHolder.setTypes(columnTypes);
-
-		return firstBatchResponseTime;
 	}
 	
 	/**
@@ -291,7 +622,7 @@ public class XMLCompareResults {
 	 * @param isOrdered
 	 * @throws QueryTestFailedException
 	 */
-	private static void compareResults(final TestCase testCase, final ExpectedResultsHolder actualResults,
+	private void compareResults(final TestCase testCase, final ExpectedResultsHolder actualResults,
 			final ExpectedResultsHolder expectedResults, final String eMsg,
 			boolean isOrdered) throws QueryTestFailedException {
 		// if (actualResults.isException() && expectedResults.isException()) {
@@ -301,40 +632,41 @@ public class XMLCompareResults {
 
 		// if (actualResults.isResult() && expectedResults.isResult()) {
 		// Compare results
-	    final List<List<Object>> originalExpectedRows = cloneList(expectedResults.getRows());
-	    final List<List<Object>> originalActualRows = cloneList(actualResults.getRows());
+		if (isOrdered == false && unordered_hash && allowedDivergenceIsZero
+				&& actualResults.hasRows() && expectedResults.hasRows()) {
+			// the allowed divergence can't be hashed, so those are sorted
+			compareHashedResultSets(actualResults.getRows(), actualResults.getTypes(), actualResults.getIdentifiers(),
+					expectedResults.getRows(), expectedResults.getTypes(), expectedResults.getIdentifiers(), eMsg);
+
+			compareExecutionTime(testCase, actualResults.getExecutionTime(), expectedResults, eMsg);
+			return;
+		}
+
+		// the rows are compared in the order of these indexes, so the results aren't changed
+		List<Integer> actualOrder = null;
+		List<Integer> expectedOrder = null;
 		if (isOrdered == false && actualResults.hasRows()
 				&& expectedResults.hasRows()) {
 			// If the results are not ordered, we can sort both
 			// results and expected results to compare record for record
 			// Otherwise, actual and expected results are already assumed
 			// to be in same order
+			actualOrder = sortRecords(actualResults.getRows(), true);
+			expectedOrder = sortRecords(expectedResults.getRows(), true);
+		}
+		compareResultSets(actualResults.getRows(), actualOrder,
+				actualResults.getTypes(), actualResults.getIdentifiers(),
+				expectedResults.getRows(), expectedOrder,
+				expectedResults.getTypes(), expectedResults.getIdentifiers(),
+				eMsg);
 
-			// sort the sortedResults in ascending order
-			final List<List<Object>> actualRows = actualResults.getRows();
-			sortRecords(actualRows, true);
-			actualResults.setRows(actualRows);
+		compareExecutionTime(testCase, actualResults.getExecutionTime(), expectedResults, eMsg);
+	}
 
-			// sort the expectedResults with ascending order
-			final List<List<Object>> expectedRows = expectedResults.getRows();
-			sortRecords(expectedRows, true);
-			expectedResults.setRows(expectedRows);
-		}
-		try{
-    		compareResultSets(actualResults.getRows(), originalActualRows,
-    		        actualResults.getTypes(), actualResults.getIdentifiers(),
-    		        expectedResults.getRows(), originalExpectedRows,
-    				expectedResults.getTypes(), expectedResults.getIdentifiers(),
-    				eMsg);
-	    } finally {
-            expectedResults.setRows(originalExpectedRows);
-            actualResults.setRows(originalActualRows);
-	    }
-		
-		long a = actualResults.getExecutionTime();
+	private void compareExecutionTime(final TestCase testCase, long a,
+			final ExpectedResultsHolder expectedResults, final String eMsg) {
 		long e = expectedResults.getExecutionTime();
 
-		
 		if (exec_minumin_time > 0 && e > exec_minumin_time &&  a > e) {
 				double allowediff = e * (exceed_percent / 100);
 				ClientPlugin.LOGGER.info("EXEC MIN TIME: " + exec_minumin_time + "  EXEC PER: " + exceed_percent + "  expected exec time: " + expectedResults.getExecutionTime());
@@ -354,33 +686,41 @@ public class XMLCompareResults {
 		}
 	}
 
-	private static <T> List<T> cloneList(List<T> list){
-	    if(list == null){
-	        return null;
-	    }
-	    return new ArrayList<T>(list);
-	    
-	}
-	
 	/**
 	 * sort one result that is composed of records of all columns
 	 * @param records 
 	 * @param ascending 
+	 * @return the indexes of the records, in sorted order
 	 */
-	private static void sortRecords(List<List<Object>> records, boolean ascending) {
+	private static List<Integer> sortRecords(List<List<Object>> records, boolean ascending) {
+		List<Integer> indexes = new ArrayList<Integer>(records.size());
+		for (int i = 0; i < records.size(); i++) {
+			indexes.add(Integer.valueOf(i));
+		}
 		// if record's size == 0, don't need to sort
 		if (records.size() != 0) {
 			int nFields = records.get(0).size();
-			int[] params = new int[  ( nFields > 3 ? 3 : nFields ) ];
-			for (int k = 0, j = 0; k < params.length; k++, j++) {
-				params[j] = k;
-
-			}
 			if (nFields > 0) {
-				Collections.sort(records, new ListNestedSortComparator(
-					params, ascending));
+				sortIndexes(indexes, records, createSortComparator(nFields, ascending));
 			}
 		}
+		return indexes;
+	}
+
+	/**
+	 * The rows of unordered results are sorted on their first 3 columns.
+	 */
+	private static ListNestedSortComparator createSortComparator(int nFields, boolean ascending) {
+		return createSortComparator(nFields, 3, ascending);
+	}
+
+	private static ListNestedSortComparator createSortComparator(int nFields, int maxFields, boolean ascending) {
+		int[] params = new int[  ( nFields > maxFields ? maxFields : nFields ) ];
+		for (int k = 0, j = 0; k < params.length; k++, j++) {
+			params[j] = k;
+
+		}
+		return new ListNestedSortComparator(params, ascending);
 	}
 
 	private static void compareExceptions(final ExpectedResultsHolder actualResults,
@@ -462,7 +802,50 @@ public class XMLCompareResults {
 		return true;
 	}
 
-	private static void compareResultColumn(Object actualValue, Object expectedValue, int row, int col,
+	/**
+	 * Read the value of a Clob, Blob or SQLXML, or the text of a captured object, as it is compared.
+	 * Other values are returned as they are.
+	 * @param actualValue
+	 * @return Object
+	 * @throws QueryTestFailedException
+	 */
+	private static Object getLobValue(Object actualValue) throws QueryTestFailedException {
+		if (actualValue instanceof Clob) {
+			Clob c = (Clob) actualValue;
+			try {
+				actualValue = ObjectConverterUtil.convertToString(c.getAsciiStream());
+
+			} catch (Throwable e) {
+				throw new QueryTestFailedException(e);
+			}
+		} else if (actualValue instanceof Blob) {
+			Blob b = (Blob) actualValue;
+			try {
+				byte[] ba = ObjectConverterUtil.convertToByteArray(b.getBinaryStream());
+
+				actualValue = String.valueOf(ba.length);
+
+				// actualValue =
+				// ObjectConverterUtil.convertToString(b.getBinaryStream());
+
+			} catch (Throwable e) {
+				throw new QueryTestFailedException(e);
+			}
+		} else if (actualValue instanceof SQLXML) {
+			SQLXML s = (SQLXML) actualValue;
+			try {
+				actualValue = ObjectConverterUtil.convertToString(s.getBinaryStream());
+
+			} catch (Throwable e) {
+				throw new QueryTestFailedException(e);
+			}
+		} else if (actualValue instanceof CapturedResult.ObjectValue) {
+			actualValue = actualValue.toString();
+		}
+		return actualValue;
+	}
+
+	private void compareResultColumn(Object actualValue, Object expectedValue, int row, int col,
 	        int actualResultRow, int expectedResultRow, final String eMsg) throws QueryTestFailedException {
 
 	    actualResultRow += 1;
@@ -488,38 +871,10 @@ public class XMLCompareResults {
 			return;
 		}
 
-		if (actualValue instanceof Blob || actualValue instanceof Clob || actualValue instanceof SQLXML) {
-
-			if (actualValue instanceof Clob) {
-				Clob c = (Clob) actualValue;
-				try {
-					actualValue = ObjectConverterUtil.convertToString(c.getAsciiStream());
+		if (actualValue instanceof Blob || actualValue instanceof Clob || actualValue instanceof SQLXML
+				|| actualValue instanceof CapturedResult.ObjectValue) {
 
-				} catch (Throwable e) {
-					throw new QueryTestFailedException(e);
-				}
-			} else if (actualValue instanceof Blob) {
-				Blob b = (Blob) actualValue;
-				try {
-					byte[] ba = ObjectConverterUtil.convertToByteArray(b.getBinaryStream());
-
-					actualValue = String.valueOf(ba.length);
-
-					// actualValue =
-					// ObjectConverterUtil.convertToString(b.getBinaryStream());
-
-				} catch (Throwable e) {
-					throw new QueryTestFailedException(e);
-				}
-			} else if (actualValue instanceof SQLXML) {
-				SQLXML s = (SQLXML) actualValue;
-				try {
-					actualValue = ObjectConverterUtil.convertToString(s.getBinaryStream());
-
-				} catch (Throwable e) {
-					throw new QueryTestFailedException(e);
-				}
-			}
+			actualValue = getLobValue(actualValue);
 
 			if (!(expectedValue instanceof String)) {
 				expectedValue = expectedValue.toString();
@@ -609,10 +964,10 @@ public class XMLCompareResults {
 	 * @throws QueryTestFailedException
 	 *             If comparison fails.
 	 */
-	private static void compareResultSets(
-	        final List<List<Object>> actualResults, final List<List<Object>> originalActualResults, 
+	private void compareResultSets(
+			final List<List<Object>> actualResults, final List<Integer> actualOrder,
 			final List<String> actualDatatypes, final List<String> actualIdentifiers,
-			final List<List<Object>> expectedResults, final List<List<Object>> originalExpectedResults,
+			final List<List<Object>> expectedResults, final List<Integer> expectedOrder,
 			final List<String> expectedDatatypes, final List<String> expectedIdentifiers,
 			final String eMsg)
 			throws QueryTestFailedException {
@@ -641,32 +996,20 @@ public class XMLCompareResults {
 		// DEBUG:
 		// debugOut.println("================== Compariing Rows ===================");
 		
-		if(allowedDivergence == null){ // we do not allow different divergence for different queries
-			String allowedDivergenceStr = ConfigPropertyLoader.getInstance().getProperty(TestProperties.ALLOWED_DIVERGENCE);
-			if(allowedDivergenceStr == null || allowedDivergenceStr.isEmpty()){
-				allowedDivergence = BigDecimal.ZERO;
-				allowedDivergenceIsZero = true;
-			} else {
-				try{
-					allowedDivergence = new BigDecimal(allowedDivergenceStr);
-					allowedDivergenceIsZero = allowedDivergence.compareTo(BigDecimal.ZERO) == 0;
-				} catch (NumberFormatException ex){
-					allowedDivergence = BigDecimal.ZERO;
-					allowedDivergenceIsZero = true;
-				}
-			}
-		}
-		
 		MultiTestFailedException multiException = new MultiTestFailedException();
 		
 		// Loop through rows
 		for (int row = 0; row < actualRowCount; row++) {
 
+			// the index of the records in the results, which differs from row when sorted
+			final int actualRow = (actualOrder == null ? row : actualOrder.get(row).intValue());
+			final int expectedRow = (expectedOrder == null ? row : expectedOrder.get(row).intValue());
+
 			// Get actual record
-			final List<Object> actualRecord = actualResults.get(row);
+			final List<Object> actualRecord = actualResults.get(actualRow);
 
 			// Get expected record
-			final List<Object> expectedRecord = expectedResults.get(row);
+			final List<Object> expectedRecord = expectedResults.get(expectedRow);
 
 			// DEBUG:
 			// debugOut.println("Row: " + (row + 1));
@@ -683,9 +1026,7 @@ public class XMLCompareResults {
 
 				try {
 					compareResultColumn(actualValue, expectedValue, row, col,
-					        getIndexByRef(originalActualResults, actualRecord),
-					        getIndexByRef(originalExpectedResults, expectedRecord),
-					        eMsg);
+							actualRow, expectedRow, eMsg);
 				} catch (QueryTestFailedException e) {
 					multiException.addFailure(e);
 				}
@@ -700,20 +1041,197 @@ public class XMLCompareResults {
 		}
 	}
 
-	private static <T> int getIndexByRef(List<T> list, T o){
-	    if(list == null){
-	        return -1;
-	    }
-	    int i = 0;
-	    for(T t : list){
-	        if(t == o){
-	            return i;
-	        }
-	        i++;
-	    }
-	    return -1;
+	/**
+	 * Compare unordered results as multisets of rows.  Each row is hashed on all its columns,
+	 * and the number of actual and expected rows with the same hash are counted.  Only the rows
+	 * whose counts don't match are sorted and compared column by column, to report the differences.
+	 * <p>
+	 * Rows with the same hash are checked to be equal, so that a collision isn't taken for a match.
+	 * </p>
+	 * @throws QueryTestFailedException
+	 *             If comparison fails.
+	 */
+	private void compareHashedResultSets(
+			final List<List<Object>> actualResults,
+			final List<String> actualDatatypes, final List<String> actualIdentifiers,
+			final List<List<Object>> expectedResults,
+			final List<String> expectedDatatypes, final List<String> expectedIdentifiers,
+			final String eMsg)
+			throws QueryTestFailedException {
+		// Compare column names and types
+		compareIdentifiers(actualIdentifiers, expectedIdentifiers,
+				actualDatatypes, expectedDatatypes);
+
+		final int actualRowCount = actualResults.size();
+		final int expectedRowCount = expectedResults.size();
+
+		if (actualRowCount < expectedRowCount) {
+			throw new QueryTestFailedException(eMsg
+					+ "Expected " + expectedRowCount + //$NON-NLS-1$
+					" records but received only " + actualRowCount); //$NON-NLS-1$
+		} else if (actualRowCount > expectedRowCount) {
+			throw new QueryTestFailedException(eMsg
+					+ "Expected " + expectedRowCount + //$NON-NLS-1$
+					" records but received " + actualRowCount); //$NON-NLS-1$
+		}
+
+		final long[] actualHashes = new long[actualRowCount];
+		final long[] expectedHashes = new long[expectedRowCount];
+		final Map<Long, RowBucket> buckets = new HashMap<Long, RowBucket>(actualRowCount * 2);
+
+		for (int row = 0; row < actualRowCount; row++) {
+			List<Object> record = canonicalRow(actualResults.get(row));
+			actualHashes[row] = hashRow(record);
+			RowBucket bucket = buckets.get(actualHashes[row]);
+			if (bucket == null) {
+				bucket = new RowBucket(record);
+				buckets.put(actualHashes[row], bucket);
+			} else if (!bucket.collided && !bucket.row.equals(record)) {
+				bucket.collided = true;
+			}
+			bucket.actual++;
+		}
+
+		for (int row = 0; row < expectedRowCount; row++) {
+			List<Object> record = canonicalRow(expectedResults.get(row));
+			expectedHashes[row] = hashRow(record);
+			RowBucket bucket = buckets.get(expectedHashes[row]);
+			if (bucket == null) {
+				bucket = new RowBucket(record);
+				buckets.put(expectedHashes[row], bucket);
+			} else if (!bucket.collided && !bucket.row.equals(record)) {
+				bucket.collided = true;
+			}
+			bucket.expected++;
+		}
+
+		// the rows of the buckets that don't match are compared in detail
+		final List<Integer> actualMismatches = new ArrayList<Integer>();
+		for (int row = 0; row < actualRowCount; row++) {
+			if (buckets.get(actualHashes[row]).isMismatch()) {
+				actualMismatches.add(row);
+			}
+		}
+		if (actualMismatches.isEmpty()) {
+			return;
+		}
+		final List<Integer> expectedMismatches = new ArrayList<Integer>();
+		for (int row = 0; row < expectedRowCount; row++) {
+			if (buckets.get(expectedHashes[row]).isMismatch()) {
+				expectedMismatches.add(row);
+			}
+		}
+		buckets.clear();
+
+		final ListNestedSortComparator comparator = createSortComparator(actualIdentifiers.size(), actualIdentifiers.size(), true);
+		sortIndexes(actualMismatches, actualResults, comparator);
+		sortIndexes(expectedMismatches, expectedResults, comparator);
+
+		MultiTestFailedException multiException = new MultiTestFailedException();
+		for (int i = 0; i < actualMismatches.size() && i < expectedMismatches.size(); i++) {
+			final int actualRow = actualMismatches.get(i);
+			final int expectedRow = expectedMismatches.get(i);
+			final List<Object> actualRecord = actualResults.get(actualRow);
+			final List<Object> expectedRecord = expectedResults.get(expectedRow);
+
+			for (int col = 0; col < actualIdentifiers.size(); col++) {
+				try {
+					compareResultColumn(actualRecord.get(col), expectedRecord.get(col), actualRow, col,
+							actualRow, expectedRow, eMsg);
+				} catch (QueryTestFailedException e) {
+					multiException.addFailure(e);
+				}
+			}
+		}
+
+		if (multiException.getTotalFailures() == 0) {
+			// the rows only differ in a way that isn't a failure, such as the scale of a BigDecimal
+			return;
+		} else if (multiException.getTotalFailures() == 1) {
+			throw multiException.getFailures().get(0);
+		}
+		throw multiException;
 	}
-	
+
+	/**
+	 * Return the values of the row the way they are compared by {@link #compareResultColumn(Object, Object, int, int, int, int, String)}.
+	 */
+	private static List<Object> canonicalRow(List<Object> record) throws QueryTestFailedException {
+		List<Object> canonical = new ArrayList<Object>(record.size());
+		for (Object value : record) {
+			value = getLobValue(value);
+			if (value instanceof BigDecimal) {
+				BigDecimal d = (BigDecimal) value;
+				// equal BigDecimals can have a different scale
+				value = (d.signum() == 0 ? BigDecimal.ZERO : d.stripTrailingZeros());
+			} else if (value instanceof java.sql.Date || value instanceof java.sql.Time) {
+				// dates and times are compared as text
+				value = new TextValue(value.toString());
+			}
+			canonical.add(value);
+		}
+		return canonical;
+	}
+
+	private static long hashRow(List<Object> record) {
+		long hash = 1125899906842597L;
+		for (Object value : record) {
+			hash = 31 * hash + (value == null ? 0 : value.hashCode());
+		}
+		// spread the bits, so rows that only differ in one column don't share the low bits
+		hash ^= (hash >>> 33);
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= (hash >>> 33);
+		return hash;
+	}
+
+	private static void sortIndexes(List<Integer> indexes, final List<List<Object>> records, final ListNestedSortComparator comparator) {
+		Collections.sort(indexes, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return comparator.compare(records.get(i1), records.get(i2));
+			}
+		});
+	}
+
+	/**
+	 * The actual and expected rows with the same hash.
+	 */
+	private static class RowBucket {
+		List<Object> row;
+		int actual = 0;
+		int expected = 0;
+		boolean collided = false;
+
+		RowBucket(List<Object> row) {
+			this.row = row;
+		}
+
+		boolean isMismatch() {
+			return collided || actual != expected;
+		}
+	}
+
+	/**
+	 * The text of a value that is compared as text.
+	 */
+	private static class TextValue {
+		private String text;
+
+		TextValue(String text) {
+			this.text = text;
+		}
+
+		@Override
+		public int hashCode() {
+			return text.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof TextValue && ((TextValue) obj).text.equals(text));
+		}
+	}
+
 	private static void compareIdentifiers(List<String> actualIdentifiers,
 			List<String> expectedIdentifiers, List<String> actualDataTypes,
 			List<String> expectedDatatypes) throws QueryTestFailedException {
@@ -24,7 +24,6 @@ package org.jboss.bqt.client.results.xml;
 
 import java.io.File;
 import java.io.IOException;
-import java.sql.ResultSet;
 import java.util.Properties;
 
 import org.jboss.bqt.client.ClientPlugin;
@@ -32,13 +31,16 @@ import org.jboss.bqt.client.QueryTest;
 import org.jboss.bqt.client.api.ExpectedResults;
 import org.jboss.bqt.client.api.ExpectedResultsReader;
 import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.results.CapturedResult;
+import org.jboss.bqt.client.results.ExpectedResultsCache;
 import org.jboss.bqt.client.results.ExpectedResultsHolder;
-import org.jboss.bqt.client.xml.XMLQueryVisitationStrategy;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jboss.bqt.client.xml.XMLResultsStreamReader;
 import org.jboss.bqt.core.exception.FrameworkRuntimeException;
 import org.jboss.bqt.core.exception.QueryTestFailedException;
-import org.jboss.bqt.framework.AbstractQuery;
 import org.jboss.bqt.framework.ActualTest;
 import org.jboss.bqt.framework.TestCase;
+import org.jboss.bqt.framework.TestResult;
 import org.jboss.bqt.framework.TransactionAPI;
 import org.jdom2.JDOMException;
 import org.teiid.core.util.ArgCheck;
@@ -46,8 +48,7 @@ import org.teiid.core.util.ArgCheck;
 public class XMLExpectedResultsReader extends ExpectedResultsReader {
 	
 	private XMLCompareResults compare;
-	private ExpectedResults lastResults;
-	private ActualTest lastTest;
+	private ExpectedResultsCache cache;
 
 	public XMLExpectedResultsReader(QueryScenario scenario, String querySetID, Properties props) {
 		super(scenario, querySetID, props);
@@ -64,49 +65,145 @@ public class XMLExpectedResultsReader extends ExpectedResultsReader {
 		}
 		
 		compare = XMLCompareResults.create(props);
+		cache = ExpectedResultsCache.getInstance(props);
 
 		ClientPlugin.LOGGER.debug("Expected results loc: " + dir.getAbsolutePath());
 	}
 
 	@Override
-	public synchronized ExpectedResults getExpectedResults(ActualTest queryTest) {
-		if (lastTest != null && lastTest.equals(queryTest)) {
-			return lastResults;
-		}
-		
-		File er = findExpectedResultsFile((QueryTest) queryTest, this.getQuerySetID());
-		ExpectedResultsHolder rh = loadExpectedResults((QueryTest)queryTest, er);
+	public ExpectedResults getExpectedResults(ActualTest queryTest) {
+		QueryTest test = (QueryTest) queryTest;
+		File er = findExpectedResultsFile(test, this.getQuerySetID());
 
-		this.lastResults = rh;
-		this.lastTest = queryTest;
-		
+		// the rows are only loaded when they are compared
+		ExpectedResultsHolder rh = cache.getHeader(er, test);
+		this.getQueryScenario().getTestResultsSummary().addExpectedResultsLookup(rh != null);
+		if (rh == null) {
+			rh = loadExpectedResultsHeader(test, er);
+			cache.putHeader(er, rh);
+		}
 		return rh;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The header and, when they fit, the rows are read into the {@link ExpectedResultsCache}.
+	 * </p>
+	 */
+	@Override
+	public void prefetch(ActualTest queryTest) {
+		if (!cache.isEnabled()) {
+			return;
+		}
+		final QueryTest test = (QueryTest) queryTest;
+		final File resultsFile = findExpectedResultsFile(test, this.getQuerySetID());
+		if (!resultsFile.exists() || cache.containsHeader(resultsFile)) {
+			return;
+		}
+
+		final ExpectedResultsHolder rh = loadExpectedResultsHeader(test, resultsFile);
+		cache.putHeader(resultsFile, rh);
+		if (rh.isResult()) {
+			try {
+				cache.preloadRows(resultsFile, new ExpectedResultsCache.RowReaderFactory() {
+					public ExpectedRowReader open() {
+						return openExpectedResults(test, rh);
+					}
+				});
+			} catch (IOException e) {
+				throw new FrameworkRuntimeException(
+						"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+			} catch (JDOMException e) {
+				throw new FrameworkRuntimeException(
+						"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+			}
+		}
+	}
+
 	@Override
 	public void compareResults(final TestCase testcase,
-			final TransactionAPI transaction, final ExpectedResults expectedResults, final boolean isOrdered) throws QueryTestFailedException {
+			final TransactionAPI transaction, final CapturedResult actualResults, final ExpectedResults expectedResults,
+			final boolean isOrdered) throws QueryTestFailedException {
 
-		ResultSet resultSet = ((AbstractQuery) transaction).getResultSet();
-		compare.compareResults(testcase, expectedResults, resultSet, isOrdered);
-	
+		ExpectedResultsHolder holder = (ExpectedResultsHolder) expectedResults;
+
+		if (!holder.isResult() || testcase.getTestResult().getStatus() == TestResult.RESULT_STATE.TEST_EXCEPTION) {
+			// no expected rows are needed to compare exceptions
+			compare.compareResults(testcase, holder, actualResults, isOrdered);
+
+		} else {
+			// stream the expected rows, so they don't have to fit in memory
+			ExpectedRowReader rows = openExpectedRows((QueryTest) testcase.getActualTest(), holder);
+			try {
+				if (isOrdered) {
+					compare.compareOrderedResults(testcase, holder, rows, actualResults);
+				} else {
+					compare.compareUnorderedResults(testcase, holder, rows, actualResults);
+				}
+			} finally {
+				rows.close();
+			}
+		}
 	}
 
-	private ExpectedResultsHolder loadExpectedResults(QueryTest test, File resultsFile) {
+	private ExpectedResultsHolder loadExpectedResultsHeader(QueryTest test, File resultsFile) {
 		ArgCheck.isNotNull(resultsFile);
-		XMLQueryVisitationStrategy jstrat = new XMLQueryVisitationStrategy();
-		final ExpectedResultsHolder expectedResult;
+		XMLResultsStreamReader reader = null;
 		try {
-			expectedResult = jstrat.parseXMLResultsFile(test, this.getQueryScenario().getQueryScenarioIdentifier(), resultsFile);
+			reader = new XMLResultsStreamReader(resultsFile);
+			ExpectedResultsHolder expectedResult = reader.readHeader(test);
 			expectedResult.setExpectedResultsFile(resultsFile);
+			return expectedResult;
+		} catch (IOException e) {
+			throw new FrameworkRuntimeException(
+					"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+		} catch (JDOMException e) {
+			throw new FrameworkRuntimeException(
+					"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+		} finally {
+			if (reader != null) {
+				reader.close();
+			}
+		}
+	}
+
+	private ExpectedRowReader openExpectedRows(final QueryTest test, final ExpectedResultsHolder expectedResults) {
+		try {
+			return cache.openRows(expectedResults.getExpectedResultsFile(), new ExpectedResultsCache.RowReaderFactory() {
+				public ExpectedRowReader open() {
+					return openExpectedResults(test, expectedResults);
+				}
+			});
+		} catch (IOException e) {
+			throw new FrameworkRuntimeException(
+					"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+		} catch (JDOMException e) {
+			throw new FrameworkRuntimeException(
+					"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
+		}
+	}
+
+	private XMLResultsStreamReader openExpectedResults(QueryTest test, ExpectedResultsHolder expectedResults) {
+		XMLResultsStreamReader reader = null;
+		try {
+			reader = new XMLResultsStreamReader(expectedResults.getExpectedResultsFile());
+			// skip to the first row
+			reader.readHeader(test);
+			return reader;
 		} catch (IOException e) {
+			if (reader != null) {
+				reader.close();
+			}
 			throw new FrameworkRuntimeException(
 					"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
 		} catch (JDOMException e) {
+			if (reader != null) {
+				reader.close();
+			}
 			throw new FrameworkRuntimeException(
 					"Unable to load expected results: " + e.getMessage()); //$NON-NLS-1$
 		}
-		return expectedResult;
 	}
 
 	private File findExpectedResultsFile(QueryTest test,
@@ -22,46 +22,44 @@
 
 package org.jboss.bqt.client.results.xml;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Properties;
 
 import org.jboss.bqt.client.ClientPlugin;
 import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.TestProperties;
 import org.jboss.bqt.client.api.ExpectedResults;
 import org.jboss.bqt.client.api.ExpectedResultsWriter;
 import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.results.CapturedResult;
 import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jboss.bqt.client.util.AsyncOutputWriter;
 import org.jboss.bqt.client.xml.TagNames;
-import org.jboss.bqt.client.xml.XMLQueryVisitationStrategy;
+import org.jboss.bqt.client.xml.XMLResultsStreamWriter;
 import org.jboss.bqt.core.exception.FrameworkException;
 import org.jboss.bqt.core.util.ExceptionUtil;
 import org.jboss.bqt.core.util.FileUtils;
-import org.jboss.bqt.core.xml.JdomHelper;
-import org.jboss.bqt.framework.AbstractQuery;
 import org.jboss.bqt.framework.TestCase;
 import org.jboss.bqt.framework.TransactionAPI;
-import org.jdom2.Attribute;
-import org.jdom2.CDATA;
-import org.jdom2.Document;
-import org.jdom2.Element;
 import org.jdom2.JDOMException;
-import org.jdom2.output.XMLOutputter;
 
 public class XMLExpectedResultsWriter extends ExpectedResultsWriter{
 //	private static final int MAX_COL_WIDTH = 65;
 
 
+	private boolean compact;
+
 	public XMLExpectedResultsWriter(QueryScenario scenario, Properties props) {
 		super(scenario, props);
 
+		this.compact = Boolean.valueOf(props.getProperty(TestProperties.PROP_GENERATE_COMPACT, "false")).booleanValue(); //$NON-NLS-1$
+
 		File d = new File(getGenerateDir());
-		if (d.exists()) {
+		// a resumed scenario keeps the files of the tests that were already run
+		if (d.exists() && !scenario.isResume()) {
 			FileUtils.removeDirectoryAndChildren(d);
 		}
 		if (!d.exists()) {
@@ -73,115 +71,92 @@ public class XMLExpectedResultsWriter extends ExpectedResultsWriter{
 
 	@Override
 	public ExpectedResults generateExpectedResultFile(TestCase testcase,
-			TransactionAPI transaction) throws FrameworkException {
-		
-		ResultSet result = ((AbstractQuery) transaction).getResultSet();
+			TransactionAPI transaction, CapturedResult actualResults) throws FrameworkException {
 		
 		String querySetID = testcase.getTestResult().getQuerySetID();
 		String queryID = testcase.getTestResult().getQueryID();
 		String query = testcase.getTestResult().getQuery();
 		Throwable ex = testcase.getTestResult().getException();
 
-		try {
-			if (result != null)
-				result.isClosed();
-		} catch (SQLException e1) {
-			e1.printStackTrace();
-		}
 		String filename = this.getQueryScenario().getFileType().getExpectedResultsFileName(this.getQueryScenario(), (QueryTest)testcase.getActualTest(), ".xml");
 		
 		File resultsFile = createNewResultsFile(querySetID, getGenerateDir(), filename);
 		
 		ExpectedResultsHolder rh = null;		
 
-		OutputStream outputStream;
-		try {
-			FileOutputStream fos = new FileOutputStream(resultsFile);
-			outputStream = new BufferedOutputStream(fos);
-		} catch (IOException e) {
-			throw new FrameworkException(
-					"Failed to open new results file: " + resultsFile.getPath() + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		String resultsName = querySetID + "_" + queryID;
+
+		if (actualResults != null) {
+			
+			rh = new ExpectedResultsHolder(TagNames.Elements.QUERY, (QueryTest) testcase.getActualTest() );
+			
+			long time = (testcase.getTestResult().getEndTS() - testcase.getTestResult().getBeginTS());
+
+			submitResults(resultsFile, query, resultsName, time, actualResults, null);
+		} else {
+			rh = new ExpectedResultsHolder(TagNames.Elements.EXCEPTION, (QueryTest) testcase.getActualTest() );
+			// produce xml for the actualException
+			submitResults(resultsFile, query, resultsName, -1, null, ex);
 		}
+		
+		rh.setExpectedResultsFile(resultsFile);
 
-		try {
-			XMLQueryVisitationStrategy jstrat = new XMLQueryVisitationStrategy();
-
-			// Create root JDOM element
-			Element rootElement = new Element(TagNames.Elements.ROOT_ELEMENT);
-
-			// Create Query element
-			Element queryElement = new Element(TagNames.Elements.QUERY);
-			queryElement.addContent(new CDATA(query));
-			rootElement.addContent(queryElement);
-
-			// create a result attribute for the queryID
-			Attribute resultsIDAttribute = new Attribute(
-					TagNames.Attributes.NAME, querySetID + "_" + queryID);
-
-			if (result != null) {
-				
-				rh = new ExpectedResultsHolder(TagNames.Elements.QUERY, (QueryTest) testcase.getActualTest() );
-				// produce a JDOM element from the results object
-				Element resultsElement = jstrat.produceResults(result);
-				// set the resultsIDAttribute on the results element
-				resultsElement.setAttribute(resultsIDAttribute);
-				
-				long time = (testcase.getTestResult().getEndTS() - testcase.getTestResult().getBeginTS());
-
-				Attribute timeIDAttribute = new Attribute(
-						TagNames.Attributes.EXECUTION_TIME, String.valueOf(time));
-
-				resultsElement.setAttribute(timeIDAttribute);
-
-				
-				// add the results elements to the root element
-				rootElement.addContent(resultsElement);
-				// debug:
-				// System.out.println("\n Result: " + printResultSet(result));
-			} else {
-				rh = new ExpectedResultsHolder(TagNames.Elements.EXCEPTION, (QueryTest) testcase.getActualTest() );
-				// create a JDOM element from the exception object with the
-				// results tag
-				Element exceptionElement = new Element(
-						TagNames.Elements.QUERY_RESULTS);
-				// produce xml for the actualException and this to the
-				// exceptionElement
-				if (ex != null) {
-					exceptionElement.addContent(jstrat.produceMsg(ex, null));
-				}
-				// set the resultsIDAttribute on the exception element
-				exceptionElement.setAttribute(resultsIDAttribute);
-				// add the results elements to the root element
-				rootElement.addContent(exceptionElement);
+		return rh;
+	}
 
+	private void submitResults(final File resultsFile, final String query, final String resultsName,
+			final long time, final CapturedResult captured, final Throwable ex) throws FrameworkException {
+		if (captured != null) {
+			// the rows are read by the output writer
+			captured.retain();
+		}
+		getQueryScenario().getOutputWriter().submit(resultsFile.getName(), new AsyncOutputWriter.Output() {
+			public void write() throws FrameworkException {
+				try {
+					writeResults(resultsFile, query, resultsName, time, captured, ex);
+				} finally {
+					if (captured != null) {
+						captured.release();
+					}
+				}
 			}
-			
-			rh.setExpectedResultsFile(resultsFile);
+		});
+	}
 
-			// Output xml
-			XMLOutputter outputter = new XMLOutputter(JdomHelper.getFormat(
-					"  ", true)); //$NON-NLS-1$
-			outputter.output(new Document(rootElement), outputStream);
+	/**
+	 * Write the captured results, or the exception when there are no results.
+	 */
+	private void writeResults(File resultsFile, String query, String resultsName, long time,
+			CapturedResult captured, Throwable ex) throws FrameworkException {
+		try {
+			XMLResultsStreamWriter writer = new XMLResultsStreamWriter(compact);
+
+			if (captured != null) {
+				// the rows are written as they are read
+				ExpectedRowReader rows = captured.openRows();
+				try {
+					writer.writeResults(resultsFile, query, resultsName, time,
+							captured.getIdentifiers(), captured.getTypes(), rows);
+				} finally {
+					rows.close();
+				}
+			} else {
+				writer.writeException(resultsFile, query, resultsName, ex);
+			}
 
 		} catch (SQLException e) {
 			throw new FrameworkException(
-					"Failed to convert results to JDOM: " + e.getMessage()); //$NON-NLS-1$
+					"Failed to convert results to XML: " + e.getMessage()); //$NON-NLS-1$
 		} catch (JDOMException e) {
 			throw new FrameworkException(
-					"Failed to convert results to JDOM: " + e.getMessage()); //$NON-NLS-1$
+					"Failed to convert results to XML: " + e.getMessage()); //$NON-NLS-1$
 		} catch (IOException e) {
 			throw new FrameworkException(
 					"Failed to output new results to " + resultsFile.getPath() + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
 		} catch (Throwable e) {
 			throw new FrameworkException(
-					"Failed to convert results to JDOM: " + ExceptionUtil.getStackTrace(e)); //$NON-NLS-1$
-		} finally {
-			try {
-				outputStream.close();
-			} catch (IOException e) {
-			}
+					"Failed to convert results to XML: " + ExceptionUtil.getStackTrace(e)); //$NON-NLS-1$
 		}
-		return rh;
 	}
 
 
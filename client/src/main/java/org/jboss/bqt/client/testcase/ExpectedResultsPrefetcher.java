@@ -0,0 +1,164 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.testcase;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.jboss.bqt.client.ClientPlugin;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.api.ExpectedResultsReader;
+import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.results.ExpectedResultsCache;
+
+/**
+ * ExpectedResultsPrefetcher reads the expected results of the next query tests on a background
+ * thread, while the running query is executed, so they are already in the {@link ExpectedResultsCache}
+ * when the results are compared.
+ * <p>
+ * The query tests are read <code>depth</code> tests ahead of the one that is run, and the
+ * expected results readers of the next query set are created, and its first tests prefetched,
+ * when a query set starts.  The background thread only loads the expected results, any failure
+ * is reported by the comparison.
+ * </p>
+ */
+class ExpectedResultsPrefetcher {
+
+	private QueryScenario scenario;
+	private int depth;
+	private ExecutorService executor;
+
+	ExpectedResultsPrefetcher(QueryScenario scenario, int depth) {
+		this.scenario = scenario;
+		this.depth = depth;
+		final String name = "bqt-prefetch-" + scenario.getQueryScenarioIdentifier(); //$NON-NLS-1$
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @param queryTests
+	 * @return the query tests, which are prefetched while they are iterated
+	 */
+	Iterator<QueryTest> prefetch(Iterator<QueryTest> queryTests) {
+		return new LookAheadIterator(queryTests);
+	}
+
+	/**
+	 * Create the expected results readers of the query set, and prefetch its first tests.
+	 * @param querySetID
+	 */
+	void prepare(final String querySetID) {
+		executor.execute(new Runnable() {
+			public void run() {
+				Iterator<QueryTest> queryTests = null;
+				try {
+					scenario.getExpectedResultsReaders(querySetID);
+					queryTests = scenario.getQueryIterator(querySetID);
+					for (int i = 0; i < depth && queryTests.hasNext(); i++) {
+						load(queryTests.next());
+					}
+				} catch (Throwable e) {
+					ClientPlugin.LOGGER.debug("Unable to prepare query set " + querySetID + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+				} finally {
+					ProcessResults.close(queryTests);
+				}
+			}
+		});
+	}
+
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private void submit(final QueryTest queryTest) {
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					load(queryTest);
+				} catch (Throwable e) {
+					ClientPlugin.LOGGER.debug("Unable to prefetch the expected results of " + queryTest.getQueryID() + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		});
+	}
+
+	private void load(QueryTest queryTest) {
+		for (ExpectedResultsReader reader : scenario.getExpectedResultsReaders(queryTest.getQuerySetID())) {
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			reader.prefetch(queryTest);
+		}
+	}
+
+	/**
+	 * Holds the tests that were read ahead, each of them is prefetched when it's read.
+	 */
+	private class LookAheadIterator implements Iterator<QueryTest>, Closeable {
+		private Iterator<QueryTest> queryTests;
+		private LinkedList<QueryTest> ahead = new LinkedList<QueryTest>();
+
+		LookAheadIterator(Iterator<QueryTest> queryTests) {
+			this.queryTests = queryTests;
+			fill();
+		}
+
+		private void fill() {
+			// the next test and the ones after it
+			while (ahead.size() <= depth && queryTests.hasNext()) {
+				QueryTest queryTest = queryTests.next();
+				ahead.add(queryTest);
+				submit(queryTest);
+			}
+		}
+
+		public boolean hasNext() {
+			fill();
+			return !ahead.isEmpty();
+		}
+
+		public QueryTest next() {
+			fill();
+			return ahead.removeFirst();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+			ahead.clear();
+			ProcessResults.close(queryTests);
+		}
+	}
+
+}
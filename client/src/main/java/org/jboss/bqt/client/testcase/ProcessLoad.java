@@ -0,0 +1,303 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.testcase;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jboss.bqt.client.ClientPlugin;
+import org.jboss.bqt.client.LoadStatistics;
+import org.jboss.bqt.client.QuerySQL;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.TestProperties;
+import org.jboss.bqt.client.TestResultsSummary;
+import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jboss.bqt.core.exception.QueryTestFailedException;
+import org.jboss.bqt.core.util.PropertiesUtils;
+import org.jboss.bqt.framework.AbstractQuery;
+import org.jboss.bqt.framework.PreparedStatementCache;
+import org.jboss.bqt.framework.TestCase;
+import org.jboss.bqt.framework.TestCaseLifeCycle;
+import org.jboss.bqt.framework.TestResult;
+import org.jboss.bqt.framework.TransactionAPI;
+import org.jboss.bqt.framework.TransactionFactory;
+
+/**
+ * ProcessLoad is the TestCase for the {@link TestProperties.RESULT_MODES#LOAD} result mode.
+ * It starts {@link TestProperties#PROP_LOAD_CLIENTS} virtual clients, each with its own
+ * transaction (connection), that replay all the query sets of the scenario for
+ * {@link TestProperties#PROP_LOAD_DURATION} seconds or {@link TestProperties#PROP_LOAD_ITERATIONS}
+ * iterations.  The response time of every query is recorded, and the throughput, error rate
+ * and latency percentiles are written by the {@link TestResultsSummary}.
+ *
+ */
+public class ProcessLoad implements TestCaseLifeCycle {
+
+	private QueryScenario scenario = null;
+
+	private TransactionAPI trans;
+
+	private List<TransactionAPI> clientTransactions = new ArrayList<TransactionAPI>();
+
+	private volatile boolean next = true;
+	private volatile Exception scenarioFailException = null;
+
+	public ProcessLoad(QueryScenario scenario) {
+		super();
+		this.scenario = scenario;
+	}
+
+	public String getTestName() {
+		return scenario.getQuerySetName() + ":" + scenario.getQueryScenarioIdentifier();
+	}
+
+	public void setup(TransactionAPI transaction) {
+		this.trans = transaction;
+	}
+
+	public void runTestCase() {
+		int clients = Math.max(1, PropertiesUtils.getIntProperty(scenario.getProperties(), TestProperties.PROP_LOAD_CLIENTS, 1));
+		int duration = PropertiesUtils.getIntProperty(scenario.getProperties(), TestProperties.PROP_LOAD_DURATION, 0);
+		final int iterations = getIterations(scenario.getProperties(), duration);
+
+		// all the query sets are replayed by each client
+		final List<QueryTest> queryTests = new ArrayList<QueryTest>();
+		for (String querySetID : scenario.getQuerySetIDs()) {
+			queryTests.addAll(scenario.getQueries(querySetID));
+		}
+
+		ClientPlugin.LOGGER.info("Start load test: " + clients + " clients, " + queryTests.size() + " queries, "
+				+ (duration > 0 ? duration + " seconds" : iterations + " iterations") + " [scenario: " + scenario.getQueryScenarioIdentifier() + "]");
+
+		TestResultsSummary summary = this.scenario.getTestResultsSummary();
+		LoadStatistics stats = new LoadStatistics();
+		final long deadline = (duration > 0 ? System.currentTimeMillis() + duration * 1000l : -1l);
+
+		ExecutorService executor = Executors.newFixedThreadPool(clients);
+		FrameworkRuntimeException fre = null;
+
+		long beginTS = System.currentTimeMillis();
+		try {
+			clientTransactions.add(trans);
+			while (clientTransactions.size() < clients) {
+				clientTransactions.add(TransactionFactory.create(scenario.getProperties()));
+			}
+
+			List<Future<LoadStatistics>> results = new ArrayList<Future<LoadStatistics>>(clients);
+			for (int i = 0; i < clients; i++) {
+				final int client = i;
+				final TransactionAPI transaction = clientTransactions.get(i);
+				results.add(executor.submit(new Callable<LoadStatistics>() {
+					public LoadStatistics call() throws Exception {
+						return runClient(client, queryTests, transaction, iterations, deadline);
+					}
+				}));
+			}
+
+			for (Future<LoadStatistics> result : results) {
+				try {
+					stats.merge(result.get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					abort(new FrameworkRuntimeException(FrameworkException.ErrorCodes.BQT_INTERRUPTED, "BQT thread has been interrupted."));
+					executor.shutdownNow();
+					break;
+				} catch (ExecutionException e) {
+					next = false;
+					if (fre == null) {
+						fre = (e.getCause() instanceof FrameworkRuntimeException ? (FrameworkRuntimeException) e.getCause() : new FrameworkRuntimeException(e.getCause()));
+					}
+				}
+			}
+			long endTS = System.currentTimeMillis();
+
+			ClientPlugin.LOGGER.info("End load test: " + stats.getExecutions() + " queries, " + stats.getErrors() + " errors [scenario: " + scenario.getQueryScenarioIdentifier() + "]");
+
+			PreparedStatementCache.Statistics cacheStats = new PreparedStatementCache.Statistics();
+			for (TransactionAPI t : clientTransactions) {
+				cacheStats.add(((AbstractQuery) t).getStatementCacheStatistics());
+			}
+			if (cacheStats.getHits() + cacheStats.getMisses() > 0) {
+				ClientPlugin.LOGGER.info("Prepared statement cache: " + cacheStats + " [scenario: " + scenario.getQueryScenarioIdentifier() + "]");
+			}
+
+			try {
+				summary.printLoadResults(stats, beginTS, endTS, clients);
+				if (scenarioFailException != null) {
+					summary.printServerConnectionException(scenarioFailException);
+				}
+			} catch (Exception e) {
+				if (fre == null) {
+					fre = new FrameworkRuntimeException(e);
+				}
+			}
+
+		} finally {
+			executor.shutdownNow();
+			// the scenario's transaction is cleaned up by the caller
+			for (int i = 1; i < clientTransactions.size(); i++) {
+				TransactionAPI t = clientTransactions.get(i);
+				t.cleanup();
+				((AbstractQuery) t).closeStatementCache();
+				((AbstractQuery) t).getConnectionStrategy().shutdown();
+			}
+			clientTransactions.clear();
+			summary.cleanup();
+		}
+
+		if (fre != null) {
+			throw fre;
+		}
+		if (scenarioFailException != null) {
+			throw new FrameworkRuntimeException(scenarioFailException);
+		}
+	}
+
+	/**
+	 * @param props
+	 * @param duration the seconds the test runs for, 0 or less when it isn't limited by time
+	 * @return the iterations of each client, 0 when the clients run until the duration is up.  Without
+	 * a duration, there's at least one iteration.
+	 */
+	static int getIterations(Properties props, int duration) {
+		int iterations = PropertiesUtils.getIntProperty(props, TestProperties.PROP_LOAD_ITERATIONS, (duration > 0 ? 0 : 1));
+		if (iterations <= 0 && duration <= 0) {
+			ClientPlugin.LOGGER.warn("Invalid " + TestProperties.PROP_LOAD_ITERATIONS + " " + iterations + " without a "
+					+ TestProperties.PROP_LOAD_DURATION + ", running 1 iteration");
+			return 1;
+		}
+		return iterations;
+	}
+
+	/**
+	 * Replay the queries until the iterations are done, or the deadline has passed.  Each
+	 * client starts at a different query, so that the clients don't all execute the same query
+	 * at the same time.
+	 */
+	private LoadStatistics runClient(int client, List<QueryTest> queryTests, TransactionAPI transaction, int iterations, long deadline) {
+		LoadStatistics stats = new LoadStatistics();
+		int size = queryTests.size();
+		if (size == 0) return stats;
+
+		// without iterations, the clients run until the deadline
+		for (int it = 0; next && ((iterations <= 0 && deadline > 0) || it < iterations); it++) {
+			for (int i = 0; i < size && next; i++) {
+				if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+					return stats;
+				}
+				if (Thread.currentThread().isInterrupted()) {
+					abort(new FrameworkRuntimeException(FrameworkException.ErrorCodes.BQT_INTERRUPTED, "BQT thread has been interrupted."));
+					return stats;
+				}
+				runQueryTest(queryTests.get((i + client) % size), (AbstractQuery) transaction, transaction, stats);
+			}
+		}
+		return stats;
+	}
+
+	private void runQueryTest(QueryTest q, AbstractQuery query, TransactionAPI transaction, LoadStatistics stats) {
+		TestResult testResult = new TestResult(q.getQuerySetID(), q.getQueryID());
+
+		TestCase testcase = new TestCase(q);
+		testcase.setTestResult(testResult);
+		testResult.setResultMode(TestProperties.RESULT_MODES.LOAD);
+		testResult.setStatus(TestResult.RESULT_STATE.TEST_PRERUN);
+
+		String error = null;
+		long begin = System.nanoTime();
+		try {
+			query.before(testcase);
+
+			QuerySQL[] queries = q.getQueries();
+			for (int i = 0; i < queries.length; i++) {
+				QuerySQL qsql = queries[i];
+				for (int r = 0; r < qsql.getRunTimes(); r++) {
+					query.setStatementOptions(scenario.getStatementOptions(qsql));
+					query.execute(qsql.getSql(), qsql.getParms(), qsql.getPayLoad());
+					readResults(query);
+				}
+			}
+		} catch (QueryTestFailedException qtfe) {
+			error = qtfe.getMessage();
+		} catch (Exception rme) {
+			error = rme.getMessage();
+			query.setApplicationException(rme);
+
+			if (rme instanceof FrameworkRuntimeException) {
+				String code = ((FrameworkRuntimeException) rme).getCode();
+				if (FrameworkException.ErrorCodes.SERVER_CONNECTION_EXCEPTION.equals(code)
+						|| FrameworkException.ErrorCodes.DB_CONNECTION_EXCEPTION.equals(code)) {
+					abort(rme);
+				}
+			}
+		} finally {
+			query.after();
+		}
+		long elapsed = System.nanoTime() - begin;
+
+		if (error == null && testResult.getException() != null) {
+			error = testResult.getException().getMessage();
+		}
+		stats.addExecution(q.getQuerySetID() + ":" + q.getQueryID(), elapsed, (error != null ? (error.length() > 0 ? error : "Failed") : null));
+
+		transaction.cleanup();
+	}
+
+	/**
+	 * Read all the rows, so the response time includes sending the results to the client
+	 */
+	private void readResults(AbstractQuery query) throws SQLException {
+		ResultSet rs = query.getResultSet();
+		if (rs == null) return;
+		while (rs.next()) {
+		}
+	}
+
+	private synchronized void abort(Exception e) {
+		next = false;
+		if (scenarioFailException == null) {
+			scenarioFailException = e;
+		}
+	}
+
+	public void cleanup() {
+		if (trans != null) {
+			trans.cleanup();
+			((AbstractQuery) trans).closeStatementCache();
+		}
+
+		trans = null;
+
+		this.scenario = null;
+	}
+
+}
@@ -22,10 +22,26 @@
 
 package org.jboss.bqt.client.testcase;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.bqt.client.ClientPlugin;
 import org.jboss.bqt.client.QuerySQL;
@@ -36,13 +52,17 @@ import org.jboss.bqt.client.api.QueryScenario;
 import org.jboss.bqt.core.exception.FrameworkException;
 import org.jboss.bqt.core.exception.FrameworkRuntimeException;
 import org.jboss.bqt.core.exception.QueryTestFailedException;
+import org.jboss.bqt.core.util.PropertiesUtils;
 import org.jboss.bqt.framework.AbstractQuery;
-import org.jboss.bqt.framework.ConfigPropertyLoader;
 import org.jboss.bqt.framework.FrameworkPlugin;
+import org.jboss.bqt.framework.PreparedStatementCache;
+import org.jboss.bqt.framework.StatementOptions;
 import org.jboss.bqt.framework.TestCase;
 import org.jboss.bqt.framework.TestCaseLifeCycle;
 import org.jboss.bqt.framework.TestResult;
 import org.jboss.bqt.framework.TransactionAPI;
+import org.jboss.bqt.framework.TransactionFactory;
+import org.jboss.bqt.framework.connection.ConnectionStrategy;
 import org.jboss.bqt.framework.connection.ConnectionStrategyFactory;
 import org.jboss.bqt.framework.util.AssertResults;
 
@@ -54,11 +74,43 @@ import org.jboss.bqt.framework.util.AssertResults;
  */
 public class ProcessResults implements TestCaseLifeCycle {
 
+	// the most query tests that are read ahead when they are run concurrently
+	private static final int CONCURRENT_TESTS = 1024;
+
+	private static final int DEFAULT_PREFETCH_DEPTH = 4;
+	
+	private static final int DEFAULT_JOURNAL_SYNC_RESULTS = 100;
+	private static final int DEFAULT_JOURNAL_SYNC_INTERVAL = 1000;
+
+	// the statements that are sent in a batch
+	private static final String[] DML_KEYWORDS = {"insert", "update", "delete", "upsert", "merge"};
+
 	private QueryScenario scenario = null;
 	
 	private TransactionAPI trans;
 	
 	private AbstractQuery abQuery;
+	
+	// used when the query tests in a query set are run concurrently
+	private ExecutorService executor;
+	private List<TransactionAPI> workerTransactions = new ArrayList<TransactionAPI>();
+	
+	// reads the expected results of the next tests while a test runs
+	private ExpectedResultsPrefetcher prefetcher;
+	
+	// cancels the tests that run longer than their timeout, and the end of the running query set's time
+	private QueryWatchdog watchdog;
+	private volatile long querySetDeadline = -1;
+	
+	// the most statements sent in one batch, 1 or less sends each of them on its own
+	private int batchSize = 0;
+	private volatile Boolean supportsBatchUpdates = null;
+	
+	// the completed tests, to resume the scenario
+	private ResultsJournal journal;
+	
+	private volatile boolean next = true;
+	private volatile Exception scenarioFailException = null;
 
 	public ProcessResults(QueryScenario scenario) {
 		super();
@@ -79,8 +131,11 @@ public class ProcessResults implements TestCaseLifeCycle {
 	
 	public void runTestCase() {
 		
-		Exception scenarioFailException = null;
-		boolean next = true;
+		journal = openJournal();
+		if (journal != null && journal.isCompleted()) {
+			ClientPlugin.LOGGER.info("Scenario " + scenario.getQueryScenarioIdentifier() + " completed before, it isn't resumed");
+			return;
+		}
 		
 		//------- ping -------
 		scenarioFailException = pingDS(scenario.getQueryScenarioIdentifier());
@@ -89,7 +144,7 @@ public class ProcessResults implements TestCaseLifeCycle {
 		
 		//------- scenario limit -------
 		//only one limit per scenario
-		String timeForOneQueryProp = ConfigPropertyLoader.getInstance().getProperty(TestProperties.TIME_FOR_ONE_QUERY);
+		String timeForOneQueryProp = scenario.getProperties().getProperty(TestProperties.TIME_FOR_ONE_QUERY);
 		int timeForOneQuery;
 		if(timeForOneQueryProp == null || timeForOneQueryProp.isEmpty()){
 			timeForOneQuery = -1;
@@ -107,14 +162,27 @@ public class ProcessResults implements TestCaseLifeCycle {
 		//Get number of queries
 		int numOfQueries = 0;
 		for(String qsid : scenario.getQuerySetIDs()){
-			numOfQueries += scenario.getQueries(qsid).size();
+			numOfQueries += scenario.getQueryCount(qsid);
 		}
 		//------- end scenario limit -------
-		Iterator<String> qsetIt = scenario.getQuerySetIDs().iterator();
+		List<String> querySetIDs = new ArrayList<String>(scenario.getQuerySetIDs());
+		ListIterator<String> qsetIt = querySetIDs.listIterator();
 		
 		TestResultsSummary summary = this.scenario.getTestResultsSummary();
+		
+		int workers = PropertiesUtils.getIntProperty(scenario.getProperties(), TestProperties.PROP_QUERYSET_WORKERS, 1);
+		batchSize = PropertiesUtils.getIntProperty(scenario.getProperties(), TestProperties.PROP_BATCH_SIZE, 0);
+		int querySetTimeout = PropertiesUtils.getIntProperty(scenario.getProperties(), TestProperties.PROP_QUERYSET_TIMEOUT, 0);
+
+		// the expected results are read ahead when the tests are compared one at a time
+		int prefetchDepth = PropertiesUtils.getIntProperty(scenario.getProperties(), TestProperties.PROP_PREFETCH_DEPTH, DEFAULT_PREFETCH_DEPTH);
+		if (workers <= 1 && prefetchDepth > 0 && scenario.isCompare()) {
+			prefetcher = new ExpectedResultsPrefetcher(scenario, prefetchDepth);
+		}
+		watchdog = new QueryWatchdog(scenario.getQueryScenarioIdentifier());
 
 		FrameworkRuntimeException fre = null;
+		boolean completed = false;
 		
 		try {
 
@@ -127,74 +195,63 @@ public class ProcessResults implements TestCaseLifeCycle {
 
 				ClientPlugin.LOGGER.info("Start TestResult:  QuerySetID [" + querySetID + "]");
 
-				final List<QueryTest> queryTests = scenario.getQueries(querySetID);
-
-				// the iterator to process the query tests
-				Iterator<QueryTest> queryTestIt = queryTests.iterator();
+				// the iterator to process the query tests, which are read while they are run
+				Iterator<QueryTest> queryTestIt = scenario.getQueryIterator(querySetID);
+				if (prefetcher != null) {
+					queryTestIt = prefetcher.prefetch(queryTestIt);
+					if (qsetIt.hasNext()) {
+						prefetcher.prepare(querySetIDs.get(qsetIt.nextIndex()));
+					}
+				}
 
 				long beginTS = System.currentTimeMillis();
+				querySetDeadline = (querySetTimeout > 0 ? beginTS + querySetTimeout * 1000l : -1l);
 
-				while (queryTestIt.hasNext() && next) {
-					QueryTest q = queryTestIt.next();
-					
-					TestResult testResult = new TestResult(q.getQuerySetID(), q.getQueryID());
-					
-					TestCase testcase = new TestCase(q);
-					testcase.setTestResult(testResult);
-					
-					ClientPlugin.LOGGER.debug("Test: QuerySetID [" + testResult.getQuerySetID() + " - " + testResult.getQueryID() + "]");
-
-					testResult.setResultMode(this.scenario.getResultsMode());
-					testResult.setStatus(TestResult.RESULT_STATE.TEST_PRERUN);
-					
-					try {
-						abQuery.before(testcase);
-
-						if(expectedEndTime >=0 
-								&& expectedEndTime < System.currentTimeMillis()){
-							next = false;
-							throw new FrameworkRuntimeException(FrameworkException.ErrorCodes.SCENARIO_ABORTED,
-									"Scenario aborted - maximum time exceeded.");
-						}
-						
-						executeTest(testcase);
-					} catch (QueryTestFailedException qtfe) {
-						// dont set on testResult, handled in transactionAPI
-						
-					} catch (Exception rme) {
-						if (ClientPlugin.LOGGER.isDebugEnabled()) {
-							rme.printStackTrace();
-						}
-						abQuery.setApplicationException(rme);
-						
-						if(rme instanceof FrameworkRuntimeException){
-							String code = ((FrameworkRuntimeException) rme).getCode();
-							if(FrameworkException.ErrorCodes.SERVER_CONNECTION_EXCEPTION.equals(code)
-									|| FrameworkException.ErrorCodes.DB_CONNECTION_EXCEPTION.equals(code)
-									|| FrameworkException.ErrorCodes.SCENARIO_ABORTED.equals(code)){
-								next = false;
-								scenarioFailException = rme;
+				try {
+					if (workers > 1) {
+						runQueryTests(queryTestIt, workers, expectedEndTime);
+					} else {
+						// consecutive updates whose update count is checked are sent in batches
+						List<QueryTest> batch = new ArrayList<QueryTest>();
+						while (next && queryTestIt.hasNext()) {
+							QueryTest q = queryTestIt.next();
+							
+							if (isBatchable(q)) {
+								if (!batch.isEmpty() && !canBatch(batch.get(0), q)) {
+									runBatch(batch, expectedEndTime);
+									batch.clear();
+								}
+								batch.add(q);
+								if (batch.size() >= batchSize) {
+									runBatch(batch, expectedEndTime);
+									batch.clear();
+								}
+								continue;
 							}
+							
+							runBatch(batch, expectedEndTime);
+							batch.clear();
+							if (!next) break;
+							
+							TestCase testcase = runQueryTest(q, abQuery, trans, expectedEndTime);
+							
+							addTest(summary, testcase.getTestResult());
 						}
-					} finally {
-						abQuery.after();
+						runBatch(batch, expectedEndTime);
 					}
-						
-					after(testcase);
-					
-					trans.cleanup();
-					if(Thread.currentThread().isInterrupted()){
-						ClientPlugin.LOGGER.info("Thread has been interrupted.");
-						next = false;
-						scenarioFailException = new FrameworkRuntimeException(FrameworkException.ErrorCodes.BQT_INTERRUPTED, "BQT thread has been interrupted.");
-					}
-				
+				} finally {
+					close(queryTestIt);
 				}
 
 				long endTS = System.currentTimeMillis();
 
 				ClientPlugin.LOGGER.info("End TestResult: QuerySetID [" + querySetID + "]");
 
+				// the tests replayed from the journal count in the time of the query set
+				if (journal != null) {
+					beginTS -= journal.getElapsed(querySetID);
+				}
+
 				try {
 					summary.printResults(querySetID, beginTS, endTS);
 				} catch (Exception e) {
@@ -203,20 +260,33 @@ public class ProcessResults implements TestCaseLifeCycle {
 				}
 
 			}
+			completed = next;
 
 		} finally {
+			logStatementCacheStatistics();
+			addReconnects(summary);
+			shutdownWorkers();
+			// the error files and expected results are written before the totals are reported
+			scenario.closeOutputWriter();
 			try {
 				summary.printTotals(numOfQueries);
 				if(scenarioFailException != null){
 					summary.printServerConnectionException(scenarioFailException);
 				}
 				summary.cleanup();
+				if (journal != null && completed && scenarioFailException == null) {
+					journal.complete();
+				}
 			} catch (Exception e) {
 				if (fre == null) {
 					throw new FrameworkRuntimeException(e);
 				}
 				throw fre;
 
+			} finally {
+				if (journal != null) {
+					journal.close();
+				}
 			}
 		}
 		if(scenarioFailException != null){
@@ -224,9 +294,482 @@ public class ProcessResults implements TestCaseLifeCycle {
 		}
 	}
 	
+	/**
+	 * Run the query tests of a query set using <code>workers</code> concurrent workers, each using
+	 * its own transaction (connection).  The workers take the next test from a shared queue.  
+	 * A {@link QueryTest#isSerial() serial} test waits for the tests before it to complete 
+	 * and is then run by itself, using this test case's transaction.  The results
+	 * are added to the summary in the order the tests are defined.  At most {@link #CONCURRENT_TESTS}
+	 * tests are read ahead of the tests that are run.
+	 */
+	private void runQueryTests(Iterator<QueryTest> queryTests, int workers, long expectedEndTime) {
+		TestResultsSummary summary = this.scenario.getTestResultsSummary();
+		
+		List<QueryTest> concurrentTests = new ArrayList<QueryTest>();
+		while (next && queryTests.hasNext()) {
+			QueryTest q = queryTests.next();
+			
+			if (!q.isSerial()) {
+				concurrentTests.add(q);
+				if (concurrentTests.size() >= CONCURRENT_TESTS) {
+					runConcurrently(concurrentTests, workers, expectedEndTime);
+					concurrentTests.clear();
+				}
+				continue;
+			}
+			
+			runConcurrently(concurrentTests, workers, expectedEndTime);
+			concurrentTests.clear();
+			if (!next) break;
+			
+			ClientPlugin.LOGGER.debug("Running serial test [" + q.getQueryID() + "]");
+			TestCase testcase = runQueryTest(q, abQuery, trans, expectedEndTime);
+			addTest(summary, testcase.getTestResult());
+		}
+		
+		if (next) {
+			runConcurrently(concurrentTests, workers, expectedEndTime);
+		}
+	}
+	
+	private void runConcurrently(final List<QueryTest> queryTests, int workers, final long expectedEndTime) {
+		if (queryTests.isEmpty()) return;
+		
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(workers);
+		}
+		while (workerTransactions.size() < workers) {
+			workerTransactions.add(createWorkerTransaction());
+		}
+		
+		final TestCase[] testcases = new TestCase[queryTests.size()];
+		final AtomicInteger queue = new AtomicInteger();
+		
+		List<Future<Object>> results = new ArrayList<Future<Object>>(workers);
+		for (int i = 0; i < workers && i < queryTests.size(); i++) {
+			final TransactionAPI transaction = workerTransactions.get(i);
+			results.add(executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					int idx = 0;
+					while (next && (idx = queue.getAndIncrement()) < queryTests.size()) {
+						testcases[idx] = runQueryTest(queryTests.get(idx), (AbstractQuery) transaction, transaction, expectedEndTime);
+					}
+					return null;
+				}
+			}));
+		}
+		
+		FrameworkRuntimeException failure = null;
+		for (Future<Object> result : results) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				abort(new FrameworkRuntimeException(FrameworkException.ErrorCodes.BQT_INTERRUPTED, "BQT thread has been interrupted."));
+				executor.shutdownNow();
+				break;
+			} catch (ExecutionException e) {
+				// stop the other workers, the same as when running serially
+				next = false;
+				if (failure == null) {
+					failure = (e.getCause() instanceof FrameworkRuntimeException ? (FrameworkRuntimeException) e.getCause() : new FrameworkRuntimeException(e.getCause()));
+				}
+			}
+		}
+		
+		TestResultsSummary summary = this.scenario.getTestResultsSummary();
+		for (TestCase testcase : testcases) {
+			if (testcase != null) {
+				addTest(summary, testcase.getTestResult());
+			}
+		}
+		
+		if (failure != null) throw failure;
+	}
+	
+	/**
+	 * @return the transaction, with its own connection, of a worker that runs the tests concurrently
+	 */
+	TransactionAPI createWorkerTransaction() {
+		return TransactionFactory.create(scenario.getProperties());
+	}
+	
+	static void close(Iterator<QueryTest> queryTests) {
+		if (queryTests instanceof Closeable) {
+			try {
+				((Closeable) queryTests).close();
+			} catch (IOException e) {
+			}
+		}
+	}
+	
+	/**
+	 * Add the result to the summary, and to the journal when the test was run.
+	 */
+	private void addTest(TestResultsSummary summary, TestResult result) {
+		summary.addTest(result.getQuerySetID(), result);
+		if (journal != null) {
+			journal.write(result);
+		}
+	}
+	
+	/**
+	 * @return the journal of the completed tests, loaded when the scenario is resumed, or null
+	 * when there's no journal
+	 */
+	private ResultsJournal openJournal() {
+		Properties props = scenario.getProperties();
+		boolean write = PropertiesUtils.getBooleanProperty(props, TestProperties.PROP_JOURNAL, true);
+		if (!write && !scenario.isResume()) {
+			return null;
+		}
+		ResultsJournal journal = new ResultsJournal(ResultsJournal.getFile(scenario.getTestRunDir()),
+				PropertiesUtils.getIntProperty(props, TestProperties.PROP_JOURNAL_SYNC_RESULTS, DEFAULT_JOURNAL_SYNC_RESULTS),
+				PropertiesUtils.getIntProperty(props, TestProperties.PROP_JOURNAL_SYNC_INTERVAL, DEFAULT_JOURNAL_SYNC_INTERVAL));
+		try {
+			if (scenario.isResume()) {
+				journal.load();
+				if (journal.isCompleted()) {
+					return journal;
+				}
+				ClientPlugin.LOGGER.info("Resuming scenario " + scenario.getQueryScenarioIdentifier() + ", " + journal.size()
+						+ " results are replayed from the journal");
+			}
+			if (write) {
+				journal.open(scenario.isResume());
+			}
+		} catch (IOException e) {
+			ClientPlugin.LOGGER.error("Unable to open the results journal of scenario " + scenario.getQueryScenarioIdentifier() + ": " + e.getMessage());
+			return null;
+		}
+		return journal;
+	}
+	
+	private void shutdownWorkers() {
+		if (prefetcher != null) {
+			prefetcher.shutdown();
+			prefetcher = null;
+		}
+		if (watchdog != null) {
+			watchdog.shutdown();
+			watchdog = null;
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		for (TransactionAPI t : workerTransactions) {
+			t.cleanup();
+			((AbstractQuery) t).closeStatementCache();
+			((AbstractQuery) t).getConnectionStrategy().shutdown();
+		}
+		workerTransactions.clear();
+	}
+	
+	private void addReconnects(TestResultsSummary summary) {
+		int reconnects = abQuery.getConnectionRecovery().getReconnects();
+		for (TransactionAPI t : workerTransactions) {
+			reconnects += ((AbstractQuery) t).getConnectionRecovery().getReconnects();
+		}
+		if (reconnects > 0) {
+			ClientPlugin.LOGGER.warn("Reconnected " + reconnects + " times after connection errors [scenario: " + scenario.getQueryScenarioIdentifier() + "]");
+		}
+		summary.addReconnects(reconnects);
+	}
+	
+	private void logStatementCacheStatistics() {
+		PreparedStatementCache.Statistics stats = new PreparedStatementCache.Statistics();
+		stats.add(abQuery.getStatementCacheStatistics());
+		for (TransactionAPI t : workerTransactions) {
+			stats.add(((AbstractQuery) t).getStatementCacheStatistics());
+		}
+		if (stats.getHits() + stats.getMisses() > 0) {
+			ClientPlugin.LOGGER.info("Prepared statement cache: " + stats + " [scenario: " + scenario.getQueryScenarioIdentifier() + "]");
+		}
+	}
+	
+	private synchronized void abort(Exception e) {
+		next = false;
+		if (scenarioFailException == null) {
+			scenarioFailException = e;
+		}
+	}
+	
+	private TestCase runQueryTest(QueryTest q, AbstractQuery query, TransactionAPI transaction, long expectedEndTime) {
+		TestCase testcase = replay(q);
+		if (testcase != null) {
+			return testcase;
+		}
+		testcase = newTestCase(q);
+		TestResult testResult = testcase.getTestResult();
+		
+		ScheduledFuture<?> watch = null;
+		try {
+			query.before(testcase);
+
+			watch = watch(testcase, query, getTimeout(q), expectedEndTime);
+			
+			executeTest(testcase, query);
+		} catch (QueryTestFailedException qtfe) {
+			// dont set on testResult, handled in transactionAPI
+			
+		} catch (Exception rme) {
+			failed(query, rme);
+		} finally {
+			query.after();
+		}
+			
+		try {
+			after(testcase, transaction);
+		} finally {
+			if (watch != null) {
+				watch.cancel(false);
+			}
+		}
+		
+		checkTimedOut(testResult, query);
+		
+		cleanupTest(transaction);
+		
+		return testcase;
+	}
+	
+	/**
+	 * @return the test case with the result of the test from the journal, when it completed before
+	 * the scenario was resumed, or null
+	 */
+	private TestCase replay(QueryTest q) {
+		TestResult testResult = (journal != null ? journal.replay(q.getQuerySetID(), q.getQueryID()) : null);
+		if (testResult == null) {
+			return null;
+		}
+		TestCase testcase = new TestCase(q);
+		testResult.setResultMode(this.scenario.getResultsMode());
+		testcase.setTestResult(testResult);
+		return testcase;
+	}
+	
+	private TestCase newTestCase(QueryTest q) {
+		TestCase testcase = new TestCase(q);
+		TestResult testResult = new TestResult(q.getQuerySetID(), q.getQueryID());
+		testcase.setTestResult(testResult);
+		
+		ClientPlugin.LOGGER.debug("Test: QuerySetID [" + testResult.getQuerySetID() + " - " + testResult.getQueryID() + "]");
+
+		testResult.setResultMode(this.scenario.getResultsMode());
+		testResult.setStatus(TestResult.RESULT_STATE.TEST_PRERUN);
+		return testcase;
+	}
+	
+	/**
+	 * Abort the scenario when its time is exceeded, otherwise have the test cancelled when it runs longer
+	 * than its <code>timeout</code>, or past the end of the query set's time.
+	 * @return the watch to cancel when the test completes, or null
+	 */
+	private ScheduledFuture<?> watch(TestCase testcase, AbstractQuery query, long timeout, long expectedEndTime) {
+		if(expectedEndTime >=0 
+				&& expectedEndTime < System.currentTimeMillis()){
+			next = false;
+			throw new FrameworkRuntimeException(FrameworkException.ErrorCodes.SCENARIO_ABORTED,
+					"Scenario aborted - maximum time exceeded.");
+		}
+		
+		long deadline = querySetDeadline;
+		if (deadline >= 0) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				// the rest of the query set's tests are not run
+				query.timeout(testcase);
+				throw new FrameworkRuntimeException("Query set timed out before the query was run.");
+			}
+			timeout = (timeout > 0 ? Math.min(timeout, remaining) : remaining);
+		}
+		if (timeout > 0 && watchdog != null) {
+			return watchdog.watch(query, testcase, timeout);
+		}
+		return null;
+	}
+	
+	/**
+	 * Keep the exception of the test, and abort the scenario when the connection failed or its time is exceeded.
+	 */
+	private void failed(AbstractQuery query, Exception rme) {
+		if (ClientPlugin.LOGGER.isDebugEnabled()) {
+			rme.printStackTrace();
+		}
+		query.setApplicationException(rme);
+		
+		if(rme instanceof FrameworkRuntimeException){
+			String code = ((FrameworkRuntimeException) rme).getCode();
+			if(FrameworkException.ErrorCodes.SERVER_CONNECTION_EXCEPTION.equals(code)
+					|| FrameworkException.ErrorCodes.DB_CONNECTION_EXCEPTION.equals(code)
+					|| FrameworkException.ErrorCodes.SCENARIO_ABORTED.equals(code)){
+				abort(rme);
+			}
+		}
+	}
+	
+	private static void checkTimedOut(TestResult testResult, AbstractQuery query) {
+		// a test that completed before it was cancelled keeps its result
+		if (query.isTimedOut() && testResult.isFailure()) {
+			testResult.setFailureMessage("Timed out: " + testResult.getFailureMessage());
+			testResult.setStatus(TestResult.RESULT_STATE.TEST_TIMEOUT);
+		}
+	}
+	
+	private void cleanupTest(TransactionAPI transaction) {
+		transaction.cleanup();
+		if(Thread.currentThread().isInterrupted()){
+			ClientPlugin.LOGGER.info("Thread has been interrupted.");
+			abort(new FrameworkRuntimeException(FrameworkException.ErrorCodes.BQT_INTERRUPTED, "BQT thread has been interrupted."));
+		}
+	}
+	
+	/**
+	 * Run consecutive {@link #isBatchable(QueryTest) batchable} tests as one batch, using this test case's
+	 * transaction.  A single test, or the tests of a driver that doesn't support batch updates, are run on their own.
+	 */
+	private void runBatch(List<QueryTest> tests, long expectedEndTime) {
+		if (tests.isEmpty() || !next) return;
+		
+		TestResultsSummary summary = this.scenario.getTestResultsSummary();
+		if (tests.size() == 1 || !supportsBatchUpdates(abQuery)) {
+			for (QueryTest q : tests) {
+				if (!next) break;
+				addTest(summary, runQueryTest(q, abQuery, trans, expectedEndTime).getTestResult());
+			}
+			return;
+		}
+		
+		List<TestCase> testcases = new ArrayList<TestCase>(tests.size());
+		List<TestCase> batch = new ArrayList<TestCase>(tests.size());
+		long timeout = 0;
+		boolean limited = true;
+		for (QueryTest q : tests) {
+			TestCase testcase = replay(q);
+			if (testcase == null) {
+				testcase = newTestCase(q);
+				batch.add(testcase);
+				long t = getTimeout(q);
+				limited = limited && t > 0;
+				timeout += t;
+			}
+			testcases.add(testcase);
+		}
+		
+		if (!batch.isEmpty()) {
+			executeBatch(batch, (limited ? timeout : 0), expectedEndTime);
+		}
+		for (TestCase testcase : testcases) {
+			addTest(summary, testcase.getTestResult());
+		}
+	}
+	
+	/**
+	 * Send the statements of the tests in one batch, and check the update count of each one against
+	 * its test.  The tests share the time of the batch.  When the batch fails, the tests whose statements
+	 * were executed keep their update count, and the others fail with the batch's exception.
+	 */
+	private void executeBatch(List<TestCase> testcases, long timeout, long expectedEndTime) {
+		AbstractQuery query = abQuery;
+		
+		QueryTest first = (QueryTest) testcases.get(0).getActualTest();
+		QueryTest last = (QueryTest) testcases.get(testcases.size() - 1).getActualTest();
+		String[] sql = new String[testcases.size()];
+		for (int i = 0; i < sql.length; i++) {
+			sql[i] = ((QueryTest) testcases.get(i).getActualTest()).getQueries()[0].getSql();
+			testcases.get(i).getTestResult().setQuery(sql[i]);
+		}
+		ClientPlugin.LOGGER.info("Queries [" + first.getQueryID() + " - " + last.getQueryID() + "]: " + sql.length + " tests in one batch");
+		
+		// the batch's time and exception are kept apart from those of its tests
+		TestCase batchcase = newTestCase(first);
+		TestResult batchResult = batchcase.getTestResult();
+		int[] counts = null;
+		ScheduledFuture<?> watch = null;
+		try {
+			query.before(batchcase);
+			
+			watch = watch(batchcase, query, timeout, expectedEndTime);
+			
+			query.setStatementOptions(scenario.getStatementOptions(first.getQueries()[0]));
+			counts = query.executeBatch(sql);
+		} catch (QueryTestFailedException qtfe) {
+			if (qtfe.getCause() instanceof BatchUpdateException) {
+				// the statements executed before the one that failed
+				counts = ((BatchUpdateException) qtfe.getCause()).getUpdateCounts();
+			}
+		} catch (Exception rme) {
+			failed(query, rme);
+		} finally {
+			query.after();
+			if (watch != null) {
+				watch.cancel(false);
+			}
+		}
+		
+		long executions = batchResult.getLatencies().getCount();
+		for (int i = 0; i < testcases.size(); i++) {
+			TestCase testcase = testcases.get(i);
+			TestResult testResult = testcase.getTestResult();
+			QuerySQL qsql = ((QueryTest) testcase.getActualTest()).getQueries()[0];
+			
+			if (counts != null && i < counts.length && counts[i] != Statement.EXECUTE_FAILED) {
+				if (executions > 0) {
+					testResult.setBeginTS(batchResult.getBeginTS());
+					testResult.setEndTS(batchResult.getEndTS());
+					testResult.recordExecution(batchResult.getLatencies().getTotal() / sql.length);
+				}
+				if (counts[i] == Statement.SUCCESS_NO_INFO) {
+					// the driver doesn't tell how many rows were updated
+					ClientPlugin.LOGGER.debug("No update count for QueryID [" + testResult.getQueryID() + "]: " + sql[i]);
+				} else {
+					testResult.setRowCount(0);
+					testResult.setUpdateCount(counts[i]);
+					try {
+						AssertResults.assertUpdateCount(testResult, qsql.getUpdateCnt());
+					} catch (QueryTestFailedException qtfe) {
+						testResult.setException(qtfe);
+						testResult.setStatus(TestResult.RESULT_STATE.TEST_EXCEPTION);
+					}
+				}
+			} else {
+				Throwable error = batchResult.getException();
+				if (error == null) {
+					error = new QueryTestFailedException("The batch returned " + (counts != null ? counts.length : 0) + " update counts for " + sql.length + " statements");
+				}
+				testResult.setException(error);
+				testResult.setStatus(TestResult.RESULT_STATE.TEST_EXCEPTION);
+			}
+			
+			after(testcase, trans);
+			
+			checkTimedOut(testResult, query);
+		}
+		
+		cleanupTest(trans);
+	}
+	
+	/**
+	 * @return the milliseconds the test can run, the query timeout of each execution of its queries,
+	 * or 0 when one of its queries has no timeout
+	 */
+	private long getTimeout(QueryTest q) {
+		long timeout = 0;
+		for (QuerySQL qsql : q.getQueries()) {
+			Integer seconds = scenario.getStatementOptions(qsql).getQueryTimeout();
+			if (seconds == null || seconds.intValue() <= 0) {
+				return 0;
+			}
+			timeout += seconds.intValue() * 1000l * Math.max(1, qsql.getRunTimes());
+		}
+		return timeout;
+	}
+	
 	public void cleanup() {
 		if (trans != null) {
 			trans.cleanup();
+			((AbstractQuery) trans).closeStatementCache();
 		}
 		
 		trans = null;
@@ -236,6 +779,10 @@ public class ProcessResults implements TestCaseLifeCycle {
 
 
 	public void executeTest(TestCase testcase) throws Exception {
+		executeTest(testcase, abQuery);
+	}
+	
+	void executeTest(TestCase testcase, AbstractQuery query) throws Exception {
 		
 		QueryTest test = (QueryTest) testcase.getActualTest();
 		TestResult testResult = testcase.getTestResult();
@@ -260,6 +807,20 @@ public class ProcessResults implements TestCaseLifeCycle {
 
 		for (int i = 0; i < l; i++) {
 			QuerySQL qsql = queries[i];
+			
+			// a run of update statements is sent in batches, only their update counts are checked
+			if (resultModeNone) {
+				int end = i;
+				while (end < l && isBatchable(queries[end])) {
+					end++;
+				}
+				if (end - i > 1 && supportsBatchUpdates(query)) {
+					executeBatches(testcase, query, queries, i, end);
+					i = end - 1;
+					continue;
+				}
+			}
+			
 			testResult.setQuery(qsql.getSql());
 			
 			// if runtimes or rowcounts are greater than 1, then no expected results will
@@ -277,12 +838,13 @@ public class ProcessResults implements TestCaseLifeCycle {
 			ClientPlugin.LOGGER.info("Query [" + testResult.getQueryID() + "]: " + testResult.getQuery());
 			for (int r = 0; r < qsql.getRunTimes(); r++) {
 
-				abQuery.execute(testResult.getQuery(), qsql.getParms(), qsql.getPayLoad());
+				query.setStatementOptions(scenario.getStatementOptions(qsql));
+				query.execute(testResult.getQuery(), qsql.getParms(), qsql.getPayLoad());
 				// check for NONE first, because it can be changed based on conditions
 				// NOTE: isSQL() isn't processed in this class and therefore isn't looked for
 				if (resultModeNone) {
 						if (qsql.getRowCnt() >= 0) {
-							testResult.setRowCount(abQuery.getRowCount());					
+							testResult.setRowCount(query.getRowCount());					
 							AssertResults.assertRowCount(testResult, qsql.getRowCnt());
 						} else if (qsql.getUpdateCnt() >= 0) {
 							AssertResults.assertUpdateCount(testResult, qsql.getUpdateCnt());
@@ -301,7 +863,121 @@ public class ProcessResults implements TestCaseLifeCycle {
 		}		
 	}
 	
-	private void after(TestCase testcase) {
+	/**
+	 * Execute the queries from <code>begin</code> to <code>end</code> in batches of
+	 * {@link TestProperties#PROP_BATCH_SIZE} statements, and check the update count of each one.
+	 */
+	private void executeBatches(TestCase testcase, AbstractQuery query, QuerySQL[] queries, int begin, int end) throws QueryTestFailedException {
+		TestResult testResult = testcase.getTestResult();
+		
+		List<QuerySQL> statements = new ArrayList<QuerySQL>();
+		for (int i = begin; i < end; i++) {
+			for (int r = 0; r < queries[i].getRunTimes(); r++) {
+				statements.add(queries[i]);
+			}
+		}
+		ClientPlugin.LOGGER.info("Query [" + testResult.getQueryID() + "]: " + statements.size() + " statements in batches of " + batchSize);
+		
+		int b = 0;
+		while (b < statements.size()) {
+			// a batch has the options of all its statements
+			StatementOptions options = scenario.getStatementOptions(statements.get(b));
+			int e = b + 1;
+			while (e < statements.size() && e - b < batchSize && options.equals(scenario.getStatementOptions(statements.get(e)))) {
+				e++;
+			}
+			List<QuerySQL> batch = statements.subList(b, e);
+			b = e;
+			
+			String[] sql = new String[batch.size()];
+			for (int i = 0; i < sql.length; i++) {
+				sql[i] = batch.get(i).getSql();
+			}
+			testResult.setQuery(sql[0]);
+			
+			query.setStatementOptions(options);
+			int[] counts = query.executeBatch(sql);
+			
+			for (int i = 0; i < sql.length; i++) {
+				QuerySQL qsql = batch.get(i);
+				testResult.setQuery(sql[i]);
+				if (i >= counts.length) {
+					throw new QueryTestFailedException("The batch returned " + counts.length + " update counts for " + sql.length + " statements");
+				}
+				if (qsql.getUpdateCnt() < 0) {
+					continue;
+				}
+				if (counts[i] == Statement.SUCCESS_NO_INFO) {
+					// the driver doesn't tell how many rows were updated
+					ClientPlugin.LOGGER.debug("No update count for QueryID [" + testResult.getQueryID() + "]: " + sql[i]);
+					continue;
+				}
+				testResult.setUpdateCount(counts[i]);
+				AssertResults.assertUpdateCount(testResult, qsql.getUpdateCnt());
+			}
+		}
+	}
+	
+	/**
+	 * @return true when the test is a single update that is run once, and only its update count is checked
+	 */
+	boolean isBatchable(QueryTest q) {
+		if (batchSize <= 1 || Boolean.FALSE.equals(supportsBatchUpdates) || !scenario.isNone()) {
+			return false;
+		}
+		QuerySQL[] queries = q.getQueries();
+		return queries.length == 1 && isBatchable(queries[0]) && queries[0].getUpdateCnt() >= 0 && queries[0].getRunTimes() <= 1;
+	}
+	
+	/**
+	 * @return true when the update of the test can be sent in the same batch as the one of <code>first</code>
+	 */
+	private boolean canBatch(QueryTest first, QueryTest q) {
+		return scenario.getStatementOptions(first.getQueries()[0]).equals(scenario.getStatementOptions(q.getQueries()[0]));
+	}
+	
+	/**
+	 * @return true when the query is an update without parameters, whose rows aren't counted
+	 */
+	static boolean isBatchable(QuerySQL qsql) {
+		if ((qsql.getParms() != null && qsql.getParms().length > 0) || qsql.getRowCnt() >= 0) {
+			return false;
+		}
+		String sql = qsql.getSql().trim();
+		// a batch can't have parameters
+		if (sql.indexOf('?') != -1) {
+			return false;
+		}
+		String keyword = sql.split("\\s", 2)[0].toLowerCase(Locale.ENGLISH);
+		for (String dml : DML_KEYWORDS) {
+			if (dml.equals(keyword)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private boolean supportsBatchUpdates(AbstractQuery query) {
+		if (batchSize <= 1) {
+			return false;
+		}
+		if (supportsBatchUpdates == null) {
+			try {
+				supportsBatchUpdates = Boolean.valueOf(query.getConnectionStrategy().getConnection().getMetaData().supportsBatchUpdates());
+			} catch (FrameworkException e) {
+				// not known until there is a connection, the statements are sent on their own
+				return false;
+			} catch (SQLException e) {
+				supportsBatchUpdates = Boolean.FALSE;
+			}
+			if (!supportsBatchUpdates.booleanValue()) {
+				ClientPlugin.LOGGER.warn("The driver doesn't support batch updates, the statements are sent one at a time [scenario: " + scenario.getQueryScenarioIdentifier() + "]");
+			}
+		}
+		return supportsBatchUpdates.booleanValue();
+	}
+	
+	private void after(TestCase testcase, TransactionAPI transaction) {
 		
 		FrameworkRuntimeException lastT = null;
 		try {
@@ -317,13 +993,11 @@ public class ProcessResults implements TestCaseLifeCycle {
 			if (testcase.getTestResult().getResultMode().equalsIgnoreCase(TestProperties.RESULT_MODES.NONE) && 
 					! this.scenario.isNone()) {
 				if (testcase.getTestResult().getStatus() == TestResult.RESULT_STATE.TEST_EXCEPTION) {
-						this.scenario.getErrorWriter().generateErrorFile(testcase, null, (TransactionAPI) null, null);
+						this.scenario.getErrorWriter().generateErrorFile(testcase, null, (TransactionAPI) null, null, null);
 				}
 			} else {
-				this.scenario.handleTestResult(testcase, trans);
+				this.scenario.handleTestResult(testcase, transaction);
 			}
-						
-			this.scenario.getTestResultsSummary().addTest(testcase.getTestResult().getQuerySetID(), testcase.getTestResult());
 
 		} catch (FrameworkRuntimeException t) {
 			lastT = t;
@@ -339,28 +1013,31 @@ public class ProcessResults implements TestCaseLifeCycle {
 	}
 	
 	private Exception pingDS(String scenario){
-		String pingQuery = ConfigPropertyLoader.getInstance().getProperty(TestProperties.PING_QUERY);
+		String pingQuery = this.scenario.getProperties().getProperty(TestProperties.PING_QUERY);
 		if(pingQuery == null || pingQuery.isEmpty()){
 			FrameworkPlugin.LOGGER.warn("Ping-query not set [scenario: " + scenario + "]");
 			return null;
 		}
-		Connection con;
+		ConnectionStrategy cs = null;
 		try{
-			con = ConnectionStrategyFactory.createConnectionStrategy().getConnection();
+			cs = ConnectionStrategyFactory.createConnectionStrategy(this.scenario.getProperties());
+			Connection con = cs.getConnection();
+			FrameworkPlugin.LOGGER.debug("Trying ping-query " + pingQuery + " [scenario " + scenario + "]");
+			PreparedStatement ps = con.prepareStatement(pingQuery);
+			try {
+				ps.execute();
+			} finally {
+				ps.close();
+			}
 		} catch (FrameworkException ex){
 			return new FrameworkRuntimeException(ex);
-		}
-		try{
-			FrameworkPlugin.LOGGER.debug("Trying ping-query " + pingQuery + " [scenario " + scenario + "]");
-			con.prepareStatement(pingQuery).execute();
 		} catch (SQLException ex){
 			return new FrameworkRuntimeException(ex, FrameworkException.ErrorCodes.PING_QUERY_FAILED,
 					"Ping-query did not succeed [scenario : " + scenario + ", query: " + pingQuery + "].");
 		} finally {
-			try{
-				con.close();
-			} catch (SQLException ex){
-				//ignore
+			// a pooled strategy returns the connection to the pool, instead of closing it
+			if (cs != null) {
+				cs.shutdown();
 			}
 		}
 		return null;
@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.testcase;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.bqt.client.ClientPlugin;
+import org.jboss.bqt.framework.AbstractQuery;
+import org.jboss.bqt.framework.TestCase;
+
+/**
+ * QueryWatchdog cancels the statement of a test that runs longer than its timeout, from a
+ * scheduler thread, so a runaway query doesn't stall the scenario.  The statement is cancelled
+ * with {@link AbstractQuery#timeout(TestCase)}, which leaves the connection open for the next test.
+ */
+class QueryWatchdog {
+
+	private ScheduledExecutorService scheduler;
+
+	QueryWatchdog(String scenarioName) {
+		final String name = "bqt-watchdog-" + scenarioName; //$NON-NLS-1$
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Cancel the test when it is still running after <code>timeout</code> milliseconds.
+	 * @param query the query that runs the test
+	 * @param testcase
+	 * @param timeout
+	 * @return the watch, which is {@link ScheduledFuture#cancel(boolean) cancelled} when the test completes
+	 */
+	ScheduledFuture<?> watch(final AbstractQuery query, final TestCase testcase, final long timeout) {
+		return scheduler.schedule(new Runnable() {
+			public void run() {
+				ClientPlugin.LOGGER.warn("Cancelling QueryID [" + testcase.getTestResult().getQueryID() //$NON-NLS-1$
+						+ "], it ran longer than " + timeout + " mils"); //$NON-NLS-1$ //$NON-NLS-2$
+				query.timeout(testcase);
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+	}
+
+	void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+}
@@ -0,0 +1,337 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.testcase;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jboss.bqt.client.ClientPlugin;
+import org.jboss.bqt.framework.TestResult;
+import org.jboss.bqt.framework.util.LatencyHistogram;
+
+/**
+ * ResultsJournal is an append-only journal of the completed tests of a scenario, kept under its
+ * testrun directory, so a run that dies part way through can be {@link org.jboss.bqt.client.TestProperties#PROP_RESUME resumed}:
+ * the journaled results are replayed into the summary and only the rest of the tests are run.
+ * <p>
+ * Each result is a line of tab separated fields, with the latencies of its executions, ending with a marker field.
+ * The journal is flushed and synced to the disk every {@link org.jboss.bqt.client.TestProperties#PROP_JOURNAL_SYNC_RESULTS} results, or when
+ * {@link org.jboss.bqt.client.TestProperties#PROP_JOURNAL_SYNC_INTERVAL} mils have passed since it
+ * was last synced, so at most those results are run again after a crash.  A line that was only
+ * partly written is ignored.
+ * </p>
+ */
+public class ResultsJournal {
+
+	public static final String FILE_NAME = "results_journal.txt"; //$NON-NLS-1$
+
+	private static final String HEADER = "#bqt results journal 2"; //$NON-NLS-1$
+	private static final String COMPLETED = "#completed"; //$NON-NLS-1$
+	// the lines of an older journal have fewer fields, so their tests are run again
+	private static final int FIELDS = 11;
+	// the last field, so a line that was only partly written isn't replayed
+	private static final String END = "$"; //$NON-NLS-1$
+
+	private final File file;
+	private final int syncResults;
+	private final long syncInterval;
+
+	private Map<String, TestResult> journaled = new HashMap<String, TestResult>();
+	private Map<String, Long> elapsed = new HashMap<String, Long>();
+	private Map<TestResult, Boolean> replayed = new IdentityHashMap<TestResult, Boolean>();
+	private boolean completed;
+
+	private FileOutputStream out;
+	private Writer writer;
+	private int pending;
+	private long lastSync;
+
+	/**
+	 * @param testrunDir
+	 * @return the journal file of the scenario
+	 */
+	public static File getFile(String testrunDir) {
+		return new File(testrunDir, FILE_NAME);
+	}
+
+	/**
+	 * @param file
+	 * @param syncResults the most results written before the journal is synced
+	 * @param syncInterval the most mils between a write and the next sync, checked when a result is written
+	 */
+	ResultsJournal(File file, int syncResults, long syncInterval) {
+		this.file = file;
+		this.syncResults = Math.max(1, syncResults);
+		this.syncInterval = syncInterval;
+	}
+
+	/**
+	 * Read the results of the journal, to replay them.
+	 * @throws IOException
+	 */
+	synchronized void load() throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8")); //$NON-NLS-1$
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.equals(COMPLETED)) {
+					completed = true;
+					continue;
+				}
+				TestResult result = parse(line);
+				if (result == null) {
+					continue;
+				}
+				TestResult previous = journaled.put(key(result.getQuerySetID(), result.getQueryID()), result);
+				long time = result.getEndTS() - result.getBeginTS() - (previous != null ? previous.getEndTS() - previous.getBeginTS() : 0);
+				Long sum = elapsed.get(result.getQuerySetID());
+				elapsed.put(result.getQuerySetID(), Long.valueOf((sum != null ? sum.longValue() : 0) + time));
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Open the journal for writing, after it is {@link #load() loaded} when resuming.
+	 * @param append false starts a new journal
+	 * @throws IOException
+	 */
+	synchronized void open(boolean append) throws IOException {
+		file.getParentFile().mkdirs();
+		boolean header = !append || !file.exists() || file.length() == 0;
+		out = new FileOutputStream(file, append);
+		writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8")); //$NON-NLS-1$
+		if (header) {
+			writer.write(HEADER);
+			writer.write('\n');
+		} else {
+			// a partly written line is ended, so it's ignored
+			writer.write('\n');
+		}
+		sync();
+	}
+
+	/**
+	 * @return true when the scenario completed, so there's nothing to resume
+	 */
+	synchronized boolean isCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @return the number of results that can be replayed
+	 */
+	synchronized int size() {
+		return journaled.size();
+	}
+
+	/**
+	 * @param querySetID
+	 * @return the mils taken by the journaled tests of the query set
+	 */
+	synchronized long getElapsed(String querySetID) {
+		Long time = elapsed.get(querySetID);
+		return (time != null ? time.longValue() : 0);
+	}
+
+	/**
+	 * @param querySetID
+	 * @param queryID
+	 * @return the journaled result of the test, which isn't written again, or null when the test has to be run
+	 */
+	synchronized TestResult replay(String querySetID, String queryID) {
+		TestResult result = journaled.remove(key(querySetID, queryID));
+		if (result != null) {
+			replayed.put(result, Boolean.TRUE);
+		}
+		return result;
+	}
+
+	/**
+	 * Append the result of a completed test.  A write error is logged, the tests are still run.
+	 * @param result
+	 */
+	synchronized void write(TestResult result) {
+		if (replayed.remove(result) != null || writer == null) {
+			return;
+		}
+		try {
+			StringBuilder line = new StringBuilder();
+			line.append(escape(result.getQuerySetID())).append('\t');
+			line.append(escape(result.getQueryID())).append('\t');
+			line.append(result.getStatus()).append('\t');
+			line.append(result.getBeginTS()).append('\t');
+			line.append(result.getEndTS()).append('\t');
+			line.append(result.getRowCount()).append('\t');
+			line.append(result.getUpdateCount()).append('\t');
+			line.append(escape(result.getErrorfile())).append('\t');
+			line.append(escape(result.isFailure() ? result.getFailureMessage() : null)).append('\t');
+			line.append(result.getLatencies().format()).append('\t');
+			line.append(END).append('\n');
+			writer.write(line.toString());
+			if (++pending >= syncResults || System.currentTimeMillis() - lastSync >= syncInterval) {
+				sync();
+			}
+		} catch (IOException e) {
+			ClientPlugin.LOGGER.error("Unable to write the results journal " + file.getPath() + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+			close();
+		}
+	}
+
+	/**
+	 * Mark the scenario as completed, after its summary is written.
+	 */
+	synchronized void complete() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.write(COMPLETED);
+			writer.write('\n');
+			sync();
+		} catch (IOException e) {
+			ClientPlugin.LOGGER.error("Unable to write the results journal " + file.getPath() + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	synchronized void close() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			sync();
+			writer.close();
+		} catch (IOException e) {
+			ClientPlugin.LOGGER.error("Unable to close the results journal " + file.getPath() + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			writer = null;
+			out = null;
+		}
+	}
+
+	private void sync() throws IOException {
+		writer.flush();
+		out.getFD().sync();
+		pending = 0;
+		lastSync = System.currentTimeMillis();
+	}
+
+	private static String key(String querySetID, String queryID) {
+		return querySetID + '\t' + queryID;
+	}
+
+	private static TestResult parse(String line) {
+		if (line.length() == 0 || line.startsWith("#")) { //$NON-NLS-1$
+			return null;
+		}
+		String[] fields = line.split("\t", -1); //$NON-NLS-1$
+		if (fields.length != FIELDS || !fields[FIELDS - 1].equals(END)) {
+			return null;
+		}
+		try {
+			TestResult result = new TestResult(unescape(fields[0]), unescape(fields[1]));
+			result.setStatus(Integer.parseInt(fields[2]));
+			result.setBeginTS(Long.parseLong(fields[3]));
+			result.setEndTS(Long.parseLong(fields[4]));
+			result.setRowCount(Long.parseLong(fields[5]));
+			result.setUpdateCount(Long.parseLong(fields[6]));
+			result.setErrorFile(unescape(fields[7]));
+			result.setFailureMessage(unescape(fields[8]));
+			// the executions, for the latencies of the summary
+			result.getLatencies().add(LatencyHistogram.parse(fields[9]));
+			return result;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * The tabs, line breaks and backslashes are escaped, null is written as <code>\0</code>.
+	 */
+	static String escape(String value) {
+		if (value == null) {
+			return "\\0"; //$NON-NLS-1$
+		}
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\':
+				sb.append("\\\\"); //$NON-NLS-1$
+				break;
+			case '\t':
+				sb.append("\\t"); //$NON-NLS-1$
+				break;
+			case '\n':
+				sb.append("\\n"); //$NON-NLS-1$
+				break;
+			case '\r':
+				sb.append("\\r"); //$NON-NLS-1$
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	static String unescape(String value) {
+		if (value.equals("\\0")) { //$NON-NLS-1$
+			return null;
+		}
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length()) {
+				c = value.charAt(++i);
+				switch (c) {
+				case 't':
+					c = '\t';
+					break;
+				case 'n':
+					c = '\n';
+					break;
+				case 'r':
+					c = '\r';
+					break;
+				}
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.bqt.client.ClientPlugin;
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.util.ExceptionUtil;
+
+/**
+ * AsyncOutputWriter writes the error files and the generated expected results on a small pool
+ * of I/O threads, so the query tests don't wait for the files to be written.
+ * <p>
+ * At most <code>queueSize</code> outputs wait for a thread, {@link #submit(String, Output)} blocks
+ * when the queue is full, so the results that are waiting to be written are bounded.  An output
+ * must only use values that were captured when it was submitted.  A failure to write an output is
+ * logged, because the test that submitted it has already been reported.  {@link #flush()} waits
+ * for all the submitted outputs to be written.
+ * </p>
+ * When there are no threads, the outputs are written by the thread that submits them, and
+ * their failures are thrown to it.
+ */
+public class AsyncOutputWriter {
+
+	/**
+	 * An output to be written.
+	 */
+	public interface Output {
+		void write() throws FrameworkException;
+	}
+
+	private ExecutorService executor;
+	private Semaphore slots;
+	private int pending = 0;
+
+	/**
+	 * @param name the name of the threads
+	 * @param threads the number of threads, 0 writes the outputs when they are submitted
+	 * @param queueSize the number of outputs that can wait for a thread
+	 */
+	public AsyncOutputWriter(final String name, int threads, int queueSize) {
+		if (threads <= 0) {
+			return;
+		}
+		this.slots = new Semaphore(threads + Math.max(queueSize, 0));
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private int count = 0;
+
+					public synchronized Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name + "-" + (++count)); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * @return true when the outputs are written on other threads
+	 */
+	public boolean isAsync() {
+		return executor != null;
+	}
+
+	/**
+	 * Write the output, waits while the queue is full.
+	 * @param fileName the file that is written, for the log
+	 * @param output
+	 * @throws FrameworkException if the output is written by this thread and fails
+	 */
+	public void submit(final String fileName, final Output output) throws FrameworkException {
+		if (executor == null) {
+			output.write();
+			return;
+		}
+
+		try {
+			slots.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			output.write();
+			return;
+		}
+		synchronized (this) {
+			pending++;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						output.write();
+					} catch (Throwable e) {
+						ClientPlugin.LOGGER.error("Failed to write " + fileName + ": " + ExceptionUtil.getStackTrace(e)); //$NON-NLS-1$ //$NON-NLS-2$
+					} finally {
+						done();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			// rejected after a shutdown
+			done();
+			output.write();
+		}
+	}
+
+	private synchronized void done() {
+		slots.release();
+		if (--pending == 0) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Wait until the outputs that were submitted have been written.
+	 */
+	public synchronized void flush() {
+		while (pending > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Write the outputs that were submitted and stop the threads.
+	 */
+	public void shutdown() {
+		flush();
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -96,6 +96,8 @@ public class BQTUtil {
 			return TestProperties.RESULT_MODES.SQL;
 		} else if (resultModeStr.startsWith(TestProperties.RESULT_MODES.NONE)) {
 			return TestProperties.RESULT_MODES.NONE;
+		} else if (resultModeStr.startsWith(TestProperties.RESULT_MODES.LOAD)) {
+			return TestProperties.RESULT_MODES.LOAD;
 		} else {
 			final String msg = ClientPlugin.Util.getString(
 					"ResultMode.invalidResultMode", resultModeStr); //$NON-NLS-1$     
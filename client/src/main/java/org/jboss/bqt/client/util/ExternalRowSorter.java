@@ -0,0 +1,245 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * ExternalRowSorter sorts more rows than should be held in memory.  The rows are
+ * collected in runs of <code>runSize</code> rows, each run is sorted and written to a
+ * temporary file, and the runs are merged when the rows are {@link #sort() read}.
+ * <p>
+ * The sort is stable, rows that are equal according to the comparator are returned
+ * in the order they were added, the same as <code>Collections.sort</code> would.
+ * The values of the rows must be <code>Serializable</code>.
+ * </p>
+ * The temporary files are deleted by {@link #close()}.
+ */
+public class ExternalRowSorter {
+
+	// reset the object streams, so they don't keep a reference to every row written
+	private static final int RESET_INTERVAL = 1000;
+
+	private Comparator<List<Object>> comparator;
+	private int runSize;
+	private File directory;
+
+	private List<List<Object>> buffer = new ArrayList<List<Object>>();
+	private List<File> runs = new ArrayList<File>();
+	private List<Long> runCounts = new ArrayList<Long>();
+	private List<ObjectInputStream> openRuns = new ArrayList<ObjectInputStream>();
+	private long rowCount = 0;
+
+	/**
+	 * @param comparator
+	 * @param runSize number of rows held in memory
+	 * @param directory where the runs are written, created if it doesn't exist
+	 */
+	public ExternalRowSorter(Comparator<List<Object>> comparator, int runSize, File directory) {
+		this.comparator = comparator;
+		this.runSize = Math.max(1, runSize);
+		this.directory = directory;
+	}
+
+	public void add(List<Object> row) throws IOException {
+		buffer.add(row);
+		rowCount++;
+		if (buffer.size() >= runSize) {
+			spill();
+		}
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return the number of runs written to disk
+	 */
+	public int getRunCount() {
+		return runs.size();
+	}
+
+	/**
+	 * Return the rows that were added, in sorted order.  No more rows can be added.
+	 * @return SortedRows
+	 * @throws IOException
+	 */
+	public SortedRows sort() throws IOException {
+		Collections.sort(buffer, comparator);
+
+		final PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size() + 1, new Comparator<Run>() {
+			public int compare(Run r1, Run r2) {
+				int c = comparator.compare(r1.current, r2.current);
+				// the earlier run holds the rows that were added first
+				return (c != 0 ? c : r1.index - r2.index);
+			}
+		});
+
+		for (int i = 0; i < runs.size(); i++) {
+			ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(runs.get(i))));
+			openRuns.add(in);
+			Run run = new FileRun(i, in, runCounts.get(i).longValue());
+			if (run.advance()) {
+				queue.add(run);
+			}
+		}
+		Run memory = new MemoryRun(runs.size(), buffer);
+		if (memory.advance()) {
+			queue.add(memory);
+		}
+
+		return new SortedRows() {
+			public List<Object> next() throws IOException {
+				Run run = queue.poll();
+				if (run == null) {
+					return null;
+				}
+				List<Object> row = run.current;
+				if (run.advance()) {
+					queue.add(run);
+				}
+				return row;
+			}
+		};
+	}
+
+	/**
+	 * Delete the runs written to disk.
+	 */
+	public void close() {
+		for (ObjectInputStream in : openRuns) {
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+		}
+		openRuns.clear();
+		for (File run : runs) {
+			run.delete();
+		}
+		runs.clear();
+		runCounts.clear();
+		buffer.clear();
+	}
+
+	private void spill() throws IOException {
+		Collections.sort(buffer, comparator);
+
+		directory.mkdirs();
+		File run = File.createTempFile("bqt_sort_", ".run", directory); //$NON-NLS-1$ //$NON-NLS-2$
+		runs.add(run);
+		runCounts.add(Long.valueOf(buffer.size()));
+
+		ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+		try {
+			for (int i = 0; i < buffer.size(); i++) {
+				out.writeObject(buffer.get(i));
+				if (i % RESET_INTERVAL == RESET_INTERVAL - 1) {
+					out.reset();
+				}
+			}
+		} finally {
+			out.close();
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * The sorted rows, <code>next</code> returns null when all the rows were read.
+	 */
+	public interface SortedRows {
+		List<Object> next() throws IOException;
+	}
+
+	private static abstract class Run {
+		int index;
+		List<Object> current;
+
+		Run(int index) {
+			this.index = index;
+		}
+
+		abstract boolean advance() throws IOException;
+	}
+
+	private static class MemoryRun extends Run {
+		private List<List<Object>> rows;
+		private int next = 0;
+
+		MemoryRun(int index, List<List<Object>> rows) {
+			super(index);
+			this.rows = rows;
+		}
+
+		@Override
+		boolean advance() {
+			if (next >= rows.size()) {
+				current = null;
+				return false;
+			}
+			current = rows.get(next);
+			// the row is no longer needed by the sorter
+			rows.set(next++, null);
+			return true;
+		}
+	}
+
+	private static class FileRun extends Run {
+		private ObjectInputStream in;
+		private long remaining;
+
+		FileRun(int index, ObjectInputStream in, long count) {
+			super(index);
+			this.in = in;
+			this.remaining = count;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		boolean advance() throws IOException {
+			if (remaining == 0) {
+				current = null;
+				return false;
+			}
+			remaining--;
+			try {
+				current = (List<Object>) in.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e.getMessage());
+			}
+			return true;
+		}
+	}
+}
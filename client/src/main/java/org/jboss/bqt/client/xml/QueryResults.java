@@ -31,6 +31,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.jboss.bqt.client.results.ResultColumns;
+
 /**
  * This class encapsulates results associated with a query.
  * <p>
@@ -91,9 +93,9 @@ public class QueryResults implements Externalizable {
 
 	/**
 	 * The set of results. Each result is keyed off the variable identifier that
-	 * was defined in the query's select clause. This field will never be null.
+	 * was defined in the query's select clause.  The values are held by column.
 	 */
-	private List<List<Object>> records; // Rows of columns: List<List<Object>>
+	private ResultColumns records; // Rows of columns: List<List<Object>>
 
 	// =========================================================================
 	// C O N S T R U C T O R S
@@ -276,10 +278,7 @@ public class QueryResults implements Externalizable {
 
 		// Add new field to each record
 		if (records != null) {
-			for (int i = 0; i < records.size(); i++) {
-				List<Object> record = records.get(i);
-				record.add(null);
-			}
+			records.addColumn();
 		}
 	}
 
@@ -345,7 +344,7 @@ public class QueryResults implements Externalizable {
 					+ " fields are defined.");
 		}
 		if (records == null) {
-			records = new ArrayList<List<Object>>();
+			records = new ResultColumns(getFieldCount());
 		}
 		records.add(record);
 		return records.size();
@@ -468,9 +467,11 @@ public class QueryResults implements Externalizable {
 
 		int numRows = s.readInt();
 		if (numRows > 0) {
-			records = new ArrayList<List<Object>>(numRows);
+			records = new ResultColumns(numFields);
+			// the values are copied into the columns, so the record can be reused
+			List<Object> record = new ArrayList<Object>(numFields);
 			for (int row = 0; row < numRows; row++) {
-				List<Object> record = new ArrayList<Object>(numFields);
+				record.clear();
 				for (int col = 0; col < numFields; col++) {
 					record.add(s.readObject());
 				}
@@ -140,6 +140,11 @@ public final class TagNames {
 		public static final String STAR = "star"; //$NON-NLS-1$
 		public static final String UPDATE_CNT = "updatecnt"; //$NON-NLS-1$
 		public static final String EXECUTION_TIME = "exectime"; //$NON-NLS-1$
+		public static final String SERIAL = "serial"; //$NON-NLS-1$
+		public static final String RESULTSET_TYPE = "resultSetType"; //$NON-NLS-1$
+		public static final String FETCH_SIZE = "fetchSize"; //$NON-NLS-1$
+		public static final String MAX_ROWS = "maxRows"; //$NON-NLS-1$
+		public static final String QUERY_TIMEOUT = "timeout"; //$NON-NLS-1$
 
 		public static final String UNPRINTABALE = "unprintable";
 		public static final String HEXVALUE = "hexValue";
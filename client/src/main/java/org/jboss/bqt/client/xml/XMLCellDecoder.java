@@ -0,0 +1,267 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.xml;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.jboss.bqt.core.util.StringHelper;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+
+/**
+ * XMLCellDecoder converts the value element of an expected results cell, such as
+ * <code>&lt;integer&gt;1&lt;/integer&gt;</code>, to its Java value.  There is one decoder
+ * for each value element name, so a reader can {@link #forElement(String) resolve} the decoder
+ * of a column once and use it for every row.
+ */
+abstract class XMLCellDecoder {
+
+	private static final Map<String, XMLCellDecoder> DECODERS = new HashMap<String, XMLCellDecoder>();
+
+	/**
+	 * Strings are the default, values of unknown elements are read as text.
+	 */
+	static final XMLCellDecoder STRING = new XMLCellDecoder(TagNames.Elements.STRING) {
+		@Override
+		Object decode(String text, String unprintable, String hexValue) {
+			return dataValue(text, unprintable, hexValue);
+		}
+	};
+
+	static {
+		DECODERS.put(TagNames.Elements.OBJECT, STRING);
+
+		new XMLCellDecoder(TagNames.Elements.BOOLEAN) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				String value = text.trim();
+				if (value.equalsIgnoreCase(TagNames.Values.TRUE)) {
+					return Boolean.TRUE;
+				} else if (value.equalsIgnoreCase(TagNames.Values.FALSE)) {
+					return Boolean.FALSE;
+				}
+				throw new JDOMException("Invalid value for " + name + //$NON-NLS-1$
+						" element: \"" + value + "\" must be either \"" + //$NON-NLS-1$ //$NON-NLS-2$
+						TagNames.Values.TRUE + "\" or \"" + //$NON-NLS-1$
+						TagNames.Values.FALSE + "\""); //$NON-NLS-1$
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.CHAR) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) {
+				String content = dataValue(text, unprintable, hexValue);
+				if (content.length() == 0) {
+					return null;
+				}
+				return Character.valueOf(content.charAt(0));
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.BYTE) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				try {
+					return Byte.valueOf(text.trim());
+				} catch (NumberFormatException e) {
+					throw parseError(text, e);
+				}
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.SHORT) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				try {
+					return Short.valueOf(text.trim());
+				} catch (NumberFormatException e) {
+					throw parseError(text, e);
+				}
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.INTEGER) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				try {
+					return Integer.valueOf(text.trim());
+				} catch (NumberFormatException e) {
+					throw parseError(text, e);
+				}
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.LONG) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				try {
+					return Long.valueOf(text.trim());
+				} catch (NumberFormatException e) {
+					throw parseError(text, e);
+				}
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.BIGINTEGER) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				try {
+					return new BigInteger(text.trim());
+				} catch (NumberFormatException e) {
+					throw parseError(text, e);
+				}
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.BIGDECIMAL) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				try {
+					return new BigDecimal(text.trim());
+				} catch (NumberFormatException e) {
+					throw parseError(text, e);
+				}
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.FLOAT) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				try {
+					// also parses NaN, Infinity and -Infinity
+					return Float.valueOf(text.trim());
+				} catch (NumberFormatException e) {
+					throw parseError(text, e);
+				}
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.DOUBLE) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				try {
+					// also parses NaN, Infinity and -Infinity
+					return Double.valueOf(text.trim());
+				} catch (NumberFormatException e) {
+					throw parseError(text, e);
+				}
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.DATE) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				try {
+					return java.sql.Date.valueOf(text.trim());
+				} catch (Exception e) {
+					throw new JDOMException("Invalid input format ", e); //$NON-NLS-1$
+				}
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.TIME) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				try {
+					return Time.valueOf(text.trim());
+				} catch (Exception e) {
+					throw new JDOMException("Invalid input format ", e); //$NON-NLS-1$
+				}
+			}
+		};
+
+		new XMLCellDecoder(TagNames.Elements.TIMESTAMP) {
+			@Override
+			Object decode(String text, String unprintable, String hexValue) throws JDOMException {
+				try {
+					return Timestamp.valueOf(text.trim());
+				} catch (Exception e) {
+					throw new JDOMException("Invalid input format ", e); //$NON-NLS-1$
+				}
+			}
+		};
+	}
+
+	final String name;
+
+	private XMLCellDecoder(String name) {
+		this.name = name;
+		DECODERS.put(name, this);
+	}
+
+	/**
+	 * @param elementName the name of the value element, the case is ignored
+	 * @return the decoder of the element, {@link #STRING} when the element isn't known
+	 */
+	static XMLCellDecoder forElement(String elementName) {
+		XMLCellDecoder decoder = forType(elementName);
+		return (decoder == null ? STRING : decoder);
+	}
+
+	/**
+	 * @param typeName the name of a value element, the case is ignored
+	 * @return the decoder, or null when the type isn't known
+	 */
+	static XMLCellDecoder forType(String typeName) {
+		XMLCellDecoder decoder = DECODERS.get(typeName);
+		if (decoder == null) {
+			decoder = DECODERS.get(typeName.toLowerCase(Locale.ENGLISH));
+		}
+		return decoder;
+	}
+
+	Object decode(Element element) throws JDOMException {
+		return decode(element.getText(), element.getAttributeValue(TagNames.Attributes.UNPRINTABALE),
+				element.getAttributeValue(TagNames.Attributes.HEXVALUE));
+	}
+
+	/**
+	 * @param text the text of the element
+	 * @param unprintable the value of the {@link TagNames.Attributes#UNPRINTABALE} attribute, may be null
+	 * @param hexValue the value of the {@link TagNames.Attributes#HEXVALUE} attribute, may be null
+	 * @return the value
+	 * @throws JDOMException if the text isn't a valid value
+	 */
+	abstract Object decode(String text, String unprintable, String hexValue) throws JDOMException;
+
+	JDOMException parseError(String text, Exception e) {
+		return new JDOMException("Unable to parse the value for " + name + //$NON-NLS-1$
+				" element: " + text.trim(), e); //$NON-NLS-1$
+	}
+
+	/**
+	 * Strings that can't be written as XML text are written as hexadecimal.
+	 */
+	static String dataValue(String text, String unprintable, String hexValue) {
+		if (TagNames.Values.TRUE.equals(unprintable)) {
+			return StringHelper.decodeHex(hexValue == null ? "" : hexValue); //$NON-NLS-1$
+		}
+		return text;
+	}
+
+}
@@ -28,8 +28,8 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
@@ -38,6 +38,9 @@ import org.jboss.bqt.client.TestProperties;
 import org.jboss.bqt.client.api.ErrorWriter;
 import org.jboss.bqt.client.api.ExpectedResults;
 import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.results.CapturedResult;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jboss.bqt.client.util.AsyncOutputWriter;
 import org.jboss.bqt.client.util.BQTUtil;
 import org.jboss.bqt.core.exception.FrameworkException;
 import org.jboss.bqt.core.exception.FrameworkRuntimeException;
@@ -46,7 +49,6 @@ import org.jboss.bqt.core.util.ExceptionUtil;
 import org.jboss.bqt.core.util.FileUtils;
 import org.jboss.bqt.core.util.StringHelper;
 import org.jboss.bqt.core.xml.JdomHelper;
-import org.jboss.bqt.framework.AbstractQuery;
 import org.jboss.bqt.framework.TestCase;
 import org.jboss.bqt.framework.TestResult;
 import org.jboss.bqt.framework.TransactionAPI;
@@ -77,7 +79,8 @@ public class XMLErrorWriter extends ErrorWriter {
 		}
 
 		File d = new File(this.errorDirectory);		
-		if (d.exists()) {
+		// a resumed scenario keeps the files of the tests that were already run
+		if (d.exists() && !scenario.isResume()) {
 			FileUtils.removeDirectoryAndChildren(d);
 		}
 		if (!d.exists()) {
@@ -101,25 +104,30 @@ public class XMLErrorWriter extends ErrorWriter {
 				//generateErrorFileName(queryID, querySetID);
 			// configID, queryID, Integer.toString(clientID));
 			//           CombinedTestClient.log("\t" + this.clientID + ": Writing error file with actual results: " + errorFileName); //$NON-NLS-1$ //$NON-NLS-2$
-			File errorFile = new File(getErrorDirectory(), errorFileName);
+			final File errorFile = new File(getErrorDirectory(), errorFileName);
 			ClientPlugin.LOGGER.warn("**** Generate Error File: " + errorFile.getAbsolutePath());
 
-			generateErrorResults(testResult,
-					 (String) null, errorFile, (ResultSet) null, (File) null, failures);
+			// the values are captured, the file is written by the output writer
+			final String queryID = testResult.getQueryID();
+			final Throwable actualError = testResult.getException();
+			final List<Throwable> failureList = copy(failures);
+			getQueryScenario().getOutputWriter().submit(errorFileName, new AsyncOutputWriter.Output() {
+				public void write() throws FrameworkException {
+					generateErrorResults(queryID, actualError, null, errorFile, null, null, failureList);
+				}
+			});
 		
 		return errorFileName;
 	}
 
 	@Override
-	public String generateErrorFile(TestCase testCase, ExpectedResults expectedResults, TransactionAPI transaction, List<Throwable> failures) throws QueryTestFailedException, FrameworkException {
+	public String generateErrorFile(TestCase testCase, ExpectedResults expectedResults, TransactionAPI transaction,
+			CapturedResult actualResults, List<Throwable> failures) throws QueryTestFailedException, FrameworkException {
 
 		if (expectedResults == null) {
 			return generateErrorFile(testCase.getTestResult(), failures);
 		}
 
-		
-		ResultSet resultSet = ((AbstractQuery) transaction).getResultSet();
-		
 		String errorFileName = null;
 		try {
 			TestResult testResult = testCase.getTestResult();
@@ -128,19 +136,34 @@ public class XMLErrorWriter extends ErrorWriter {
 
 			// configID, queryID, Integer.toString(clientID));
 			//           CombinedTestClient.log("\t" + this.clientID + ": Writing error file with actual results: " + errorFileName); //$NON-NLS-1$ //$NON-NLS-2$
-			File errorFile = new File(getErrorDirectory(), errorFileName);
-
-			// rewind resultset
-			if (resultSet != null) {
-				resultSet.beforeFirst();
+			final File errorFile = new File(getErrorDirectory(), errorFileName);
+
+			final String queryID = testResult.getQueryID();
+			final Throwable actualError = testResult.getException();
+			final String sql = testResult.getQuery();
+			final File expectedResultFile = expectedResults.getExpectedResultsFile();
+			final List<Throwable> failureList = copy(failures);
+
+			// the rows that were compared are written, the results aren't read again
+			final CapturedResult actualResult = (actualError == null ? actualResults : null);
+			if (actualResult != null) {
+				actualResult.retain();
 			}
 			ClientPlugin.LOGGER.warn("**** E 2 Generate Error File");
-		
-			generateErrorResults(testResult, testResult.getQuery(), errorFile,
-					resultSet, expectedResults.getExpectedResultsFile() , failures);
 
-		} catch (SQLException sqle) {
-			throw new QueryTestFailedException(sqle);
+			getQueryScenario().getOutputWriter().submit(errorFileName, new AsyncOutputWriter.Output() {
+				public void write() throws FrameworkException {
+					try {
+						generateErrorResults(queryID, actualError, sql, errorFile,
+								actualResult, expectedResultFile, failureList);
+					} finally {
+						if (actualResult != null) {
+							actualResult.release();
+						}
+					}
+				}
+			});
+
 		} catch (FrameworkException fre) {
 			throw fre;
 		} catch (FrameworkRuntimeException e) {
@@ -149,20 +172,25 @@ public class XMLErrorWriter extends ErrorWriter {
 		return errorFileName;
 	}
 
+	private static List<Throwable> copy(List<Throwable> failures) {
+		return (failures == null ? null : new ArrayList<Throwable>(failures));
+	}
+
 		/**
 		 * GenerateExpectedResults an error file for a query that failed comparison. File should
 		 * have the SQL, the actual results returned from the server and the results
 		 * that were expected.
-		 * @param testResult
+		 * @param queryID
+		 * @param actualError the exception thrown by the query, may be null
 		 * @param sql
 		 * @param resultsFile
-		 * @param actualResult
+		 * @param actualResult may be null
 		 * @param expectedResultFile
-		 * @param ex
+		 * @param failures
 		 * @throws FrameworkException
 		 */
-		private void generateErrorResults(TestResult testResult,
-				String sql, File resultsFile, ResultSet actualResult,
+		private void generateErrorResults(String queryID, Throwable actualError,
+				String sql, File resultsFile, CapturedResult actualResult,
 				File expectedResultFile, List<Throwable> failures)
 				throws FrameworkException {
 			OutputStream outputStream;
@@ -184,7 +212,7 @@ public class XMLErrorWriter extends ErrorWriter {
 				Element resultElement = new Element(TagNames.Elements.QUERY_RESULTS);
 				// set the queryIDAttr on the exception element
 				resultElement.setAttribute(new Attribute(TagNames.Attributes.NAME,
-						testResult.getQueryID()));
+						queryID));
 				// set the querySQLAttr on the exception element
 				resultElement.setAttribute(new Attribute(TagNames.Attributes.VALUE,
 						(sql != null ? sql : "NULL")));
@@ -208,7 +236,6 @@ public class XMLErrorWriter extends ErrorWriter {
 				// create a JDOM element from the actual exception object
 				// produce xml for the actualException and this to the
 				// exceptionElement
-				Throwable actualError = testResult.getException();
 				if (actualError != null) {
 					
 					ClientPlugin.LOGGER.warn("**** E 3 Generate Error File");
@@ -233,8 +260,13 @@ public class XMLErrorWriter extends ErrorWriter {
 					// produce a JDOM element from the actual results object
 					Element actualResultsElement = new Element(
 							TagNames.Elements.ACTUAL_QUERY_RESULTS);
-					actualResultsElement = jstrat.produceMsg(actualResult,
-							actualResultsElement);
+					ExpectedRowReader rows = actualResult.openRows();
+					try {
+						actualResultsElement = jstrat.produceMsg(actualResult.getIdentifiers(),
+								actualResult.getTypes(), rows, actualResultsElement);
+					} finally {
+						rows.close();
+					}
 
 					// add the results elements to the root element
 					resultElement.addContent(actualResultsElement);
@@ -342,10 +374,15 @@ public class XMLErrorWriter extends ErrorWriter {
 		String messagesFileName = getQueryScenario().getFileType().getErrorMessagesFileName(getQueryScenario(),
 				testResult);
 
-		File messagesFile = new File(getErrorDirectory(), messagesFileName);
+		final File messagesFile = new File(getErrorDirectory(), messagesFileName);
 		ClientPlugin.LOGGER.warn("**** Generate Additional Error Messages File: " + messagesFile.getAbsolutePath());
 
-		generateErrorMessages(messagesFile, failures);
+		final List<Throwable> failureList = copy(failures);
+		getQueryScenario().getOutputWriter().submit(messagesFileName, new AsyncOutputWriter.Output() {
+			public void write() throws FrameworkException {
+				generateErrorMessages(messagesFile, failureList);
+			}
+		});
 
 		return messagesFileName;
 	}
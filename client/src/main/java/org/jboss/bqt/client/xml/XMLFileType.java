@@ -75,6 +75,20 @@ public class XMLFileType implements FileType {
 		return XMLQueryReader.class.getName();
 	}
 	
+	/**
+	 * @return the name of the class that reads the expected results of a query set
+	 */
+	protected String getExpectedResultsReaderClassName() {
+		return XMLExpectedResultsReader.class.getName();
+	}
+
+	/**
+	 * @return the name of the class that writes the generated expected results
+	 */
+	protected String getExpectedResultsWriterClassName() {
+		return XMLExpectedResultsWriter.class.getName();
+	}
+
 	public 	List<ExpectedResultsReader> getExpectedResultsReaders(QueryScenario scenario, Properties properties, String querySetID) {
 		List<ExpectedResultsReader> resultsReaders = new ArrayList<ExpectedResultsReader>(2);
 		
@@ -83,7 +97,7 @@ public class XMLFileType implements FileType {
 		args.add(querySetID);
 		args.add(properties);
 
-		resultsReaders.add( (ExpectedResultsReader) createInstance(XMLExpectedResultsReader.class.getName(), args) );
+		resultsReaders.add( (ExpectedResultsReader) createInstance(getExpectedResultsReaderClassName(), args) );
 
 		boolean queryPlan = PropertiesUtils.getBooleanProperty(properties, TestProperties.QUERY_PLAN, false);
 
@@ -98,7 +112,7 @@ public class XMLFileType implements FileType {
 	public List<ExpectedResultsWriter> getExpectedResultsWriters(QueryScenario scenario, Properties properties)  {
 		List<ExpectedResultsWriter> resultsWriters = new ArrayList<ExpectedResultsWriter>(2);
 		
-		resultsWriters.add( createExpectedResultsWriter(scenario, properties, XMLExpectedResultsWriter.class.getName() ) );
+		resultsWriters.add( createExpectedResultsWriter(scenario, properties, getExpectedResultsWriterClassName() ) );
 		
 		boolean queryPlan = PropertiesUtils.getBooleanProperty(properties, TestProperties.QUERY_PLAN, false);
 
@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.xml;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.StAXStreamBuilder;
+
+/**
+ * XMLQueryStreamReader reads a query file one <code>query</code> element at a time, so
+ * the query tests can be run while the file is read and only the current test is held in memory.
+ * <p>
+ * Each element is built by itself and converted the same way as by
+ * {@link XMLQueryVisitationStrategy#parseXMLQueryFile(String, File, String)}.  
+ * {@link #nextQueryName()} skips over a query without building it, which is how the queries
+ * of a file are counted.
+ * </p>
+ * The reader is closed when the last query has been returned, or must be {@link #close() closed}
+ * when it is no longer used.
+ */
+public class XMLQueryStreamReader implements Iterator<QueryTest>, Closeable {
+
+	// the query elements are the children of the root element
+	private static final int QUERY_DEPTH = 2;
+
+	private File queryFile;
+	private String queryScenarioID;
+	private String querySetID;
+	private XMLQueryVisitationStrategy strategy = new XMLQueryVisitationStrategy();
+	private StAXStreamBuilder builder = new StAXStreamBuilder();
+
+	private InputStream stream;
+	private XMLStreamReader reader;
+	private int depth = 0;
+
+	private QueryTest next;
+
+	public XMLQueryStreamReader(String queryScenarioID, File queryFile, String querySetID) throws IOException, JDOMException {
+		this.queryScenarioID = queryScenarioID;
+		this.queryFile = queryFile;
+		this.querySetID = querySetID;
+		this.stream = new BufferedInputStream(new FileInputStream(queryFile));
+		try {
+			this.reader = XMLResultsStreamReader.FACTORY.get().createXMLStreamReader(this.stream);
+		} catch (XMLStreamException e) {
+			close();
+			throw new JDOMException(e.getMessage(), e);
+		}
+	}
+
+	public File getQueryFile() {
+		return this.queryFile;
+	}
+
+	public boolean hasNext() {
+		if (next == null && reader != null) {
+			try {
+				if (moveToNextQuery()) {
+					Element queryElement = (Element) builder.fragment(reader);
+					next = strategy.createQueryTest(queryScenarioID, querySetID, queryElement);
+				} else {
+					close();
+				}
+			} catch (XMLStreamException e) {
+				close();
+				throw readError(e);
+			} catch (JDOMException e) {
+				close();
+				throw readError(e);
+			}
+		}
+		return next != null;
+	}
+
+	public QueryTest next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		QueryTest test = next;
+		next = null;
+		return test;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Skip the next query without creating its {@link QueryTest}.
+	 * @return the value of the name attribute of the skipped query, or null when there are no more queries
+	 * @throws JDOMException if the file isn't a valid query file
+	 */
+	public String nextQueryName() throws JDOMException {
+		if (reader == null) {
+			return null;
+		}
+		try {
+			if (!moveToNextQuery()) {
+				close();
+				return null;
+			}
+			String name = reader.getAttributeValue(null, TagNames.Attributes.NAME);
+			// skip the content of the query
+			int queryDepth = ++depth;
+			while (depth >= queryDepth) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					depth--;
+				}
+			}
+			return String.valueOf(name);
+		} catch (XMLStreamException e) {
+			close();
+			throw new JDOMException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Position the reader on the start of the next query element.
+	 */
+	private boolean moveToNextQuery() throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (event == XMLStreamConstants.START_ELEMENT) {
+				if (depth + 1 == QUERY_DEPTH && reader.getLocalName().equals(TagNames.Elements.QUERY)) {
+					// the element is read as a whole, so the depth doesn't change
+					return true;
+				}
+				depth++;
+			}
+		}
+		return false;
+	}
+
+	private FrameworkRuntimeException readError(Exception e) {
+		return new FrameworkRuntimeException(e, "Error reading query file: " + queryFile.getName()); //$NON-NLS-1$
+	}
+
+	public void close() {
+		if (this.reader != null) {
+			try {
+				this.reader.close();
+			} catch (XMLStreamException e) {
+			}
+			this.reader = null;
+		}
+		if (this.stream != null) {
+			try {
+				this.stream.close();
+			} catch (IOException e) {
+			}
+			this.stream = null;
+		}
+	}
+
+}
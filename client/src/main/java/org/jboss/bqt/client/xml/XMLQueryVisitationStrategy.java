@@ -48,13 +48,17 @@ import org.apache.commons.lang.StringUtils;
 import org.jboss.bqt.client.ClientPlugin;
 import org.jboss.bqt.client.QuerySQL;
 import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.results.CapturedResult;
 import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jboss.bqt.client.results.ResultColumns;
 import org.jboss.bqt.client.xml.QueryResults.ColumnInfo;
 import org.jboss.bqt.core.exception.TransactionRuntimeException;
 import org.jboss.bqt.core.util.ExceptionUtil;
 import org.jboss.bqt.core.util.ObjectConverterUtil;
 import org.jboss.bqt.core.util.StringHelper;
 import org.jboss.bqt.core.xml.SAXBuilderHelper;
+import org.jboss.bqt.framework.StatementOptions;
 import org.jboss.bqt.jdbc.sql.lang.ElementSymbol;
 import org.jboss.bqt.jdbc.sql.lang.Select;
 import org.jboss.bqt.jdbc.sql.lang.SelectSymbol;
@@ -99,56 +103,74 @@ public class XMLQueryVisitationStrategy {
     public List<QueryTest> parseXMLQueryFile(String queryScenarioID, File queryFile, String querySetID) throws IOException, JDOMException {
 
     	List<QueryTest> queries = new LinkedList<QueryTest>();
-        SAXBuilder builder = SAXBuilderHelper.createSAXBuilder(false);
+        SAXBuilder builder = SAXBuilderHelper.getSAXBuilder();
         Document queryDocument = builder.build(queryFile);
         List<Element> queryElements = queryDocument.getRootElement().getChildren(TagNames.Elements.QUERY);
         Iterator<Element> iter = queryElements.iterator();
         while ( iter.hasNext() ) {
-            Element queryElement = iter.next();
-            String queryName = queryElement.getAttributeValue(TagNames.Attributes.NAME);
-            Element exceptionElement = queryElement.getChild(TagNames.Elements.EXCEPTION);
-            if ( exceptionElement == null ) {
-	        	String uniqueID = querySetID + "_" + queryName;
-	        	
-				List<Element> parmChildren = queryElement.getChildren(TagNames.Elements.SQL);
-		        	
-				if (parmChildren == null || parmChildren.isEmpty()) {
-					ClientPlugin.LOGGER.debug("=======  Creating Single QueryTest " + queryName);
-	        	    QuerySQL sql = createQuerySQL(queryElement);
-	         	    
-	        	    QueryTest q = new QueryTest(queryScenarioID, querySetID, queryName, new QuerySQL[] {sql});
-	        	    queries.add(q);
-	        	} else {
-	        		ClientPlugin.LOGGER.debug("=======  Creating QueryTest has multiple sql statements " + queryName);
-	         		QuerySQL[] querysql = new QuerySQL[parmChildren.size()];
-	        		int c = 0;
-	        		
-	        		final Iterator<Element> sqliter = parmChildren.iterator();
-	        		while ( sqliter.hasNext() ) {
-	        			final Element sqlElement = (Element) sqliter.next();
-	        			QuerySQL sql = createQuerySQL(sqlElement);
-	        			querysql[c] = sql;
-	        			c++;	
-	        		}
-	        		QueryTest q = new QueryTest(queryScenarioID, querySetID, uniqueID, querysql);
-	        		queries.add(q);
-	 	    
-	        	}
-	
-            } else {
-                
-                String exceptionType = exceptionElement.getChild(TagNames.Elements.CLASS).getTextTrim();
-                
-                String uniqueID = querySetID + "_" + queryName;
-                QuerySQL sql = new QuerySQL(exceptionType, null);
-                
-                QueryTest q = new QueryTest(queryScenarioID, uniqueID, querySetID, new QuerySQL[] {sql});
-                queries.add(q);
-
-            }
+            queries.add(createQueryTest(queryScenarioID, querySetID, iter.next()));
         } // end of while
         return queries;
     }
+
+    /**
+     * Create the {@link QueryTest} defined by a <code>query</code> element of a query file.
+     * <br>
+     * @param queryScenarioID 
+     * @param querySetID 
+     * @param queryElement the <code>query</code> element
+     * @return QueryTest
+     * @see XMLQueryStreamReader
+     */
+    public QueryTest createQueryTest(String queryScenarioID, String querySetID, Element queryElement) {
+        String queryName = queryElement.getAttributeValue(TagNames.Attributes.NAME);
+        boolean serial = TagNames.Values.TRUE.equalsIgnoreCase(queryElement.getAttributeValue(TagNames.Attributes.SERIAL));
+        Element exceptionElement = queryElement.getChild(TagNames.Elements.EXCEPTION);
+        if ( exceptionElement == null ) {
+        	String uniqueID = querySetID + "_" + queryName;
+        	
+			List<Element> parmChildren = queryElement.getChildren(TagNames.Elements.SQL);
+	        	
+			if (parmChildren == null || parmChildren.isEmpty()) {
+				ClientPlugin.LOGGER.debug("=======  Creating Single QueryTest " + queryName);
+        	    QuerySQL sql = createQuerySQL(queryElement);
+         	    
+        	    QueryTest q = new QueryTest(queryScenarioID, querySetID, queryName, new QuerySQL[] {sql});
+        	    q.setSerial(serial);
+        	    return q;
+        	}
+        	
+       		ClientPlugin.LOGGER.debug("=======  Creating QueryTest has multiple sql statements " + queryName);
+     		QuerySQL[] querysql = new QuerySQL[parmChildren.size()];
+    		int c = 0;
+    		
+    		final Iterator<Element> sqliter = parmChildren.iterator();
+    		StatementOptions queryOptions = createStatementOptions(queryElement);
+    		while ( sqliter.hasNext() ) {
+    			final Element sqlElement = (Element) sqliter.next();
+    			QuerySQL sql = createQuerySQL(sqlElement);
+    			// the options of the query apply to each of its sql statements
+    			if (queryOptions != null) {
+    				sql.setStatementOptions(sql.getStatementOptions() == null ? queryOptions
+    						: sql.getStatementOptions().merge(queryOptions));
+    			}
+    			querysql[c] = sql;
+    			c++;	
+    		}
+    		QueryTest q = new QueryTest(queryScenarioID, querySetID, uniqueID, querysql);
+    		q.setSerial(serial);
+    		return q;
+        }
+            
+        String exceptionType = exceptionElement.getChild(TagNames.Elements.CLASS).getTextTrim();
+        
+        String uniqueID = querySetID + "_" + queryName;
+        QuerySQL sql = new QuerySQL(exceptionType, null);
+        
+        QueryTest q = new QueryTest(queryScenarioID, uniqueID, querySetID, new QuerySQL[] {sql});
+        q.setSerial(serial);
+        return q;
+    }
     
     private QuerySQL createQuerySQL(Element queryElement) {
  	    String query = queryElement.getTextTrim();
@@ -179,9 +201,27 @@ public class XMLQueryVisitationStrategy {
  	    		sql.setRunTimes(cnt);
  	    } 	    
 	    
+	    sql.setStatementOptions(createStatementOptions(queryElement));
+	    
 	    return sql;	
     }
     
+    /**
+     * @return the statement options set by the attributes of the element, null when there are none
+     */
+    private StatementOptions createStatementOptions(Element element) {
+    	StatementOptions options = new StatementOptions();
+    	options.setResultSetType(StatementOptions.parseResultSetType(
+    			element.getAttributeValue(TagNames.Attributes.RESULTSET_TYPE)));
+    	options.setFetchSize(StatementOptions.parseFetchSize(
+    			element.getAttributeValue(TagNames.Attributes.FETCH_SIZE)));
+    	options.setMaxRows(StatementOptions.parseInt(TagNames.Attributes.MAX_ROWS,
+    			element.getAttributeValue(TagNames.Attributes.MAX_ROWS)));
+    	options.setQueryTimeout(StatementOptions.parseInt(TagNames.Attributes.QUERY_TIMEOUT,
+    			element.getAttributeValue(TagNames.Attributes.QUERY_TIMEOUT)));
+    	return (options.isEmpty() ? null : options);
+    }
+    
     private Serializable createPayLoad(Element parent) {
 		List<Element> parmChildren = parent.getChildren(TagNames.Elements.PAYLOAD);
 		if (parmChildren == null) {
@@ -229,43 +269,12 @@ public class XMLQueryVisitationStrategy {
     
     private Object createParmType(Element cellElement) throws JDOMException {
 
-        Object cellObject = null;
-        
         final String typeName = cellElement.getAttributeValue(TagNames.Attributes.TYPE);
- 
-        if ( typeName.equalsIgnoreCase(TagNames.Elements.BOOLEAN) ) {
-            cellObject = consumeMsg((Boolean) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.STRING) ) {
-            cellObject = consumeMsg((String) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.CHAR) ) {
-            cellObject = consumeMsg((Character) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.BYTE) ) {
-            cellObject = consumeMsg((Byte) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.DOUBLE) ) {
-            cellObject = consumeMsg((Double) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.DATE) ) {
-            cellObject = consumeMsg((java.sql.Date) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.TIME) ) {
-            cellObject = consumeMsg((Time) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.TIMESTAMP) ) {
-            cellObject = consumeMsg((Timestamp) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.FLOAT) ) {
-            cellObject = consumeMsg((Float) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.BIGDECIMAL) ) {
-            cellObject = consumeMsg((BigDecimal) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.BIGINTEGER) ) {
-            cellObject = consumeMsg((BigInteger) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.INTEGER) ) {
-            cellObject = consumeMsg((Integer) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.LONG) ) {
-            cellObject = consumeMsg((Long) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.SHORT) ) {
-            cellObject = consumeMsg((Short) cellObject, cellElement);
-        } else if ( typeName.equalsIgnoreCase(TagNames.Elements.OBJECT) ) {
-            cellObject = consumeMsg((String) cellObject, cellElement);
+        XMLCellDecoder decoder = XMLCellDecoder.forType(typeName);
+        if ( decoder == null ) {
+            return null;
         }
-
-        return cellObject;
+        return decoder.decode(cellElement);
     }
 
     /**
@@ -281,69 +290,24 @@ public class XMLQueryVisitationStrategy {
      */
     public ExpectedResultsHolder parseXMLResultsFile(final QueryTest test, final String querySetID, final File resultsFile) throws IOException, JDOMException {
 
-        QueryResults queryResults;
-        ExpectedResultsHolder expectedResults = null;
-
-        final SAXBuilder builder = SAXBuilderHelper.createSAXBuilder(false);
-        final Document resultsDocument = builder.build(resultsFile);
-        final String query = resultsDocument.getRootElement().getChildText(TagNames.Elements.QUERY);
-        final List<Element> resultElements = resultsDocument.getRootElement().getChildren(TagNames.Elements.QUERY_RESULTS);
-        final Iterator<Element> iter = resultElements.iterator();
-        while ( iter.hasNext() ) {
-            final Element resultElement = iter.next();
-//            final String resultName = resultElement.getAttributeValue(TagNames.Attributes.NAME);
-            
-            final String execTime  = resultElement.getAttributeValue(TagNames.Attributes.EXECUTION_TIME);
-            
-            queryResults = consumeMsg(new QueryResults(), resultElement);
-            if ( queryResults.getFieldCount() != 0 ) {
-                //
-                // We've got a ResultSet
-                //
-                expectedResults = new ExpectedResultsHolder( TagNames.Elements.QUERY_RESULTS, test );
-  //               expectedResults.setQueryID( resultName );
-                expectedResults.setQuery(query);
-                if (execTime != null && execTime.trim().length() > 0) expectedResults.setExecutionTime( Long.parseLong(execTime) );
-                expectedResults.setIdentifiers( queryResults.getFieldIdents() );
-                expectedResults.setTypes( queryResults.getTypes() );
-                if ( queryResults.getRecordCount() > 0 ) {
-                    expectedResults.setRows(queryResults.getRecords());
+        // the file is pulled one element at a time, the values are decoded
+        // without building a document
+        final XMLResultsStreamReader reader = new XMLResultsStreamReader(resultsFile);
+        try {
+            final ExpectedResultsHolder expectedResults = reader.readHeader(test);
+            if ( expectedResults.isResult() && expectedResults.getIdentifiers() != null ) {
+                final ResultColumns rows = new ResultColumns(expectedResults.getIdentifiers().size());
+                for ( List<Object> row = reader.nextRow(); row != null; row = reader.nextRow() ) {
+                    rows.add(row);
                 }
-            } else {
-                final Element exceptionElement = resultElement.getChild(TagNames.Elements.EXCEPTION);
-                if ( exceptionElement != null ) {
-                	//
-                    // We've got an exception
-                    //
-                    expectedResults = new ExpectedResultsHolder(TagNames.Elements.EXCEPTION, test);
-                    expectedResults.setQuery(query);
-                    
-                    expectedResults.setExceptionClassName(exceptionElement.getChild(TagNames.Elements.CLASS).getTextTrim());
-                    String msg = null;
-                    if (exceptionElement.getChild(TagNames.Elements.MESSAGE) != null) {
-                    	msg = exceptionElement.getChild(TagNames.Elements.MESSAGE).getTextTrim();  
-                    } else if (exceptionElement.getChild(TagNames.Elements.MESSAGE_STARTSWITH) != null ) {
-                    	msg = exceptionElement.getChild(TagNames.Elements.MESSAGE_STARTSWITH).getTextTrim(); 
-                    	expectedResults.setExceptionStartsWith(true);
-                    } else if (exceptionElement.getChild(TagNames.Elements.MESSAGE_CONTAINS) != null ) {
-                        msg = exceptionElement.getChild(TagNames.Elements.MESSAGE_CONTAINS).getTextTrim(); 
-						expectedResults.setExceptionContains(true);
-					} else if (exceptionElement.getChild(TagNames.Elements.MESSAGE_REGEX) != null) {
-						msg = exceptionElement.getChild(TagNames.Elements.MESSAGE_REGEX).getTextTrim();
-						expectedResults.setExceptionRegex(true);
-					}
-
-                    expectedResults.setExceptionMsg(StringUtils.remove(msg, '\r'));
-                } else {
-                	//
-                	// No result.
-                	//
-                	expectedResults = new ExpectedResultsHolder( TagNames.Elements.QUERY_RESULTS,  test );
-                    expectedResults.setQuery(query);
+                if ( rows.size() > 0 ) {
+                    expectedResults.setRows(rows);
                 }
             }
+            return expectedResults;
+        } finally {
+            reader.close();
         }
-        return expectedResults;
     }
 
     /**
@@ -357,7 +321,7 @@ public class XMLQueryVisitationStrategy {
      */
     public Element parseXMLResultsFile(File resultsFile, Element parent) throws IOException, JDOMException {
 
-        SAXBuilder builder = SAXBuilderHelper.createSAXBuilder(false);
+        SAXBuilder builder = SAXBuilderHelper.getSAXBuilder();
         Document resultsDocument = builder.build(resultsFile);
         List<Element> resultElements = resultsDocument.getRootElement().getChildren(TagNames.Elements.QUERY_RESULTS);
         Iterator<Element> iter = resultElements.iterator();
@@ -496,23 +460,6 @@ public class XMLQueryVisitationStrategy {
 		}
 	}
 
-	/**
-	 * Parses expected-result XML data element. The method may load and convert unprintable hexadecimal value.
-	 * @param element XML element to read
-	 * @return read string
-	 */
-	private static String parseDataElement(Element element) {
-		if (TagNames.Values.TRUE.equals(element.getAttributeValue(TagNames.Attributes.UNPRINTABALE))) {
-			String hexValue = element.getAttributeValue(TagNames.Attributes.HEXVALUE);
-			if (hexValue == null) {
-				hexValue = "";
-			}
-			return StringHelper.decodeHex(hexValue);
-		}
-
-		return element.getText();
-	}
-
     /**
      * Consume an XML message and update the specified QueryResults instance.
      * <br>
@@ -562,13 +509,15 @@ public class XMLQueryVisitationStrategy {
         List<Element> tableRows = tableElement.getChildren(TagNames.Elements.TABLE_ROW);
         if ( tableRows.size() > 0 ) {
             Iterator<Element> rowIter = tableRows.iterator();
+            // the results copy the values into their columns, so the row is reused
+            ArrayList<Object> row = new ArrayList<Object>();
 
             while ( rowIter.hasNext() ) {
                 Element rowElement = rowIter.next();
                 List<Element> cellElements = rowElement.getChildren(TagNames.Elements.TABLE_CELL);
                 Iterator<Element> cellIter = cellElements.iterator();
                 // Read cells of the table
-                ArrayList<Object> row = new ArrayList<Object>();
+                row.clear();
                 Object evalue = null;
                 while ( cellIter.hasNext() ) {
                     Element cellElement = cellIter.next();
@@ -655,475 +604,72 @@ public class XMLQueryVisitationStrategy {
 
 
     /**
-     * Produce a JDOM Element for the instance of any Object.
+     * Produce a JDOM Element for the rows of results that were read from a ResultSet, such
+     * as a {@link CapturedResult}, the same as for the ResultSet.
      * <br>
-     * @param cellElement the XML element that is to produce the XML message.
-     * @return the root element of the XML segment that was produced.
+     * @param identifiers the names of the columns
+     * @param types the types of the columns, an entry may be null
+     * @param rows is read to the end
+     * @param resultsElement 
+     * @return the JDOM element of the results that were converted to XML.
      * @exception JDOMException if there is an error producing XML.
+     * @exception SQLException if a value can't be converted.
+     * @exception IOException if the rows can't be read.
      */
-    private Object consumeMsg(Element cellElement) throws JDOMException {
-
-        Object cellObject = null;;
-        String cellName = cellElement.getName();
-
-        if ( cellName.equalsIgnoreCase(TagNames.Elements.BOOLEAN) ) {
-            cellObject = consumeMsg((Boolean) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.STRING) ) {
-            cellObject = consumeMsg((String) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.CHAR) ) {
-            cellObject = consumeMsg((Character) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.BYTE) ) {
-            cellObject = consumeMsg((Byte) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.DOUBLE) ) {
-            cellObject = consumeMsg((Double) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.DATE) ) {
-            cellObject = consumeMsg((java.sql.Date) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.TIME) ) {
-            cellObject = consumeMsg((Time) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.TIMESTAMP) ) {
-            cellObject = consumeMsg((Timestamp) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.FLOAT) ) {
-            cellObject = consumeMsg((Float) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.BIGDECIMAL) ) {
-            cellObject = consumeMsg((BigDecimal) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.BIGINTEGER) ) {
-            cellObject = consumeMsg((BigInteger) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.INTEGER) ) {
-            cellObject = consumeMsg((Integer) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.LONG) ) {
-            cellObject = consumeMsg((Long) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.SHORT) ) {
-            cellObject = consumeMsg((Short) cellObject, cellElement);
-        } else if ( cellName.equalsIgnoreCase(TagNames.Elements.OBJECT) ) {
-            cellObject = consumeMsg((String) cellObject, cellElement);
-        } else {
-        	cellObject = consumeMsg(cellObject, cellElement);
-        }
-
-        return cellObject;
-    }
-
-    /**
-     * Consume an XML message and update the specified Boolean instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(Boolean object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        boolean result = false;
-        String value = cellElement.getTextTrim();
-        if ( value.equalsIgnoreCase(TagNames.Values.TRUE) ) {
-            result = true;
-        } else if ( value.equalsIgnoreCase(TagNames.Values.FALSE) ) {
-            result = false;
-        } else {
-            throw new JDOMException("Invalid value for " + cellElement.getName() + //$NON-NLS-1$
-                                    " element: \"" + value + "\" must be either \"" + //$NON-NLS-1$ //$NON-NLS-2$
-                                    TagNames.Values.TRUE + "\" or \"" + //$NON-NLS-1$
-                                    TagNames.Values.FALSE + "\""); //$NON-NLS-1$
-        }
+    public Element produceMsg(List<String> identifiers, List<String> types, ExpectedRowReader rows,
+    		Element resultsElement) throws JDOMException, SQLException, IOException {
 
-        return new Boolean(result);
-    }
-
-    /**
-     * Consume an XML message and update the specified java.sql.Date instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(java.sql.Date object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        java.sql.Date result;
-        try {
-            result = java.sql.Date.valueOf(cellElement.getTextTrim());
-        } catch ( Exception e ) {
-            throw new JDOMException("Invalid input format ", e); //$NON-NLS-1$
-        }
-        return result;
-    }
-
-    /**
-     * Consume an XML message and update the specified Time instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(Time object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        Time result;
-        try {
-            result = Time.valueOf(cellElement.getTextTrim());
-        } catch ( Exception e ) {
-            throw new JDOMException("Invalid input format ", e); //$NON-NLS-1$
-        }
-        return result;
-    }
-
-    /**
-     * Consume an XML message and update the specified Timestamp instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(Timestamp object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        Timestamp result;
-        try {
-            result = Timestamp.valueOf(cellElement.getTextTrim());
-        } catch ( Exception e ) {
-            throw new JDOMException("Invalid input format ", e); //$NON-NLS-1$
-        }
-
-        return result;
-    }
-
-    /**
-     * Consume an XML message and update the specified Double instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(Double object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        String strElement = cellElement.getTextTrim();
-        Double result;
-
-        if ( strElement.equals("NaN") ) { //$NON-NLS-1$
-            result = new Double(Double.NaN);
-        } else if ( strElement.equals("-Infinity") ) { //$NON-NLS-1$
-            result = new Double(Double.NEGATIVE_INFINITY);
-        } else if ( strElement.equals("Infinity") ) { //$NON-NLS-1$
-            result = new Double(Double.POSITIVE_INFINITY);
-        } else {
-            try {
-                result = Double.valueOf(strElement);
-            } catch ( NumberFormatException e ) {
-                throw new JDOMException("Unable to parse the value for " + cellElement.getName() + //$NON-NLS-1$
-                                        " element: " + strElement, e); //$NON-NLS-1$
+        // -----------------------------------
+        // Add the Select (header) element ...
+        // -----------------------------------
+        Element selectElement = new Element(TagNames.Elements.SELECT);
+        for ( int i = 0; i < identifiers.size(); i++ ) {
+            Element dataElement = new Element(TagNames.Elements.DATA_ELEMENT);
+            if ( types.get(i) != null ) {
+                dataElement.setAttribute(new Attribute(TagNames.Attributes.TYPE, types.get(i)));
             }
+            dataElement.setText(identifiers.get(i));
+            selectElement.addContent(dataElement);
         }
-        return result;
-    }
-
-    /**
-     * Consume an XML message and update the specified Float instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(Float object, Element cellElement) throws JDOMException {
+        resultsElement.addContent(selectElement);
 
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        String strElement = cellElement.getTextTrim();
-        Float result;
-
-        if ( strElement.equals("NaN") ) { //$NON-NLS-1$
-            result = new Float(Float.NaN);
-        } else if ( strElement.equals("-Infinity") ) { //$NON-NLS-1$
-            result = new Float(Float.NEGATIVE_INFINITY);
-        } else if ( strElement.equals("Infinity") ) { //$NON-NLS-1$
-            result = new Float(Float.POSITIVE_INFINITY);
-        } else {
-            try {
-                result = Float.valueOf(strElement);
-            } catch ( NumberFormatException e ) {
-                throw new JDOMException("Unable to parse the value for " + cellElement.getName() + //$NON-NLS-1$
-                                        " element: " + strElement, e); //$NON-NLS-1$
+        // -------------------------
+        // Add the Table element ...
+        // -------------------------
+        Element tableElement = new Element(TagNames.Elements.TABLE);
+        resultsElement.addContent(tableElement);
+        int rowCount = 0;
+        for ( List<Object> row = rows.nextRow(); row != null; row = rows.nextRow() ) {
+            Element rowElement = new Element(TagNames.Elements.TABLE_ROW);
+            for ( Object cellValue : row ) {
+                Element cellElement = new Element(TagNames.Elements.TABLE_CELL);
+                if ( cellValue != null ) {
+                    cellElement = produceMsg(cellValue, cellElement);
+                } else {
+                    cellElement = cellElement.addContent(TagNames.Elements.NULL);
+                }
+                rowElement.addContent(cellElement);
             }
+            tableElement.addContent(rowElement);
+            rowCount++;
         }
-        return result;
-    }
-
-    /**
-     * Consume an XML message and update the specified BigDecimal instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(BigDecimal object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        BigDecimal result;
-        try {
-            result = new BigDecimal(cellElement.getTextTrim());
-        } catch ( NumberFormatException e ) {
-            throw new JDOMException("Unable to parse the value for " + cellElement.getName() + //$NON-NLS-1$
-                                    " element: " + cellElement.getTextTrim(), e); //$NON-NLS-1$
-        }
-        return result;
-    }
-
-    /**
-     * Consume an XML message and update the specified BigInteger instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(BigInteger object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        BigInteger result;
-        try {
-            result = new BigInteger(cellElement.getTextTrim());
-        } catch ( NumberFormatException e ) {
-            throw new JDOMException("Unable to parse the value for " + cellElement.getName() + //$NON-NLS-1$
-                                    " element: " + cellElement.getTextTrim(), e); //$NON-NLS-1$
-        }
-        return result;
-    }
-
-    /**
-     * Consume an XML message and update the specified String instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(String object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-
-    	return parseDataElement(cellElement);
-    }
-
-    /**
-     * Consume an XML message and update the specified Character instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(Character object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        Character result;
-        try {
-			String content = parseDataElement(cellElement);
-			if (content.length() == 0) {
-				return null;
-			}
-			result = new Character(content.charAt(0));
-        } catch ( NumberFormatException e ) {
-            throw new JDOMException("Unable to parse the value for " + cellElement.getName() + //$NON-NLS-1$
-                                    " element: " + cellElement.getText(), e); //$NON-NLS-1$
-        }
-        return result;
-    }
-
-    /**
-     * Consume an XML message and update the specified Byte instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(Byte object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        Byte result;
-        try {
-            result = new Byte(cellElement.getTextTrim());
-        } catch ( NumberFormatException e ) {
-            throw new JDOMException("Unable to parse the value for " + cellElement.getName() + //$NON-NLS-1$
-                                    " element: " + cellElement.getTextTrim(), e); //$NON-NLS-1$
-        }
-        return result;
-    }
-
-    /**
-     * Consume an XML message and update the specified Integer instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(Integer object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        Integer result;
-        try {
-            result = Integer.valueOf(cellElement.getTextTrim());
-        } catch ( NumberFormatException e ) {
-            throw new JDOMException("Unable to parse the value for " + cellElement.getName() + //$NON-NLS-1$
-                                    " element: " + cellElement.getTextTrim(), e); //$NON-NLS-2$ //$NON-NLS-1$ //$NON-NLS-1$ //$NON-NLS-1$ //$NON-NLS-1$
-        }
-        return result;
-    }
-
-    /**
-     * Consume an XML message and update the specified Long instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-    private Object consumeMsg(Long object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        Long result;
-        try {
-            result = Long.valueOf(cellElement.getTextTrim());
-        } catch ( NumberFormatException e ) {
-            throw new JDOMException("Unable to parse the value for " + cellElement.getName() + //$NON-NLS-1$
-                                    " element: " + cellElement.getTextTrim(), e); //$NON-NLS-2$ //$NON-NLS-1$ //$NON-NLS-1$ //$NON-NLS-1$ //$NON-NLS-1$
-        }
-        return result;
-    }
-    
-    
-    /**
-     * Consume an XML message and update the specified Byte instance.
-     * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
-     */
-	private Object consumeMsg(Object object, Element cellElement) throws JDOMException {
-
-//        // -----------------------
-//        // Process the element ...
-//        // -----------------------
-//        Byte result;
-//        try {
-//            result = new Byte(cellElement.getTextTrim());
-//        } catch ( NumberFormatException e ) {
-//            throw new JDOMException("Unable to parse the value for " + cellElement.getName() + //$NON-NLS-1$
-//                                    " element: " + cellElement.getTextTrim(), e); //$NON-NLS-1$
-//        }
-//        return result;
-        
-    	return parseDataElement(cellElement);
-        // ----------------------
-        // Create the Object element ...
-        // ----------------------
-//        Element objectElement = new Element(TagNames.Elements.OBJECT);
-//        
-//        String result = null;
-//        if (object instanceof Blob || object instanceof Clob || object instanceof SQLXML) {
-//       	 
-//        	if (object instanceof Clob){
-//        		Clob c = (Clob)object;
-//        		try {
-//        			result = ObjectConverterUtil.convertToString(c.getAsciiStream());
-//					
-//				} catch (Throwable e) {
-//					throw new SQLException(e);
-//				}
-//        	} else if (object instanceof Blob){
-//            		Blob b = (Blob)object;
-//            		try {
-//            			result = ObjectConverterUtil.convertToString(b.getBinaryStream());
-//						
-//					} catch (Throwable e) {
-//						throw new SQLException(e);
-//					}
-//            } else if (object instanceof SQLXML){
-//            	SQLXML s = (SQLXML)object;
-//        		try {
-//        			result = ObjectConverterUtil.convertToString(s.getBinaryStream());
-//					
-//				} catch (Throwable e) {
-//					throw new SQLException(e);
-//				}
-//            } 
-//        } else {
-//        	result = object.toString();
-//        }
-//        
-// //       System.out.println("ProductObject (before encoding): " + object.toString() );
-// //       try {
-//            objectElement.setText(result);
-//            	//	URLEncoder.encode(object.toString(), "UTF-8"));
-// //       } catch (UnsupportedEncodingException e) {
-//            // UTF-8 is supported natively by all jvms
-// //       }
-////        System.out.println("ProductObject (after encoding): " + objectElement.getText() );
-//
-//        
-//        if ( parent != null ) {
-//            objectElement = parent.addContent(objectElement);
-//        }
-//
-//        return objectElement;
+        tableElement.setAttribute(new Attribute(TagNames.Attributes.TABLE_ROW_COUNT,
+                                                Integer.toString(rowCount)));
+        tableElement.setAttribute(new Attribute(TagNames.Attributes.TABLE_COLUMN_COUNT,
+                                                Integer.toString(identifiers.size())));
 
+        return resultsElement;
     }
 
     /**
-     * Consume an XML message and update the specified Long instance.
+     * Produce a JDOM Element for the instance of any Object.
      * <br>
-     * @param object the instance that is to be updated with the XML message data.
-     * @param cellElement the XML element that contains the data
-     * @return the updated instance.
-     * @exception JDOMException if there is an error consuming the message.
+     * @param cellElement the XML element that is to produce the XML message.
+     * @return the root element of the XML segment that was produced.
+     * @exception JDOMException if there is an error producing XML.
      */
-    private Object consumeMsg(Short object, Element cellElement) throws JDOMException {
-
-        // -----------------------
-        // Process the element ...
-        // -----------------------
-        Short result;
-        try {
-            result = Short.valueOf(cellElement.getTextTrim());
-        } catch ( NumberFormatException e ) {
-            throw new JDOMException("Unable to parse the value for " + cellElement.getName() + //$NON-NLS-1$
-                                    " element: " + cellElement.getTextTrim(), e); //$NON-NLS-2$ //$NON-NLS-1$ //$NON-NLS-1$ //$NON-NLS-1$ //$NON-NLS-1$
-        }
-        return result;
+    Object consumeMsg(Element cellElement) throws JDOMException {
+        return XMLCellDecoder.forElement(cellElement.getName()).decode(cellElement);
     }
 
     /*********************************************************************************************
@@ -0,0 +1,352 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.xml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang.StringUtils;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jdom2.JDOMException;
+
+/**
+ * XMLResultsStreamReader reads an expected results file one row at a time, so that
+ * the expected results of a query can be compared without loading them all in memory.
+ * <p>
+ * {@link #readHeader(QueryTest)} reads everything up to the first row (the query, the
+ * column identifiers and types, or the expected exception), then {@link #nextRow()} returns
+ * the rows in the order of the file.  The cell values are converted the same way as by
+ * {@link XMLQueryVisitationStrategy#parseXMLResultsFile(QueryTest, String, File)}.
+ * </p>
+ * The reader must be {@link #close() closed} when it is no longer used.
+ */
+public class XMLResultsStreamReader implements ExpectedRowReader {
+
+	// a factory isn't guaranteed to be thread safe, so each thread reuses its own
+	static final ThreadLocal<XMLInputFactory> FACTORY = new ThreadLocal<XMLInputFactory>() {
+		@Override
+		protected XMLInputFactory initialValue() {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+			return factory;
+		}
+	};
+
+	private File resultsFile;
+	private InputStream stream;
+	private XMLStreamReader reader;
+
+	// the decoder of each column, resolved from the first value of the column
+	private List<XMLCellDecoder> decoders = new ArrayList<XMLCellDecoder>();
+	private List<String> decoderElements = new ArrayList<String>();
+
+	// the reader is positioned on the start of a row that hasn't been returned
+	private boolean pendingRow = false;
+	private boolean endOfRows = false;
+	private long rowCount = 0;
+
+	public XMLResultsStreamReader(File resultsFile) throws IOException, JDOMException {
+		this.resultsFile = resultsFile;
+		this.stream = new BufferedInputStream(new FileInputStream(resultsFile));
+		try {
+			this.reader = FACTORY.get().createXMLStreamReader(this.stream);
+		} catch (XMLStreamException e) {
+			close();
+			throw parseError(e);
+		}
+	}
+
+	public File getResultsFile() {
+		return this.resultsFile;
+	}
+
+	/**
+	 * Read the expected results up to the first row.
+	 * @param test
+	 * @return ExpectedResultsHolder without any rows
+	 * @throws IOException
+	 * @throws JDOMException if the file isn't a valid expected results file
+	 */
+	public ExpectedResultsHolder readHeader(QueryTest test) throws IOException, JDOMException {
+		String query = null;
+		String execTime = null;
+		List<String> identifiers = new ArrayList<String>();
+		List<String> types = new ArrayList<String>();
+		ExpectedResultsHolder exception = null;
+
+		try {
+			boolean inResults = false;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.END_ELEMENT) {
+					if (reader.getLocalName().equals(TagNames.Elements.QUERY_RESULTS)) {
+						endOfRows = true;
+						break;
+					}
+					continue;
+				}
+				if (event != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+
+				String name = reader.getLocalName();
+				if (!inResults) {
+					if (name.equals(TagNames.Elements.QUERY)) {
+						query = reader.getElementText();
+					} else if (name.equals(TagNames.Elements.QUERY_RESULTS)) {
+						inResults = true;
+						execTime = reader.getAttributeValue(null, TagNames.Attributes.EXECUTION_TIME);
+					}
+				} else if (name.equals(TagNames.Elements.SELECT)) {
+					readSelect(identifiers, types);
+				} else if (name.equals(TagNames.Elements.TABLE_ROW)) {
+					pendingRow = true;
+					break;
+				} else if (name.equals(TagNames.Elements.EXCEPTION)) {
+					exception = readException(test);
+					endOfRows = true;
+					break;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw parseError(e);
+		}
+
+		if (!pendingRow) {
+			endOfRows = true;
+		}
+
+		if (identifiers.size() == 0 && exception != null) {
+			exception.setQuery(query);
+			return exception;
+		}
+
+		ExpectedResultsHolder expectedResults = new ExpectedResultsHolder(TagNames.Elements.QUERY_RESULTS, test);
+		expectedResults.setQuery(query);
+		if (identifiers.size() > 0) {
+			if (execTime != null && execTime.trim().length() > 0) expectedResults.setExecutionTime(Long.parseLong(execTime));
+			expectedResults.setIdentifiers(identifiers);
+			expectedResults.setTypes(types);
+		}
+		return expectedResults;
+	}
+
+	/**
+	 * Read the next row of the expected results.
+	 * @return List of the column values, or null when there are no more rows
+	 * @throws IOException
+	 * @throws JDOMException if a row can't be parsed
+	 */
+	public List<Object> nextRow() throws IOException, JDOMException {
+		if (endOfRows) {
+			return null;
+		}
+		try {
+			if (!pendingRow && !moveToNextRow()) {
+				endOfRows = true;
+				return null;
+			}
+			pendingRow = false;
+
+			List<Object> row = readRow();
+			rowCount++;
+			return row;
+		} catch (XMLStreamException e) {
+			throw parseError(e);
+		}
+	}
+
+	/**
+	 * @return the number of rows returned by {@link #nextRow()}
+	 */
+	public long getRowCount() {
+		return this.rowCount;
+	}
+
+	public void close() {
+		if (this.reader != null) {
+			try {
+				this.reader.close();
+			} catch (XMLStreamException e) {
+			}
+			this.reader = null;
+		}
+		if (this.stream != null) {
+			try {
+				this.stream.close();
+			} catch (IOException e) {
+			}
+			this.stream = null;
+		}
+	}
+
+	private boolean moveToNextRow() throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals(TagNames.Elements.TABLE_ROW)) {
+				return true;
+			}
+			if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals(TagNames.Elements.TABLE)) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private void readSelect(List<String> identifiers, List<String> types) throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				types.add(reader.getAttributeValue(null, TagNames.Attributes.TYPE));
+				identifiers.add(reader.getElementText());
+			} else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals(TagNames.Elements.SELECT)) {
+				return;
+			}
+		}
+	}
+
+	private ExpectedResultsHolder readException(QueryTest test) throws XMLStreamException {
+		ExpectedResultsHolder expectedResults = new ExpectedResultsHolder(TagNames.Elements.EXCEPTION, test);
+		String message = null;
+		String startsWith = null;
+		String contains = null;
+		String regex = null;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				if (name.equals(TagNames.Elements.CLASS)) {
+					expectedResults.setExceptionClassName(reader.getElementText().trim());
+				} else if (name.equals(TagNames.Elements.MESSAGE)) {
+					message = reader.getElementText().trim();
+				} else if (name.equals(TagNames.Elements.MESSAGE_STARTSWITH)) {
+					startsWith = reader.getElementText().trim();
+				} else if (name.equals(TagNames.Elements.MESSAGE_CONTAINS)) {
+					contains = reader.getElementText().trim();
+				} else if (name.equals(TagNames.Elements.MESSAGE_REGEX)) {
+					regex = reader.getElementText().trim();
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals(TagNames.Elements.EXCEPTION)) {
+				break;
+			}
+		}
+
+		// the same precedence as XMLQueryVisitationStrategy
+		String msg = message;
+		if (msg == null) {
+			if (startsWith != null) {
+				msg = startsWith;
+				expectedResults.setExceptionStartsWith(true);
+			} else if (contains != null) {
+				msg = contains;
+				expectedResults.setExceptionContains(true);
+			} else if (regex != null) {
+				msg = regex;
+				expectedResults.setExceptionRegex(true);
+			}
+		}
+		expectedResults.setExceptionMsg(StringUtils.remove(msg, '\r'));
+		return expectedResults;
+	}
+
+	/**
+	 * Read the cells of the row the reader is positioned on.
+	 */
+	private List<Object> readRow() throws XMLStreamException, JDOMException {
+		List<Object> row = new ArrayList<Object>(decoders.size());
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals(TagNames.Elements.TABLE_CELL)) {
+				row.add(readCell(row.size()));
+			} else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals(TagNames.Elements.TABLE_ROW)) {
+				break;
+			}
+		}
+		return row;
+	}
+
+	private Object readCell(int col) throws XMLStreamException, JDOMException {
+		StringBuilder text = new StringBuilder();
+		Object value = null;
+		boolean hasValue = false;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				XMLCellDecoder decoder = getDecoder(col, reader.getLocalName());
+				String unprintable = reader.getAttributeValue(null, TagNames.Attributes.UNPRINTABALE);
+				String hexValue = reader.getAttributeValue(null, TagNames.Attributes.HEXVALUE);
+				value = decoder.decode(reader.getElementText(), unprintable, hexValue);
+				hasValue = true;
+			} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				text.append(reader.getText());
+			} else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals(TagNames.Elements.TABLE_CELL)) {
+				break;
+			}
+		}
+
+		if (hasValue) {
+			return value;
+		}
+		if (text.toString().trim().equalsIgnoreCase(TagNames.Elements.NULL)) {
+			return null;
+		}
+		throw new JDOMException("Invalid " + TagNames.Elements.TABLE_CELL + " element in row " + (rowCount + 1) //$NON-NLS-1$ //$NON-NLS-2$
+				+ " of " + resultsFile.getAbsolutePath()); //$NON-NLS-1$
+	}
+
+	/**
+	 * The values of a column are nearly always the same element, so the decoder is only
+	 * resolved again when the element changes.
+	 */
+	private XMLCellDecoder getDecoder(int col, String elementName) {
+		while (decoders.size() <= col) {
+			decoders.add(null);
+			decoderElements.add(null);
+		}
+		if (elementName.equals(decoderElements.get(col))) {
+			return decoders.get(col);
+		}
+		XMLCellDecoder decoder = XMLCellDecoder.forElement(elementName);
+		decoders.set(col, decoder);
+		decoderElements.set(col, elementName);
+		return decoder;
+	}
+
+	private static JDOMException parseError(XMLStreamException e) {
+		return new JDOMException(e.getMessage(), e);
+	}
+
+}
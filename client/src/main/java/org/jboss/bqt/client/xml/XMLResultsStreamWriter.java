@@ -0,0 +1,461 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.xml;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jdom2.Attribute;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+
+/**
+ * XMLResultsStreamWriter writes an expected results file one cell at a time, straight
+ * from the <code>ResultSet</code>, so that the results of a query don't have to be held in memory
+ * to be written.  The files have the same elements as the ones written from
+ * {@link XMLQueryVisitationStrategy#produceResults(ResultSet)}, and are read the same way.
+ * <p>
+ * The row count of the table is only known when all the rows were written, so room is left for it
+ * in the table start tag and it's filled in when the file is complete.  The unused room is
+ * white space between the attributes.
+ * </p>
+ * When <code>compact</code>, the elements aren't indented or put on separate lines.
+ */
+public class XMLResultsStreamWriter {
+
+	private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+	private static final String INDENT = "  "; //$NON-NLS-1$
+	private static final String NEWLINE = System.getProperty("line.separator", "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+
+	// the room left for the row count and its closing quote
+	private static final int ROW_COUNT_WIDTH = 11;
+
+	private boolean compact;
+	private XMLQueryVisitationStrategy jstrat = new XMLQueryVisitationStrategy();
+
+	private FileOutputStream fileStream;
+	private Writer out;
+	private XMLStreamWriter writer;
+
+	public XMLResultsStreamWriter(boolean compact) {
+		this.compact = compact;
+	}
+
+	/**
+	 * Write the results of a query.
+	 * @param resultsFile
+	 * @param query
+	 * @param resultsName the name of the results, <code>querySetID_queryID</code>
+	 * @param executionTime
+	 * @param results is read to the end
+	 * @return the number of rows written
+	 * @throws IOException
+	 * @throws SQLException if the results can't be read
+	 * @throws JDOMException if the XML can't be written
+	 */
+	public long writeResults(File resultsFile, String query, String resultsName, long executionTime, ResultSet results)
+			throws IOException, SQLException, JDOMException {
+		if (results.isClosed()) {
+			throw new SQLException(
+					"ResultSet is closed at this point, unable to product results"); //$NON-NLS-1$
+		}
+
+		ResultSetMetaData rmdata = results.getMetaData();
+		int colCount = rmdata.getColumnCount();
+		List<String> identifiers = new ArrayList<String>(colCount);
+		List<String> types = new ArrayList<String>(colCount);
+		for (int col = 1; col <= colCount; col++) {
+			String type = null;
+			try {
+				type = rmdata.getColumnTypeName(col);
+			} catch (SQLException e) {
+				//
+			}
+			types.add(type);
+			identifiers.add(rmdata.getColumnName(col));
+		}
+
+		open(resultsFile);
+		long rowCountPosition;
+		long rowCount = 0;
+		try {
+			rowCountPosition = startTable(query, resultsName, executionTime, identifiers, types);
+
+			while (results.next()) {
+				newLine(3);
+				writer.writeStartElement(TagNames.Elements.TABLE_ROW);
+				for (int col = 1; col <= colCount; col++) {
+					writeCell(results.getObject(col));
+				}
+				newLine(3);
+				writer.writeEndElement();
+				rowCount++;
+			}
+
+			endTable();
+		} catch (XMLStreamException e) {
+			throw writeError(e);
+		} finally {
+			close();
+		}
+
+		writeRowCount(resultsFile, rowCountPosition, rowCount);
+		return rowCount;
+	}
+
+	/**
+	 * Write the rows of expected results that were read from another file.
+	 * @param resultsFile
+	 * @param query
+	 * @param resultsName the name of the results, <code>querySetID_queryID</code>
+	 * @param executionTime
+	 * @param identifiers the names of the columns
+	 * @param types the types of the columns, an entry may be null
+	 * @param rows is read to the end
+	 * @return the number of rows written
+	 * @throws IOException
+	 * @throws SQLException if a value can't be converted
+	 * @throws JDOMException if the XML can't be written or the rows can't be read
+	 */
+	public long writeResults(File resultsFile, String query, String resultsName, long executionTime,
+			List<String> identifiers, List<String> types, ExpectedRowReader rows)
+			throws IOException, SQLException, JDOMException {
+		open(resultsFile);
+		long rowCountPosition;
+		long rowCount = 0;
+		try {
+			rowCountPosition = startTable(query, resultsName, executionTime, identifiers, types);
+
+			for (List<Object> row = rows.nextRow(); row != null; row = rows.nextRow()) {
+				newLine(3);
+				writer.writeStartElement(TagNames.Elements.TABLE_ROW);
+				for (int col = 0; col < row.size(); col++) {
+					writeCell(row.get(col));
+				}
+				newLine(3);
+				writer.writeEndElement();
+				rowCount++;
+			}
+
+			endTable();
+		} catch (XMLStreamException e) {
+			throw writeError(e);
+		} finally {
+			close();
+		}
+
+		writeRowCount(resultsFile, rowCountPosition, rowCount);
+		return rowCount;
+	}
+
+	/**
+	 * Write the exception thrown by a query.
+	 * @param resultsFile
+	 * @param query
+	 * @param resultsName the name of the results, <code>querySetID_queryID</code>
+	 * @param ex may be null
+	 * @throws IOException
+	 * @throws SQLException
+	 * @throws JDOMException if the XML can't be written
+	 */
+	public void writeException(File resultsFile, String query, String resultsName, Throwable ex)
+			throws IOException, SQLException, JDOMException {
+		open(resultsFile);
+		try {
+			startDocument(query);
+
+			newLine(1);
+			writer.writeStartElement(TagNames.Elements.QUERY_RESULTS);
+			writer.writeAttribute(TagNames.Attributes.NAME, resultsName);
+			if (ex != null) {
+				writeElement(jstrat.produceMsg(ex, null), 2);
+			}
+
+			endDocument();
+		} catch (XMLStreamException e) {
+			throw writeError(e);
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Write an expected exception that was read from another file.  The message is
+	 * written to the element that matches the way it's compared.
+	 * @param resultsFile
+	 * @param resultsName the name of the results, <code>querySetID_queryID</code>
+	 * @param expected the expected exception
+	 * @throws IOException
+	 * @throws SQLException
+	 * @throws JDOMException if the XML can't be written
+	 */
+	public void writeException(File resultsFile, String resultsName, ExpectedResultsHolder expected)
+			throws IOException, SQLException, JDOMException {
+		String className = expected.getExceptionClassName();
+		Element exceptionElement = new Element(TagNames.Elements.EXCEPTION);
+
+		String simpleName = className;
+		int index = (className == null ? -1 : className.lastIndexOf('.'));
+		if (index != -1 && (++index) < className.length()) {
+			simpleName = className.substring(index);
+		}
+		exceptionElement.addContent(new Element(TagNames.Elements.EXCEPTION_TYPE).setText(simpleName));
+
+		String messageElement = TagNames.Elements.MESSAGE;
+		if (expected.isExceptionStartsWith()) {
+			messageElement = TagNames.Elements.MESSAGE_STARTSWITH;
+		} else if (expected.isExceptionContains()) {
+			messageElement = TagNames.Elements.MESSAGE_CONTAINS;
+		} else if (expected.isExceptionRegex()) {
+			messageElement = TagNames.Elements.MESSAGE_REGEX;
+		}
+		if (expected.getExceptionMsg() != null) {
+			exceptionElement.addContent(new Element(messageElement).setText(expected.getExceptionMsg()));
+		}
+		exceptionElement.addContent(new Element(TagNames.Elements.CLASS).setText(className));
+
+		open(resultsFile);
+		try {
+			startDocument(expected.getQuery());
+
+			newLine(1);
+			writer.writeStartElement(TagNames.Elements.QUERY_RESULTS);
+			writer.writeAttribute(TagNames.Attributes.NAME, resultsName);
+			writeElement(exceptionElement, 2);
+
+			endDocument();
+		} catch (XMLStreamException e) {
+			throw writeError(e);
+		} finally {
+			close();
+		}
+	}
+
+	private void open(File resultsFile) throws IOException, JDOMException {
+		fileStream = new FileOutputStream(resultsFile);
+		out = new OutputStreamWriter(new BufferedOutputStream(fileStream), ENCODING);
+		try {
+			writer = FACTORY.createXMLStreamWriter(out);
+		} catch (XMLStreamException e) {
+			close();
+			throw writeError(e);
+		}
+	}
+
+	private void close() {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (XMLStreamException e) {
+			}
+			writer = null;
+		}
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+			}
+			out = null;
+		}
+		fileStream = null;
+	}
+
+	private void startDocument(String query) throws XMLStreamException {
+		writer.writeStartDocument(ENCODING, "1.0"); //$NON-NLS-1$
+		newLine(0);
+		writer.writeStartElement(TagNames.Elements.ROOT_ELEMENT);
+
+		newLine(1);
+		writer.writeStartElement(TagNames.Elements.QUERY);
+		writer.writeCData(query == null ? "" : query); //$NON-NLS-1$
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Close the query results and root elements.
+	 */
+	private void endDocument() throws XMLStreamException, IOException {
+		newLine(1);
+		writer.writeEndElement();
+		newLine(0);
+		writer.writeEndElement();
+		writer.writeEndDocument();
+		writer.flush();
+		if (!compact) {
+			out.write(NEWLINE);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write the start of the document up to the table start tag.
+	 * @return the position of the row count in the file
+	 */
+	private long startTable(String query, String resultsName, long executionTime,
+			List<String> identifiers, List<String> types) throws XMLStreamException, IOException {
+		startDocument(query);
+
+		newLine(1);
+		writer.writeStartElement(TagNames.Elements.QUERY_RESULTS);
+		writer.writeAttribute(TagNames.Attributes.NAME, resultsName);
+		writer.writeAttribute(TagNames.Attributes.EXECUTION_TIME, String.valueOf(executionTime));
+
+		writeSelect(identifiers, types);
+
+		// the table start tag is written directly, to leave room for the row count
+		newLine(2);
+		writer.flush();
+		out.write("<" + TagNames.Elements.TABLE + " " + TagNames.Attributes.TABLE_ROW_COUNT + "=\""); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		out.flush();
+		long rowCountPosition = fileStream.getChannel().position();
+		out.write(rowCountText(0));
+		out.write(" " + TagNames.Attributes.TABLE_COLUMN_COUNT + "=\"" + identifiers.size() + "\">"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		return rowCountPosition;
+	}
+
+	private void endTable() throws XMLStreamException, IOException {
+		newLine(2);
+		writer.flush();
+		out.write("</" + TagNames.Elements.TABLE + ">"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		endDocument();
+	}
+
+	private void writeCell(Object value) throws XMLStreamException, JDOMException, SQLException {
+		newLine(4);
+		writer.writeStartElement(TagNames.Elements.TABLE_CELL);
+		if (value == null) {
+			writer.writeCharacters(TagNames.Elements.NULL);
+		} else {
+			writeElement(jstrat.produceMsg(value, null), 5);
+			newLine(4);
+		}
+		writer.writeEndElement();
+	}
+
+	private void writeSelect(List<String> identifiers, List<String> types) throws XMLStreamException {
+		newLine(2);
+		writer.writeStartElement(TagNames.Elements.SELECT);
+		for (int col = 0; col < identifiers.size(); col++) {
+			newLine(3);
+			writer.writeStartElement(TagNames.Elements.DATA_ELEMENT);
+			String type = types.get(col);
+			if (type != null) {
+				writer.writeAttribute(TagNames.Attributes.TYPE, type);
+			}
+			writer.writeCharacters(identifiers.get(col));
+			writer.writeEndElement();
+		}
+		newLine(2);
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Write an element produced by {@link XMLQueryVisitationStrategy}, with its children.
+	 */
+	private void writeElement(Element element, int depth) throws XMLStreamException {
+		newLine(depth);
+		List<Element> children = element.getChildren();
+		String text = element.getText();
+		if (children.isEmpty() && text.length() == 0) {
+			writer.writeEmptyElement(element.getName());
+			writeAttributes(element);
+			return;
+		}
+
+		writer.writeStartElement(element.getName());
+		writeAttributes(element);
+		if (children.isEmpty()) {
+			writer.writeCharacters(text);
+		} else {
+			for (Element child : children) {
+				writeElement(child, depth + 1);
+			}
+			newLine(depth);
+		}
+		writer.writeEndElement();
+	}
+
+	private void writeAttributes(Element element) throws XMLStreamException {
+		for (Attribute attribute : element.getAttributes()) {
+			writer.writeAttribute(attribute.getName(), attribute.getValue());
+		}
+	}
+
+	/**
+	 * Start a new line indented to <code>depth</code>, nothing is written when compact.
+	 */
+	private void newLine(int depth) throws XMLStreamException {
+		if (compact) {
+			return;
+		}
+		StringBuilder sb = new StringBuilder(NEWLINE);
+		for (int i = 0; i < depth; i++) {
+			sb.append(INDENT);
+		}
+		writer.writeCharacters(sb.toString());
+	}
+
+	private static String rowCountText(long rowCount) throws IOException {
+		StringBuilder sb = new StringBuilder().append(rowCount).append('"');
+		if (sb.length() > ROW_COUNT_WIDTH) {
+			throw new IOException("Row count " + rowCount + " doesn't fit in the results file"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		while (sb.length() < ROW_COUNT_WIDTH) {
+			sb.append(' ');
+		}
+		return sb.toString();
+	}
+
+	private static void writeRowCount(File resultsFile, long position, long rowCount) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(resultsFile, "rw"); //$NON-NLS-1$
+		try {
+			file.seek(position);
+			file.write(rowCountText(rowCount).getBytes(ENCODING));
+		} finally {
+			file.close();
+		}
+	}
+
+	private static JDOMException writeError(XMLStreamException e) {
+		return new JDOMException(e.getMessage(), e);
+	}
+
+}
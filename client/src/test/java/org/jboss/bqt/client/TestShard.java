@@ -0,0 +1,198 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.junit.Test;
+
+/**
+ * Test of Shard class - logic to split the scenarios and query sets across the clients.
+ */
+@SuppressWarnings("nls")
+public class TestShard {
+
+	private static Properties shard(int index, int count) {
+		Properties props = new Properties();
+		props.setProperty(TestProperties.PROP_SHARD_INDEX, String.valueOf(index));
+		props.setProperty(TestProperties.PROP_SHARD_COUNT, String.valueOf(count));
+		return props;
+	}
+
+	private static List<String> names(int count) {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			names.add("scenario" + i);
+		}
+		return names;
+	}
+
+	/**
+	 * Without a shard count, everything is run.
+	 */
+	@Test
+	public void testDefault() {
+		Shard shard = new Shard(new Properties());
+
+		Assert.assertFalse(shard.isSharded());
+		Assert.assertFalse(shard.isByScenario());
+		Assert.assertFalse(shard.isByQuerySet());
+		Assert.assertEquals(names(5), shard.select(names(5), ""));
+	}
+
+	/**
+	 * Each name is run by exactly one shard, the same one every time, in the original order.
+	 */
+	@Test
+	public void testHash() {
+		List<String> names = names(50);
+		Set<String> all = new HashSet<String>();
+		int total = 0;
+		for (int i = 0; i < 3; i++) {
+			Shard shard = new Shard(shard(i, 3));
+			Assert.assertTrue(shard.isByScenario());
+			Assert.assertEquals("shard_" + i + "_of_3", shard.getDirectoryName());
+
+			List<String> selected = shard.select(names, "");
+			Assert.assertEquals(selected, new Shard(shard(i, 3)).select(names, ""));
+			Assert.assertTrue(names.indexOf(selected.get(0)) < names.indexOf(selected.get(selected.size() - 1)));
+			all.addAll(selected);
+			total += selected.size();
+		}
+		Assert.assertEquals(names.size(), total);
+		Assert.assertEquals(names.size(), all.size());
+	}
+
+	private static File store(Properties runtimes, String name) throws Exception {
+		File file = new File("target/" + name);
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			runtimes.store(out, null);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * The longest running names are spread first, the names without a runtime get the mean.
+	 */
+	@Test
+	public void testRuntimes() throws Exception {
+		Properties runtimes = new Properties();
+		runtimes.setProperty("a", "100");
+		runtimes.setProperty("b", "60");
+		runtimes.setProperty("c", "50");
+		runtimes.setProperty("d", "10");
+		File file = store(runtimes, "shard_runtimes.properties");
+
+		List<String> names = new ArrayList<String>();
+		names.add("a");
+		names.add("b");
+		names.add("c");
+		names.add("d");
+		names.add("e");
+
+		Properties props = shard(0, 2);
+		props.setProperty(TestProperties.PROP_SHARD_RUNTIMES, file.getPath());
+		Shard first = new Shard(props);
+		Assert.assertTrue(first.isByScenario());
+		props.setProperty(TestProperties.PROP_SHARD_INDEX, "1");
+		Shard second = new Shard(props);
+
+		// a(100) -> 0, b(60) -> 1, e(mean 55) -> 1, c(50) -> 0, d(10) -> 1
+		List<String> expected = new ArrayList<String>();
+		expected.add("a");
+		expected.add("c");
+		Assert.assertEquals(expected, first.select(names, ""));
+		expected.clear();
+		expected.add("b");
+		expected.add("d");
+		expected.add("e");
+		Assert.assertEquals(expected, second.select(names, ""));
+	}
+
+	/**
+	 * The query sets are selected one scenario at a time, and balanced across all the scenarios.
+	 */
+	@Test
+	public void testRuntimesByQuerySet() throws Exception {
+		Properties runtimes = new Properties();
+		for (int i = 0; i < 6; i++) {
+			runtimes.setProperty("scenario" + i, String.valueOf(10 * (i + 1)));
+			runtimes.setProperty("scenario" + i + ".qs", String.valueOf(10 * (i + 1)));
+		}
+		File file = store(runtimes, "shard_querysets_runtimes.properties");
+
+		double[] loads = new double[2];
+		Set<String> all = new HashSet<String>();
+		for (int s = 0; s < 2; s++) {
+			Properties props = shard(s, 2);
+			props.setProperty(TestProperties.PROP_SHARD_BY, TestProperties.SHARD_BY.QUERYSET);
+			props.setProperty(TestProperties.PROP_SHARD_RUNTIMES, file.getPath());
+			Shard shard = new Shard(props);
+			Assert.assertTrue(shard.isByQuerySet());
+
+			for (int i = 0; i < 6; i++) {
+				List<String> querySets = new ArrayList<String>();
+				querySets.add("qs");
+				// without a runtime
+				querySets.add("new");
+				for (String qs : shard.select(querySets, "scenario" + i + ".")) {
+					Assert.assertTrue(all.add("scenario" + i + "." + qs));
+					if (qs.equals("qs")) {
+						loads[s] += 10 * (i + 1);
+					}
+				}
+			}
+		}
+		Assert.assertEquals(12, all.size());
+		// 60, 30, 20 and 50, 40, 10
+		Assert.assertEquals(110.0, loads[0], 0);
+		Assert.assertEquals(100.0, loads[1], 0);
+	}
+
+	@Test(expected = FrameworkRuntimeException.class)
+	public void testInvalidIndex() {
+		new Shard(shard(2, 2));
+	}
+
+	@Test(expected = FrameworkRuntimeException.class)
+	public void testInvalidBy() {
+		Properties props = shard(0, 2);
+		props.setProperty(TestProperties.PROP_SHARD_BY, "query");
+		new Shard(props);
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.jboss.bqt.core.util.FileUtils;
+import org.junit.Test;
+
+/**
+ * Test of SummaryMerger class - merging the output of the shards of a regression.
+ */
+@SuppressWarnings("nls")
+public class TestSummaryMerger {
+
+	private static void write(File file, String content) throws Exception {
+		file.getParentFile().mkdirs();
+		Writer out = new FileWriter(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static List<String> read(File file) throws Exception {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	private static String totals(String scenario, int pass, int fail, int skipped) {
+		return TestResultsSummary.pad(scenario, 42, ' ') + " \t" + pass + "\t" + fail + "\t" + (pass + fail) + "\t" + skipped + "\n";
+	}
+
+	private static String summary(String querySet, int pass, int fail, int seconds, String failed) {
+		return "Scenario sc Summary [compare]\n"
+				+ "Query Set Name: qs\n"
+				+ "==================\n"
+				+ "Number of test sets: 1\n"
+				+ "==================\n"
+				+ "\t" + TestResultsSummary.pad("Name", 42, ' ') + "\tPass\tFail\tTotal\tTime(sec)\t Avg(mils)\n"
+				+ "\t" + TestResultsSummary.pad(querySet, 42, ' ') + "\t" + pass + "\t" + fail + "\t" + (pass + fail) + "\t" + seconds + "\t\t1.0\n"
+				+ "==================\n"
+				+ "\t" + TestResultsSummary.pad("Totals", 42, ' ') + "\t" + pass + "\t" + fail + "\t" + (pass + fail) + "\t" + seconds + "\n"
+				+ "Reconnects after connection errors: 1\n"
+				+ (failed == null ? "" : "\n\n==================\nFailed Queries\n\t - " + failed + "\n==================\n");
+	}
+
+	/**
+	 * A scenario whose query sets were split across two shards.
+	 */
+	@Test
+	public void testMergeQuerySets() throws Exception {
+		File root = new File("target/merge_test");
+		FileUtils.removeDirectoryAndChildren(root);
+		File shard0 = new File(root, "shard_0_of_2");
+		File shard1 = new File(root, "shard_1_of_2");
+		File merged = new File(root, "merged");
+
+		write(new File(shard0, TestResultsSummary.OVERALL_SUMMARY_FILE), "heading\n" + TestResultsSummary.pad("Scenario", 42, ' ')
+				+ "\tPass\tFail\tTotal\tSkipped\n\n" + totals("sc", 3, 1, 0));
+		write(new File(shard1, TestResultsSummary.OVERALL_SUMMARY_FILE), "heading\n" + TestResultsSummary.pad("Scenario", 42, ' ')
+				+ "\tPass\tFail\tTotal\tSkipped\n\n" + totals("sc", 2, 0, 1));
+		write(new File(shard0, TestResultsSummary.OVERALL_SUMMARY_ERROR_FILE), "heading\nScenario\tError \n\n\nsc\n\t\tqs1.q1~wrong\n");
+		write(new File(shard0, "Summary_qs_sc.txt"), summary("qs1", 3, 1, 20, "qs1.q1~wrong"));
+		write(new File(shard1, "Summary_qs_sc.txt"), summary("qs0", 2, 0, 10, null));
+		write(new File(shard0, "sc/compare/qs1/q1.xml"), "1");
+		write(new File(shard1, "sc/compare/qs0/q1.xml"), "0");
+
+		List<File> shards = new ArrayList<File>();
+		shards.add(shard0);
+		shards.add(shard1);
+		new SummaryMerger().merge(merged, shards);
+
+		List<String> totals = read(new File(merged, TestResultsSummary.OVERALL_SUMMARY_FILE));
+		Assert.assertEquals(totals("sc", 5, 1, 1).trim(), totals.get(totals.size() - 1).trim());
+
+		List<String> errors = read(new File(merged, TestResultsSummary.OVERALL_SUMMARY_ERROR_FILE));
+		Assert.assertEquals("\t\tqs1.q1~wrong", errors.get(errors.size() - 1));
+
+		List<String> summary = read(new File(merged, "Summary_qs_sc.txt"));
+		Assert.assertEquals("Scenario sc Summary [compare]", summary.get(0));
+		Assert.assertEquals("Number of test sets: 2", summary.get(3));
+		Assert.assertTrue(summary.get(6).startsWith("\tqs0"));
+		Assert.assertTrue(summary.get(7).startsWith("\tqs1"));
+		Assert.assertEquals("\t" + TestResultsSummary.pad("Totals", 42, ' ') + "\t5\t1\t6\t30", summary.get(9));
+		Assert.assertEquals("Reconnects after connection errors: 2", summary.get(10));
+		Assert.assertTrue(summary.contains("\t - qs1.q1~wrong"));
+
+		Assert.assertTrue(new File(merged, "sc/compare/qs0/q1.xml").exists());
+		Assert.assertTrue(new File(merged, "sc/compare/qs1/q1.xml").exists());
+
+		Properties runtimes = new Properties();
+		InputStream in = new FileInputStream(new File(merged, SummaryMerger.RUNTIMES_FILE));
+		try {
+			runtimes.load(in);
+		} finally {
+			in.close();
+		}
+		Assert.assertEquals("30", runtimes.getProperty("sc"));
+		Assert.assertEquals("10", runtimes.getProperty("sc.qs0"));
+		Assert.assertEquals("20", runtimes.getProperty("sc.qs1"));
+	}
+
+}
@@ -22,16 +22,32 @@
 
 package org.jboss.bqt.client;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.bqt.client.testcase.ProcessResults;
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
 import org.jboss.bqt.core.util.UnitTestUtil;
 import org.jboss.bqt.framework.ConfigPropertyLoader;
 import org.jboss.bqt.framework.ConfigPropertyNames;
 import org.jboss.bqt.framework.TransactionAPI;
+import org.jboss.bqt.framework.connection.DriverConnection;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -121,4 +137,113 @@ public class TestTestClient {
 		
 	}
 
+	/**
+	 * Instead of running the scenarios, records how many of them run at the same time
+	 * against each data source.
+	 */
+	private static class RecordingClient extends TestClient {
+		final Map<String, AtomicInteger> running = new HashMap<String, AtomicInteger>();
+		final Map<String, Integer> maxRunning = new HashMap<String, Integer>();
+		final Set<String> ran = Collections.synchronizedSet(new HashSet<String>());
+		final Map<String, Throwable> failures = new HashMap<String, Throwable>();
+
+		@Override
+		protected void runScenario(String scenario_name, ConfigPropertyLoader config, boolean concurrent) throws Throwable {
+			assertTrue(concurrent);
+			String url = config.getProperty(DriverConnection.DS_URL);
+			AtomicInteger count;
+			synchronized (this) {
+				count = running.get(url);
+				if (count == null) {
+					count = new AtomicInteger();
+					running.put(url, count);
+				}
+			}
+			int now = count.incrementAndGet();
+			synchronized (this) {
+				Integer max = maxRunning.get(url);
+				if (max == null || max.intValue() < now) {
+					maxRunning.put(url, Integer.valueOf(now));
+				}
+			}
+			try {
+				Thread.sleep(50);
+			} finally {
+				count.decrementAndGet();
+			}
+			ran.add(scenario_name);
+			Throwable failure = failures.get(scenario_name);
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	private static List<File> scenarioFiles(int count) throws Exception {
+		File dir = new File(UnitTestUtil.getTestOutputPath(), "concurrent_scenarios");
+		dir.mkdirs();
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < count; i++) {
+			File f = new File(dir, "scenario" + i + ".properties");
+			Writer out = new FileWriter(f);
+			try {
+				// two data sources
+				out.write(DriverConnection.DS_URL + "=jdbc:test:ds" + (i % 2) + "\n");
+			} finally {
+				out.close();
+			}
+			files.add(f);
+		}
+		return files;
+	}
+
+	/**
+	 * The scenarios run concurrently, but only one at a time against each data source.
+	 */
+	@Test
+	public void testRunScenariosPerDataSource() throws Throwable {
+		RecordingClient client = new RecordingClient();
+		client.runScenarios(scenarioFiles(6), 4, 1);
+
+		assertEquals(6, client.ran.size());
+		assertEquals(2, client.maxRunning.size());
+		for (Integer max : client.maxRunning.values()) {
+			assertEquals(1, max.intValue());
+		}
+		// the concurrent scenarios aren't kept
+		assertNull(client.getScenario());
+	}
+
+	/**
+	 * A scenario that fails doesn't stop the others.
+	 */
+	@Test
+	public void testRunScenariosAfterFailure() throws Throwable {
+		RecordingClient client = new RecordingClient();
+		client.failures.put("scenario1", new FrameworkRuntimeException("ping failed"));
+		client.runScenarios(scenarioFiles(4), 2, 0);
+
+		assertEquals(4, client.ran.size());
+	}
+
+	/**
+	 * When the server isn't available, the run is stopped.
+	 */
+	@Test(expected = FrameworkRuntimeException.class)
+	public void testRunScenariosServerNotAvailable() throws Throwable {
+		RecordingClient client = new RecordingClient();
+		client.failures.put("scenario0", new FrameworkRuntimeException(FrameworkException.ErrorCodes.SERVER_CONNECTION_EXCEPTION, "server down"));
+		client.runScenarios(scenarioFiles(4), 2, 0);
+	}
+
+	/**
+	 * Other exceptions are thrown as they are.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testRunScenariosException() throws Throwable {
+		RecordingClient client = new RecordingClient();
+		client.failures.put("scenario2", new IllegalStateException());
+		client.runScenarios(scenarioFiles(4), 2, 0);
+	}
+
 }
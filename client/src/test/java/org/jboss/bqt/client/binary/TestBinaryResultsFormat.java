@@ -0,0 +1,218 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.xml.XMLQueryVisitationStrategy;
+import org.jboss.bqt.client.xml.XMLResultsStreamWriter;
+import org.jboss.bqt.core.util.UnitTestUtil;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+@SuppressWarnings("nls")
+public class TestBinaryResultsFormat {
+
+	private static final List<String> IDENTIFIERS = Arrays.asList("ID", "NAME", "AMOUNT", "CREATED", "ANY");
+	private static final List<String> TYPES = Arrays.asList("INTEGER", "VARCHAR", "DECIMAL", "TIMESTAMP", "OBJECT");
+
+	@Test
+	public void testWriteAndReadResults() throws Exception {
+		// more than one block, with a column whose values don't have the same type
+		List<List<Object>> rows = createRows(BinaryFormat.BLOCK_ROWS + 10);
+
+		File file = scratchFile("results.bin");
+		long count = new BinaryResultsWriter().writeResults(file, "select * from t", "qs_q1", 12, mockResultSet(rows));
+		assertEquals(rows.size(), count);
+
+		QueryTest test = new QueryTest("scenario", "qs", "q1", null);
+		BinaryResultsReader reader = new BinaryResultsReader(file);
+		try {
+			assertEquals(rows.size(), reader.getExpectedRowCount());
+			ExpectedResultsHolder expected = reader.readHeader(test);
+			assertEquals("select * from t", expected.getQuery());
+			assertEquals(12, expected.getExecutionTime());
+			assertEquals(IDENTIFIERS, expected.getIdentifiers());
+			assertEquals(TYPES, expected.getTypes());
+
+			for (List<Object> row : rows) {
+				assertEquals(row, reader.nextRow());
+			}
+			assertNull(reader.nextRow());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testWriteAndReadException() throws Exception {
+		File file = scratchFile("exception.bin");
+		new BinaryResultsWriter().writeException(file, "select x from t", "qs_q2", new SQLException("Column \"x\" not found"));
+
+		BinaryResultsReader reader = new BinaryResultsReader(file);
+		try {
+			ExpectedResultsHolder expected = reader.readHeader(new QueryTest("scenario", "qs", "q2", null));
+			assertTrue(expected.isExceptionExpected());
+			assertEquals(SQLException.class.getName(), expected.getExceptionClassName());
+			assertEquals("Column \"x\" not found", expected.getExceptionMsg());
+			assertEquals("select x from t", expected.getQuery());
+			assertNull(reader.nextRow());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testChecksumDetectsChangedRows() throws Exception {
+		List<List<Object>> rows = createRows(20);
+		File file = scratchFile("corrupt.bin");
+		new BinaryResultsWriter().writeResults(file, "select * from t", "qs_q3", 1, mockResultSet(rows));
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			// change the last byte of the rows
+			raf.seek(raf.length() - 1);
+			int last = raf.read();
+			raf.seek(raf.length() - 1);
+			raf.write(last ^ 0xFF);
+		} finally {
+			raf.close();
+		}
+
+		BinaryResultsReader reader = new BinaryResultsReader(file);
+		try {
+			reader.verify();
+			fail("the checksum should not match");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("checksum"));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testConvertDirectory() throws Exception {
+		List<List<Object>> rows = createRows(50);
+		File xmlDir = new File(UnitTestUtil.getTestScratchPath(), "convert_xml");
+		File querySetDir = new File(xmlDir, "qs");
+		querySetDir.mkdirs();
+		new XMLResultsStreamWriter(false).writeResults(new File(querySetDir, "qs_q1.xml"), "select * from t", "qs_q1", 5,
+				mockResultSet(rows));
+		new XMLResultsStreamWriter(false).writeException(new File(querySetDir, "qs_q2.xml"), "select x from t", "qs_q2",
+				new SQLException("Column \"x\" not found"));
+
+		File binaryDir = new File(UnitTestUtil.getTestScratchPath(), "convert_bin");
+		File backDir = new File(UnitTestUtil.getTestScratchPath(), "convert_back");
+		BinaryResultsConverter converter = new BinaryResultsConverter(true);
+		assertEquals(2, converter.toBinary(xmlDir, binaryDir));
+		assertEquals(2, converter.toXML(binaryDir, backDir));
+
+		QueryTest test = new QueryTest("scenario", "qs", "q1", null);
+		BinaryResultsReader reader = new BinaryResultsReader(new File(binaryDir, "qs" + File.separator + "qs_q1.bin"));
+		try {
+			assertEquals(IDENTIFIERS, reader.readHeader(test).getIdentifiers());
+			for (List<Object> row : rows) {
+				assertEquals(row, reader.nextRow());
+			}
+			assertNull(reader.nextRow());
+		} finally {
+			reader.close();
+		}
+
+		XMLQueryVisitationStrategy jstrat = new XMLQueryVisitationStrategy();
+		ExpectedResultsHolder expected = jstrat.parseXMLResultsFile(test, "qs", new File(backDir, "qs" + File.separator + "qs_q1.xml"));
+		assertEquals(5, expected.getExecutionTime());
+		assertEquals(TYPES, expected.getTypes());
+		assertEquals(rows, expected.getRows());
+
+		expected = jstrat.parseXMLResultsFile(new QueryTest("scenario", "qs", "q2", null), "qs",
+				new File(backDir, "qs" + File.separator + "qs_q2.xml"));
+		assertTrue(expected.isExceptionExpected());
+		assertEquals(SQLException.class.getName(), expected.getExceptionClassName());
+		assertEquals("Column \"x\" not found", expected.getExceptionMsg());
+	}
+
+	private static File scratchFile(String name) {
+		File file = new File(UnitTestUtil.getTestScratchPath(), name);
+		file.getParentFile().mkdirs();
+		return file;
+	}
+
+	private static List<List<Object>> createRows(int count) {
+		List<List<Object>> rows = new ArrayList<List<Object>>(count);
+		for (int i = 0; i < count; i++) {
+			Object any = (i % 3 == 0 ? Integer.valueOf(i) : (i % 3 == 1 ? "v" + i : null));
+			rows.add(Arrays.<Object> asList(Integer.valueOf(i), (i % 7 == 0 ? null : "name " + (i % 11)),
+					new BigDecimal(i + ".25"), Timestamp.valueOf("2015-01-02 03:04:05.0"), any));
+		}
+		return rows;
+	}
+
+	private static ResultSet mockResultSet(final List<List<Object>> rows) throws Exception {
+		ResultSetMetaData metadata = mock(ResultSetMetaData.class);
+		when(metadata.getColumnCount()).thenReturn(IDENTIFIERS.size());
+		for (int i = 0; i < IDENTIFIERS.size(); i++) {
+			when(metadata.getColumnName(i + 1)).thenReturn(IDENTIFIERS.get(i));
+			when(metadata.getColumnTypeName(i + 1)).thenReturn(TYPES.get(i));
+		}
+
+		final int[] current = new int[] {-1};
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.getMetaData()).thenReturn(metadata);
+		when(resultSet.next()).thenAnswer(new Answer<Boolean>() {
+			public Boolean answer(InvocationOnMock invocation) {
+				return ++current[0] < rows.size();
+			}
+		});
+		when(resultSet.getObject(anyInt())).thenAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) {
+				int col = (Integer) invocation.getArguments()[0];
+				return rows.get(current[0]).get(col - 1);
+			}
+		});
+
+		return resultSet;
+	}
+
+}
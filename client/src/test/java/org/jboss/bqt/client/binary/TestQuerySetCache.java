@@ -0,0 +1,175 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.util.List;
+
+import org.jboss.bqt.client.QuerySQL;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.xml.XMLQueryVisitationStrategy;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jboss.bqt.core.util.FileUtils;
+import org.jboss.bqt.core.util.UnitTestUtil;
+import org.jboss.bqt.framework.StatementOptions;
+import org.junit.Test;
+
+/**
+ * These tests verify the compiled query sets have the same query tests as the query files.
+ */
+@SuppressWarnings("nls")
+public class TestQuerySetCache {
+
+	private static final String QUERIES = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<root>\n"
+			+ "  <query name=\"q1\" fetchSize=\"auto\" maxRows=\"10\">select * from t</query>\n"
+			+ "  <query name=\"q2\" serial=\"true\" updatecnt=\"3\">insert into t values (?, ?, ?, ?)"
+			+ "<parm type=\"integer\">1</parm><parm type=\"bigdecimal\">1.50</parm>"
+			+ "<parm type=\"timestamp\">2015-01-02 03:04:05.0</parm><parm type=\"unknown\">x</parm>"
+			+ "<payload name=\"p\">v</payload></query>\n"
+			+ "  <query name=\"q3\" resultSetType=\"scroll\"><sql>select 1</sql><sql numtimes=\"2\" rowCount=\"1\" timeout=\"5\">select 2</sql></query>\n"
+			+ "  <query name=\"q4\"><exception><class>java.sql.SQLException</class></exception></query>\n"
+			+ "</root>\n";
+
+	@Test
+	public void testCompiledQueries() throws Exception {
+		File dir = scratchDir("compiled_queries");
+		File queryFile = writeFile(new File(dir, "qs.xml"), QUERIES);
+
+		List<QueryTest> expected = new XMLQueryVisitationStrategy().parseXMLQueryFile("scenario", queryFile, "qs");
+
+		QuerySetCache cache = new QuerySetCache(new File(dir, "cache"));
+		QuerySetReader reader = cache.open("scenario", queryFile, "qs");
+		try {
+			assertEquals(4, reader.getQueryCount());
+			for (QueryTest test : expected) {
+				QueryTest actual = reader.next();
+				assertEquals(test, actual);
+				assertEquals(test.getQuerySetID(), actual.getQuerySetID());
+				assertEquals(test.isSerial(), actual.isSerial());
+				assertEquals(test.getQueries().length, actual.getQueries().length);
+				for (int i = 0; i < test.getQueries().length; i++) {
+					QuerySQL sql = test.getQueries()[i];
+					QuerySQL actualSql = actual.getQueries()[i];
+					assertEquals(sql.getSql(), actualSql.getSql());
+					assertArrayEquals(sql.getParms(), actualSql.getParms());
+					assertEquals(sql.getPayLoad(), actualSql.getPayLoad());
+					assertEquals(sql.getUpdateCnt(), actualSql.getUpdateCnt());
+					assertEquals(sql.getRowCnt(), actualSql.getRowCnt());
+					assertEquals(sql.getRunTimes(), actualSql.getRunTimes());
+					assertEquals(String.valueOf(sql.getStatementOptions()), String.valueOf(actualSql.getStatementOptions()));
+				}
+			}
+			assertFalse(reader.hasNext());
+		} finally {
+			reader.close();
+		}
+
+		StatementOptions options = expected.get(0).getQueries()[0].getStatementOptions();
+		assertEquals(Integer.valueOf(StatementOptions.AUTO_FETCH_SIZE), options.getFetchSize());
+		assertEquals(Integer.valueOf(10), options.getMaxRows());
+		assertNull(options.getResultSetType());
+		assertNull(expected.get(1).getQueries()[0].getStatementOptions());
+		// the options of the query apply to each of its sql statements
+		QuerySQL[] queries = expected.get(2).getQueries();
+		assertEquals(Integer.valueOf(ResultSet.TYPE_SCROLL_INSENSITIVE), queries[0].getStatementOptions().getResultSetType());
+		assertNull(queries[0].getStatementOptions().getQueryTimeout());
+		assertEquals(Integer.valueOf(ResultSet.TYPE_SCROLL_INSENSITIVE), queries[1].getStatementOptions().getResultSetType());
+		assertEquals(Integer.valueOf(5), queries[1].getStatementOptions().getQueryTimeout());
+	}
+
+	@Test
+	public void testContentChangeCompilesAgain() throws Exception {
+		File dir = scratchDir("compiled_changes");
+		File queryFile = writeFile(new File(dir, "qs.xml"), QUERIES);
+
+		QuerySetCache cache = new QuerySetCache(new File(dir, "cache"));
+		File compiled = cache.compile(queryFile, "qs");
+		long modified = compiled.lastModified();
+		assertEquals(compiled, cache.compile(queryFile, "qs"));
+		assertEquals(modified, compiled.lastModified());
+
+		writeFile(queryFile, QUERIES.replace("q1", "q0"));
+		File recompiled = cache.compile(queryFile, "qs");
+		assertFalse(compiled.equals(recompiled));
+
+		QuerySetReader reader = cache.open("other", queryFile, "qs");
+		try {
+			QueryTest test = reader.next();
+			assertEquals("q0", test.getQueryID());
+			assertEquals("other", test.getQueryScenarioID());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testDuplicateQueries() throws Exception {
+		File dir = scratchDir("compiled_duplicates");
+		File queryFile = writeFile(new File(dir, "qs.xml"), QUERIES.replace("q2", "q1"));
+
+		QuerySetCache cache = new QuerySetCache(new File(dir, "cache"));
+		try {
+			cache.compile(queryFile, "qs");
+			fail("the duplicate query wasn't found");
+		} catch (FrameworkRuntimeException e) {
+			assertTrue(e.getMessage().contains("q1"));
+		}
+		assertEquals(0, new File(dir, "cache").list().length);
+	}
+
+	@Test
+	public void testCompileAll() throws Exception {
+		File dir = scratchDir("compiled_all");
+		writeFile(new File(dir, "set1/test_queries/a.xml"), QUERIES);
+		writeFile(new File(dir, "set1/test_queries/b.xml"), QUERIES);
+		writeFile(new File(dir, "set1/expected_results/a/a_q1.xml"), "<root/>");
+		writeFile(new File(dir, "set2/test_queries/c.xml"), QUERIES);
+
+		QuerySetCache cache = new QuerySetCache(new File(dir, "cache"));
+		assertEquals(3, cache.compileAll(dir, "test_queries"));
+		assertEquals(3, cache.getCacheDir().list().length);
+	}
+
+	private static File scratchDir(String name) {
+		File dir = new File(UnitTestUtil.getTestScratchPath(), name);
+		FileUtils.removeDirectoryAndChildren(dir);
+		dir.mkdirs();
+		return dir;
+	}
+
+	private static File writeFile(File file, String content) throws Exception {
+		file.getParentFile().mkdirs();
+		FileUtils.write(content.getBytes("UTF-8"), file);
+		return file;
+	}
+
+}
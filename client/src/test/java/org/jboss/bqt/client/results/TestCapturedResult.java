@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client.results;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.bqt.client.xml.TagNames;
+import org.jboss.bqt.client.xml.XMLQueryVisitationStrategy;
+import org.jboss.bqt.core.util.UnitTestUtil;
+import org.jdom2.Element;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+@SuppressWarnings("nls")
+public class TestCapturedResult {
+
+	@Test
+	public void testCaptureAllRows() throws Exception {
+		List<List<Object>> rows = new ArrayList<List<Object>>();
+		rows.add(Arrays.<Object> asList(1, "a"));
+		rows.add(Arrays.<Object> asList(2, null));
+
+		CapturedResult captured = CapturedResult.capture(mockResultSet(rows), 10, spillDir());
+		assertFalse(captured.isSpilled());
+		assertEquals(2, captured.getRowCount());
+		assertEquals(Arrays.asList("ID", "NAME"), captured.getIdentifiers());
+		assertEquals(Arrays.asList("INTEGER", "VARCHAR"), captured.getTypes());
+		assertEquals(rows, readAll(captured.openRows()));
+	}
+
+	@Test
+	public void testRowsThatDontFitInMemoryAreSpilled() throws Exception {
+		List<List<Object>> rows = new ArrayList<List<Object>>();
+		for (int i = 0; i < 2500; i++) {
+			rows.add(Arrays.<Object> asList(i, "v" + i));
+		}
+
+		ResultSet results = mockResultSet(rows);
+		CapturedResult captured = CapturedResult.capture(results, 3, spillDir());
+		assertTrue(captured.isSpilled());
+		assertEquals(2500, captured.getRowCount());
+		// the results are read once, the rows can be read any number of times
+		assertFalse(results.next());
+		assertEquals(rows, readAll(captured.openRows()));
+		assertEquals(rows, readAll(captured.openRows()));
+
+		// the file is deleted once the capture isn't retained
+		captured.retain();
+		captured.release();
+		assertEquals(1, spillDir().list().length);
+		captured.release();
+		assertEquals(0, spillDir().list().length);
+	}
+
+	@Test
+	public void testLargeObjectsAreWrittenAsObjects() throws Exception {
+		Clob clob = mock(Clob.class);
+		when(clob.getAsciiStream()).thenReturn(new ByteArrayInputStream("some text".getBytes("US-ASCII")));
+		List<List<Object>> rows = new ArrayList<List<Object>>();
+		rows.add(Arrays.<Object> asList(1, clob));
+
+		CapturedResult captured = CapturedResult.capture(mockResultSet(rows), 10, spillDir());
+		Element results = new XMLQueryVisitationStrategy().produceMsg(captured.getIdentifiers(), captured.getTypes(),
+				captured.openRows(), new Element(TagNames.Elements.ACTUAL_QUERY_RESULTS));
+
+		Element table = results.getChild(TagNames.Elements.TABLE);
+		assertEquals("1", table.getAttributeValue(TagNames.Attributes.TABLE_ROW_COUNT));
+		Element cell = table.getChild(TagNames.Elements.TABLE_ROW).getChildren().get(1);
+		assertEquals("some text", cell.getChild(TagNames.Elements.OBJECT).getText());
+	}
+
+	private static File spillDir() {
+		return new File(UnitTestUtil.getTestScratchPath(), "capture");
+	}
+
+	private static List<List<Object>> readAll(ExpectedRowReader reader) throws Exception {
+		List<List<Object>> rows = new ArrayList<List<Object>>();
+		for (List<Object> row = reader.nextRow(); row != null; row = reader.nextRow()) {
+			rows.add(new ArrayList<Object>(row));
+		}
+		assertNull(reader.nextRow());
+		reader.close();
+		return rows;
+	}
+
+	private static ResultSet mockResultSet(final List<List<Object>> rows) throws Exception {
+		ResultSetMetaData metadata = mock(ResultSetMetaData.class);
+		when(metadata.getColumnCount()).thenReturn(2);
+		when(metadata.getColumnName(1)).thenReturn("ID");
+		when(metadata.getColumnName(2)).thenReturn("NAME");
+		when(metadata.getColumnTypeName(1)).thenReturn("INTEGER");
+		when(metadata.getColumnTypeName(2)).thenReturn("VARCHAR");
+
+		final int[] current = new int[] {-1};
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.getMetaData()).thenReturn(metadata);
+		when(resultSet.next()).thenAnswer(new Answer<Boolean>() {
+			public Boolean answer(InvocationOnMock invocation) {
+				return ++current[0] < rows.size();
+			}
+		});
+		when(resultSet.getObject(anyInt())).thenAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) {
+				int col = (Integer) invocation.getArguments()[0];
+				return rows.get(current[0]).get(col - 1);
+			}
+		});
+
+		return resultSet;
+	}
+
+}
@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client.results;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.xml.TagNames;
+import org.jboss.bqt.core.util.FileUtils;
+import org.jboss.bqt.core.util.UnitTestUtil;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class TestExpectedResultsCache {
+
+	@Test
+	public void testHeaderIsCopied() throws Exception {
+		File file = createFile("header.xml", "a");
+		QueryTest test = new QueryTest("scenario", "qs", "q1", null);
+		ExpectedResultsCache cache = new ExpectedResultsCache(1024 * 1024);
+
+		assertNull(cache.getHeader(file, test));
+		ExpectedResultsHolder header = new ExpectedResultsHolder(TagNames.Elements.QUERY_RESULTS, test);
+		header.setQuery("select a from t");
+		header.setIdentifiers(new ArrayList<String>(Arrays.asList("A")));
+		header.setTypes(new ArrayList<String>(Arrays.asList("string")));
+		header.setExpectedResultsFile(file);
+		cache.putHeader(file, header);
+
+		ExpectedResultsHolder cached = cache.getHeader(file, new QueryTest("other", "qs", "q1", null));
+		assertNotNull(cached);
+		assertEquals("select a from t", cached.getQuery());
+		assertEquals(Arrays.asList("A"), cached.getIdentifiers());
+		assertEquals(file, cached.getExpectedResultsFile());
+		cached.getIdentifiers().clear();
+		assertEquals(Arrays.asList("A"), cache.getHeader(file, test).getIdentifiers());
+
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// a changed file isn't used
+		FileUtils.write("changed results".getBytes(), file);
+		assertNull(cache.getHeader(file, test));
+		assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testRowsAreCachedWhenAllWereRead() throws Exception {
+		File file = createFile("rows.xml", "b");
+		QueryTest test = new QueryTest("scenario", "qs", "q2", null);
+		ExpectedResultsCache cache = new ExpectedResultsCache(1024 * 1024);
+		cache.putHeader(file, new ExpectedResultsHolder(TagNames.Elements.QUERY_RESULTS, test));
+
+		final List<List<Object>> rows = new ArrayList<List<Object>>();
+		for (int i = 0; i < 10; i++) {
+			rows.add(Arrays.<Object> asList(Integer.valueOf(i), "v" + i));
+		}
+		final int[] opened = new int[1];
+		ExpectedResultsCache.RowReaderFactory factory = new ExpectedResultsCache.RowReaderFactory() {
+			public ExpectedRowReader open() {
+				opened[0]++;
+				return new ListRows(rows);
+			}
+		};
+
+		assertEquals(rows, readAll(cache.openRows(file, factory)));
+		assertEquals(rows, readAll(cache.openRows(file, factory)));
+		assertEquals(1, opened[0]);
+		assertTrue(cache.getSize() > 0);
+	}
+
+	@Test
+	public void testPreloadRows() throws Exception {
+		File file = createFile("preload.xml", "c");
+		QueryTest test = new QueryTest("scenario", "qs", "q4", null);
+		ExpectedResultsCache cache = new ExpectedResultsCache(1024 * 1024);
+
+		final List<List<Object>> rows = new ArrayList<List<Object>>();
+		for (int i = 0; i < 10; i++) {
+			rows.add(Arrays.<Object> asList(Integer.valueOf(i)));
+		}
+		final int[] opened = new int[1];
+		ExpectedResultsCache.RowReaderFactory factory = new ExpectedResultsCache.RowReaderFactory() {
+			public ExpectedRowReader open() {
+				opened[0]++;
+				return new ListRows(rows);
+			}
+		};
+
+		// the rows are only preloaded for a cached header
+		cache.preloadRows(file, factory);
+		assertEquals(0, opened[0]);
+		assertFalse(cache.containsHeader(file));
+
+		cache.putHeader(file, new ExpectedResultsHolder(TagNames.Elements.QUERY_RESULTS, test));
+		assertTrue(cache.containsHeader(file));
+		cache.preloadRows(file, factory);
+		cache.preloadRows(file, factory);
+		assertEquals(1, opened[0]);
+
+		assertEquals(rows, readAll(cache.openRows(file, factory)));
+		assertEquals(1, opened[0]);
+		assertEquals(0, cache.getHits() + cache.getMisses());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws Exception {
+		File first = createFile("first.xml", "1");
+		File second = createFile("second.xml", "2");
+		File third = createFile("third.xml", "3");
+		QueryTest test = new QueryTest("scenario", "qs", "q3", null);
+		ExpectedResultsHolder header = new ExpectedResultsHolder(TagNames.Elements.QUERY_RESULTS, test);
+
+		// room for two headers
+		ExpectedResultsCache cache = new ExpectedResultsCache(1200);
+		cache.putHeader(first, header);
+		cache.putHeader(second, header);
+		assertNotNull(cache.getHeader(first, test));
+		cache.putHeader(third, header);
+
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(1, cache.getEvictions());
+		assertNull(cache.getHeader(second, test));
+		assertNotNull(cache.getHeader(first, test));
+		assertNotNull(cache.getHeader(third, test));
+	}
+
+	private static File createFile(String name, String content) throws IOException {
+		File file = new File(UnitTestUtil.getTestScratchPath(), "cache" + File.separator + name);
+		file.getParentFile().mkdirs();
+		FileUtils.write(content.getBytes(), file);
+		return file;
+	}
+
+	private static List<List<Object>> readAll(ExpectedRowReader reader) throws Exception {
+		List<List<Object>> rows = new ArrayList<List<Object>>();
+		try {
+			for (List<Object> row = reader.nextRow(); row != null; row = reader.nextRow()) {
+				rows.add(new ArrayList<Object>(row));
+			}
+		} finally {
+			reader.close();
+		}
+		return rows;
+	}
+
+	private static class ListRows implements ExpectedRowReader {
+		private List<List<Object>> rows;
+		private int next = 0;
+
+		ListRows(List<List<Object>> rows) {
+			this.rows = rows;
+		}
+
+		public List<Object> nextRow() {
+			return (next < rows.size() ? rows.get(next++) : null);
+		}
+
+		public void close() {
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client.results;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class TestResultColumns {
+
+	@Test
+	public void testRowsEqualTheAddedRows() {
+		List<List<Object>> rows = new ArrayList<List<Object>>();
+		rows.add(Arrays.<Object> asList(Integer.valueOf(1), Long.valueOf(10), Double.valueOf(1.5), "a", new BigDecimal("1.10")));
+		rows.add(Arrays.<Object> asList(null, null, null, null, null));
+		rows.add(Arrays.<Object> asList(Integer.valueOf(-3), Long.valueOf(Long.MAX_VALUE), Double.valueOf(Double.NaN), "a", null));
+		rows.add(Arrays.<Object> asList(Integer.valueOf(0), Long.valueOf(0), Double.valueOf(-0.0), "b", BigDecimal.ONE));
+
+		ResultColumns columns = new ResultColumns(5);
+		for (List<Object> row : rows) {
+			columns.add(row);
+		}
+
+		assertEquals(4, columns.size());
+		assertEquals(rows, columns);
+		assertEquals(columns, rows);
+		assertEquals(rows.hashCode(), columns.hashCode());
+		assertNull(columns.getValue(1, 2));
+		assertEquals("b", columns.getValue(3, 3));
+		assertEquals(new BigDecimal("1.10"), columns.getValue(0, 4));
+	}
+
+	@Test
+	public void testMixedTypesKeepTheirClass() {
+		ResultColumns columns = new ResultColumns();
+		columns.add(Arrays.<Object> asList(null, Integer.valueOf(1)));
+		columns.add(Arrays.<Object> asList(Integer.valueOf(7), Integer.valueOf(2)));
+		// the second column no longer only holds integers
+		columns.add(Arrays.<Object> asList(Integer.valueOf(8), Long.valueOf(2)));
+		columns.add(Arrays.<Object> asList(null, "3"));
+
+		assertEquals(2, columns.getColumnCount());
+		assertNull(columns.getValue(0, 0));
+		assertEquals(Integer.valueOf(7), columns.getValue(1, 0));
+		assertEquals(Integer.valueOf(1), columns.getValue(0, 1));
+		assertEquals(Integer.valueOf(2), columns.getValue(1, 1));
+		assertEquals(Long.valueOf(2), columns.getValue(2, 1));
+		assertEquals("3", columns.getValue(3, 1));
+	}
+
+	@Test
+	public void testSetAndAddColumn() {
+		ResultColumns columns = new ResultColumns(1);
+		for (int i = 0; i < 100; i++) {
+			columns.add(Arrays.<Object> asList("v" + (i % 3)));
+		}
+		List<Object> row = columns.get(50);
+		assertEquals("v2", row.set(0, Integer.valueOf(50)));
+		assertEquals(Integer.valueOf(50), columns.getValue(50, 0));
+		assertEquals("v1", columns.getValue(49, 0));
+
+		columns.addColumn();
+		assertEquals(2, columns.get(0).size());
+		assertNull(columns.getValue(99, 1));
+
+		columns.get(99).set(1, "x");
+		assertEquals(Arrays.<Object> asList("v0", "x"), columns.get(99));
+	}
+
+	@Test
+	public void testManyDistinctStrings() {
+		ResultColumns columns = new ResultColumns(1);
+		int count = (1 << 16) + 10;
+		for (int i = 0; i < count; i++) {
+			columns.add(Arrays.<Object> asList(String.valueOf(i)));
+		}
+		assertEquals(count, columns.size());
+		for (int i = 0; i < count; i += 997) {
+			assertEquals(String.valueOf(i), columns.getValue(i, 0));
+		}
+		assertTrue(columns.get(count - 1).contains(String.valueOf(count - 1)));
+	}
+
+}
@@ -25,17 +25,34 @@ package org.jboss.bqt.client.results.xml;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 
 import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.TestProperties;
 import org.jboss.bqt.client.api.ExpectedResults;
 import org.jboss.bqt.client.api.ExpectedResultsReader;
 import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.client.results.CapturedResult;
+import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.client.results.ExpectedRowReader;
+import org.jboss.bqt.client.xml.TagNames;
+import org.jboss.bqt.client.xml.XMLQueryVisitationStrategy;
+import org.jboss.bqt.client.xml.XMLResultsStreamReader;
 import org.jboss.bqt.core.exception.QueryTestFailedException;
 import org.jboss.bqt.core.util.UnitTestUtil;
 import org.jboss.bqt.framework.ConfigPropertyLoader;
@@ -44,6 +61,8 @@ import org.jboss.bqt.framework.TestCase;
 import org.jboss.bqt.framework.TestResult;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * Tests primarily the various cloning scenarios available with PropertiesUtils
@@ -313,4 +332,310 @@ public class TestXMLExpectedResults {
 		compare.compareResults(testcase, es, null, false);
 	}
 
+
+	/**
+	 * The streamed rows of an expected results file must be the same as those of the whole file.
+	 * @throws Exception
+	 */
+	@Test
+	public void testStreamExpectedResults() throws Exception {
+		File file = new File(UnitTestUtil.getTestDataPath() + File.separator + "query_sets" + File.separator + "test_query_set" + File.separator
+				+ "expected_results" + File.separator + "test_queries1" + File.separator + "test_queries1_Query1.xml");
+		QueryTest qt = new QueryTest("testscenario", "test_queries1", "Query1", null);
+
+		ExpectedResultsHolder all = new XMLQueryVisitationStrategy().parseXMLResultsFile(qt, "testscenario", file);
+
+		XMLResultsStreamReader reader = new XMLResultsStreamReader(file);
+		try {
+			ExpectedResultsHolder header = reader.readHeader(qt);
+			assertFalse(header.isExceptionExpected());
+			assertFalse(header.hasRows());
+			assertEquals(all.getIdentifiers(), header.getIdentifiers());
+			assertEquals(all.getTypes(), header.getTypes());
+			assertEquals(all.getQuery(), header.getQuery());
+
+			for (List<Object> row : all.getRows()) {
+				assertEquals(row, reader.nextRow());
+			}
+			assertNull(reader.nextRow());
+			assertEquals(all.getRows().size(), reader.getRowCount());
+		} finally {
+			reader.close();
+		}
+
+		file = new File(file.getParentFile(), "test_queries1_Query2.xml");
+		reader = new XMLResultsStreamReader(file);
+		try {
+			ExpectedResultsHolder header = reader.readHeader(qt);
+			assertTrue(header.isExceptionExpected());
+			assertEquals("org.jboss.bqt.core.exception.QueryTestFailedException", header.getExceptionClassName());
+			assertNull(reader.nextRow());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testCompareOrderedResults() throws Exception {
+		File file = new File(UnitTestUtil.getTestDataPath() + File.separator + "query_sets" + File.separator + "test_query_set" + File.separator
+				+ "expected_results" + File.separator + "test_queries1" + File.separator + "test_queries1_Query1.xml");
+		QueryTest qt = new QueryTest("testscenario", "test_queries1", "Query1", null);
+		ExpectedResultsHolder all = new XMLQueryVisitationStrategy().parseXMLResultsFile(qt, "testscenario", file);
+
+		XMLCompareResults compare = XMLCompareResults.create(new Properties());
+
+		// the same rows
+		compareOrdered(compare, qt, file, all.getIdentifiers(), all.getTypes(), all.getRows());
+
+		// a missing row
+		try {
+			compareOrdered(compare, qt, file, all.getIdentifiers(), all.getTypes(), all.getRows().subList(1, all.getRows().size()));
+			fail("Expected a failure");
+		} catch (QueryTestFailedException e) {
+			assertEquals("CompareResults Error: Expected " + all.getRows().size() + " records but received only " + (all.getRows().size() - 1), e.getMessage());
+		}
+
+		// a different value
+		List<List<Object>> rows = new ArrayList<List<Object>>(all.getRows());
+		List<Object> row = new ArrayList<Object>(rows.get(2));
+		row.set(0, Integer.valueOf(-1));
+		rows.set(2, row);
+		try {
+			compareOrdered(compare, qt, file, all.getIdentifiers(), all.getTypes(), rows);
+			fail("Expected a failure");
+		} catch (QueryTestFailedException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("CompareResults Error: Value mismatch at row 3 and column 1"));
+		}
+	}
+
+	/**
+	 * Unordered results larger than the sort limit are sorted on disk, or matched by hash.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCompareUnorderedResults() throws Exception {
+		File file = new File(UnitTestUtil.getTestDataPath() + File.separator + "query_sets" + File.separator + "test_query_set" + File.separator
+				+ "expected_results" + File.separator + "test_queries1" + File.separator + "test_queries1_Query1.xml");
+		QueryTest qt = new QueryTest("testscenario", "test_queries1", "Query1", null);
+		ExpectedResultsHolder all = new XMLQueryVisitationStrategy().parseXMLResultsFile(qt, "testscenario", file);
+
+		List<List<Object>> rows = new ArrayList<List<Object>>(all.getRows());
+		Collections.reverse(rows);
+
+		String[][] configs = new String[][] {{"0", TestProperties.COMPARE_UNORDERED.SORT}, {"4", TestProperties.COMPARE_UNORDERED.SORT},
+				{"0", TestProperties.COMPARE_UNORDERED.HASH}};
+		for (String[] config : configs) {
+			Properties props = new Properties();
+			props.setProperty(TestProperties.PROP_COMPARE_SORT_MAX_ROWS, config[0]);
+			props.setProperty(TestProperties.PROP_COMPARE_UNORDERED, config[1]);
+			props.setProperty(TestProperties.PROP_TESTRUN_DIR, UnitTestUtil.getTestOutputPath());
+			XMLCompareResults compare = XMLCompareResults.create(props);
+
+			// the same rows in a different order
+			compare(compare, qt, file, all.getIdentifiers(), all.getTypes(), copy(rows), false);
+
+			// a missing row
+			try {
+				compare(compare, qt, file, all.getIdentifiers(), all.getTypes(), copy(rows.subList(1, rows.size())), false);
+				fail("Expected a failure");
+			} catch (QueryTestFailedException e) {
+				assertEquals("CompareResults Error: Expected " + rows.size() + " records but received only " + (rows.size() - 1), e.getMessage());
+			}
+
+			// a different value
+			List<List<Object>> changed = copy(rows);
+			changed.get(5).set(1, "X");
+			try {
+				compare(compare, qt, file, all.getIdentifiers(), all.getTypes(), changed, false);
+				fail("Expected a failure");
+			} catch (QueryTestFailedException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("CompareResults Error: String mismatch at row"));
+			}
+		}
+	}
+
+	/**
+	 * Rows that are equal on the first 3 columns are matched by hash, whatever their order.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCompareHashedTies() throws Exception {
+		QueryTest qt = new QueryTest("testscenario", "test_queries1", "Query1", null);
+		List<String> identifiers = Arrays.asList("A", "B", "C", "D");
+		List<String> types = Arrays.asList("integer", "integer", "integer", "string");
+
+		ExpectedResultsHolder expected = new ExpectedResultsHolder(TagNames.Elements.QUERY_RESULTS, qt);
+		expected.setIdentifiers(identifiers);
+		expected.setTypes(types);
+		List<List<Object>> expectedRows = new ArrayList<List<Object>>();
+		expectedRows.add(new ArrayList<Object>(Arrays.<Object>asList(1, 1, 1, "a")));
+		expectedRows.add(new ArrayList<Object>(Arrays.<Object>asList(1, 1, 1, "b")));
+		expectedRows.add(new ArrayList<Object>(Arrays.<Object>asList(2, 1, 1, null)));
+		expected.setRows(expectedRows);
+
+		List<List<Object>> actualRows = copy(expectedRows);
+		Collections.reverse(actualRows);
+
+		Properties props = new Properties();
+		props.setProperty(TestProperties.PROP_COMPARE_UNORDERED, TestProperties.COMPARE_UNORDERED.SORT);
+		try {
+			compare(XMLCompareResults.create(props), qt, expected, identifiers, types, actualRows);
+			fail("Expected the sorted rows to be in a different order");
+		} catch (QueryTestFailedException e) {
+		}
+
+		props.setProperty(TestProperties.PROP_COMPARE_UNORDERED, TestProperties.COMPARE_UNORDERED.HASH);
+		XMLCompareResults compare = XMLCompareResults.create(props);
+		compare(compare, qt, expected, identifiers, types, actualRows);
+
+		actualRows.get(1).set(3, "c");
+		try {
+			compare(compare, qt, expected, identifiers, types, actualRows);
+			fail("Expected a failure");
+		} catch (QueryTestFailedException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("CompareResults Error: String mismatch at row 2 and column 4"));
+		}
+	}
+
+	/**
+	 * Rows that are equal on the first 3 columns are sorted on every column on disk, whatever their order.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCompareSortedTiesOnDisk() throws Exception {
+		QueryTest qt = new QueryTest("testscenario", "test_queries1", "Query1", null);
+		List<String> identifiers = Arrays.asList("A", "B", "C", "D");
+		List<String> types = Arrays.asList("integer", "integer", "integer", "string");
+
+		List<List<Object>> expectedRows = new ArrayList<List<Object>>();
+		expectedRows.add(new ArrayList<Object>(Arrays.<Object>asList(1, 1, 1, "a")));
+		expectedRows.add(new ArrayList<Object>(Arrays.<Object>asList(1, 1, 1, "b")));
+		expectedRows.add(new ArrayList<Object>(Arrays.<Object>asList(1, 1, 1, "c")));
+		expectedRows.add(new ArrayList<Object>(Arrays.<Object>asList(1, 1, 1, "d")));
+		expectedRows.add(new ArrayList<Object>(Arrays.<Object>asList(2, 1, 1, null)));
+
+		List<List<Object>> actualRows = copy(expectedRows);
+		Collections.reverse(actualRows);
+
+		Properties props = new Properties();
+		props.setProperty(TestProperties.PROP_COMPARE_SORT_MAX_ROWS, "2");
+		props.setProperty(TestProperties.PROP_COMPARE_UNORDERED, TestProperties.COMPARE_UNORDERED.SORT);
+		props.setProperty(TestProperties.PROP_TESTRUN_DIR, UnitTestUtil.getTestOutputPath());
+		XMLCompareResults compare = XMLCompareResults.create(props);
+
+		compareUnordered(compare, qt, identifiers, types, expectedRows, actualRows);
+
+		actualRows.get(1).set(3, "e");
+		try {
+			compareUnordered(compare, qt, identifiers, types, expectedRows, actualRows);
+			fail("Expected a failure");
+		} catch (QueryTestFailedException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("CompareResults Error: String mismatch at row"));
+		}
+	}
+
+	private static void compareUnordered(XMLCompareResults compare, QueryTest qt, List<String> identifiers,
+			List<String> types, List<List<Object>> expectedRows, final List<List<Object>> rows) throws Exception {
+		TestResult testResult = new TestResult(qt.getQuerySetID(), qt.getQueryID());
+		TestCase testcase = new TestCase(qt);
+		testcase.setTestResult(testResult);
+
+		ExpectedResultsHolder header = new ExpectedResultsHolder(TagNames.Elements.QUERY_RESULTS, qt);
+		header.setIdentifiers(identifiers);
+		header.setTypes(types);
+
+		final Iterator<List<Object>> expected = copy(expectedRows).iterator();
+		CapturedResult actual = capture(identifiers, types, rows);
+		try {
+			compare.compareUnorderedResults(testcase, header, new ExpectedRowReader() {
+				public List<Object> nextRow() {
+					return (expected.hasNext() ? expected.next() : null);
+				}
+
+				public void close() {
+				}
+			}, actual);
+		} finally {
+			actual.release();
+		}
+	}
+
+	private static void compare(XMLCompareResults compare, QueryTest qt, ExpectedResultsHolder expected, List<String> identifiers,
+			List<String> types, final List<List<Object>> rows) throws Exception {
+		TestResult testResult = new TestResult(qt.getQuerySetID(), qt.getQueryID());
+		TestCase testcase = new TestCase(qt);
+		testcase.setTestResult(testResult);
+
+		CapturedResult actual = capture(identifiers, types, rows);
+		try {
+			compare.compareResults(testcase, expected, actual, false);
+		} finally {
+			actual.release();
+		}
+	}
+
+	private static List<List<Object>> copy(List<List<Object>> rows) {
+		List<List<Object>> copy = new ArrayList<List<Object>>();
+		for (List<Object> row : rows) {
+			copy.add(new ArrayList<Object>(row));
+		}
+		return copy;
+	}
+
+	/**
+	 * Capture the rows, only the first ones are kept in memory, so the rows written to disk are also compared.
+	 */
+	private static CapturedResult capture(List<String> identifiers, List<String> types, final List<List<Object>> rows) throws Exception {
+		ResultSetMetaData metadata = mock(ResultSetMetaData.class);
+		when(metadata.getColumnCount()).thenReturn(identifiers.size());
+		for (int i = 0; i < identifiers.size(); i++) {
+			when(metadata.getColumnName(i + 1)).thenReturn(identifiers.get(i));
+			when(metadata.getColumnTypeName(i + 1)).thenReturn(types.get(i));
+		}
+
+		final int[] current = new int[] {-1};
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.getMetaData()).thenReturn(metadata);
+		when(resultSet.next()).thenAnswer(new Answer<Boolean>() {
+			public Boolean answer(InvocationOnMock invocation) {
+				return ++current[0] < rows.size();
+			}
+		});
+		when(resultSet.getObject(anyInt())).thenAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) {
+				int col = (Integer) invocation.getArguments()[0];
+				return rows.get(current[0]).get(col - 1);
+			}
+		});
+
+		return CapturedResult.capture(resultSet, 2, new File(UnitTestUtil.getTestScratchPath(), "capture"));
+	}
+
+	private static void compareOrdered(XMLCompareResults compare, QueryTest qt, File file, List<String> identifiers,
+			List<String> types, final List<List<Object>> rows) throws Exception {
+		compare(compare, qt, file, identifiers, types, rows, true);
+	}
+
+	private static void compare(XMLCompareResults compare, QueryTest qt, File file, List<String> identifiers,
+			List<String> types, final List<List<Object>> rows, boolean isOrdered) throws Exception {
+		TestResult testResult = new TestResult(qt.getQuerySetID(), qt.getQueryID());
+		TestCase testcase = new TestCase(qt);
+		testcase.setTestResult(testResult);
+
+		CapturedResult actual = capture(identifiers, types, rows);
+
+		XMLResultsStreamReader reader = new XMLResultsStreamReader(file);
+		try {
+			ExpectedResultsHolder header = reader.readHeader(qt);
+			if (isOrdered) {
+				compare.compareOrderedResults(testcase, header, reader, actual);
+			} else {
+				compare.compareUnorderedResults(testcase, header, reader, actual);
+			}
+		} finally {
+			reader.close();
+			actual.release();
+		}
+	}
+
 }
@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.client.testcase;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.jboss.bqt.client.QuerySQL;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.TestProperties;
+import org.jboss.bqt.client.TestResultsSummary;
+import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.framework.AbstractQuery;
+import org.jboss.bqt.framework.PreparedStatementCache;
+import org.jboss.bqt.framework.StatementOptions;
+import org.junit.Test;
+
+/**
+ * Tests how long the {@link ProcessLoad} clients replay the queries
+ */
+@SuppressWarnings("nls")
+public class TestProcessLoad {
+
+	private static Properties props(String iterations) {
+		Properties props = new Properties();
+		if (iterations != null) {
+			props.setProperty(TestProperties.PROP_LOAD_ITERATIONS, iterations);
+		}
+		return props;
+	}
+
+	@Test
+	public void testGetIterations() {
+		assertEquals(1, ProcessLoad.getIterations(props(null), 0));
+		assertEquals(0, ProcessLoad.getIterations(props(null), 60));
+		assertEquals(5, ProcessLoad.getIterations(props("5"), 0));
+		assertEquals(5, ProcessLoad.getIterations(props("5"), 60));
+		assertEquals(0, ProcessLoad.getIterations(props("0"), 60));
+		// without a duration, the clients would never stop
+		assertEquals(1, ProcessLoad.getIterations(props("0"), 0));
+		assertEquals(1, ProcessLoad.getIterations(props("-1"), 0));
+	}
+
+	/**
+	 * Without a duration, 0 iterations replays the queries once instead of running forever.
+	 */
+	@Test(timeout = 10000)
+	public void testNoIterationsWithoutDuration() throws Exception {
+		Properties props = props("0");
+		List<QueryTest> tests = new ArrayList<QueryTest>();
+		tests.add(new QueryTest("sc", "qs", "q1", new QuerySQL[] {new QuerySQL("select 1", null)}));
+		tests.add(new QueryTest("sc", "qs", "q2", new QuerySQL[] {new QuerySQL("select 2", null)}));
+
+		QueryScenario scenario = mock(QueryScenario.class);
+		TestResultsSummary summary = mock(TestResultsSummary.class);
+		when(scenario.getProperties()).thenReturn(props);
+		when(scenario.getQueryScenarioIdentifier()).thenReturn("sc");
+		when(scenario.getQuerySetIDs()).thenReturn(Collections.singletonList("qs"));
+		when(scenario.getQueries("qs")).thenReturn(tests);
+		when(scenario.getTestResultsSummary()).thenReturn(summary);
+		when(scenario.getStatementOptions(any(QuerySQL.class))).thenReturn(new StatementOptions());
+
+		AbstractQuery query = mock(AbstractQuery.class);
+		when(query.getStatementCacheStatistics()).thenReturn(new PreparedStatementCache.Statistics());
+
+		ProcessLoad load = new ProcessLoad(scenario);
+		load.setup(query);
+		load.runTestCase();
+
+		verify(query, times(2)).execute(anyString(), any(Object[].class), any(Serializable.class));
+	}
+
+}
@@ -0,0 +1,418 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client.testcase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.bqt.client.QuerySQL;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.TestProperties;
+import org.jboss.bqt.client.TestResultsSummary;
+import org.jboss.bqt.client.api.QueryScenario;
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jboss.bqt.core.exception.QueryTestFailedException;
+import org.jboss.bqt.framework.AbstractQuery;
+import org.jboss.bqt.framework.PreparedStatementCache;
+import org.jboss.bqt.framework.StatementOptions;
+import org.jboss.bqt.framework.TestCase;
+import org.jboss.bqt.framework.TestResult;
+import org.jboss.bqt.framework.TransactionAPI;
+import org.jboss.bqt.framework.connection.ConnectionRecovery;
+import org.jboss.bqt.framework.connection.ConnectionStrategy;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests how {@link ProcessResults} runs the tests of a query set, concurrently or in
+ * batches, and which queries of a test it sends in a batch
+ */
+@SuppressWarnings("nls")
+public class TestProcessResults {
+
+	private QueryScenario scenario;
+	private Properties props;
+	// the query IDs in the order their results were added to the summary
+	private List<String> summarized;
+	private Map<String, TestResult> results;
+
+	@Before
+	public void setUp() {
+		props = new Properties();
+		props.setProperty(TestProperties.PROP_QUERYSET_WORKERS, "3");
+		props.setProperty(TestProperties.PROP_JOURNAL, "false");
+		summarized = Collections.synchronizedList(new ArrayList<String>());
+		results = Collections.synchronizedMap(new HashMap<String, TestResult>());
+
+		TestResultsSummary summary = mock(TestResultsSummary.class);
+		doAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) {
+				TestResult result = (TestResult) invocation.getArguments()[1];
+				summarized.add(result.getQueryID());
+				results.put(result.getQueryID(), result);
+				return null;
+			}
+		}).when(summary).addTest(anyString(), any(TestResult.class));
+
+		scenario = mock(QueryScenario.class);
+		when(scenario.getProperties()).thenReturn(props);
+		when(scenario.getQueryScenarioIdentifier()).thenReturn("sc");
+		when(scenario.getResultsMode()).thenReturn(TestProperties.RESULT_MODES.NONE);
+		when(scenario.isNone()).thenReturn(true);
+		when(scenario.getQuerySetIDs()).thenReturn(Collections.singletonList("qs"));
+		when(scenario.getTestResultsSummary()).thenReturn(summary);
+		when(scenario.getStatementOptions(any(QuerySQL.class))).thenReturn(new StatementOptions());
+	}
+
+	private static AbstractQuery query() {
+		ConnectionStrategy strategy = mock(ConnectionStrategy.class);
+		try {
+			DatabaseMetaData metadata = mock(DatabaseMetaData.class);
+			when(metadata.supportsBatchUpdates()).thenReturn(true);
+			Connection connection = mock(Connection.class);
+			when(connection.getMetaData()).thenReturn(metadata);
+			when(strategy.getConnection()).thenReturn(connection);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		AbstractQuery query = mock(AbstractQuery.class);
+		when(query.getConnectionRecovery()).thenReturn(new ConnectionRecovery(new Properties()));
+		when(query.getStatementCacheStatistics()).thenReturn(new PreparedStatementCache.Statistics());
+		when(query.getConnectionStrategy()).thenReturn(strategy);
+		return query;
+	}
+
+	private static QueryTest test(String queryID, String sql) {
+		return new QueryTest("sc", "qs", queryID, new QuerySQL[] {new QuerySQL(sql, null)});
+	}
+
+	private static QueryTest update(String queryID, int updateCnt) {
+		QueryTest test = test(queryID, "insert into t values ('" + queryID + "')");
+		test.getQueries()[0].setUpdateCnt(updateCnt);
+		return test;
+	}
+
+	/**
+	 * Records the statements of each batch, and returns an update count of 1 for each one.
+	 */
+	private static List<List<String>> recordBatches(AbstractQuery query) throws Exception {
+		final List<List<String>> batches = new ArrayList<List<String>>();
+		when(query.executeBatch(any(String[].class))).thenAnswer(new Answer<int[]>() {
+			public int[] answer(InvocationOnMock invocation) {
+				String[] sql = (String[]) invocation.getArguments()[0];
+				batches.add(Arrays.asList(sql));
+				int[] counts = new int[sql.length];
+				Arrays.fill(counts, 1);
+				return counts;
+			}
+		});
+		return batches;
+	}
+
+	private void setTests(List<QueryTest> tests) {
+		when(scenario.getQueryCount("qs")).thenReturn(tests.size());
+		when(scenario.getQueryIterator("qs")).thenReturn(tests.iterator());
+	}
+
+	/**
+	 * Runs the tests with mock transactions, {@link #execute(QueryTest)} stands for the execution of a test.
+	 */
+	private abstract class MockProcessResults extends ProcessResults {
+
+		private final AbstractQuery query = query();
+
+		MockProcessResults() {
+			super(scenario);
+			setup(query);
+		}
+
+		AbstractQuery abQuery() {
+			return query;
+		}
+
+		@Override
+		TransactionAPI createWorkerTransaction() {
+			return query();
+		}
+
+		@Override
+		void executeTest(TestCase testcase, AbstractQuery query) throws Exception {
+			execute((QueryTest) testcase.getActualTest());
+		}
+
+		abstract void execute(QueryTest test) throws Exception;
+	}
+
+	/**
+	 * A serial test waits for the tests before it, and the tests after it wait for it.  The
+	 * results are summarized in the order the tests are defined.
+	 */
+	@Test
+	public void testSerialTests() {
+		final List<QueryTest> tests = new ArrayList<QueryTest>();
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 13; i++) {
+			String id = "q" + i;
+			// the 7th test is an update
+			tests.add(test(id, i == 6 ? "update t set c = 1" : "select " + i));
+			ids.add(id);
+		}
+		setTests(tests);
+
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final Set<String> started = Collections.synchronizedSet(new HashSet<String>());
+		final Set<String> completed = Collections.synchronizedSet(new HashSet<String>());
+		final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+		new MockProcessResults() {
+			@Override
+			void execute(QueryTest test) throws Exception {
+				int index = tests.indexOf(test);
+				started.add(test.getQueryID());
+				int now = running.incrementAndGet();
+				synchronized (maxRunning) {
+					maxRunning.set(Math.max(maxRunning.get(), now));
+				}
+				try {
+					if (test.isSerial()) {
+						if (now != 1 || completed.size() != 6 || started.size() != 7) {
+							errors.add("serial test ran with " + now + " tests, after " + completed.size() + " completed");
+						}
+					} else if (index > 6 && !completed.contains("q6")) {
+						errors.add(test.getQueryID() + " ran before the serial test");
+					}
+					// the first tests take the longest
+					Thread.sleep((13 - index) * 3);
+				} finally {
+					completed.add(test.getQueryID());
+					running.decrementAndGet();
+				}
+			}
+		}.runTestCase();
+
+		assertEquals(Collections.emptyList(), errors);
+		assertTrue(maxRunning.get() > 1);
+		assertTrue(maxRunning.get() <= 3);
+		assertEquals(ids, summarized);
+	}
+
+	/**
+	 * A connection error stops the other workers and fails the scenario.
+	 */
+	@Test
+	public void testAbort() {
+		List<QueryTest> tests = new ArrayList<QueryTest>();
+		for (int i = 0; i < 100; i++) {
+			tests.add(test("q" + i, "select " + i));
+		}
+		setTests(tests);
+
+		final AtomicInteger executed = new AtomicInteger();
+		try {
+			new MockProcessResults() {
+				@Override
+				void execute(QueryTest test) throws Exception {
+					executed.incrementAndGet();
+					if (test.getQueryID().equals("q5")) {
+						throw new FrameworkRuntimeException(FrameworkException.ErrorCodes.DB_CONNECTION_EXCEPTION, "db down");
+					}
+					Thread.sleep(10);
+				}
+			}.runTestCase();
+			fail("the scenario didn't fail");
+		} catch (FrameworkRuntimeException e) {
+			// expected
+		}
+
+		assertTrue(executed.get() < 20);
+		assertTrue(summarized.contains("q5"));
+		assertTrue(summarized.size() < 20);
+	}
+
+	/**
+	 * Consecutive updates are sent in batches of their own tests, the update count of each statement
+	 * is checked against its test.
+	 */
+	@Test
+	public void testBatchTests() throws Exception {
+		props.setProperty(TestProperties.PROP_QUERYSET_WORKERS, "1");
+		props.setProperty(TestProperties.PROP_BATCH_SIZE, "3");
+
+		List<QueryTest> tests = new ArrayList<QueryTest>();
+		tests.add(test("q0", "select 0"));
+		for (int i = 1; i <= 5; i++) {
+			// the 3rd update expects another count
+			tests.add(update("q" + i, i == 3 ? 2 : 1));
+		}
+		tests.add(test("q6", "select 6"));
+		tests.add(update("q7", 1));
+		// other statement options can't be sent in the same batch
+		QueryTest q8 = update("q8", 1);
+		StatementOptions options = new StatementOptions();
+		options.setMaxRows(Integer.valueOf(10));
+		when(scenario.getStatementOptions(q8.getQueries()[0])).thenReturn(options);
+		tests.add(q8);
+		tests.add(test("q9", "select 9"));
+		// the rows are counted
+		QueryTest q10 = update("q10", 1);
+		q10.getQueries()[0].setRowCnt(1);
+		tests.add(q10);
+		setTests(tests);
+
+		final List<String> executed = new ArrayList<String>();
+		MockProcessResults process = new MockProcessResults() {
+			@Override
+			void execute(QueryTest test) throws Exception {
+				executed.add(test.getQueryID());
+			}
+		};
+		List<List<String>> batches = recordBatches(process.abQuery());
+		process.runTestCase();
+
+		assertEquals(2, batches.size());
+		assertEquals(Arrays.asList(sql(tests, 1), sql(tests, 2), sql(tests, 3)), batches.get(0));
+		assertEquals(Arrays.asList(sql(tests, 4), sql(tests, 5)), batches.get(1));
+		assertEquals(Arrays.asList("q0", "q6", "q7", "q8", "q9", "q10"), executed);
+		assertEquals(Arrays.asList("q0", "q1", "q2", "q3", "q4", "q5", "q6", "q7", "q8", "q9", "q10"), summarized);
+
+		for (int i = 1; i <= 5; i++) {
+			TestResult result = results.get("q" + i);
+			assertEquals(sql(tests, i), result.getQuery());
+			assertEquals(1, result.getUpdateCount());
+			assertEquals(i == 3 ? TestResult.RESULT_STATE.TEST_EXCEPTION : TestResult.RESULT_STATE.TEST_SUCCESS, result.getStatus());
+		}
+	}
+
+	/**
+	 * When a batch fails, the tests whose statements were executed keep their update count.
+	 */
+	@Test
+	public void testBatchFailure() throws Exception {
+		props.setProperty(TestProperties.PROP_QUERYSET_WORKERS, "1");
+		props.setProperty(TestProperties.PROP_BATCH_SIZE, "10");
+
+		List<QueryTest> tests = new ArrayList<QueryTest>();
+		for (int i = 0; i < 3; i++) {
+			tests.add(update("q" + i, 1));
+		}
+		setTests(tests);
+
+		MockProcessResults process = new MockProcessResults() {
+			@Override
+			void execute(QueryTest test) throws Exception {
+				fail(test.getQueryID() + " isn't sent in the batch");
+			}
+		};
+		when(process.abQuery().executeBatch(any(String[].class))).thenThrow(
+				new QueryTestFailedException(new BatchUpdateException("duplicate key", "23505", new int[] {1})));
+		process.runTestCase();
+
+		assertEquals(Arrays.asList("q0", "q1", "q2"), summarized);
+		assertEquals(TestResult.RESULT_STATE.TEST_SUCCESS, results.get("q0").getStatus());
+		assertEquals(1, results.get("q0").getUpdateCount());
+		assertEquals(TestResult.RESULT_STATE.TEST_EXCEPTION, results.get("q1").getStatus());
+		assertEquals(TestResult.RESULT_STATE.TEST_EXCEPTION, results.get("q2").getStatus());
+	}
+
+	/**
+	 * The queries of a test are sent in batches of the same statement options.
+	 */
+	@Test
+	public void testBatchQueries() throws Exception {
+		props.setProperty(TestProperties.PROP_QUERYSET_WORKERS, "1");
+		props.setProperty(TestProperties.PROP_BATCH_SIZE, "3");
+
+		QuerySQL[] queries = new QuerySQL[5];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = new QuerySQL("delete from t where c = " + i, null);
+			queries[i].setUpdateCnt(1);
+		}
+		StatementOptions options = new StatementOptions();
+		options.setQueryTimeout(Integer.valueOf(5));
+		when(scenario.getStatementOptions(queries[2])).thenReturn(options);
+		setTests(Collections.singletonList(new QueryTest("sc", "qs", "q0", queries)));
+
+		ProcessResults process = new ProcessResults(scenario);
+		AbstractQuery query = query();
+		process.setup(query);
+		List<List<String>> batches = recordBatches(query);
+		process.runTestCase();
+
+		assertEquals(3, batches.size());
+		assertEquals(Arrays.asList(queries[0].getSql(), queries[1].getSql()), batches.get(0));
+		assertEquals(Arrays.asList(queries[2].getSql()), batches.get(1));
+		assertEquals(Arrays.asList(queries[3].getSql(), queries[4].getSql()), batches.get(2));
+		verify(query).setStatementOptions(options);
+		assertEquals(TestResult.RESULT_STATE.TEST_SUCCESS, results.get("q0").getStatus());
+	}
+
+	private static String sql(List<QueryTest> tests, int index) {
+		return tests.get(index).getQueries()[0].getSql();
+	}
+
+	@Test
+	public void testIsBatchable() {
+		assertTrue(ProcessResults.isBatchable(new QuerySQL("INSERT INTO t VALUES (1)", null)));
+		assertTrue(ProcessResults.isBatchable(new QuerySQL("  update t set c = 1", new Object[] {})));
+		assertTrue(ProcessResults.isBatchable(new QuerySQL("delete\nfrom t", null)));
+
+		assertFalse(ProcessResults.isBatchable(new QuerySQL("select * from t", null)));
+		assertFalse(ProcessResults.isBatchable(new QuerySQL("exec proc()", null)));
+		assertFalse(ProcessResults.isBatchable(new QuerySQL("inserted", null)));
+		// parameters can't be sent in a batch
+		assertFalse(ProcessResults.isBatchable(new QuerySQL("insert into t values (?)", new Object[] {1})));
+		assertFalse(ProcessResults.isBatchable(new QuerySQL("insert into t values ('?')", null)));
+
+		// the rows are counted
+		QuerySQL counted = new QuerySQL("delete from t", null);
+		counted.setRowCnt(0);
+		assertFalse(ProcessResults.isBatchable(counted));
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client.testcase;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.framework.AbstractQuery;
+import org.jboss.bqt.framework.TestCase;
+import org.jboss.bqt.framework.TestResult;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests that the {@link QueryWatchdog} only cancels the tests that run longer than their timeout
+ */
+@SuppressWarnings("nls")
+public class TestQueryWatchdog {
+
+	@Test
+	public void testTimeout() throws Exception {
+		QueryWatchdog watchdog = new QueryWatchdog("test");
+		try {
+			AbstractQuery query = mock(AbstractQuery.class);
+			TestCase testcase = testCase("Query1");
+			final CountDownLatch cancelled = new CountDownLatch(1);
+			doAnswer(new Answer<Object>() {
+				public Object answer(InvocationOnMock invocation) {
+					cancelled.countDown();
+					return null;
+				}
+			}).when(query).timeout(testcase);
+			watchdog.watch(query, testcase, 10);
+			assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+		} finally {
+			watchdog.shutdown();
+		}
+	}
+
+	@Test
+	public void testCompletedInTime() throws Exception {
+		QueryWatchdog watchdog = new QueryWatchdog("test");
+		try {
+			AbstractQuery query = mock(AbstractQuery.class);
+			TestCase testcase = testCase("Query1");
+			ScheduledFuture<?> watch = watchdog.watch(query, testcase, 200);
+			assertTrue(watch.cancel(false));
+			Thread.sleep(400);
+			verify(query, never()).timeout(testcase);
+		} finally {
+			watchdog.shutdown();
+		}
+	}
+
+	private static TestCase testCase(String queryID) {
+		QueryTest qt = new QueryTest("scenario", "queryset", queryID, null);
+		TestCase testcase = new TestCase(qt);
+		testcase.setTestResult(new TestResult(qt.getQuerySetID(), qt.getQueryID()));
+		return testcase;
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client.testcase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import org.jboss.bqt.framework.TestResult;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class TestResultsJournal {
+
+	private static File journalFile(String name) {
+		File file = new File("target/journal_test", name);
+		file.delete();
+		return file;
+	}
+
+	private static TestResult result(String queryID, int status, String message) {
+		TestResult result = new TestResult("qs", queryID);
+		result.setStatus(status);
+		result.setBeginTS(1000);
+		result.setEndTS(1250);
+		result.setRowCount(3);
+		result.setFailureMessage(message);
+		result.setErrorFile(message != null ? "qs_" + queryID + ".err" : null);
+		result.recordExecution(200000000l);
+		result.recordExecution(50000000l);
+		return result;
+	}
+
+	@Test
+	public void testReplay() throws Exception {
+		File file = journalFile("replay.txt");
+		ResultsJournal journal = new ResultsJournal(file, 100, 60000);
+		journal.open(false);
+		journal.write(result("q1", TestResult.RESULT_STATE.TEST_SUCCESS, null));
+		journal.write(result("q2", TestResult.RESULT_STATE.TEST_EXCEPTION, "wrong\trow\ncount \\ 3"));
+		journal.close();
+
+		ResultsJournal resumed = new ResultsJournal(file, 100, 60000);
+		resumed.load();
+		assertFalse(resumed.isCompleted());
+		assertEquals(2, resumed.size());
+		assertEquals(500, resumed.getElapsed("qs"));
+
+		TestResult q2 = resumed.replay("qs", "q2");
+		assertEquals(TestResult.RESULT_STATE.TEST_EXCEPTION, q2.getStatus());
+		assertEquals("wrong\trow\ncount \\ 3", q2.getFailureMessage());
+		assertEquals("qs_q2.err", q2.getErrorfile());
+		assertEquals(3, q2.getRowCount());
+		assertEquals(1250, q2.getEndTS());
+		// the executions are replayed into the latencies of the summary
+		assertEquals(2, q2.getLatencies().getCount());
+		assertEquals(50000000l, q2.getLatencies().getMin());
+		assertEquals(200000000l, q2.getLatencies().getMax());
+		assertEquals(250000000l, q2.getLatencies().getTotal());
+		assertNull(resumed.replay("qs", "q2"));
+		assertNull(resumed.replay("qs", "q3"));
+
+		// the replayed result isn't written again, the one that is run is appended
+		resumed.open(true);
+		resumed.write(q2);
+		resumed.write(result("q3", TestResult.RESULT_STATE.TEST_SUCCESS, null));
+		resumed.complete();
+		resumed.close();
+
+		ResultsJournal completed = new ResultsJournal(file, 100, 60000);
+		completed.load();
+		assertTrue(completed.isCompleted());
+		assertEquals(3, completed.size());
+		assertNull(completed.replay("qs", "q1").getErrorfile());
+	}
+
+	@Test
+	public void testPartlyWrittenLine() throws Exception {
+		File file = journalFile("partial.txt");
+		ResultsJournal journal = new ResultsJournal(file, 1, 0);
+		journal.open(false);
+		journal.write(result("q1", TestResult.RESULT_STATE.TEST_SUCCESS, null));
+		journal.close();
+
+		// the run died while the next result was written
+		Writer out = new FileWriter(file, true);
+		out.write("qs\tq2\t1\t1000\t12");
+		out.close();
+
+		ResultsJournal resumed = new ResultsJournal(file, 1, 0);
+		resumed.load();
+		assertEquals(1, resumed.size());
+		assertNull(resumed.replay("qs", "q2"));
+
+		resumed.open(true);
+		resumed.write(result("q2", TestResult.RESULT_STATE.TEST_SUCCESS, null));
+		resumed.close();
+
+		ResultsJournal reloaded = new ResultsJournal(file, 1, 0);
+		reloaded.load();
+		assertEquals(2, reloaded.size());
+	}
+
+	@Test
+	public void testEscape() {
+		assertEquals("\\0", ResultsJournal.escape(null));
+		assertNull(ResultsJournal.unescape("\\0"));
+		assertEquals("", ResultsJournal.unescape(ResultsJournal.escape("")));
+		String value = "a\\tb\t\r\n\\0";
+		assertEquals(value, ResultsJournal.unescape(ResultsJournal.escape(value)));
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class TestAsyncOutputWriter {
+
+	@Test
+	public void testFlushWaitsForTheOutputs() throws Exception {
+		AsyncOutputWriter writer = new AsyncOutputWriter("test-output", 2, 4);
+		assertTrue(writer.isAsync());
+		final AtomicInteger written = new AtomicInteger();
+		for (int i = 0; i < 20; i++) {
+			writer.submit("file" + i, new AsyncOutputWriter.Output() {
+				public void write() {
+					try {
+						Thread.sleep(5);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					written.incrementAndGet();
+				}
+			});
+		}
+		writer.flush();
+		assertEquals(20, written.get());
+		writer.shutdown();
+	}
+
+	@Test
+	public void testSubmitBlocksWhenTheQueueIsFull() throws Exception {
+		final AsyncOutputWriter writer = new AsyncOutputWriter("test-output", 1, 1);
+		final CountDownLatch release = new CountDownLatch(1);
+		AsyncOutputWriter.Output blocked = new AsyncOutputWriter.Output() {
+			public void write() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		// one is written and one waits in the queue
+		writer.submit("file1", blocked);
+		writer.submit("file2", blocked);
+
+		final CountDownLatch submitted = new CountDownLatch(1);
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					writer.submit("file3", new AsyncOutputWriter.Output() {
+						public void write() {
+						}
+					});
+				} catch (FrameworkException e) {
+					//
+				}
+				submitted.countDown();
+			}
+		};
+		thread.start();
+		assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+
+		release.countDown();
+		assertTrue(submitted.await(5, TimeUnit.SECONDS));
+		writer.shutdown();
+	}
+
+	@Test
+	public void testFailures() throws Exception {
+		AsyncOutputWriter.Output failing = new AsyncOutputWriter.Output() {
+			public void write() throws FrameworkException {
+				throw new FrameworkException("write failed");
+			}
+		};
+
+		// logged when written by a thread of the writer
+		AsyncOutputWriter writer = new AsyncOutputWriter("test-output", 1, 1);
+		writer.submit("file1", failing);
+		writer.shutdown();
+
+		// thrown when written by the thread that submits it
+		writer = new AsyncOutputWriter("test-output", 0, 0);
+		assertFalse(writer.isAsync());
+		try {
+			writer.submit("file2", failing);
+			fail("the failure should have been thrown");
+		} catch (FrameworkException e) {
+			assertEquals("write failed", e.getMessage());
+		}
+	}
+
+}
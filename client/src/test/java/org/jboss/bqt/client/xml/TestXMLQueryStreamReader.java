@@ -0,0 +1,139 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client.xml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.jboss.bqt.client.QuerySQL;
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.core.util.FileUtils;
+import org.jboss.bqt.core.util.UnitTestUtil;
+import org.junit.Test;
+
+/**
+ * These tests verify XMLQueryStreamReader reads the same query tests as the ones
+ * parsed from the whole document.
+ */
+@SuppressWarnings("nls")
+public class TestXMLQueryStreamReader {
+
+	private static final String QUERIES = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<root>\n"
+			+ "  <!-- a comment -->\n"
+			+ "  <query name=\"q1\">select * from t</query>\n"
+			+ "  <query name=\"q2\" serial=\"true\" updatecnt=\"3\">insert into t values (?, ?)"
+			+ "<parm type=\"integer\">1</parm><parm type=\"string\">a &amp; b</parm>"
+			+ "<payload name=\"p\">v</payload></query>\n"
+			+ "  <query name=\"q3\"><sql>select 1</sql><sql numtimes=\"2\">select 2</sql></query>\n"
+			+ "  <query name=\"q4\"><exception><class>java.sql.SQLException</class></exception></query>\n"
+			+ "  <query name=\"q5\">select <![CDATA[ a < b ]]> from t</query>\n"
+			+ "</root>\n";
+
+	@Test
+	public void testReadQueries() throws Exception {
+		File file = writeQueries("stream_queries.xml");
+
+		List<QueryTest> expected = new XMLQueryVisitationStrategy().parseXMLQueryFile("scenario", file, "qs");
+		assertEquals(5, expected.size());
+
+		XMLQueryStreamReader reader = new XMLQueryStreamReader("scenario", file, "qs");
+		try {
+			for (QueryTest test : expected) {
+				QueryTest actual = reader.next();
+				assertEquals(test, actual);
+				assertEquals(test.isSerial(), actual.isSerial());
+				assertEquals(test.getQueries().length, actual.getQueries().length);
+				for (int i = 0; i < test.getQueries().length; i++) {
+					assertEquals(test.getQueries()[i].getSql(), actual.getQueries()[i].getSql());
+					assertArrayEquals(test.getQueries()[i].getParms(), actual.getQueries()[i].getParms());
+				}
+			}
+			assertFalse(reader.hasNext());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testQueryValues() throws Exception {
+		File file = writeQueries("stream_query_values.xml");
+
+		XMLQueryStreamReader reader = new XMLQueryStreamReader("scenario", file, "qs");
+		try {
+			reader.next();
+			QueryTest test = reader.next();
+			assertEquals("q2", test.getQueryID());
+			assertEquals(true, test.isSerial());
+			QuerySQL sql = test.getQueries()[0];
+			assertEquals("insert into t values (?, ?)", sql.getSql());
+			assertArrayEquals(new Object[] {Integer.valueOf(1), "a & b"}, sql.getParms());
+			assertEquals(3, sql.getUpdateCnt());
+			assertEquals("v", ((Properties) sql.getPayLoad()).getProperty("p"));
+
+			test = reader.next();
+			assertEquals("qs_q3", test.getQueryID());
+			assertEquals(2, test.getQueries().length);
+			assertEquals("select 2", test.getQueries()[1].getSql());
+			assertEquals(2, test.getQueries()[1].getRunTimes());
+
+			reader.next();
+			assertEquals("select  a < b  from t", reader.next().getQueries()[0].getSql());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testNextQueryName() throws Exception {
+		File file = writeQueries("stream_query_names.xml");
+
+		XMLQueryStreamReader reader = new XMLQueryStreamReader("scenario", file, "qs");
+		try {
+			assertEquals("q1", reader.nextQueryName());
+			assertEquals("q2", reader.nextQueryName());
+			// the skipped queries and the read queries can be mixed
+			assertEquals("qs_q3", reader.next().getQueryID());
+			assertEquals(Arrays.asList("q4", "q5"), Arrays.asList(reader.nextQueryName(), reader.nextQueryName()));
+			assertNull(reader.nextQueryName());
+			assertFalse(reader.hasNext());
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static File writeQueries(String name) throws Exception {
+		File file = new File(UnitTestUtil.getTestScratchPath(), name);
+		file.getParentFile().mkdirs();
+		FileUtils.write(QUERIES.getBytes("UTF-8"), file);
+		return file;
+	}
+
+}
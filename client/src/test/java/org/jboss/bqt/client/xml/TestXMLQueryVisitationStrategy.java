@@ -22,15 +22,18 @@
 
 package org.jboss.bqt.client.xml;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Properties;
 
 import org.jboss.bqt.client.QueryTest;
 import org.jboss.bqt.client.api.QueryScenario;
 import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.core.util.FileUtils;
 import org.jboss.bqt.core.util.UnitTestUtil;
 import org.jboss.bqt.framework.ConfigPropertyLoader;
 import org.jboss.bqt.framework.ConfigPropertyNames;
@@ -156,4 +159,34 @@ public class TestXMLQueryVisitationStrategy {
 
 	}
  
+	@Test
+	public void testParseTypedCells() throws Exception {
+		File resultsFile = new File(UnitTestUtil.getTestScratchPath(), "typed_cells.xml");
+		resultsFile.getParentFile().mkdirs();
+		FileUtils.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<root><query><![CDATA[select a, b, c from t]]></query>"
+				+ "<queryResults name=\"qs_q\" exectime=\"5\"><select>"
+				+ "<dataElement type=\"OBJECT\">A</dataElement>"
+				+ "<dataElement type=\"DOUBLE\">B</dataElement>"
+				+ "<dataElement type=\"CHAR\">C</dataElement>"
+				+ "</select><table rowCount=\"3\" columnCount=\"3\">"
+				+ "<tableRow><tableCell><integer> 7 </integer></tableCell><tableCell><double>NaN</double></tableCell>"
+				+ "<tableCell><char>x</char></tableCell></tableRow>"
+				+ "<tableRow><tableCell><Boolean>TRUE</Boolean></tableCell><tableCell>null</tableCell>"
+				+ "<tableCell><char unprintable=\"true\" hexValue=\"20\"/></tableCell></tableRow>"
+				+ "<tableRow><tableCell><object>abc</object></tableCell><tableCell><double>-1.5</double></tableCell>"
+				+ "<tableCell><string unprintable=\"true\" hexValue=\"2020\"/></tableCell></tableRow>"
+				+ "</table></queryResults></root>").getBytes("UTF-8"), resultsFile);
+
+		QueryTest test = new QueryTest("scenario", "qs", "q", null);
+		ExpectedResultsHolder expectedResult = new XMLQueryVisitationStrategy().parseXMLResultsFile(test, "qs", resultsFile);
+
+		assertEquals("select a, b, c from t", expectedResult.getQuery());
+		assertEquals(5, expectedResult.getExecutionTime());
+		assertEquals(Arrays.asList("A", "B", "C"), expectedResult.getIdentifiers());
+		assertEquals(Arrays.<Object> asList(7, Double.NaN, 'x'), expectedResult.getRows().get(0));
+		assertEquals(Arrays.<Object> asList(Boolean.TRUE, null, ' '), expectedResult.getRows().get(1));
+		assertEquals(Arrays.<Object> asList("abc", -1.5, "  "), expectedResult.getRows().get(2));
+	}
+
 }
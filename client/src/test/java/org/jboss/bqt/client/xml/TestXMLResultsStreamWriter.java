@@ -0,0 +1,143 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.client.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.bqt.client.QueryTest;
+import org.jboss.bqt.client.results.ExpectedResultsHolder;
+import org.jboss.bqt.core.util.UnitTestUtil;
+import org.jboss.bqt.core.xml.SAXBuilderHelper;
+import org.jdom2.Element;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * These tests verify the files written by XMLResultsStreamWriter are read the same
+ * as the ones written from the JDOM elements.
+ */
+@SuppressWarnings("nls")
+public class TestXMLResultsStreamWriter {
+
+	private static final List<String> IDENTIFIERS = Arrays.asList("ID", "NAME", "AMOUNT", "CREATED");
+	private static final List<String> TYPES = Arrays.asList("INTEGER", "VARCHAR", "DECIMAL", "TIMESTAMP");
+
+	@Test
+	public void testWriteResults() throws Exception {
+		List<List<Object>> rows = new ArrayList<List<Object>>();
+		rows.add(Arrays.<Object> asList(1, "a <b> & \"c\"", new BigDecimal("1.50"), Timestamp.valueOf("2015-01-02 03:04:05.0")));
+		rows.add(Arrays.<Object> asList(2, null, null, null));
+		rows.add(Arrays.<Object> asList(3, "   ", new BigDecimal("-7"), Timestamp.valueOf("1999-12-31 23:59:59.0")));
+
+		for (boolean compact : new boolean[] {false, true}) {
+			File file = new File(UnitTestUtil.getTestScratchPath(), "stream_writer_" + compact + ".xml");
+			file.getParentFile().mkdirs();
+
+			XMLResultsStreamWriter writer = new XMLResultsStreamWriter(compact);
+			long rowCount = writer.writeResults(file, "select * from t where a < 1", "qs_q1", 12, mockResultSet(rows));
+			assertEquals(3, rowCount);
+
+			QueryTest test = new QueryTest("scenario", "qs", "q1", null);
+			ExpectedResultsHolder expected = new XMLQueryVisitationStrategy().parseXMLResultsFile(test, "qs", file);
+			assertEquals("select * from t where a < 1", expected.getQuery());
+			assertEquals(12, expected.getExecutionTime());
+			assertEquals(IDENTIFIERS, expected.getIdentifiers());
+			assertEquals(TYPES, expected.getTypes());
+			assertEquals(rows, expected.getRows());
+
+			XMLResultsStreamReader reader = new XMLResultsStreamReader(file);
+			try {
+				reader.readHeader(test);
+				for (List<Object> row : rows) {
+					assertEquals(row, reader.nextRow());
+				}
+				assertNull(reader.nextRow());
+			} finally {
+				reader.close();
+			}
+
+			Element table = SAXBuilderHelper.createSAXBuilder(false).build(file).getRootElement()
+					.getChild(TagNames.Elements.QUERY_RESULTS).getChild(TagNames.Elements.TABLE);
+			assertEquals("3", table.getAttributeValue(TagNames.Attributes.TABLE_ROW_COUNT));
+			assertEquals("4", table.getAttributeValue(TagNames.Attributes.TABLE_COLUMN_COUNT));
+		}
+	}
+
+	@Test
+	public void testWriteException() throws Exception {
+		File file = new File(UnitTestUtil.getTestScratchPath(), "stream_writer_exception.xml");
+		file.getParentFile().mkdirs();
+
+		XMLResultsStreamWriter writer = new XMLResultsStreamWriter(false);
+		writer.writeException(file, "select x from t", "qs_q2", new SQLException("Column \"x\" not found"));
+
+		QueryTest test = new QueryTest("scenario", "qs", "q2", null);
+		ExpectedResultsHolder expected = new XMLQueryVisitationStrategy().parseXMLResultsFile(test, "qs", file);
+		assertTrue(expected.isExceptionExpected());
+		assertEquals(SQLException.class.getName(), expected.getExceptionClassName());
+		assertEquals("Column \"x\" not found", expected.getExceptionMsg());
+	}
+
+	private static ResultSet mockResultSet(final List<List<Object>> rows) throws Exception {
+		ResultSetMetaData metadata = mock(ResultSetMetaData.class);
+		when(metadata.getColumnCount()).thenReturn(IDENTIFIERS.size());
+		for (int i = 0; i < IDENTIFIERS.size(); i++) {
+			when(metadata.getColumnName(i + 1)).thenReturn(IDENTIFIERS.get(i));
+			when(metadata.getColumnTypeName(i + 1)).thenReturn(TYPES.get(i));
+		}
+
+		final int[] current = new int[] {-1};
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.getMetaData()).thenReturn(metadata);
+		when(resultSet.next()).thenAnswer(new Answer<Boolean>() {
+			public Boolean answer(InvocationOnMock invocation) {
+				return ++current[0] < rows.size();
+			}
+		});
+		when(resultSet.getObject(anyInt())).thenAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) {
+				int col = (Integer) invocation.getArguments()[0];
+				return rows.get(current[0]).get(col - 1);
+			}
+		});
+
+		return resultSet;
+	}
+
+}
@@ -35,6 +35,13 @@ public class SAXBuilderHelper {
 
 	private static String PARSER_NAME;
 
+	private static final ThreadLocal<SAXBuilder> BUILDER = new ThreadLocal<SAXBuilder>() {
+		@Override
+		protected SAXBuilder initialValue() {
+			return createSAXBuilder(false);
+		}
+	};
+
 	public static String getParserClassName() {
 
 		if (PARSER_NAME == null) {
@@ -68,6 +75,18 @@ public class SAXBuilderHelper {
 		return new SAXBuilder(new XMLReaderSAX2Factory(validate, getParserClassName()));
 	}
 
+	/**
+	 * Returns a non-validating SAXBuilder that is reused by the calling thread, so
+	 * that parsing many files doesn't create a parser for each one.  The builder
+	 * must not be changed.
+	 * 
+	 * @return org.jdom.input.SAXBuilder
+	 * @see #createSAXBuilder(boolean)
+	 */
+	public static SAXBuilder getSAXBuilder() {
+		return BUILDER.get();
+	}
+
 	/**
 	 * Returns a SAXBuilder
 	 * @param saxDriverClass 
@@ -29,7 +29,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
 
 import org.apache.commons.lang.StringUtils;
 import org.jboss.bqt.core.exception.FrameworkException;
@@ -37,6 +42,8 @@ import org.jboss.bqt.core.exception.FrameworkRuntimeException;
 import org.jboss.bqt.core.exception.QueryTestFailedException;
 import org.jboss.bqt.core.exception.TransactionRuntimeException;
 import org.jboss.bqt.core.util.ArgCheck;
+import org.jboss.bqt.core.util.PropertiesUtils;
+import org.jboss.bqt.framework.connection.ConnectionRecovery;
 import org.jboss.bqt.framework.connection.ConnectionStrategy;
 import org.jboss.bqt.framework.connection.ConnectionStrategyFactory;
 import org.jboss.bqt.framework.util.AssertResults;
@@ -61,14 +68,30 @@ public abstract class AbstractQuery implements TransactionAPI {
 
 	protected Connection internalConnection = null;
 	protected ResultSet internalResultSet = null;
-	protected Statement internalStatement = null;
+	// volatile, the statement of a query that timed out is cancelled by another thread
+	protected volatile Statement internalStatement = null;
 	private SQLException internalException = null;
 	private Throwable applicationException = null;
 	
 	
 	private String testClassName = "n/a";
 	
-	private TestCase testCase = null;
+	// the options of the statements, the result set type defaults to scroll insensitive
+	private StatementOptions statementOptions = new StatementOptions();
+	
+	private volatile TestCase testCase = null;
+	private volatile boolean timedOut = false;
+	// held while the test or its statement is changed, so a late timeout can't cancel the statement of the next test
+	private final Object timeoutLock = new Object();
+	
+	// the prepared statements of each connection that was used, and whether the running statement is one of them
+	private final Map<Connection, PreparedStatementCache> statementCaches = new IdentityHashMap<Connection, PreparedStatementCache>();
+	private final PreparedStatementCache.Statistics statementCacheStatistics = new PreparedStatementCache.Statistics();
+	private int statementCacheSize = -1;
+	private boolean cachedStatement = false;
+	
+	// decides whether the connection is kept after an error
+	private ConnectionRecovery connectionRecovery;
 
 	public AbstractQuery() {
 		
@@ -80,6 +103,20 @@ public abstract class AbstractQuery implements TransactionAPI {
 
 	}
 	
+	/**
+	 * Create the query using the connection properties that were passed in.
+	 * @param props 
+	 */
+	public AbstractQuery(Properties props) {
+		
+		this.testClassName = StringUtils.substringAfterLast(this.getClass().getName(),
+		".");
+
+		connStrategy = ConnectionStrategyFactory
+					.createConnectionStrategy(props);
+
+	}
+	
 	/*************************  
 	 * LifeCycle Methods
 	 *************************/
@@ -89,11 +126,16 @@ public abstract class AbstractQuery implements TransactionAPI {
 	 * 
 	 */
 	public void before(TestCase testCase) {
-		this.testCase = testCase;
+		synchronized (this.timeoutLock) {
+			this.testCase = testCase;
+			this.timedOut = false;
+		}
 		
 		this.applicationException = null;
 		this.internalException = null;
 		
+		// waits after a connection error, or aborts after too many of them
+		getConnectionRecovery().beforeConnect();
 		try {
 			this.setConnection(this.connStrategy.getConnection());
 		} catch (FrameworkException e) {
@@ -130,6 +172,13 @@ public abstract class AbstractQuery implements TransactionAPI {
 		return this.connStrategy;
 	}
 	
+	public ConnectionRecovery getConnectionRecovery() {
+		if (this.connectionRecovery == null) {
+			this.connectionRecovery = new ConnectionRecovery(this.connStrategy.getEnvironment());
+		}
+		return this.connectionRecovery;
+	}
+	
 	/* ********** End Of LifeCycle Methods  ************ */
 
 	public void setConnection(Connection c) {
@@ -152,6 +201,37 @@ public abstract class AbstractQuery implements TransactionAPI {
 		return this.internalResultSet;
 	}
 	
+	/**
+	 * Set the options of the statements that are executed next.
+	 * @param options may be null, then the options are left to the driver
+	 */
+	public void setStatementOptions(StatementOptions options) {
+		this.statementOptions = (options == null ? new StatementOptions() : options);
+	}
+	
+	public StatementOptions getStatementOptions() {
+		return this.statementOptions;
+	}
+	
+	/**
+	 * @return the hits and misses of the prepared statements cached for the connections of this query
+	 */
+	public PreparedStatementCache.Statistics getStatementCacheStatistics() {
+		return this.statementCacheStatistics;
+	}
+	
+	/**
+	 * Close the prepared statements that are cached, call before the connection
+	 * strategy is shutdown.
+	 */
+	public void closeStatementCache() {
+		closeStatement();
+		for (PreparedStatementCache cache : this.statementCaches.values()) {
+			cache.close();
+		}
+		this.statementCaches.clear();
+	}
+	
 		
 	/**
 	 * @param sql 
@@ -172,6 +252,7 @@ public abstract class AbstractQuery implements TransactionAPI {
 		closeStatement();
 		long endTS = 0;
 		long beginTS = 0;
+		long elapsed = 0;
 
 		boolean result = false;
 
@@ -182,9 +263,9 @@ public abstract class AbstractQuery implements TransactionAPI {
 			if (params != null && params.length > 0) {
 				if (sql.toLowerCase().startsWith("exec ")) { //$NON-NLS-1$
 					sql = sql.substring(5);
-					this.internalStatement = createPrepareCallStatement(sql);
+					setStatement(prepareStatement(true, sql));
 				} else {
-					this.internalStatement = createPrepareStatement(sql);
+					setStatement(prepareStatement(false, sql));
 				}
 				
 				setParameters((PreparedStatement) this.internalStatement,
@@ -194,18 +275,22 @@ public abstract class AbstractQuery implements TransactionAPI {
 				
 				beginTS = System.currentTimeMillis();
 
+				long begin = System.nanoTime();
 				result = ((PreparedStatement) this.internalStatement).execute();
-								
+				elapsed = System.nanoTime() - begin;
+				
 				endTS = System.currentTimeMillis();
 				
 			} else {
-				this.internalStatement = createStatement();
+				setStatement(createStatement());
 				assignExecutionProperties(this.internalStatement);
 //				this.setPayload(this.internalStatement, payload);
 
 				beginTS = System.currentTimeMillis();
 
+				long begin = System.nanoTime();
 				result = this.internalStatement.execute(sql);
+				elapsed = System.nanoTime() - begin;
 				
 				endTS = System.currentTimeMillis();
 								
@@ -214,6 +299,7 @@ public abstract class AbstractQuery implements TransactionAPI {
 			FrameworkPlugin.LOGGER.debug("Has result set: " + result);
 			if (result) {
 				this.internalResultSet = this.internalStatement.getResultSet();
+				tuneFetchSize(this.internalResultSet);
 			} else {
 				
 				this.testCase.getTestResult().setRowCount(0);
@@ -226,20 +312,160 @@ public abstract class AbstractQuery implements TransactionAPI {
 			beginTS = -1;
 
 			this.internalException = e;
-			this.connStrategy.shutdown();
+			evictStatement();
+			if (e instanceof SQLTimeoutException) {
+				this.timedOut = true;
+			}
+			recover(e);
 			throw new QueryTestFailedException(e);
 		}
-		this.testCase.getTestResult().setBeginTS(beginTS);
-		this.testCase.getTestResult().setEndTS(endTS);
+		getConnectionRecovery().connectionSucceeded();
+		// when the query is run multiple times, the begin time is from the first run
+		TestResult testResult = this.testCase.getTestResult();
+		if (testResult.getLatencies().getCount() == 0) {
+			testResult.setBeginTS(beginTS);
+		}
+		testResult.setEndTS(endTS);
+		testResult.recordExecution(elapsed);
 		return result;
 	}
 	
+	/**
+	 * Reuse the statement prepared for the same sql on this connection, or prepare it
+	 * and keep it for the next time.
+	 */
+	private PreparedStatement prepareStatement(boolean call, String sql) throws SQLException {
+		PreparedStatementCache cache = getStatementCache();
+		Integer type = this.statementOptions.getResultSetType();
+		PreparedStatement stmt = (cache != null ? cache.get(call, type, sql) : null);
+		if (stmt != null) {
+			try {
+				stmt.clearParameters();
+				// the options of the previous query are not left on the statement
+				if (this.statementOptions.getFetchSize() == null) {
+					stmt.setFetchSize(0);
+				}
+				if (this.statementOptions.getMaxRows() == null) {
+					stmt.setMaxRows(0);
+				}
+				if (this.statementOptions.getQueryTimeout() == null) {
+					stmt.setQueryTimeout(0);
+				}
+			} catch (SQLException e) {
+				cache.remove(stmt);
+				throw e;
+			}
+			this.cachedStatement = true;
+			return stmt;
+		}
+		stmt = (PreparedStatement) (call ? createPrepareCallStatement(sql) : createPrepareStatement(sql));
+		if (cache != null) {
+			cache.put(call, type, sql, stmt);
+			this.cachedStatement = true;
+		}
+		return stmt;
+	}
+
+	private PreparedStatementCache getStatementCache() throws SQLException {
+		if (this.statementCacheSize < 0) {
+			this.statementCacheSize = PropertiesUtils.getIntProperty(this.connStrategy.getEnvironment(),
+					ConfigPropertyNames.STATEMENT_CACHE_SIZE, PreparedStatementCache.DEFAULT_SIZE);
+		}
+		if (this.statementCacheSize <= 0) {
+			return null;
+		}
+		PreparedStatementCache cache = this.statementCaches.get(this.internalConnection);
+		if (cache == null) {
+			// the statements of the connections that were closed can't be reused
+			for (Iterator<PreparedStatementCache> it = this.statementCaches.values().iterator(); it.hasNext();) {
+				PreparedStatementCache c = it.next();
+				if (c.getConnection().isClosed()) {
+					c.close();
+					it.remove();
+				}
+			}
+			cache = new PreparedStatementCache(this.internalConnection, this.statementCacheSize, this.statementCacheStatistics);
+			this.statementCaches.put(this.internalConnection, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * The statement that failed isn't reused.
+	 */
+	private void evictStatement() {
+		if (!this.cachedStatement) {
+			return;
+		}
+		this.cachedStatement = false;
+		PreparedStatementCache cache = this.statementCaches.get(this.internalConnection);
+		if (cache != null) {
+			cache.remove(this.internalStatement);
+		}
+	}
+
+	/**
+	 * Keep the connection after a statement or transaction error, the transaction is rolled
+	 * back after the latter, and only invalidate the connection after a connection error.
+	 */
+	private void recover(SQLException e) {
+		ConnectionRecovery recovery = getConnectionRecovery();
+		// the connection can still be used after the statement was cancelled
+		int level = (this.timedOut ? ConnectionRecovery.STATEMENT_ERROR : recovery.classify(e));
+		if (level == ConnectionRecovery.STATEMENT_ERROR && isClosed(this.internalConnection)) {
+			level = ConnectionRecovery.CONNECTION_ERROR;
+		}
+		if (level == ConnectionRecovery.TRANSACTION_ERROR) {
+			try {
+				rollbackFailedTransaction();
+			} catch (Exception re) {
+				debug("Unable to rollback the failed transaction: " + re.getMessage()); //$NON-NLS-1$
+				level = ConnectionRecovery.CONNECTION_ERROR;
+			}
+		}
+		if (level == ConnectionRecovery.CONNECTION_ERROR) {
+			debug("Connection error, reconnecting: " + e.getMessage()); //$NON-NLS-1$
+			recovery.connectionFailed();
+			this.connStrategy.invalidate();
+		} else {
+			recovery.connectionSucceeded();
+		}
+	}
+
+	private static boolean isClosed(Connection c) {
+		try {
+			return c == null || c.isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Rollback the transaction after a transaction error, such as a deadlock, so the
+	 * connection can be used for the next query.  Override when the transaction isn't
+	 * controlled by the connection.
+	 * @throws Exception when the transaction can't be rolled back, then the connection is reconnected
+	 */
+	protected void rollbackFailedTransaction() throws Exception {
+		if (!this.internalConnection.getAutoCommit()) {
+			this.internalConnection.rollback();
+		}
+	}
+
 	protected Statement createPrepareCallStatement(String sql)
 			throws SQLException {
+		Integer type = this.statementOptions.getResultSetType();
+		if (type != null) {
+			return this.internalConnection.prepareCall("{?=call " + sql + "}", type.intValue(), ResultSet.CONCUR_READ_ONLY); //$NON-NLS-1$ //$NON-NLS-2$
+		}
 		return this.internalConnection.prepareCall("{?=call " + sql + "}"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
 	protected Statement createPrepareStatement(String sql) throws SQLException {
+		Integer type = this.statementOptions.getResultSetType();
+		if (type != null) {
+			return this.internalConnection.prepareStatement(sql, type.intValue(), ResultSet.CONCUR_READ_ONLY);
+		}
 		return this.internalConnection.prepareStatement(sql);
 	}
 
@@ -250,8 +476,9 @@ public abstract class AbstractQuery implements TransactionAPI {
 
 //	@Override
 	protected Statement createStatement() throws SQLException {
+		Integer type = this.statementOptions.getResultSetType();
 		return this.internalConnection.createStatement(
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+				(type != null ? type.intValue() : ResultSet.TYPE_SCROLL_INSENSITIVE), ResultSet.CONCUR_READ_ONLY);
 	}
 
 	private void setParameters(PreparedStatement stmt, Object[] params)
@@ -286,7 +513,7 @@ public abstract class AbstractQuery implements TransactionAPI {
 				}
 			}
 
-			this.internalStatement = createStatement();
+			setStatement(createStatement());
 			assignExecutionProperties(this.internalStatement);
 
 			if (timeout != -1) {
@@ -296,10 +523,28 @@ public abstract class AbstractQuery implements TransactionAPI {
 				this.internalStatement.addBatch(sql[i]);
 			}
 
-			return this.internalStatement.executeBatch();
+			long beginTS = System.currentTimeMillis();
+			long begin = System.nanoTime();
+			int[] counts = this.internalStatement.executeBatch();
+			long elapsed = System.nanoTime() - begin;
+
+			getConnectionRecovery().connectionSucceeded();
+			if (this.testCase != null) {
+				TestResult testResult = this.testCase.getTestResult();
+				if (testResult.getLatencies().getCount() == 0) {
+					testResult.setBeginTS(beginTS);
+				}
+				testResult.setEndTS(System.currentTimeMillis());
+				testResult.recordExecution(elapsed);
+			}
+			return counts;
 
 		} catch (SQLException e) {
 			this.internalException = e;
+			if (e instanceof SQLTimeoutException) {
+				this.timedOut = true;
+			}
+			recover(e);
 //			if (!exceptionExpected()) {
 				throw new QueryTestFailedException(e);
 //			}
@@ -310,8 +555,8 @@ public abstract class AbstractQuery implements TransactionAPI {
 	}
 
 	/**
-	 * Override when you need to set an execution property on the statement
-	 * before execution.
+	 * Set the {@link #getStatementOptions() options} on the statement before execution.
+	 * Override when you need to set another execution property.
 	 * 
 	 * <p>
 	 * Example:
@@ -322,11 +567,43 @@ public abstract class AbstractQuery implements TransactionAPI {
 	 * </p>
 	 * 
 	 * @param stmt
+	 * @throws SQLException 
 	 * 
 	 * @since
 	 */
 
-	protected void assignExecutionProperties(Statement stmt) {
+	protected void assignExecutionProperties(Statement stmt) throws SQLException {
+		Integer fetchSize = this.statementOptions.getFetchSize();
+		if (fetchSize != null && fetchSize.intValue() >= 0) {
+			stmt.setFetchSize(fetchSize.intValue());
+		}
+		Integer maxRows = this.statementOptions.getMaxRows();
+		if (maxRows != null) {
+			stmt.setMaxRows(maxRows.intValue());
+		}
+		Integer timeout = this.statementOptions.getQueryTimeout();
+		if (timeout != null) {
+			stmt.setQueryTimeout(timeout.intValue());
+		}
+	}
+
+	/**
+	 * When the fetch size is {@link StatementOptions#AUTO_FETCH_SIZE}, the first rows are fetched
+	 * using the driver's fetch size, and the rest using the size estimated from the width of the columns.
+	 */
+	private void tuneFetchSize(ResultSet rs) {
+		Integer fetchSize = this.statementOptions.getFetchSize();
+		if (rs == null || fetchSize == null || fetchSize.intValue() != StatementOptions.AUTO_FETCH_SIZE) {
+			return;
+		}
+		try {
+			int size = StatementOptions.estimateFetchSize(rs.getMetaData());
+			rs.setFetchSize(size);
+			debug("Fetch size: " + size); //$NON-NLS-1$
+		} catch (SQLException e) {
+			// the driver's fetch size is used
+			debug("Unable to set the fetch size: " + e.getMessage()); //$NON-NLS-1$
+		}
 	}
 
 	public boolean exceptionOccurred() {
@@ -420,6 +697,38 @@ public abstract class AbstractQuery implements TransactionAPI {
 		}
 	}
 
+	/**
+	 * Cancel the statement of the test because it ran longer than its timeout.  Called
+	 * by another thread while the test runs, the test then fails with the cancelled statement's
+	 * exception and {@link #isTimedOut()} is true until the next test.  The next test doesn't
+	 * start, or swap the statement, until the statement has been cancelled.
+	 * @param test the test that timed out, nothing is done when it isn't the running one
+	 */
+	public void timeout(TestCase test) {
+		synchronized (this.timeoutLock) {
+			if (this.testCase != test) {
+				return;
+			}
+			this.timedOut = true;
+			Statement stmt = this.internalStatement;
+			if (stmt != null) {
+				try {
+					stmt.cancel();
+				} catch (SQLException e) {
+					debug("Unable to cancel the statement: " + e.getMessage()); //$NON-NLS-1$
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true when the running test was {@link #timeout(TestCase) cancelled}, or its
+	 * statement exceeded the query timeout
+	 */
+	public boolean isTimedOut() {
+		return this.timedOut;
+	}
+
 	public void cancelQuery() throws SQLException {
 		ArgCheck.isNotNull(this.internalConnection, "Unable to cancel query, result set is null");
 		ArgCheck.isTrue(!this.internalConnection.isClosed());
@@ -438,16 +747,30 @@ public abstract class AbstractQuery implements TransactionAPI {
 	}
 	
 
+	/**
+	 * Set the statement of the running test, once a {@link #timeout(TestCase) timeout} has
+	 * finished cancelling the previous one.
+	 */
+	private void setStatement(Statement stmt) {
+		synchronized (this.timeoutLock) {
+			this.internalStatement = stmt;
+		}
+	}
+
 	private void closeStatement() {
 		closeResultSet();
 
-		if (this.internalStatement != null) {
+		if (this.cachedStatement) {
+			// the statement is kept open for the next query
+			this.cachedStatement = false;
+			setStatement(null);
+		} else if (this.internalStatement != null) {
 			try {
 				this.internalStatement.close();
 			} catch (SQLException e) {
 				throw new TransactionRuntimeException(e);
 			} finally {
-				this.internalStatement = null;
+				setStatement(null);
 			}
 		}
 	}
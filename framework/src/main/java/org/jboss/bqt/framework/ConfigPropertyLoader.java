@@ -75,6 +75,20 @@ public class ConfigPropertyLoader {
 		return _instance;
 	}
 
+	/**
+	 * Create a new loader that is not shared.  This is used when scenarios are
+	 * run concurrently, so that each scenario has its own set of overrides and
+	 * calling {@link #reset()} doesn't affect the scenarios that are still running.
+	 * @return ConfigPropertyLoader
+	 */
+	public static ConfigPropertyLoader createInstance() {
+		ConfigPropertyLoader instance = new ConfigPropertyLoader();
+
+		instance.initialize();
+
+		return instance;
+	}
+
 	/**
 	 * Called after each test to reset any per test settings.
 	 */
@@ -51,6 +51,12 @@ public interface ConfigPropertyNames {
 	 */
 	public static final String CONNECTION_TYPE = "conn.type"; //$NON-NLS-1$
 
+	/**
+	 * The number of prepared statements kept for each connection, so the queries that
+	 * are run again reuse them (default is {@link PreparedStatementCache#DEFAULT_SIZE}, 0 doesn't keep them).
+	 */
+	public static final String STATEMENT_CACHE_SIZE = "conn.statement.cache.size"; //$NON-NLS-1$
+
 	/**
 	 * Connection_Types indicates the method on connection to the source that 
 	 * will be used.
@@ -66,6 +72,8 @@ public interface ConfigPropertyNames {
 		public static final String DATASOURCE_CONNECTION = "datasource"; //$NON-NLS-1$
 		// used for when embedded is running in an appserver
 		public static final String JNDI_CONNECTION = "jndi"; //$NON-NLS-1$
+		// used to create jdbc driver connections that are pooled and shared across scenarios
+		public static final String POOLED_CONNECTION = "pooled"; //$NON-NLS-1$
 
 	}
 
@@ -0,0 +1,207 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.framework;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PreparedStatementCache keeps the prepared statements of one connection, so a query
+ * that is run again, or another query with the same sql, reuses the statement instead of
+ * preparing it again.  The statements are keyed by their sql, whether it is a call, and the
+ * type of their result set.  When the cache is full, the least recently used statement is closed.
+ * <p>
+ * A cache is used by one thread at a time, like the connection it belongs to.
+ * </p>
+ */
+public class PreparedStatementCache {
+
+	/**
+	 * The number of statements that are kept for each connection, when
+	 * {@link ConfigPropertyNames#STATEMENT_CACHE_SIZE} isn't set.
+	 */
+	public static final int DEFAULT_SIZE = 32;
+
+	/**
+	 * Statistics count the statements that were found in the cache, those that
+	 * had to be prepared and those that were closed to make room.
+	 */
+	public static class Statistics {
+
+		private long hits;
+		private long misses;
+		private long evictions;
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * @return the fraction of the statements that were found in the cache, 0 when none was asked for
+		 */
+		public double getHitRate() {
+			long requests = hits + misses;
+			return (requests == 0 ? 0 : (double) hits / requests);
+		}
+
+		/**
+		 * Add the counts of other statistics, such as those of another client.
+		 * @param other
+		 */
+		public void add(Statistics other) {
+			this.hits += other.hits;
+			this.misses += other.misses;
+			this.evictions += other.evictions;
+		}
+
+		@Override
+		public String toString() {
+			return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					+ ", hit rate=" + Math.round(getHitRate() * 100) + "%"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	private final Connection connection;
+	private final Statistics statistics;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+
+	/**
+	 * @param connection the connection the statements are prepared on
+	 * @param size the most statements that are kept
+	 * @param statistics where the hits and misses are counted, may be shared by several caches
+	 */
+	public PreparedStatementCache(Connection connection, final int size, Statistics statistics) {
+		this.connection = connection;
+		this.statistics = statistics;
+		// access order, so the eldest entry is the least recently used
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() <= size) {
+					return false;
+				}
+				PreparedStatementCache.this.statistics.evictions++;
+				close(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * @param call true when the sql is prepared as a call
+	 * @param resultSetType the type of the result set, null when it is left to the driver
+	 * @param sql
+	 * @return the cached statement, or null when it has to be prepared and {@link #put put} in the cache
+	 */
+	public PreparedStatement get(boolean call, Integer resultSetType, String sql) {
+		PreparedStatement stmt = statements.get(key(call, resultSetType, sql));
+		if (stmt == null) {
+			statistics.misses++;
+		} else {
+			statistics.hits++;
+		}
+		return stmt;
+	}
+
+	public void put(boolean call, Integer resultSetType, String sql, PreparedStatement stmt) {
+		PreparedStatement previous = statements.put(key(call, resultSetType, sql), stmt);
+		if (previous != null && previous != stmt) {
+			close(previous);
+		}
+	}
+
+	/**
+	 * @param stmt
+	 * @return true when the statement is kept by this cache, and shouldn't be closed by its user
+	 */
+	public boolean contains(Statement stmt) {
+		for (PreparedStatement cached : statements.values()) {
+			if (cached == stmt) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Remove the statement from the cache and close it, such as when its execution failed.
+	 * @param stmt
+	 */
+	public void remove(Statement stmt) {
+		for (Iterator<PreparedStatement> it = statements.values().iterator(); it.hasNext();) {
+			if (it.next() == stmt) {
+				it.remove();
+				close(stmt);
+				return;
+			}
+		}
+	}
+
+	public int size() {
+		return statements.size();
+	}
+
+	/**
+	 * Close all the statements.
+	 */
+	public void close() {
+		List<PreparedStatement> closing = new ArrayList<PreparedStatement>(statements.values());
+		statements.clear();
+		for (PreparedStatement stmt : closing) {
+			close(stmt);
+		}
+	}
+
+	private static String key(boolean call, Integer resultSetType, String sql) {
+		return (call ? "call:" : "prepare:") + resultSetType + ":" + sql; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	private static void close(Statement stmt) {
+		try {
+			stmt.close();
+		} catch (SQLException e) {
+			FrameworkPlugin.LOGGER.debug("Unable to close the cached statement: " + e.getMessage()); //$NON-NLS-1$
+		}
+	}
+
+}
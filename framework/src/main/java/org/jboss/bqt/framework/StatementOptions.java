@@ -0,0 +1,224 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.framework;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+
+/**
+ * StatementOptions are the JDBC options of the statement that executes a query: the type of
+ * its result set, the fetch size, the maximum number of rows and the query timeout.  An option
+ * that isn't set is left to the driver, or to the {@link #merge(StatementOptions) defaults}
+ * the options are merged with.
+ * <p>
+ * The fetch size can be {@link #AUTO_FETCH_SIZE}, then it is tuned for each result from
+ * the width of its columns, so about {@link #AUTO_FETCH_BYTES} are fetched at a time.
+ * </p>
+ */
+public class StatementOptions {
+
+	/**
+	 * The fetch size that is tuned from the width of the columns of each result.
+	 */
+	public static final int AUTO_FETCH_SIZE = -1;
+
+	static final int AUTO_FETCH_BYTES = 1024 * 1024;
+	static final int MIN_FETCH_SIZE = 16;
+	static final int MAX_FETCH_SIZE = 8192;
+	// the width of a column without a display size, such as a large object
+	static final int MAX_COLUMN_WIDTH = 4096;
+
+	private Integer resultSetType;
+	private Integer fetchSize;
+	private Integer maxRows;
+	private Integer queryTimeout;
+
+	public Integer getResultSetType() {
+		return resultSetType;
+	}
+
+	/**
+	 * @param resultSetType one of the <code>ResultSet.TYPE_</code> constants, may be null
+	 */
+	public void setResultSetType(Integer resultSetType) {
+		this.resultSetType = resultSetType;
+	}
+
+	public Integer getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * @param fetchSize the number of rows, or {@link #AUTO_FETCH_SIZE}, may be null
+	 */
+	public void setFetchSize(Integer fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	public Integer getMaxRows() {
+		return maxRows;
+	}
+
+	/**
+	 * @param maxRows the most rows of a result, 0 is no limit, may be null
+	 */
+	public void setMaxRows(Integer maxRows) {
+		this.maxRows = maxRows;
+	}
+
+	public Integer getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	/**
+	 * @param queryTimeout the timeout in seconds, 0 is no timeout, may be null
+	 */
+	public void setQueryTimeout(Integer queryTimeout) {
+		this.queryTimeout = queryTimeout;
+	}
+
+	/**
+	 * @return true when none of the options are set
+	 */
+	public boolean isEmpty() {
+		return resultSetType == null && fetchSize == null && maxRows == null && queryTimeout == null;
+	}
+
+	/**
+	 * @param defaults may be null
+	 * @return new options with the options that are set, and the defaults of the others
+	 */
+	public StatementOptions merge(StatementOptions defaults) {
+		StatementOptions options = new StatementOptions();
+		options.resultSetType = (resultSetType != null || defaults == null ? resultSetType : defaults.resultSetType);
+		options.fetchSize = (fetchSize != null || defaults == null ? fetchSize : defaults.fetchSize);
+		options.maxRows = (maxRows != null || defaults == null ? maxRows : defaults.maxRows);
+		options.queryTimeout = (queryTimeout != null || defaults == null ? queryTimeout : defaults.queryTimeout);
+		return options;
+	}
+
+	/**
+	 * @param value <code>forward</code>, <code>scroll</code> (insensitive) or <code>scroll_sensitive</code>,
+	 * the case is ignored, may be null
+	 * @return the <code>ResultSet.TYPE_</code> constant, null when the value is null or empty
+	 */
+	public static Integer parseResultSetType(String value) {
+		if (value == null || value.trim().length() == 0) {
+			return null;
+		}
+		String type = value.trim().toLowerCase(Locale.ENGLISH);
+		if (type.equals("forward") || type.equals("forward_only")) { //$NON-NLS-1$ //$NON-NLS-2$
+			return Integer.valueOf(ResultSet.TYPE_FORWARD_ONLY);
+		} else if (type.equals("scroll") || type.equals("scroll_insensitive")) { //$NON-NLS-1$ //$NON-NLS-2$
+			return Integer.valueOf(ResultSet.TYPE_SCROLL_INSENSITIVE);
+		} else if (type.equals("scroll_sensitive")) { //$NON-NLS-1$
+			return Integer.valueOf(ResultSet.TYPE_SCROLL_SENSITIVE);
+		}
+		throw new FrameworkRuntimeException("Invalid result set type: " + value //$NON-NLS-1$
+				+ ", must be forward, scroll or scroll_sensitive"); //$NON-NLS-1$
+	}
+
+	/**
+	 * @param value a number of rows, or <code>auto</code>, may be null
+	 * @return the fetch size, null when the value is null or empty
+	 */
+	public static Integer parseFetchSize(String value) {
+		if (value != null && value.trim().equalsIgnoreCase("auto")) { //$NON-NLS-1$
+			return Integer.valueOf(AUTO_FETCH_SIZE);
+		}
+		return parseInt("fetch size", value); //$NON-NLS-1$
+	}
+
+	/**
+	 * @param name the name of the option, for the error message
+	 * @param value a number, may be null
+	 * @return the number, null when the value is null or empty
+	 */
+	public static Integer parseInt(String name, String value) {
+		if (value == null || value.trim().length() == 0) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			throw new FrameworkRuntimeException("Invalid " + name + ": " + value); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * Estimate the fetch size that reads about {@link #AUTO_FETCH_BYTES} at a time, from the
+	 * display size of the columns.
+	 * @param metadata
+	 * @return the fetch size
+	 * @throws SQLException
+	 */
+	static int estimateFetchSize(ResultSetMetaData metadata) throws SQLException {
+		long rowWidth = 0;
+		for (int col = 1; col <= metadata.getColumnCount(); col++) {
+			int width = metadata.getColumnDisplaySize(col);
+			if (width <= 0 || width > MAX_COLUMN_WIDTH) {
+				width = MAX_COLUMN_WIDTH;
+			}
+			// a value is also a reference and an object header
+			rowWidth += width + 16;
+		}
+		long fetchSize = AUTO_FETCH_BYTES / Math.max(rowWidth, 1);
+		return (int) Math.max(MIN_FETCH_SIZE, Math.min(MAX_FETCH_SIZE, fetchSize));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof StatementOptions)) {
+			return false;
+		}
+		StatementOptions other = (StatementOptions) obj;
+		return equals(resultSetType, other.resultSetType) && equals(fetchSize, other.fetchSize)
+				&& equals(maxRows, other.maxRows) && equals(queryTimeout, other.queryTimeout);
+	}
+
+	private static boolean equals(Integer a, Integer b) {
+		return (a == null ? b == null : a.equals(b));
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 0;
+		for (Integer option : new Integer[] { resultSetType, fetchSize, maxRows, queryTimeout }) {
+			hash = hash * 31 + (option == null ? 0 : option.hashCode());
+		}
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return "StatementOptions [resultSetType=" + resultSetType + ", fetchSize=" + fetchSize //$NON-NLS-1$ //$NON-NLS-2$
+				+ ", maxRows=" + maxRows + ", queryTimeout=" + queryTimeout + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+}
@@ -24,6 +24,8 @@ package org.jboss.bqt.framework;
 import java.io.Serializable;
 import java.util.Date;
 
+import org.jboss.bqt.framework.util.LatencyHistogram;
+
 /**
  * TestResult represents a single test and the state of it.
  * 
@@ -68,6 +70,12 @@ public class TestResult implements ConfigPropertyNames, Serializable {
 		 * TEST_PRERUN is used to indicate the test has not been executed yet.
 		 */
 		public static final int TEST_PRERUN = 16;
+		
+		/**
+		 * TEST_TIMEOUT - indicates the query was cancelled because it ran
+		 * longer than its timeout
+		 */
+		public static final int TEST_TIMEOUT = 32;
 	}
 
 	public interface RESULT_STATE_STRING {
@@ -91,6 +99,11 @@ public class TestResult implements ConfigPropertyNames, Serializable {
 		 * {@link RESULT_STATE#TEST_EXECUTION_TIME_EXCEEDED_EXCEPTION occurs}
 		 */
 		public static final String EXEEDED_EXECUTION_TIME = "fail-exceeded-time";
+		/**
+		 * The string value for when a
+		 * {@link RESULT_STATE#TEST_TIMEOUT occurs}
+		 */
+		public static final String TIMEOUT = "fail-timeout";
 
 		/**
 		 * The string value for when a status occurs that hasn't been defined
@@ -119,6 +132,8 @@ public class TestResult implements ConfigPropertyNames, Serializable {
 	private long rowCount;
 	private long updateCount;
 	
+	private LatencyHistogram latencies = new LatencyHistogram();
+	
 private String resultMode = null;
 	
 	public TestResult(final String querySetID, final String queryID) {
@@ -145,6 +160,8 @@ private String resultMode = null;
 			return RESULT_STATE_STRING.FAIL_EXPECTED_EXCEPTION;
 		case RESULT_STATE.TEST_EXECUTION_TIME_EXCEEDED_EXCEPTION:
 			return RESULT_STATE_STRING.EXEEDED_EXECUTION_TIME;
+		case RESULT_STATE.TEST_TIMEOUT:
+			return RESULT_STATE_STRING.TIMEOUT;
 		}
 		return RESULT_STATE_STRING.UNKNOWN;
 	}
@@ -185,6 +202,7 @@ private String resultMode = null;
 		switch (getStatus()) {
 		case RESULT_STATE.TEST_EXECUTION_TIME_EXCEEDED_EXCEPTION:
 		case RESULT_STATE.TEST_EXCEPTION:
+		case RESULT_STATE.TEST_TIMEOUT:
 			return true;
 		}
 		return false;
@@ -268,6 +286,22 @@ private String resultMode = null;
 		this.updateCount = updateCount;
 	}
 
+	/**
+	 * Record the time, in nanoseconds, one execution of the query took.  When
+	 * a query is run multiple times, each execution is recorded.
+	 * @param nanos
+	 */
+	public void recordExecution(long nanos) {
+		this.latencies.record(nanos);
+	}
+
+	/**
+	 * @return the latencies of all the executions of the query, in nanoseconds
+	 */
+	public LatencyHistogram getLatencies() {
+		return this.latencies;
+	}
+
 	public long getExecutionTime() {
 		Date starttest = new Date(getBeginTS());
 		Date endtest = new Date(getEndTS());
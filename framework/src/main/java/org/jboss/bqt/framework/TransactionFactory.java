@@ -58,28 +58,35 @@ public class TransactionFactory {
 	private TransactionFactory() {
 	}
 
+	/**
+	 * Create the transaction container.  The <code>props</code> are also used to
+	 * create the connection strategy, so they need to contain the complete
+	 * configuration for the scenario being run.
+	 * @param props 
+	 * @return TransactionAPI
+	 */
 	public static TransactionAPI create(Properties props)  {
 		TransactionAPI transacton = null;
 
 		String type = props.getProperty(TRANSACTION_TYPE);
 		if (type == null) {
-            transacton = new UseDefaultTransaction();
+            transacton = new UseDefaultTransaction(props);
             FrameworkPlugin.LOGGER.debug("====  Create UseDefaultTransaction-Option: not defined");
 		} else {
 
             FrameworkPlugin.LOGGER.debug("====  Create Transaction-Option: " + type);
 
             if (type.equalsIgnoreCase(TRANSACTION_TYPES.LOCAL_TRANSACTION)) {
-                transacton = new LocalTransaction();
+                transacton = new LocalTransaction(props);
     //		} else if (type.equalsIgnoreCase(TRANSACTION_TYPES.XATRANSACTION)) {
     //			transacton = new XATransaction();
             } else if (type.equalsIgnoreCase(TRANSACTION_TYPES.JNDI_TRANSACTION)) {
-                transacton = new JNDITransaction();
+                transacton = new JNDITransaction(props);
             } else if (type.equalsIgnoreCase(TRANSACTION_TYPES.ONWRAP_TRANSACTION)) {
-                transacton = new OnWrapTransaction();
+                transacton = new OnWrapTransaction(props);
 
             } else {
-            	 transacton = new UseDefaultTransaction();
+            	 transacton = new UseDefaultTransaction(props);
             }
         }
 		
@@ -0,0 +1,393 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.framework.connection;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jboss.bqt.framework.FrameworkPlugin;
+
+/**
+ * The ConnectionPool holds the jdbc connections for one url/user/password combination.  Pools are
+ * registered statically, so that all the {@link PooledDriverConnection strategies} (and therefore all
+ * the scenarios) that connect to the same source, with the same credentials, share the same connections.
+ * <p>
+ * Connections are validated when they're taken out of the pool, unless they were
+ * returned within the validation interval.
+ * </p>
+ */
+class ConnectionPool {
+
+	private static final Map<String, ConnectionPool> POOLS = new HashMap<String, ConnectionPool>();
+
+	private final String name;
+	private final PooledDriverConnection creator;
+
+	private final int minSize;
+	private final int maxSize;
+	private final long acquireTimeout;
+	private final long validationInterval;
+	private final String validationQuery;
+	private final int validationTimeout;
+
+	private final LinkedList<IdleConnection> idle = new LinkedList<IdleConnection>();
+	private int size = 0;
+	private boolean closed = false;
+
+	// acquisition metrics
+	private long acquisitions = 0;
+	private long waits = 0;
+	private long created = 0;
+	private long discarded = 0;
+	private long totalAcquireNanos = 0;
+	private long maxAcquireNanos = 0;
+
+	private ConnectionPool(String name, PooledDriverConnection creator) {
+		this.name = name;
+		this.creator = creator;
+
+		this.maxSize = Math.max(1, creator.getMaxSize());
+		this.minSize = Math.min(Math.max(0, creator.getMinSize()), this.maxSize);
+		this.acquireTimeout = creator.getAcquireTimeout();
+		this.validationInterval = creator.getValidationInterval();
+		this.validationQuery = creator.getValidationQuery();
+		this.validationTimeout = creator.getValidationTimeout();
+	}
+
+	/**
+	 * Returns the pool for the url, user and password of the passed in strategy.  When the pool
+	 * doesn't exist yet, it is created, using the pool settings of that strategy, and
+	 * warmed up to its minimum size.
+	 * @param strategy
+	 * @return ConnectionPool
+	 */
+	static ConnectionPool getPool(PooledDriverConnection strategy) {
+		String key = strategy.getDriver() + "|" + strategy.getUrl() + "|" + strategy.getUsername() + "|" + fingerprint(strategy.getPassword());  //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		ConnectionPool pool = null;
+		synchronized (POOLS) {
+			pool = POOLS.get(key);
+			if (pool != null) {
+				return pool;
+			}
+			pool = new ConnectionPool(strategy.getUrl() + " user:" + (strategy.getUsername() != null ? strategy.getUsername() : "NA"), strategy);  //$NON-NLS-1$ //$NON-NLS-2$
+			POOLS.put(key, pool);
+		}
+		pool.warmUp();
+		return pool;
+	}
+
+	/**
+	 * The connections of a pool are opened with the password of the strategy that created it, so a
+	 * strategy with another password gets its own pool.  Only a digest of the password is kept.
+	 * @param password may be null
+	 * @return the hex SHA-256 digest of the password
+	 */
+	static String fingerprint(String password) {
+		if (password == null) {
+			return ""; //$NON-NLS-1$
+		}
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(password.getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new FrameworkRuntimeException(e, "Unable to digest the connection password"); //$NON-NLS-1$
+		} catch (UnsupportedEncodingException e) {
+			throw new FrameworkRuntimeException(e, "Unable to digest the connection password"); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Closes all the pools, logging the statistics for each one.  Connections
+	 * that are still in use are closed when they're returned.
+	 */
+	static void shutdownAll() {
+		List<ConnectionPool> pools = null;
+		synchronized (POOLS) {
+			pools = new ArrayList<ConnectionPool>(POOLS.values());
+			POOLS.clear();
+		}
+		for (ConnectionPool pool : pools) {
+			pool.close();
+		}
+	}
+
+	/**
+	 * Opens connections until the pool has reached its minimum size.  A failure
+	 * is only logged, the error will be reported again when a connection is acquired.
+	 */
+	private void warmUp() {
+		while (true) {
+			synchronized (this) {
+				if (closed || size >= minSize) {
+					return;
+				}
+				size++;
+			}
+			Connection c = null;
+			try {
+				c = createConnection();
+			} catch (FrameworkException e) {
+				FrameworkPlugin.LOGGER.warn("Unable to warm up connection pool " + name + ": " + e.getMessage());
+				synchronized (this) {
+					size--;
+					notifyAll();
+				}
+				return;
+			}
+			synchronized (this) {
+				idle.add(new IdleConnection(c));
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Take a connection out of the pool, opening a new one when none is idle and the pool
+	 * hasn't reached its maximum size.  Otherwise, wait for a connection to be returned.
+	 * @return Connection
+	 * @throws FrameworkException when no connection could be obtained in time.
+	 */
+	Connection acquire() throws FrameworkException {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(acquireTimeout);
+		boolean waited = false;
+
+		while (true) {
+			IdleConnection ic = null;
+			synchronized (this) {
+				while (!closed && idle.isEmpty() && size >= maxSize) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						throw new FrameworkException(FrameworkException.ErrorCodes.DB_CONNECTION_EXCEPTION,
+								"Timed out after " + acquireTimeout + " ms waiting for a connection from pool " + name);
+					}
+					waited = true;
+					try {
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new FrameworkException(e, FrameworkException.ErrorCodes.BQT_INTERRUPTED,
+								"Interrupted while waiting for a connection from pool " + name);
+					}
+				}
+				if (closed) {
+					throw new FrameworkException(FrameworkException.ErrorCodes.DB_CONNECTION_EXCEPTION,
+							"Connection pool " + name + " has been shutdown");
+				}
+				if (!idle.isEmpty()) {
+					// most recently used, it's the least likely to have gone stale
+					ic = idle.removeLast();
+				} else {
+					size++;
+				}
+			}
+
+			if (ic == null) {
+				Connection c = null;
+				try {
+					c = createConnection();
+				} catch (FrameworkException e) {
+					synchronized (this) {
+						size--;
+						notifyAll();
+					}
+					throw e;
+				}
+				acquired(start, waited);
+				return c;
+			}
+
+			if (isValid(ic)) {
+				acquired(start, waited);
+				return ic.connection;
+			}
+			discard(ic.connection);
+		}
+	}
+
+	/**
+	 * Return the connection to the pool.  The connection is rolled back if it's still in
+	 * a transaction, and discarded if it's no longer usable.
+	 * @param c
+	 */
+	void release(Connection c) {
+		try {
+			if (c.isClosed()) {
+				discard(c);
+				return;
+			}
+			if (!c.getAutoCommit()) {
+				c.rollback();
+				c.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			discard(c);
+			return;
+		}
+
+		synchronized (this) {
+			if (!closed) {
+				idle.add(new IdleConnection(c));
+				notifyAll();
+				return;
+			}
+		}
+		discard(c);
+	}
+
+	/**
+	 * Close a connection that failed, it isn't returned to the pool.
+	 * @param c
+	 */
+	void invalidate(Connection c) {
+		FrameworkPlugin.LOGGER.debug("Discarding failed connection from pool " + name);
+		discard(c);
+	}
+
+	private void discard(Connection c) {
+		close(c);
+		synchronized (this) {
+			size--;
+			discarded++;
+			notifyAll();
+		}
+	}
+
+	private void close() {
+		List<IdleConnection> conns = null;
+		synchronized (this) {
+			closed = true;
+			conns = new ArrayList<IdleConnection>(idle);
+			size -= idle.size();
+			idle.clear();
+			notifyAll();
+		}
+		for (IdleConnection ic : conns) {
+			close(ic.connection);
+		}
+		FrameworkPlugin.LOGGER.info("Closed connection pool " + getStatistics());
+	}
+
+	private Connection createConnection() throws FrameworkException {
+		Connection c = creator.getJDBCConnection(creator.getDriver(), creator.getUrl(), creator.getUsername(), creator.getPassword());
+		synchronized (this) {
+			created++;
+		}
+		return c;
+	}
+
+	private boolean isValid(IdleConnection ic) {
+		if (validationInterval > 0 && System.currentTimeMillis() - ic.released < validationInterval) {
+			return true;
+		}
+		Connection c = ic.connection;
+		try {
+			if (c.isClosed()) {
+				return false;
+			}
+			if (validationQuery != null) {
+				Statement s = c.createStatement();
+				try {
+					s.execute(validationQuery);
+				} finally {
+					s.close();
+				}
+				return true;
+			}
+			try {
+				return c.isValid(validationTimeout);
+			} catch (AbstractMethodError e) {
+				// pre JDBC 4 driver, isClosed() has to do
+				return true;
+			} catch (SQLException e) {
+				// the driver may not support isValid()
+				return !c.isClosed();
+			}
+		} catch (SQLException e) {
+			FrameworkPlugin.LOGGER.debug("Discarding invalid connection from pool " + name + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	private synchronized void acquired(long start, boolean waited) {
+		long elapsed = System.nanoTime() - start;
+		acquisitions++;
+		if (waited) {
+			waits++;
+		}
+		totalAcquireNanos += elapsed;
+		if (elapsed > maxAcquireNanos) {
+			maxAcquireNanos = elapsed;
+		}
+	}
+
+	/**
+	 * @return the pool size and acquisition metrics, for logging
+	 */
+	synchronized String getStatistics() {
+		StringBuffer sb = new StringBuffer();
+		sb.append(name);
+		sb.append(" [size=").append(size);
+		sb.append(", idle=").append(idle.size());
+		sb.append(", created=").append(created);
+		sb.append(", discarded=").append(discarded);
+		sb.append(", acquisitions=").append(acquisitions);
+		sb.append(", waits=").append(waits);
+		sb.append(", avg acquire ms=").append(acquisitions == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalAcquireNanos / acquisitions));
+		sb.append(", max acquire ms=").append(TimeUnit.NANOSECONDS.toMillis(maxAcquireNanos));
+		sb.append("]");
+		return sb.toString();
+	}
+
+	private static void close(Connection c) {
+		try {
+			c.close();
+		} catch (Exception e) {
+			// ignore
+		}
+	}
+
+	private static class IdleConnection {
+		final Connection connection;
+		final long released = System.currentTimeMillis();
+
+		IdleConnection(Connection c) {
+			this.connection = c;
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.framework.connection;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jboss.bqt.core.util.PropertiesUtils;
+import org.jboss.bqt.framework.FrameworkPlugin;
+
+/**
+ * ConnectionRecovery classifies the SQLExceptions of the queries by their SQLState and vendor code,
+ * so the connection is only reconnected when it can't be used anymore:
+ * <ul>
+ * <li>{@link #STATEMENT_ERROR} - the query failed, such as a syntax error, the connection is kept</li>
+ * <li>{@link #TRANSACTION_ERROR} - the transaction failed, such as a deadlock (SQLState class 40), it is rolled back and the connection is kept</li>
+ * <li>{@link #CONNECTION_ERROR} - the connection failed (SQLState class 08), it is reconnected</li>
+ * </ul>
+ * The reconnects after consecutive connection errors wait longer each time, and after
+ * {@link #MAX_RECONNECTS} of them the scenario is aborted.
+ */
+public class ConnectionRecovery {
+
+	public static final int STATEMENT_ERROR = 0;
+	public static final int TRANSACTION_ERROR = 1;
+	public static final int CONNECTION_ERROR = 2;
+
+	/**
+	 * Comma separated SQLState prefixes and vendor codes that are connection errors, besides the
+	 * SQLState class 08, such as <code>57P01,17002</code>.
+	 */
+	public static final String CONNECTION_ERROR_CODES = "conn.error.connection.codes"; //$NON-NLS-1$
+	/**
+	 * Consecutive connection errors after which the scenario is aborted (default is 5).
+	 */
+	public static final String MAX_RECONNECTS = "conn.error.max.reconnects"; //$NON-NLS-1$
+	/**
+	 * Milliseconds to wait before the first reconnect, doubled for each consecutive connection error, up to a minute (default is 500).
+	 */
+	public static final String RECONNECT_BACKOFF = "conn.error.reconnect.backoff"; //$NON-NLS-1$
+
+	private static final long MAX_BACKOFF = 60000;
+
+	private final List<String> connectionStates = new ArrayList<String>();
+	private final Set<Integer> connectionCodes = new HashSet<Integer>();
+	private final int maxReconnects;
+	private final long backoff;
+
+	private int consecutiveFailures = 0;
+	private int reconnects = 0;
+
+	public ConnectionRecovery(Properties props) {
+		this.maxReconnects = PropertiesUtils.getIntProperty(props, MAX_RECONNECTS, 5);
+		this.backoff = PropertiesUtils.getIntProperty(props, RECONNECT_BACKOFF, 500);
+		String codes = props.getProperty(CONNECTION_ERROR_CODES);
+		if (codes != null) {
+			for (String code : codes.split(",")) { //$NON-NLS-1$
+				code = code.trim();
+				if (code.length() == 0) {
+					continue;
+				}
+				try {
+					connectionCodes.add(Integer.valueOf(code));
+				} catch (NumberFormatException e) {
+					connectionStates.add(code);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param e
+	 * @return the most severe error of the exception and its next exceptions
+	 */
+	public int classify(SQLException e) {
+		int level = STATEMENT_ERROR;
+		for (int i = 0; e != null && i < 10 && level != CONNECTION_ERROR; i++, e = e.getNextException()) {
+			level = Math.max(level, classifyOne(e));
+		}
+		return level;
+	}
+
+	private int classifyOne(SQLException e) {
+		if (e instanceof SQLNonTransientConnectionException || e instanceof SQLTransientConnectionException
+				|| e instanceof SQLRecoverableException || connectionCodes.contains(Integer.valueOf(e.getErrorCode()))) {
+			return CONNECTION_ERROR;
+		}
+		String state = e.getSQLState();
+		if (state != null) {
+			if (state.startsWith("08")) { //$NON-NLS-1$
+				return CONNECTION_ERROR;
+			}
+			for (String prefix : connectionStates) {
+				if (state.startsWith(prefix)) {
+					return CONNECTION_ERROR;
+				}
+			}
+			// transaction rollback, invalid transaction state and invalid transaction termination
+			if (state.startsWith("40") || state.startsWith("25") || state.startsWith("2D")) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				return TRANSACTION_ERROR;
+			}
+		}
+		if (e instanceof SQLTransactionRollbackException) {
+			return TRANSACTION_ERROR;
+		}
+		return STATEMENT_ERROR;
+	}
+
+	/**
+	 * The connection failed, and will be reconnected before the next query.
+	 */
+	public void connectionFailed() {
+		consecutiveFailures++;
+	}
+
+	/**
+	 * The connection was used, even when the query failed.
+	 */
+	public void connectionSucceeded() {
+		consecutiveFailures = 0;
+	}
+
+	/**
+	 * Called before the connection is taken for the next query.  After a connection error,
+	 * wait before it is reconnected.
+	 * @throws FrameworkRuntimeException with the {@link FrameworkException.ErrorCodes#DB_CONNECTION_EXCEPTION} code,
+	 * when there were more than {@link #MAX_RECONNECTS} consecutive connection errors
+	 */
+	public void beforeConnect() {
+		if (consecutiveFailures == 0) {
+			return;
+		}
+		if (consecutiveFailures > maxReconnects) {
+			throw new FrameworkRuntimeException(FrameworkException.ErrorCodes.DB_CONNECTION_EXCEPTION,
+					"Aborting after " + consecutiveFailures + " consecutive connection errors"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		long wait = getBackoff();
+		FrameworkPlugin.LOGGER.warn("Reconnecting after a connection error, in " + wait + " mils"); //$NON-NLS-1$ //$NON-NLS-2$
+		reconnects++;
+		if (wait > 0) {
+			try {
+				Thread.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return the milliseconds to wait before the next reconnect
+	 */
+	long getBackoff() {
+		long wait = backoff;
+		for (int i = 1; i < consecutiveFailures && wait < MAX_BACKOFF; i++) {
+			wait *= 2;
+		}
+		return Math.min(wait, MAX_BACKOFF);
+	}
+
+	/**
+	 * @return the number of times the connection was reconnected after a connection error
+	 */
+	public int getReconnects() {
+		return reconnects;
+	}
+
+}
@@ -65,6 +65,14 @@ public abstract class ConnectionStrategy {
 
 	}
 
+	/**
+	 * Discard the connection after a connection error, so the next {@link #getConnection()}
+	 * opens a new one.  By default the connection is {@link #shutdown() shutdown}.
+	 */
+	public void invalidate() {
+		shutdown();
+	}
+
 	private boolean autoCommit = true;
 
 	public boolean getAutocommit() {
@@ -39,8 +39,20 @@ public class ConnectionStrategyFactory {
 
 		ConfigPropertyLoader configLoader = ConfigPropertyLoader.getInstance();
 
+		return createConnectionStrategy(configLoader.getProperties());
+	}
+
+	/**
+	 * Create the connection strategy based on the passed in properties, instead
+	 * of the shared {@link ConfigPropertyLoader}.  This is used when each scenario
+	 * has its own configuration, so that concurrent scenarios don't see each others
+	 * settings.
+	 * @param props 
+	 * @return ConnectionStrategy
+	 */
+	public static ConnectionStrategy createConnectionStrategy(Properties props) {
+
 		ConnectionStrategy strategy = null;
-		Properties props = configLoader.getProperties();
 
 		String type = props.getProperty(ConfigPropertyNames.CONNECTION_TYPE,
 				ConfigPropertyNames.CONNECTION_TYPES.DRIVER_CONNECTION);
@@ -63,6 +75,10 @@ public class ConnectionStrategyFactory {
 					.equalsIgnoreCase(ConfigPropertyNames.CONNECTION_TYPES.JNDI_CONNECTION)) {
 				strategy = new JEEConnection(props);
 				FrameworkPlugin.LOGGER.debug("Created JEE Strategy");
+			} else if (type
+					.equalsIgnoreCase(ConfigPropertyNames.CONNECTION_TYPES.POOLED_CONNECTION)) {
+				strategy = new PooledDriverConnection(props);
+				FrameworkPlugin.LOGGER.debug("Created Pooled Driver Strategy");
 			}
 
 			if (strategy == null) {
@@ -83,4 +99,12 @@ public class ConnectionStrategyFactory {
 
 	}
 
+	/**
+	 * Close the connection pools that are shared by the {@link PooledDriverConnection pooled}
+	 * strategies.  Called when the test run is finished.
+	 */
+	public static void shutdownPools() {
+		ConnectionPool.shutdownAll();
+	}
+
 }
@@ -97,6 +97,22 @@ public class DriverConnection extends ConnectionStrategy {
 
 	}
 
+	protected String getUrl() {
+		return this.url;
+	}
+
+	protected String getDriver() {
+		return this.driver;
+	}
+
+	protected String getUsername() {
+		return this.username;
+	}
+
+	protected String getPassword() {
+		return this.pwd;
+	}
+
 	@Override
 	public synchronized Connection getConnection()
 			throws FrameworkException {
@@ -116,7 +132,7 @@ public class DriverConnection extends ConnectionStrategy {
 		return this.connection;
 	}
 
-	private Connection getJDBCConnection(String driver, String url,
+	protected Connection getJDBCConnection(String driver, String url,
 			String user, String passwd) throws FrameworkException {
 
 		FrameworkPlugin.LOGGER.info("Creating Driver Connection: \"" + url + "\"" + " user:password - " + (user != null ? user : "NA") + ":" + (passwd != null ? passwd : "NA")); //$NON-NLS-1$ //$NON-NLS-2$
@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.framework.connection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jboss.bqt.core.exception.QueryTestFailedException;
+
+/**
+ * The PooledDriverConnection strategy uses the same properties as the {@link DriverConnection}, but
+ * takes its connection from a {@link ConnectionPool} that is shared by all the strategies
+ * that connect to the same url with the same user.  Calling {@link #shutdown()} returns
+ * the connection to the pool, instead of closing it.
+ */
+public class PooledDriverConnection extends DriverConnection {
+
+	/**
+	 * Number of connections opened when the pool is created (default is 1).
+	 */
+	public static final String POOL_MIN_SIZE = "conn.pool.min"; //$NON-NLS-1$
+	/**
+	 * Maximum number of connections in the pool (default is 10).
+	 */
+	public static final String POOL_MAX_SIZE = "conn.pool.max"; //$NON-NLS-1$
+	/**
+	 * Milliseconds to wait for a connection when the pool is exhausted (default is 30000).
+	 */
+	public static final String POOL_ACQUIRE_TIMEOUT = "conn.pool.acquire.timeout"; //$NON-NLS-1$
+	/**
+	 * Query used to validate a connection, when not set <code>Connection.isValid()</code> is used.
+	 */
+	public static final String POOL_VALIDATION_QUERY = "conn.pool.validation.query"; //$NON-NLS-1$
+	/**
+	 * Milliseconds after it was returned, during which a connection isn't validated again (default is 0, always validate).
+	 */
+	public static final String POOL_VALIDATION_INTERVAL = "conn.pool.validation.interval"; //$NON-NLS-1$
+	/**
+	 * Seconds passed to <code>Connection.isValid()</code> (default is 5).
+	 */
+	public static final String POOL_VALIDATION_TIMEOUT = "conn.pool.validation.timeout"; //$NON-NLS-1$
+
+	private ConnectionPool pool;
+
+	private Connection connection;
+
+	public PooledDriverConnection(Properties props) {
+		super(props);
+	}
+
+	@Override
+	void configure() throws QueryTestFailedException {
+		this.pool = ConnectionPool.getPool(this);
+	}
+
+	@Override
+	public synchronized Connection getConnection() throws FrameworkException {
+		if (this.connection != null) {
+			try {
+				if (!this.connection.isClosed()) {
+					return this.connection;
+				}
+			} catch (SQLException e) {
+
+			}
+			this.pool.release(this.connection);
+			this.connection = null;
+		}
+
+		this.connection = this.pool.acquire();
+		return this.connection;
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		if (this.connection != null) {
+			this.pool.release(this.connection);
+		}
+
+		this.connection = null;
+	}
+
+	/**
+	 * The connection is closed and removed from the pool, instead of being returned to it.
+	 */
+	@Override
+	public synchronized void invalidate() {
+		if (this.connection != null) {
+			this.pool.invalidate(this.connection);
+		}
+
+		this.connection = null;
+	}
+
+	int getMinSize() {
+		return getIntProperty(POOL_MIN_SIZE, 1);
+	}
+
+	int getMaxSize() {
+		return getIntProperty(POOL_MAX_SIZE, 10);
+	}
+
+	long getAcquireTimeout() {
+		return getIntProperty(POOL_ACQUIRE_TIMEOUT, 30000);
+	}
+
+	long getValidationInterval() {
+		return getIntProperty(POOL_VALIDATION_INTERVAL, 0);
+	}
+
+	int getValidationTimeout() {
+		return getIntProperty(POOL_VALIDATION_TIMEOUT, 5);
+	}
+
+	String getValidationQuery() {
+		String query = this.getEnvironment().getProperty(POOL_VALIDATION_QUERY);
+		return (query != null && query.trim().length() > 0 ? query : null);
+	}
+
+	private int getIntProperty(String name, int defaultValue) {
+		String value = this.getEnvironment().getProperty(name);
+		if (value == null || value.trim().length() == 0) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new FrameworkRuntimeException("Property " + name
+					+ " is not a valid number: " + value);
+		}
+	}
+}
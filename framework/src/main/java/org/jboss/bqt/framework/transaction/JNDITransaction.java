@@ -21,6 +21,8 @@
  */
 package org.jboss.bqt.framework.transaction;
 
+import java.util.Properties;
+
 import javax.naming.InitialContext;
 import javax.transaction.UserTransaction;
 
@@ -36,6 +38,10 @@ public class JNDITransaction extends AbstractQuery  {
 	public JNDITransaction() {
 		super();
 	}
+
+	public JNDITransaction(Properties props) {
+		super(props);
+	}
 	
 	
 	@Override
@@ -84,6 +90,16 @@ public class JNDITransaction extends AbstractQuery  {
 	}
 
 
+	/**
+	 * The user transaction is rolled back in {@link #after()}.
+	 */
+	@Override
+	protected void rollbackFailedTransaction() throws Exception {
+		if (this.userTxn != null) {
+			this.userTxn.setRollbackOnly();
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 *
@@ -22,6 +22,8 @@
 package org.jboss.bqt.framework.transaction;
 
 
+import java.util.Properties;
+
 import org.jboss.bqt.core.exception.TransactionRuntimeException;
 import org.jboss.bqt.framework.AbstractQuery;
 import org.jboss.bqt.framework.TestCase;
@@ -35,6 +37,10 @@ public class LocalTransaction extends AbstractQuery {
 		super();
 	}
 
+	public LocalTransaction(Properties props) {
+		super(props);
+	}
+
 	@Override
 	public void before(TestCase testCase) {
 		super.before(testCase);
@@ -21,6 +21,8 @@
  */
 package org.jboss.bqt.framework.transaction;
 
+import java.util.Properties;
+
 import org.jboss.bqt.core.exception.TransactionRuntimeException;
 import org.jboss.bqt.framework.AbstractQuery;
 import org.jboss.bqt.framework.TestCase;
@@ -33,6 +35,10 @@ public class OnWrapTransaction extends AbstractQuery {
 		super();
 	}
 
+	public OnWrapTransaction(Properties props) {
+		super(props);
+	}
+
 	@Override
 	public void before(TestCase testCase) { 
 		super.before(testCase);
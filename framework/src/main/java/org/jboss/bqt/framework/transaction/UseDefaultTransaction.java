@@ -21,6 +21,8 @@
  */
 package org.jboss.bqt.framework.transaction;
 
+import java.util.Properties;
+
 import org.jboss.bqt.framework.AbstractQuery;
 
 /**
@@ -31,4 +33,8 @@ public class UseDefaultTransaction extends AbstractQuery {
 	public UseDefaultTransaction() {
 		super();
 	}
+
+	public UseDefaultTransaction(Properties props) {
+		super(props);
+	}
 }
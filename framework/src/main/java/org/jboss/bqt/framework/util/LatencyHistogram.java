@@ -0,0 +1,237 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.framework.util;
+
+import java.io.Serializable;
+
+/**
+ * LatencyHistogram records latencies, in nanoseconds, using a fixed amount of memory.
+ * <p>
+ * Values below 64 are counted exactly, larger values are counted in buckets whose width doubles
+ * with every power of two, with 32 buckets per power of two, which keeps the error
+ * of a reported percentile within about 3%.  Values above {@link #MAX_TRACKABLE_VALUE} (over an hour)
+ * are counted in the last bucket.  The count, minimum, maximum and mean are exact.
+ * </p>
+ * <p>
+ * The bucket counts are only allocated when a second value is recorded, so a query that
+ * is run once doesn't pay for the histogram.
+ * </p>
+ */
+public class LatencyHistogram implements Serializable {
+
+	private static final long serialVersionUID = -2427453961637932147L;
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_VALUES = SUB_BUCKETS * 2;
+	private static final int MAX_SHIFT = 36;
+
+	/**
+	 * The largest value that is counted in its own bucket, larger values are counted in the last bucket.
+	 */
+	public static final long MAX_TRACKABLE_VALUE = (((long) LINEAR_VALUES) << MAX_SHIFT) - 1;
+
+	private static final int BUCKETS = LINEAR_VALUES + MAX_SHIFT * SUB_BUCKETS;
+
+	private int[] counts;
+	private long count = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = 0;
+	private long total = 0;
+
+	/**
+	 * Record one latency.
+	 * @param nanos the latency, negative values are counted as 0
+	 */
+	public synchronized void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+
+		if (count == 1 && counts == null) {
+			counts = new int[BUCKETS];
+			// the first value was only kept as min/max
+			counts[bucketIndex(min)]++;
+		}
+		if (counts != null) {
+			counts[bucketIndex(nanos)]++;
+		}
+
+		count++;
+		total += nanos;
+		if (nanos < min) min = nanos;
+		if (nanos > max) max = nanos;
+	}
+
+	/**
+	 * Add the values recorded by <code>other</code> to this histogram.
+	 * @param other
+	 */
+	public void add(LatencyHistogram other) {
+		long oCount, oMin, oMax, oTotal;
+		int[] oCounts = null;
+		synchronized (other) {
+			if (other.count == 0) return;
+			oCount = other.count;
+			oMin = other.min;
+			oMax = other.max;
+			oTotal = other.total;
+			if (other.counts != null) {
+				oCounts = other.counts.clone();
+			}
+		}
+
+		synchronized (this) {
+			if (oCount == 1) {
+				// record handles allocating the buckets
+				record(oMin);
+				return;
+			}
+			if (counts == null) {
+				counts = new int[BUCKETS];
+				if (count == 1) {
+					counts[bucketIndex(min)]++;
+				}
+			}
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] += oCounts[i];
+			}
+			count += oCount;
+			total += oTotal;
+			if (oMin < min) min = oMin;
+			if (oMax > max) max = oMax;
+		}
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the smallest recorded value, 0 when nothing was recorded
+	 */
+	public synchronized long getMin() {
+		return (count == 0 ? 0 : min);
+	}
+
+	public synchronized long getMax() {
+		return max;
+	}
+
+	public synchronized long getTotal() {
+		return total;
+	}
+
+	public synchronized double getMean() {
+		return (count == 0 ? 0 : (double) total / count);
+	}
+
+	/**
+	 * Return the value that <code>percentile</code> percent of the recorded values don't exceed.
+	 * The value is the highest value of the bucket it falls in, but never more than
+	 * the {@link #getMax() maximum} or less than the {@link #getMin() minimum}.
+	 * @param percentile between 0 and 100
+	 * @return long, 0 when nothing was recorded
+	 */
+	public synchronized long getValueAtPercentile(double percentile) {
+		if (count == 0) return 0;
+		if (counts == null) return min;
+
+		long rank = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * count);
+		rank = Math.max(1, rank);
+
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.max(min, Math.min(max, highestValue(i)));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return the recorded values as text, without tabs or line breaks, which {@link #parse(String)} reads back
+	 */
+	public synchronized String format() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(count).append(',').append(min).append(',').append(max).append(',').append(total);
+		if (counts != null) {
+			for (int i = 0; i < BUCKETS; i++) {
+				if (counts[i] != 0) {
+					sb.append(',').append(i).append(':').append(counts[i]);
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param text written by {@link #format()}
+	 * @return the histogram with the same values
+	 * @throws NumberFormatException when the text isn't a formatted histogram
+	 */
+	public static LatencyHistogram parse(String text) {
+		String[] fields = text.split(","); //$NON-NLS-1$
+		LatencyHistogram h = new LatencyHistogram();
+		if (fields.length < 4 || (fields.length == 4) != (Long.parseLong(fields[0]) <= 1)) {
+			throw new NumberFormatException("Not a latency histogram: " + text); //$NON-NLS-1$
+		}
+		h.count = Long.parseLong(fields[0]);
+		h.min = Long.parseLong(fields[1]);
+		h.max = Long.parseLong(fields[2]);
+		h.total = Long.parseLong(fields[3]);
+		if (fields.length > 4) {
+			h.counts = new int[BUCKETS];
+			for (int i = 4; i < fields.length; i++) {
+				int sep = fields[i].indexOf(':');
+				int index = Integer.parseInt(fields[i].substring(0, Math.max(sep, 0)));
+				if (index < 0 || index >= BUCKETS) {
+					throw new NumberFormatException("Not a latency bucket: " + fields[i]); //$NON-NLS-1$
+				}
+				h.counts[index] = Integer.parseInt(fields[i].substring(sep + 1));
+			}
+		}
+		return h;
+	}
+
+	static int bucketIndex(long value) {
+		if (value < LINEAR_VALUES) {
+			return (int) value;
+		}
+		if (value > MAX_TRACKABLE_VALUE) {
+			return BUCKETS - 1;
+		}
+		// shift so that the value falls in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift);
+		return LINEAR_VALUES + (shift - 1) * SUB_BUCKETS + (sub - SUB_BUCKETS);
+	}
+
+	static long highestValue(int index) {
+		if (index < LINEAR_VALUES) {
+			return index;
+		}
+		int shift = (index - LINEAR_VALUES) / SUB_BUCKETS + 1;
+		long sub = (index - LINEAR_VALUES) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+
+}
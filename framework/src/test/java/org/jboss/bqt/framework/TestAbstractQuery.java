@@ -0,0 +1,192 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.framework;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.framework.connection.DriverConnection;
+import org.junit.Test;
+
+/**
+ * Tests that a {@link AbstractQuery#timeout(TestCase) timeout} only cancels the statement of the test that timed out
+ */
+@SuppressWarnings("nls")
+public class TestAbstractQuery {
+
+	/**
+	 * The statements created on a proxied connection, the cancel of the first one waits until it's released.
+	 */
+	static class FakeStatements implements InvocationHandler {
+		final List<Integer> cancels = new ArrayList<Integer>();
+		final CountDownLatch cancelling = new CountDownLatch(1);
+		final CountDownLatch released = new CountDownLatch(1);
+		Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { Connection.class }, this);
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("createStatement")) {
+				synchronized (cancels) {
+					cancels.add(0);
+					return statement(cancels.size() - 1);
+				}
+			}
+			return defaultValue(method);
+		}
+
+		int getCreated() {
+			synchronized (cancels) {
+				return cancels.size();
+			}
+		}
+
+		int getCancels(int i) {
+			synchronized (cancels) {
+				return cancels.get(i);
+			}
+		}
+
+		private Statement statement(final int index) {
+			return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class[] { Statement.class }, new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							if (method.getName().equals("cancel")) {
+								synchronized (cancels) {
+									cancels.set(index, cancels.get(index) + 1);
+								}
+								if (index == 0) {
+									cancelling.countDown();
+									released.await(5, TimeUnit.SECONDS);
+								}
+								return null;
+							}
+							return defaultValue(method);
+						}
+					});
+		}
+
+		private static Object defaultValue(Method method) {
+			if (method.getReturnType() == int.class) {
+				return 0;
+			} else if (method.getReturnType() == boolean.class) {
+				return false;
+			}
+			return null;
+		}
+	}
+
+	private static AbstractQuery query(final FakeStatements statements) {
+		Properties props = new Properties();
+		props.setProperty(DriverConnection.DS_URL, "jdbc:test:query");
+		props.setProperty(DriverConnection.DS_DRIVER, Object.class.getName());
+		final DriverConnection strategy = new DriverConnection(props) {
+			@Override
+			protected Connection getJDBCConnection(String driver, String url,
+					String user, String passwd) throws FrameworkException {
+				return statements.connection;
+			}
+		};
+		return new AbstractQuery(props) {
+			{
+				connStrategy = strategy;
+			}
+		};
+	}
+
+	private static TestCase testCase(String queryID) {
+		TestCase testcase = new TestCase(null);
+		testcase.setTestResult(new TestResult("queryset", queryID));
+		return testcase;
+	}
+
+    /**
+     * The next test doesn't start until the timeout of the previous one has finished
+     * cancelling its statement, and a timeout that comes later is ignored.
+     */
+    @Test(timeout = 10000)
+    public void testLateTimeout() throws Exception {
+    	final FakeStatements statements = new FakeStatements();
+    	final AbstractQuery query = query(statements);
+    	final TestCase first = testCase("Query1");
+    	final TestCase second = testCase("Query2");
+
+    	query.before(first);
+    	query.execute("select 1");
+
+    	Thread watchdog = new Thread() {
+    		@Override
+    		public void run() {
+    			query.timeout(first);
+    		}
+    	};
+    	watchdog.start();
+    	assertTrue(statements.cancelling.await(5, TimeUnit.SECONDS));
+
+    	final Throwable[] error = new Throwable[1];
+    	Thread next = new Thread() {
+    		@Override
+    		public void run() {
+    			try {
+    				query.cleanup();
+    				query.before(second);
+    				query.execute("select 2");
+    			} catch (Throwable e) {
+    				error[0] = e;
+    			}
+    		}
+    	};
+    	next.start();
+    	while (next.getState() != Thread.State.BLOCKED) {
+    		assertTrue("the next test started while the statement was cancelled", next.isAlive());
+    		Thread.sleep(10);
+    	}
+    	assertEquals(1, statements.getCreated());
+
+    	statements.released.countDown();
+    	watchdog.join();
+    	next.join();
+    	assertNull(error[0]);
+    	assertEquals(2, statements.getCreated());
+    	assertEquals(1, statements.getCancels(0));
+    	assertFalse(query.isTimedOut());
+
+    	query.timeout(first);
+    	assertEquals(0, statements.getCancels(1));
+    	assertFalse(query.isTimedOut());
+
+    	query.timeout(second);
+    	assertEquals(1, statements.getCancels(1));
+    	assertTrue(query.isTimedOut());
+    }
+
+}
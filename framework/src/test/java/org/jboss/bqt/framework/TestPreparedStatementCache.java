@@ -0,0 +1,123 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.framework;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the reuse, eviction and statistics of the {@link PreparedStatementCache}
+ */
+@SuppressWarnings("nls")
+public class TestPreparedStatementCache {
+
+	private List<PreparedStatement> closed = new ArrayList<PreparedStatement>();
+
+    @Test
+    public void testReuse() throws Exception {
+    	PreparedStatementCache.Statistics stats = new PreparedStatementCache.Statistics();
+    	PreparedStatementCache cache = new PreparedStatementCache(null, 4, stats);
+    	assertNull(cache.get(false, null, "select ?"));
+    	PreparedStatement stmt = statement();
+    	cache.put(false, null, "select ?", stmt);
+    	assertSame(stmt, cache.get(false, null, "select ?"));
+    	assertSame(stmt, cache.get(false, null, "select ?"));
+    	assertTrue(cache.contains(stmt));
+
+    	// the calls and the result set types are kept apart
+    	assertNull(cache.get(true, null, "select ?"));
+    	assertNull(cache.get(false, Integer.valueOf(ResultSet.TYPE_FORWARD_ONLY), "select ?"));
+
+    	assertEquals(2, stats.getHits());
+    	assertEquals(3, stats.getMisses());
+    	assertEquals(0.4, stats.getHitRate(), 0.0001);
+    	assertTrue(closed.isEmpty());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+    	PreparedStatementCache.Statistics stats = new PreparedStatementCache.Statistics();
+    	PreparedStatementCache cache = new PreparedStatementCache(null, 2, stats);
+    	PreparedStatement first = statement();
+    	PreparedStatement second = statement();
+    	PreparedStatement third = statement();
+    	cache.put(false, null, "q1", first);
+    	cache.put(false, null, "q2", second);
+    	// q1 is used again, so q2 is the least recently used
+    	assertSame(first, cache.get(false, null, "q1"));
+    	cache.put(false, null, "q3", third);
+
+    	assertEquals(2, cache.size());
+    	assertEquals(1, stats.getEvictions());
+    	assertEquals(1, closed.size());
+    	assertSame(second, closed.get(0));
+    	assertFalse(cache.contains(second));
+    	assertNull(cache.get(false, null, "q2"));
+
+    	// a statement that failed is closed and not reused
+    	cache.remove(first);
+    	assertSame(first, closed.get(1));
+    	assertNull(cache.get(false, null, "q1"));
+
+    	cache.close();
+    	assertEquals(0, cache.size());
+    	assertSame(third, closed.get(2));
+    }
+
+    @Test
+    public void testAddStatistics() throws Exception {
+    	PreparedStatementCache.Statistics total = new PreparedStatementCache.Statistics();
+    	assertEquals(0, total.getHitRate(), 0);
+    	PreparedStatementCache.Statistics client = new PreparedStatementCache.Statistics();
+    	PreparedStatementCache cache = new PreparedStatementCache(null, 2, client);
+    	cache.put(false, null, "q1", statement());
+    	cache.get(false, null, "q1");
+    	total.add(client);
+    	total.add(client);
+    	assertEquals(2, total.getHits());
+    	assertEquals(1.0, total.getHitRate(), 0);
+    	assertEquals("hits=2, misses=0, evictions=0, hit rate=100%", total.toString());
+    }
+
+    private PreparedStatement statement() {
+    	return (PreparedStatement) Proxy.newProxyInstance(TestPreparedStatementCache.class.getClassLoader(),
+    			new Class<?>[] {PreparedStatement.class}, new InvocationHandler() {
+    		public Object invoke(Object proxy, Method method, Object[] args) {
+    			if (method.getName().equals("close")) {
+    				closed.add((PreparedStatement) proxy);
+    				return null;
+    			}
+    			throw new UnsupportedOperationException(method.getName());
+    		}
+    	});
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.framework;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.junit.Test;
+
+/**
+ * Tests the parsing, merging and fetch size estimate of the {@link StatementOptions}
+ */
+@SuppressWarnings("nls")
+public class TestStatementOptions {
+
+    @Test
+    public void testParse() throws Exception {
+    	assertEquals(Integer.valueOf(ResultSet.TYPE_FORWARD_ONLY), StatementOptions.parseResultSetType("Forward"));
+    	assertEquals(Integer.valueOf(ResultSet.TYPE_SCROLL_INSENSITIVE), StatementOptions.parseResultSetType("scroll"));
+    	assertEquals(Integer.valueOf(ResultSet.TYPE_SCROLL_SENSITIVE), StatementOptions.parseResultSetType(" scroll_sensitive "));
+    	assertNull(StatementOptions.parseResultSetType(""));
+    	assertEquals(Integer.valueOf(StatementOptions.AUTO_FETCH_SIZE), StatementOptions.parseFetchSize("AUTO"));
+    	assertEquals(Integer.valueOf(500), StatementOptions.parseFetchSize("500"));
+    	assertNull(StatementOptions.parseInt("maxRows", null));
+    	try {
+    		StatementOptions.parseResultSetType("backward");
+    		fail("the type isn't valid");
+    	} catch (FrameworkRuntimeException e) {
+    	}
+    	try {
+    		StatementOptions.parseInt("maxRows", "ten");
+    		fail("the number isn't valid");
+    	} catch (FrameworkRuntimeException e) {
+    	}
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+    	StatementOptions defaults = new StatementOptions();
+    	defaults.setResultSetType(Integer.valueOf(ResultSet.TYPE_FORWARD_ONLY));
+    	defaults.setFetchSize(Integer.valueOf(StatementOptions.AUTO_FETCH_SIZE));
+    	defaults.setQueryTimeout(Integer.valueOf(30));
+
+    	StatementOptions options = new StatementOptions();
+    	assertTrue(options.isEmpty());
+    	options.setResultSetType(Integer.valueOf(ResultSet.TYPE_SCROLL_INSENSITIVE));
+    	options.setMaxRows(Integer.valueOf(10));
+
+    	StatementOptions merged = options.merge(defaults);
+    	assertEquals(Integer.valueOf(ResultSet.TYPE_SCROLL_INSENSITIVE), merged.getResultSetType());
+    	assertEquals(Integer.valueOf(StatementOptions.AUTO_FETCH_SIZE), merged.getFetchSize());
+    	assertEquals(Integer.valueOf(10), merged.getMaxRows());
+    	assertEquals(Integer.valueOf(30), merged.getQueryTimeout());
+    	assertNull(options.getFetchSize());
+    	assertNull(options.merge(null).getFetchSize());
+
+    	// the options of statements that can be sent in one batch
+    	assertEquals(merged, options.merge(defaults));
+    	assertEquals(merged.hashCode(), options.merge(defaults).hashCode());
+    	assertFalse(merged.equals(defaults));
+    	assertEquals(options, options.merge(null));
+    }
+
+    @Test
+    public void testEstimateFetchSize() throws Exception {
+    	// narrow rows are fetched many at a time
+    	assertEquals(StatementOptions.MAX_FETCH_SIZE, StatementOptions.estimateFetchSize(metadata(4, 10)));
+    	int size = StatementOptions.estimateFetchSize(metadata(10, 100));
+    	assertEquals(StatementOptions.AUTO_FETCH_BYTES / (10 * 116), size);
+    	// columns without a display size, such as large objects, are limited
+    	assertEquals(StatementOptions.AUTO_FETCH_BYTES / (StatementOptions.MAX_COLUMN_WIDTH + 16),
+    			StatementOptions.estimateFetchSize(metadata(1, Integer.MAX_VALUE)));
+    	assertEquals(StatementOptions.MIN_FETCH_SIZE, StatementOptions.estimateFetchSize(metadata(200, 0)));
+    }
+
+    private static ResultSetMetaData metadata(final int columns, final int displaySize) {
+    	return (ResultSetMetaData) Proxy.newProxyInstance(TestStatementOptions.class.getClassLoader(),
+    			new Class<?>[] {ResultSetMetaData.class}, new InvocationHandler() {
+    		public Object invoke(Object proxy, Method method, Object[] args) {
+    			if (method.getName().equals("getColumnCount")) {
+    				return Integer.valueOf(columns);
+    			} else if (method.getName().equals("getColumnDisplaySize")) {
+    				return Integer.valueOf(displaySize);
+    			}
+    			throw new UnsupportedOperationException(method.getName());
+    		}
+    	});
+    }
+
+}
@@ -0,0 +1,383 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.framework.connection;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.jboss.bqt.core.exception.QueryTestFailedException;
+import org.jboss.bqt.framework.AbstractQuery;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ConnectionPool} through the {@link PooledDriverConnection},
+ * using proxies for the JDBC connections.
+ */
+@SuppressWarnings("nls")
+public class TestConnectionPool {
+
+	private static int pools = 0;
+
+	/**
+	 * The state of a proxied connection.
+	 */
+	static class FakeConnection implements InvocationHandler {
+		boolean closed = false;
+		boolean autoCommit = true;
+		boolean rolledBack = false;
+		boolean valid = true;
+		int validations = 0;
+		Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { Connection.class }, this);
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("isClosed")) {
+				return closed;
+			} else if (name.equals("close")) {
+				closed = true;
+			} else if (name.equals("getAutoCommit")) {
+				return autoCommit;
+			} else if (name.equals("setAutoCommit")) {
+				autoCommit = (Boolean) args[0];
+			} else if (name.equals("rollback")) {
+				rolledBack = true;
+			} else if (name.equals("isValid")) {
+				validations++;
+				return valid;
+			} else if (name.equals("createStatement")) {
+				return statement();
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			return null;
+		}
+
+		private Statement statement() {
+			return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class[] { Statement.class }, new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							if (method.getName().equals("execute")) {
+								validations++;
+								if (!valid) {
+									throw new SQLException("connection reset", "08006");
+								}
+								return Boolean.TRUE;
+							} else if (method.getName().equals("executeBatch")) {
+								if (!valid) {
+									throw new SQLException("connection reset", "08006");
+								}
+								return new int[] { 1 };
+							}
+							return null;
+						}
+					});
+		}
+	}
+
+	/**
+	 * Opens {@link FakeConnection}s instead of going through the driver manager.
+	 */
+	static class FakePooledConnection extends PooledDriverConnection {
+		final List<FakeConnection> opened = new ArrayList<FakeConnection>();
+
+		FakePooledConnection(Properties props) throws Exception {
+			super(props);
+			configure();
+		}
+
+		@Override
+		protected Connection getJDBCConnection(String driver, String url,
+				String user, String passwd) throws FrameworkException {
+			FakeConnection c = new FakeConnection();
+			synchronized (opened) {
+				opened.add(c);
+			}
+			return c.connection;
+		}
+
+		ConnectionPool pool() {
+			return ConnectionPool.getPool(this);
+		}
+
+		FakeConnection get(int i) {
+			synchronized (opened) {
+				return opened.get(i);
+			}
+		}
+
+		int getOpened() {
+			synchronized (opened) {
+				return opened.size();
+			}
+		}
+	}
+
+	private static Properties props(String... settings) {
+		Properties props = new Properties();
+		props.setProperty(DriverConnection.DS_URL, "jdbc:test:pool" + (pools++));
+		props.setProperty(DriverConnection.DS_DRIVER, Object.class.getName());
+		props.setProperty(DriverConnection.DS_USERNAME, "user");
+		props.setProperty(DriverConnection.DS_PASSWORD, "secret");
+		for (int i = 0; i < settings.length; i += 2) {
+			props.setProperty(settings[i], settings[i + 1]);
+		}
+		return props;
+	}
+
+	@After
+	public void tearDown() {
+		ConnectionPool.shutdownAll();
+	}
+
+    @Test
+    public void testWarmUp() throws Exception {
+    	FakePooledConnection strategy = new FakePooledConnection(props(PooledDriverConnection.POOL_MIN_SIZE, "2"));
+    	assertEquals(2, strategy.getOpened());
+
+    	Connection c = strategy.getConnection();
+    	assertSame(c, strategy.getConnection());
+    	assertEquals(2, strategy.getOpened());
+    }
+
+    @Test
+    public void testMaxSizeAndAcquireTimeout() throws Exception {
+    	FakePooledConnection strategy = new FakePooledConnection(props(
+    			PooledDriverConnection.POOL_MIN_SIZE, "0",
+    			PooledDriverConnection.POOL_MAX_SIZE, "2",
+    			PooledDriverConnection.POOL_ACQUIRE_TIMEOUT, "100"));
+    	ConnectionPool pool = strategy.pool();
+    	assertEquals(0, strategy.getOpened());
+
+    	pool.acquire();
+    	pool.acquire();
+    	assertEquals(2, strategy.getOpened());
+
+    	long start = System.currentTimeMillis();
+    	try {
+    		pool.acquire();
+    		fail("the pool is exhausted");
+    	} catch (FrameworkException e) {
+    		assertTrue(e.getMessage(), e.getMessage().contains("Timed out after 100 ms"));
+    	}
+    	assertTrue(System.currentTimeMillis() - start >= 100);
+    	assertEquals(2, strategy.getOpened());
+    }
+
+    @Test
+    public void testAcquireWait() throws Exception {
+    	FakePooledConnection strategy = new FakePooledConnection(props(
+    			PooledDriverConnection.POOL_MAX_SIZE, "1",
+    			PooledDriverConnection.POOL_ACQUIRE_TIMEOUT, "5000"));
+    	final ConnectionPool pool = strategy.pool();
+    	final Connection c1 = pool.acquire();
+
+    	// a waiting acquire gets the connection that is returned
+    	Thread releaser = new Thread() {
+    		@Override
+    		public void run() {
+    			try {
+    				Thread.sleep(20);
+    			} catch (InterruptedException e) {
+    				return;
+    			}
+    			pool.release(c1);
+    		}
+    	};
+    	releaser.start();
+    	assertSame(c1, pool.acquire());
+    	releaser.join();
+    	assertEquals(1, strategy.getOpened());
+    	assertTrue(pool.getStatistics(), pool.getStatistics().contains("waits=1"));
+    }
+
+    @Test
+    public void testRollbackOnRelease() throws Exception {
+    	FakePooledConnection strategy = new FakePooledConnection(props());
+    	Connection c = strategy.getConnection();
+    	c.setAutoCommit(false);
+    	strategy.shutdown();
+
+    	FakeConnection fc = strategy.get(0);
+    	assertTrue(fc.rolledBack);
+    	assertTrue(fc.autoCommit);
+    	assertFalse(fc.closed);
+    	assertSame(c, strategy.getConnection());
+    }
+
+    @Test
+    public void testDiscardClosed() throws Exception {
+    	FakePooledConnection strategy = new FakePooledConnection(props());
+    	Connection c = strategy.getConnection();
+    	c.close();
+
+    	// the closed connection goes back to the pool, which opens a new one
+    	Connection c2 = strategy.getConnection();
+    	assertNotSame(c, c2);
+    	assertEquals(2, strategy.getOpened());
+    	ConnectionPool pool = strategy.pool();
+    	assertTrue(pool.getStatistics(), pool.getStatistics().contains("size=1,"));
+    	assertTrue(pool.getStatistics(), pool.getStatistics().contains("discarded=1"));
+    }
+
+    @Test
+    public void testValidation() throws Exception {
+    	FakePooledConnection strategy = new FakePooledConnection(props());
+    	Connection c = strategy.getConnection();
+    	strategy.shutdown();
+    	assertSame(c, strategy.getConnection());
+    	assertEquals(2, strategy.get(0).validations);
+    	strategy.shutdown();
+
+    	// the connection went stale while idle
+    	strategy.get(0).valid = false;
+    	Connection c2 = strategy.getConnection();
+    	assertNotSame(c, c2);
+    	assertTrue(strategy.get(0).closed);
+    	assertEquals(2, strategy.getOpened());
+    }
+
+    @Test
+    public void testValidationQuery() throws Exception {
+    	FakePooledConnection strategy = new FakePooledConnection(props(
+    			PooledDriverConnection.POOL_VALIDATION_QUERY, "select 1"));
+    	Connection c = strategy.getConnection();
+    	strategy.shutdown();
+    	strategy.get(0).valid = false;
+
+    	assertNotSame(c, strategy.getConnection());
+    	assertTrue(strategy.get(0).closed);
+    	assertEquals(2, strategy.get(0).validations);
+    }
+
+    @Test
+    public void testValidationInterval() throws Exception {
+    	FakePooledConnection strategy = new FakePooledConnection(props(
+    			PooledDriverConnection.POOL_VALIDATION_INTERVAL, "60000"));
+    	Connection c = strategy.getConnection();
+    	strategy.shutdown();
+
+    	// recently returned connections aren't validated
+    	assertSame(c, strategy.getConnection());
+    	assertEquals(0, strategy.get(0).validations);
+    }
+
+    /**
+     * A connection that failed is closed instead of being returned to the pool.
+     */
+    @Test
+    public void testInvalidateAfterConnectionError() throws Exception {
+    	final FakePooledConnection strategy = new FakePooledConnection(props(
+    			PooledDriverConnection.POOL_VALIDATION_INTERVAL, "60000",
+    			ConnectionRecovery.MAX_RECONNECTS, "0"));
+    	AbstractQuery query = new AbstractQuery(props()) {
+    		{
+    			connStrategy = strategy;
+    		}
+    	};
+    	String[] batch = new String[] { "insert into t values (1)" };
+
+    	query.setConnection(strategy.getConnection());
+    	assertEquals(1, query.executeBatch(batch)[0]);
+
+    	strategy.get(0).valid = false;
+    	try {
+    		query.executeBatch(batch);
+    		fail("the connection failed");
+    	} catch (QueryTestFailedException e) {
+    		// expected
+    	}
+    	assertTrue(strategy.get(0).closed);
+    	assertTrue(strategy.pool().getStatistics(), strategy.pool().getStatistics().contains("discarded=1"));
+    	try {
+    		query.getConnectionRecovery().beforeConnect();
+    		fail("the connection error wasn't recorded");
+    	} catch (FrameworkRuntimeException e) {
+    		// expected
+    	}
+
+    	// a new connection, the failed one wasn't validated because it was recently used
+    	Connection c = strategy.getConnection();
+    	assertSame(strategy.get(1).connection, c);
+    	query.setConnection(c);
+    	assertEquals(1, query.executeBatch(batch)[0]);
+    	query.getConnectionRecovery().beforeConnect();
+    }
+
+    @Test
+    public void testShutdownAll() throws Exception {
+    	FakePooledConnection strategy = new FakePooledConnection(props(PooledDriverConnection.POOL_MIN_SIZE, "2"));
+    	ConnectionPool pool = strategy.pool();
+    	Connection inUse = pool.acquire();
+
+    	ConnectionPool.shutdownAll();
+    	FakeConnection idle = strategy.get(0).connection == inUse ? strategy.get(1) : strategy.get(0);
+    	assertTrue(idle.closed);
+    	try {
+    		pool.acquire();
+    		fail("the pool has been shutdown");
+    	} catch (FrameworkException e) {
+    		assertTrue(e.getMessage(), e.getMessage().contains("has been shutdown"));
+    	}
+
+    	// connections in use are closed when they're returned
+    	pool.release(inUse);
+    	assertTrue(inUse.isClosed());
+
+    	// a new pool is created for the next strategy
+    	assertNotSame(pool, strategy.pool());
+    }
+
+    @Test
+    public void testPoolKey() throws Exception {
+    	FakePooledConnection strategy = new FakePooledConnection(props());
+    	ConnectionPool pool = strategy.pool();
+
+    	assertSame(pool, new FakePooledConnection(props(DriverConnection.DS_URL, strategy.getUrl())).pool());
+    	// another password isn't authenticated with the connections of the pool
+    	FakePooledConnection other = new FakePooledConnection(props(DriverConnection.DS_URL, strategy.getUrl(),
+    			DriverConnection.DS_PASSWORD, "other"));
+    	assertNotSame(pool, other.pool());
+    	assertEquals(1, other.getOpened());
+    	assertNotSame(pool, new FakePooledConnection(props(DriverConnection.DS_URL, strategy.getUrl(),
+    			DriverConnection.DS_USERNAME, "other")).pool());
+    	assertNotSame(pool, new FakePooledConnection(props()).pool());
+    	assertFalse(pool.getStatistics(), pool.getStatistics().contains("secret"));
+    	assertEquals(64, ConnectionPool.fingerprint("secret").length());
+    	assertFalse(ConnectionPool.fingerprint("secret").equals(ConnectionPool.fingerprint("other")));
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package org.jboss.bqt.framework.connection;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Properties;
+
+import org.jboss.bqt.core.exception.FrameworkException;
+import org.jboss.bqt.core.exception.FrameworkRuntimeException;
+import org.junit.Test;
+
+/**
+ * Tests the classification of the errors and the reconnects of the {@link ConnectionRecovery}
+ */
+@SuppressWarnings("nls")
+public class TestConnectionRecovery {
+
+    @Test
+    public void testClassify() throws Exception {
+    	Properties props = new Properties();
+    	props.setProperty(ConnectionRecovery.CONNECTION_ERROR_CODES, "57P01, 17002");
+    	ConnectionRecovery recovery = new ConnectionRecovery(props);
+
+    	assertEquals(ConnectionRecovery.STATEMENT_ERROR, recovery.classify(new SQLException("bad")));
+    	assertEquals(ConnectionRecovery.STATEMENT_ERROR, recovery.classify(new SQLSyntaxErrorException("syntax", "42000")));
+    	assertEquals(ConnectionRecovery.TRANSACTION_ERROR, recovery.classify(new SQLException("deadlock", "40001")));
+    	assertEquals(ConnectionRecovery.TRANSACTION_ERROR, recovery.classify(new SQLTransactionRollbackException("rollback")));
+    	assertEquals(ConnectionRecovery.CONNECTION_ERROR, recovery.classify(new SQLException("link failure", "08S01")));
+    	assertEquals(ConnectionRecovery.CONNECTION_ERROR, recovery.classify(new SQLNonTransientConnectionException("closed")));
+    	// the driver's connection errors
+    	assertEquals(ConnectionRecovery.CONNECTION_ERROR, recovery.classify(new SQLException("admin shutdown", "57P01")));
+    	assertEquals(ConnectionRecovery.CONNECTION_ERROR, recovery.classify(new SQLException("io error", "99999", 17002)));
+
+    	// the most severe of the chained exceptions
+    	SQLException e = new SQLException("failed", "42000");
+    	e.setNextException(new SQLException("deadlock", "40P01"));
+    	assertEquals(ConnectionRecovery.TRANSACTION_ERROR, recovery.classify(e));
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+    	Properties props = new Properties();
+    	props.setProperty(ConnectionRecovery.MAX_RECONNECTS, "2");
+    	props.setProperty(ConnectionRecovery.RECONNECT_BACKOFF, "0");
+    	ConnectionRecovery recovery = new ConnectionRecovery(props);
+
+    	// no wait while the connection works
+    	recovery.beforeConnect();
+    	assertEquals(0, recovery.getReconnects());
+
+    	recovery.connectionFailed();
+    	recovery.beforeConnect();
+    	recovery.connectionFailed();
+    	recovery.beforeConnect();
+    	assertEquals(2, recovery.getReconnects());
+
+    	recovery.connectionFailed();
+    	try {
+    		recovery.beforeConnect();
+    		fail("there were too many connection errors");
+    	} catch (FrameworkRuntimeException ex) {
+    		assertEquals(FrameworkException.ErrorCodes.DB_CONNECTION_EXCEPTION, ex.getCode());
+    	}
+
+    	// a query that used the connection closes the circuit
+    	recovery.connectionSucceeded();
+    	recovery.beforeConnect();
+    	assertEquals(2, recovery.getReconnects());
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+    	ConnectionRecovery recovery = new ConnectionRecovery(new Properties());
+    	recovery.connectionFailed();
+    	assertEquals(500, recovery.getBackoff());
+    	recovery.connectionFailed();
+    	recovery.connectionFailed();
+    	assertEquals(2000, recovery.getBackoff());
+    	for (int i = 0; i < 20; i++) {
+    		recovery.connectionFailed();
+    	}
+    	assertEquals(60000, recovery.getBackoff());
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+
+package org.jboss.bqt.framework.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests the percentiles and merging of the {@link LatencyHistogram}
+ */
+public class TestLatencyHistogram {    
+
+    //===================================================================
+    //ACTUAL TESTS
+    //===================================================================
+
+    @Test
+    public void testEmpty() throws Exception {
+    	LatencyHistogram h = new LatencyHistogram();
+    	assertEquals(0, h.getCount());
+    	assertEquals(0, h.getMin());
+    	assertEquals(0, h.getMax());
+    	assertEquals(0, h.getValueAtPercentile(50));
+    	assertEquals(0.0, h.getMean(), 0.0);
+    }
+
+    @Test
+    public void testSingleValueIsExact() throws Exception {
+    	LatencyHistogram h = new LatencyHistogram();
+    	h.record(123456789l);
+    	assertEquals(1, h.getCount());
+    	assertEquals(123456789l, h.getMin());
+    	assertEquals(123456789l, h.getMax());
+    	assertEquals(123456789l, h.getValueAtPercentile(50));
+    	assertEquals(123456789l, h.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+    	LatencyHistogram h = new LatencyHistogram();
+    	// 1 to 1000 microseconds
+    	for (int i = 1000; i >= 1; i--) {
+    		h.record(i * 1000l);
+    	}
+    	assertEquals(1000, h.getCount());
+    	assertEquals(1000l, h.getMin());
+    	assertEquals(1000000l, h.getMax());
+    	assertEquals(500500.0, h.getMean(), 0.001);
+
+    	assertWithin(500000l, h.getValueAtPercentile(50));
+    	assertWithin(950000l, h.getValueAtPercentile(95));
+    	assertWithin(990000l, h.getValueAtPercentile(99));
+    	assertEquals(1000000l, h.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testBuckets() throws Exception {
+    	long[] values = new long[] {0, 1, 63, 64, 65, 127, 128, 1000, 123456789l, LatencyHistogram.MAX_TRACKABLE_VALUE};
+    	int last = -1;
+    	for (long v : values) {
+    		int idx = LatencyHistogram.bucketIndex(v);
+    		assertTrue(idx >= last);
+    		assertTrue(LatencyHistogram.highestValue(idx) >= v);
+    		assertTrue(LatencyHistogram.highestValue(idx) - v <= v / 32);
+    		last = idx;
+    	}
+    	assertEquals(LatencyHistogram.bucketIndex(LatencyHistogram.MAX_TRACKABLE_VALUE), LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testAdd() throws Exception {
+    	LatencyHistogram h1 = new LatencyHistogram();
+    	LatencyHistogram h2 = new LatencyHistogram();
+    	LatencyHistogram h3 = new LatencyHistogram();
+    	h1.record(10);
+    	h2.record(20);
+    	h2.record(30);
+    	h3.record(40);
+
+    	LatencyHistogram total = new LatencyHistogram();
+    	total.add(h1);
+    	total.add(new LatencyHistogram());
+    	total.add(h2);
+    	total.add(h3);
+    	assertEquals(4, total.getCount());
+    	assertEquals(10, total.getMin());
+    	assertEquals(40, total.getMax());
+    	assertEquals(100, total.getTotal());
+    	assertEquals(20, total.getValueAtPercentile(50));
+    	assertEquals(30, total.getValueAtPercentile(75));
+    }
+
+    @Test
+    public void testFormat() throws Exception {
+    	LatencyHistogram h = new LatencyHistogram();
+    	assertEquals(0, LatencyHistogram.parse(h.format()).getCount());
+    	h.record(1500);
+    	LatencyHistogram parsed = LatencyHistogram.parse(h.format());
+    	assertEquals(1, parsed.getCount());
+    	assertEquals(1500, parsed.getValueAtPercentile(99));
+
+    	for (long i = 1; i <= 1000; i++) {
+    		h.record(i * 1000);
+    	}
+    	parsed = LatencyHistogram.parse(h.format());
+    	assertEquals(h.format(), parsed.format());
+    	assertEquals(h.getCount(), parsed.getCount());
+    	assertEquals(h.getMin(), parsed.getMin());
+    	assertEquals(h.getMax(), parsed.getMax());
+    	assertEquals(h.getTotal(), parsed.getTotal());
+    	assertEquals(h.getValueAtPercentile(50), parsed.getValueAtPercentile(50));
+    	assertEquals(h.getValueAtPercentile(99), parsed.getValueAtPercentile(99));
+
+    	for (String text : new String[] {"", "2,1,2,3", "1,1,1,1,0:1", "2,1,2,3,999999:2", "2,1,2,3,x"}) {
+    		try {
+    			LatencyHistogram.parse(text);
+    			fail("not a histogram: " + text);
+    		} catch (NumberFormatException e) {
+    			// expected
+    		}
+    	}
+    }
+
+    private static void assertWithin(long expected, long actual) {
+    	assertTrue("expected " + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 32);
+    }
+}